@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two sets of JMH results written with <tt>-rf json</tt>, typically a release baseline and the current build,
+ * and reports every benchmark whose score has regressed by more than a threshold.
+ * <p/>
+ * Usage: <tt>BenchmarkComparison &lt;baseline.json&gt; &lt;current.json&gt; [thresholdPercent]</tt>
+ * <p/>
+ * The exit status is <tt>1</tt> if any benchmark has regressed, so that the comparison can fail a build.  A missing
+ * baseline file is reported but is not a failure.
+ */
+public class BenchmarkComparison
+{
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+
+        File baselineFile = new File(args[0]);
+        if (!baselineFile.exists())
+        {
+            System.out.println("No baseline at " + baselineFile + "; nothing to compare against");
+            return;
+        }
+        Map<String, JsonNode> baseline = readResults(baselineFile);
+        Map<String, JsonNode> current = readResults(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet())
+        {
+            JsonNode baselineResult = baseline.get(entry.getKey());
+            if (baselineResult == null)
+            {
+                System.out.println(String.format("NEW        %s", entry.getKey()));
+                continue;
+            }
+            double before = baselineResult.path("primaryMetric").path("score").asDouble();
+            double after = entry.getValue().path("primaryMetric").path("score").asDouble();
+            String unit = entry.getValue().path("primaryMetric").path("scoreUnit").asText();
+            // Throughput is better when higher, all other modes measure time and are better when lower
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            double change = before == 0.0 ? 0.0 : (after - before) * 100.0 / before;
+            double worse = higherIsBetter ? -change : change;
+            String status = worse > threshold ? "REGRESSED" : "OK";
+            if (worse > threshold)
+            {
+                regressions++;
+            }
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)", status, entry.getKey(), before, after, unit, change));
+        }
+        for (String key : baseline.keySet())
+        {
+            if (!current.containsKey(key))
+            {
+                System.out.println(String.format("MISSING    %s", key));
+            }
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * @return the results keyed by benchmark name, parameters and thread count
+     */
+    private static Map<String, JsonNode> readResults(File file) throws IOException
+    {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file))
+        {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext())
+            {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            key.append(" threads=").append(result.path("threads").asInt());
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.transaction.InMemoryTransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Benchmarks {@link TransactionalCache#get(Serializable)} outside of a transaction and within read-only and
+ * read-write transactions that read a number of keys each.
+ * <p/>
+ * Run with <tt>-t</tt> to vary the number of threads reading the shared cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionalCacheBenchmark
+{
+    @Param({"1000", "100000"})
+    public int cacheSize;
+
+    @Param({"1", "50"})
+    public int readsPerTxn;
+
+    private TransactionalCache<Long, String> cache;
+    private TransactionTemplate readOnlyTxn;
+    private TransactionTemplate readWriteTxn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        DefaultSimpleCache<Serializable, TransactionalCache.ValueHolder<String>> sharedCache =
+                new DefaultSimpleCache<>(cacheSize, "benchmarkSharedCache");
+        cache = new TransactionalCache<>();
+        cache.setName("benchmarkTransactionalCache");
+        cache.setSharedCache(sharedCache);
+        cache.setMaxCacheSize(readsPerTxn * 2);
+        cache.setMutable(true);
+        cache.afterPropertiesSet();
+        for (long i = 0; i < cacheSize; i++)
+        {
+            cache.put(i, "value-" + i);
+        }
+
+        InMemoryTransactionManager transactionManager = new InMemoryTransactionManager();
+        readOnlyTxn = transactionManager.newTemplate(true);
+        readWriteTxn = transactionManager.newTemplate(false);
+    }
+
+    private Long randomKey()
+    {
+        return ThreadLocalRandom.current().nextLong(cacheSize);
+    }
+
+    @Benchmark
+    public String getOutsideTxn()
+    {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    public void getInReadOnlyTxn(Blackhole blackhole)
+    {
+        readOnlyTxn.executeWithoutResult(status -> read(blackhole));
+    }
+
+    @Benchmark
+    public void getInReadWriteTxn(Blackhole blackhole)
+    {
+        readWriteTxn.executeWithoutResult(status -> read(blackhole));
+    }
+
+    private void read(Blackhole blackhole)
+    {
+        for (int i = 0; i < readsPerTxn; i++)
+        {
+            blackhole.consume(cache.get(randomKey()));
+        }
+    }
+}
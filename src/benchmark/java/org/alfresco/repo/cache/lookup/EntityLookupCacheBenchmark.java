@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks {@link EntityLookupCache#getByKey(Serializable)} against an in-memory stand-in for the entity table,
+ * both when every key is cached and when the key space is larger than the cache.
+ * <p/>
+ * Run with <tt>-t</tt> to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityLookupCacheBenchmark
+{
+    private static final String CACHE_REGION = "Benchmark";
+
+    @Param({"1000", "100000"})
+    public int cacheSize;
+
+    private EntityLookupCache<Long, String, String> lookupCache;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        InMemoryEntityDAO entityDAO = new InMemoryEntityDAO();
+        // The table holds four times as many entities as the cache
+        for (long i = 0; i < cacheSize * 4L; i++)
+        {
+            entityDAO.createValue("entity-" + i);
+        }
+        lookupCache = new EntityLookupCache<>(
+                new DefaultSimpleCache<Serializable, Object>(cacheSize, "benchmarkEntityCache"),
+                CACHE_REGION,
+                entityDAO);
+        for (long i = 0; i < cacheSize; i++)
+        {
+            lookupCache.getByKey(i);
+        }
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKeyCached()
+    {
+        return lookupCache.getByKey(ThreadLocalRandom.current().nextLong(cacheSize));
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKeyCacheTooSmall()
+    {
+        return lookupCache.getByKey(ThreadLocalRandom.current().nextLong(cacheSize * 4L));
+    }
+
+    /**
+     * Holds the entities in a map in place of a database table
+     */
+    private static class InMemoryEntityDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final Map<Long, String> entities = new ConcurrentHashMap<>();
+
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            String value = entities.get(key);
+            return value == null ? null : new Pair<>(key, value);
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            Long key = (long) entities.size();
+            entities.put(key, value);
+            return new Pair<>(key, value);
+        }
+    }
+}
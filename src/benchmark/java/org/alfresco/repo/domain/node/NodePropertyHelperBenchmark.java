@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.domain.locale.AbstractLocaleDAOImpl;
+import org.alfresco.repo.domain.locale.LocaleEntity;
+import org.alfresco.repo.domain.qname.AbstractQNameDAOImpl;
+import org.alfresco.repo.domain.qname.NamespaceEntity;
+import org.alfresco.repo.domain.qname.QNameEntity;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the {@link NodePropertyHelper} conversions between the public and persisted forms of node properties.
+ * These make up most of the cost of {@link AbstractNodeDAOImpl#getNodeProperties(Long)} once the node is cached.
+ * <p/>
+ * The QName and locale DAOs are backed by in-memory stand-ins for their tables, in front of the usual caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodePropertyHelperBenchmark
+{
+    private static final String NAMESPACE = "http://www.alfresco.org/model/benchmark/1.0";
+
+    @Param({"10", "50", "200"})
+    public int propertyCount;
+
+    private NodePropertyHelper helper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistedProperties;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        InMemoryQNameDAO qnameDAO = new InMemoryQNameDAO();
+        qnameDAO.setNamespaceCache(new DefaultSimpleCache<Long, String>(1000, "benchmarkNamespaceCache"));
+        qnameDAO.setQnameCache(new DefaultSimpleCache<Long, QName>(10000, "benchmarkQNameCache"));
+        InMemoryLocaleDAO localeDAO = new InMemoryLocaleDAO();
+        localeDAO.setLocaleEntityCache(new DefaultSimpleCache<Long, String>(1000, "benchmarkLocaleCache"));
+        // Without definitions, every property is treated as residual
+        DictionaryService dictionaryService = (DictionaryService) Proxy.newProxyInstance(
+                DictionaryService.class.getClassLoader(),
+                new Class<?>[] { DictionaryService.class },
+                (proxy, method, args) -> null);
+        helper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, null);
+
+        publicProperties = new HashMap<>();
+        Date now = new Date();
+        for (int i = 0; i < propertyCount; i++)
+        {
+            QName qname = QName.createQName(NAMESPACE, "property" + i);
+            Serializable value;
+            switch (i % 5)
+            {
+                case 0:
+                    value = "value " + i;
+                    break;
+                case 1:
+                    value = Long.valueOf(i);
+                    break;
+                case 2:
+                    value = now;
+                    break;
+                case 3:
+                    value = Boolean.TRUE;
+                    break;
+                default:
+                    List<String> values = new ArrayList<>();
+                    values.add("first " + i);
+                    values.add("second " + i);
+                    value = (Serializable) values;
+            }
+            publicProperties.put(qname, value);
+        }
+        persistedProperties = helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> convertToPersistentProperties()
+    {
+        return helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties()
+    {
+        return helper.convertToPublicProperties(persistedProperties);
+    }
+
+    /**
+     * Holds namespaces and QNames in maps in place of the <b>alf_namespace</b> and <b>alf_qname</b> tables
+     */
+    private static class InMemoryQNameDAO extends AbstractQNameDAOImpl
+    {
+        private final AtomicLong nextId = new AtomicLong(1);
+        private final Map<Long, NamespaceEntity> namespacesById = new ConcurrentHashMap<>();
+        private final Map<String, NamespaceEntity> namespacesByUri = new ConcurrentHashMap<>();
+        private final Map<Long, QNameEntity> qnamesById = new ConcurrentHashMap<>();
+        private final Map<String, QNameEntity> qnamesByName = new ConcurrentHashMap<>();
+
+        @Override
+        protected NamespaceEntity findNamespaceEntityById(Long id)
+        {
+            return namespacesById.get(id);
+        }
+
+        @Override
+        protected NamespaceEntity findNamespaceEntityByUri(String uri)
+        {
+            return namespacesByUri.get(uri);
+        }
+
+        @Override
+        protected synchronized NamespaceEntity createNamespaceEntity(String uri)
+        {
+            NamespaceEntity entity = new NamespaceEntity();
+            entity.setId(nextId.getAndIncrement());
+            entity.setVersion(0L);
+            entity.setUriSafe(uri);
+            namespacesById.put(entity.getId(), entity);
+            namespacesByUri.put(uri, entity);
+            return entity;
+        }
+
+        @Override
+        protected int updateNamespaceEntity(NamespaceEntity entity, String uri)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected QNameEntity findQNameEntityById(Long id)
+        {
+            return qnamesById.get(id);
+        }
+
+        @Override
+        protected QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName)
+        {
+            return qnamesByName.get(nsId + ":" + localName);
+        }
+
+        @Override
+        protected synchronized QNameEntity createQNameEntity(Long nsId, String localName)
+        {
+            QNameEntity entity = new QNameEntity();
+            entity.setId(nextId.getAndIncrement());
+            entity.setVersion(0L);
+            entity.setNamespaceId(nsId);
+            entity.setLocalNameSafe(localName);
+            qnamesById.put(entity.getId(), entity);
+            qnamesByName.put(nsId + ":" + localName, entity);
+            return entity;
+        }
+
+        @Override
+        protected int updateQNameEntity(QNameEntity entity, Long nsId, String localName)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected int deleteQNameEntity(QNameEntity entity)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Holds locales in maps in place of the <b>alf_locale</b> table
+     */
+    private static class InMemoryLocaleDAO extends AbstractLocaleDAOImpl
+    {
+        private final AtomicLong nextId = new AtomicLong(1);
+        private final Map<Long, LocaleEntity> localesById = new ConcurrentHashMap<>();
+        private final Map<String, LocaleEntity> localesByName = new ConcurrentHashMap<>();
+
+        @Override
+        protected LocaleEntity getLocaleEntity(Long id)
+        {
+            return localesById.get(id);
+        }
+
+        @Override
+        protected LocaleEntity getLocaleEntity(String locale)
+        {
+            return localesByName.get(locale);
+        }
+
+        @Override
+        protected synchronized LocaleEntity createLocaleEntity(String locale)
+        {
+            LocaleEntity entity = new LocaleEntity();
+            entity.setId(nextId.getAndIncrement());
+            entity.setVersion(0L);
+            entity.setLocaleStr(locale);
+            localesById.put(entity.getId(), entity);
+            localesByName.put(locale, entity);
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.policy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.dictionary.CompiledModelsCache;
+import org.alfresco.repo.dictionary.DictionaryBootstrap;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.dictionary.DictionaryDAOImpl;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.alfresco.util.ThreadPoolExecutorFactoryBean;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks looking up and invoking a class policy, as done by the node service for every node change.
+ * <p/>
+ * With <tt>cached=false</tt> the policies are built from the {@link ClassBehaviourIndex} on every call, which is how
+ * {@link CachedPolicyFactory} used to dispatch whenever a behaviour filter was active in the transaction.  Compare
+ * it with <tt>cached=true</tt> and <tt>filterActivated=true</tt>.  Run with <tt>-t</tt> to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolicyDispatchBenchmark
+{
+    private static final String TEST_NAMESPACE = "http://www.alfresco.org/test/policycomponenttest/1.0";
+    private static final QName BASE_TYPE = QName.createQName(TEST_NAMESPACE, "base");
+    private static final QName FILE_TYPE = QName.createQName(TEST_NAMESPACE, "file");
+    private static final QName FOLDER_TYPE = QName.createQName(TEST_NAMESPACE, "folder");
+    private static final QName[] CLASSES = new QName[] { BASE_TYPE, FILE_TYPE, FOLDER_TYPE };
+    private static final QName POLICY = QName.createQName(TEST_NAMESPACE, "test");
+
+    public interface BenchmarkPolicy extends ClassPolicy
+    {
+        static String NAMESPACE = TEST_NAMESPACE;
+        public String test(String argument);
+    }
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    @Param({"false", "true"})
+    public boolean filterActivated;
+
+    private DictionaryComponent dictionary;
+    private PolicyFactory<ClassBehaviourBinding, BenchmarkPolicy> factory;
+    private NodeRef[] nodeRefs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        DictionaryDAOImpl dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        ThreadPoolExecutorFactoryBean threadPoolfactory = new ThreadPoolExecutorFactoryBean();
+        threadPoolfactory.afterPropertiesSet();
+        compiledModelsCache.setThreadPoolExecutor((ThreadPoolExecutor) threadPoolfactory.getObject());
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        List<String> bootstrapModels = new ArrayList<String>();
+        bootstrapModels.add("alfresco/model/dictionaryModel.xml");
+        bootstrapModels.add("alfresco/model/systemModel.xml");
+        bootstrapModels.add("org/alfresco/repo/policy/policycomponenttest_model.xml");
+        bootstrap.setModels(bootstrapModels);
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+
+        dictionary = new DictionaryComponent();
+        dictionary.setDictionaryDAO(dictionaryDAO);
+
+        ClassBehaviourIndex<ClassBehaviourBinding> index = new ClassBehaviourIndex<ClassBehaviourBinding>(createFilter());
+        index.putClassBehaviour(definition(BASE_TYPE, new JavaBehaviour(this, "baseTest")));
+        index.putClassBehaviour(definition(FOLDER_TYPE, new JavaBehaviour(this, "folderTest")));
+        factory = cached
+                ? new CachedPolicyFactory<ClassBehaviourBinding, BenchmarkPolicy>(BenchmarkPolicy.class, index)
+                : new PolicyFactory<ClassBehaviourBinding, BenchmarkPolicy>(BenchmarkPolicy.class, index);
+
+        nodeRefs = new NodeRef[100];
+        for (int i = 0; i < nodeRefs.length; i++)
+        {
+            nodeRefs[i] = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        }
+    }
+
+    /**
+     * @return a filter that is activated, as when any behaviour has been disabled in the transaction, but that
+     *         leaves every class and node enabled
+     */
+    private BehaviourFilter createFilter()
+    {
+        return (BehaviourFilter) Proxy.newProxyInstance(
+                BehaviourFilter.class.getClassLoader(),
+                new Class[] { BehaviourFilter.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        if (method.getName().equals("isActivated"))
+                        {
+                            return filterActivated;
+                        }
+                        return method.getReturnType().equals(boolean.class) ? Boolean.TRUE : null;
+                    }
+                });
+    }
+
+    private BehaviourDefinition<ClassBehaviourBinding> definition(QName classQName, final Behaviour behaviour)
+    {
+        final ClassBehaviourBinding binding = new ClassBehaviourBinding(dictionary, classQName);
+        return new BehaviourDefinition<ClassBehaviourBinding>()
+        {
+            public QName getPolicy()
+            {
+                return POLICY;
+            }
+
+            public PolicyDefinition getPolicyDefinition()
+            {
+                return null;
+            }
+
+            public ClassBehaviourBinding getBinding()
+            {
+                return binding;
+            }
+
+            public Behaviour getBehaviour()
+            {
+                return behaviour;
+            }
+        };
+    }
+
+    public String baseTest(String argument)
+    {
+        return argument;
+    }
+
+    public String folderTest(String argument)
+    {
+        return argument;
+    }
+
+    @Benchmark
+    public String invokeClassPolicy()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        QName classQName = CLASSES[random.nextInt(CLASSES.length)];
+        NodeRef nodeRef = nodeRefs[random.nextInt(nodeRefs.length)];
+        return factory.create(new ClassBehaviourBinding(dictionary, nodeRef, classQName)).test("benchmark");
+    }
+}
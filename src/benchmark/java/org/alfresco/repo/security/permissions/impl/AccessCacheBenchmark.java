@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the cached part of {@link PermissionServiceImpl#hasPermission(Long, PermissionContext, String)}: building
+ * the ACL scoped key and looking it up through the {@link AccessCacheIndex}, together with the cost of caching a newly
+ * evaluated result and of invalidating a single ACL.
+ * <p/>
+ * Run with <tt>-t</tt> to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccessCacheBenchmark
+{
+    private static final Long ACL_CHANGE_SET_ID = 1L;
+    private static final Set<QName> ASPECTS = Collections.singleton(ContentModel.ASPECT_AUDITABLE);
+
+    @Param({"1000", "100000"})
+    public int cacheSize;
+
+    @Param({"1", "20"})
+    public int authorityCount;
+
+    @Param({"true", "false"})
+    public boolean indexEnabled;
+
+    private AccessCacheIndex accessCacheIndex;
+    private Serializable authorities;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        accessCacheIndex = new AccessCacheIndex();
+        accessCacheIndex.setAccessCache(new DefaultSimpleCache<Serializable, AccessStatus>(cacheSize, "benchmarkAccessCache"));
+        accessCacheIndex.setEnabled(indexEnabled);
+        accessCacheIndex.setMaxIndexedKeys(cacheSize * 4);
+        accessCacheIndex.init();
+
+        HashSet<String> authoritySet = new HashSet<>();
+        authoritySet.add("benchmarkUser");
+        for (int i = 1; i < authorityCount; i++)
+        {
+            authoritySet.add("GROUP_benchmark" + i);
+        }
+        authorities = authoritySet;
+
+        for (long aclId = 0; aclId < cacheSize; aclId++)
+        {
+            accessCacheIndex.put(key(aclId), AccessStatus.ALLOWED);
+        }
+    }
+
+    private AccessCacheKey key(long aclId)
+    {
+        return AccessCacheKey.forAcl(PermissionService.READ, authorities, aclId, ACL_CHANGE_SET_ID, ContentModel.TYPE_CONTENT, ASPECTS, null);
+    }
+
+    @Benchmark
+    public AccessStatus hasPermissionCached()
+    {
+        return accessCacheIndex.get(key(ThreadLocalRandom.current().nextLong(cacheSize)));
+    }
+
+    @Benchmark
+    public AccessStatus hasPermissionCacheTooSmall()
+    {
+        AccessCacheKey key = key(ThreadLocalRandom.current().nextLong(cacheSize * 4L));
+        AccessStatus status = accessCacheIndex.get(key);
+        if (status == null)
+        {
+            status = AccessStatus.ALLOWED;
+            accessCacheIndex.put(key, status);
+        }
+        return status;
+    }
+
+    @Benchmark
+    public void invalidateAcl()
+    {
+        long aclId = ThreadLocalRandom.current().nextLong(cacheSize);
+        accessCacheIndex.invalidateAcls(Collections.singleton(aclId));
+        accessCacheIndex.put(key(aclId), AccessStatus.ALLOWED);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.NullCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.TransactionalCache;
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.ACEType;
+import org.alfresco.repo.security.permissions.ACLType;
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.DynamicAuthority;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.SimpleAccessControlEntry;
+import org.alfresco.repo.security.permissions.SimpleAccessControlList;
+import org.alfresco.repo.security.permissions.SimpleAccessControlListProperties;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.InMemoryTransactionManager;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.OwnableService;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Benchmarks {@link PermissionServiceImpl#hasPermission(NodeRef, String)} end to end for a user with ACL based
+ * permissions: resolving the node's ACL, building the user's authorities, the transactional access cache and, when
+ * the cache misses, evaluating the ACL entries.
+ * <p/>
+ * The node service, ACL DAOs, permission model and authority service are in-memory stand-ins, so the results cover
+ * the permission service itself and not the database. Each benchmark invocation makes
+ * {@link #checksPerTxn} checks against random nodes in one read-only transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionServiceBenchmark
+{
+    private static final String USER = "benchmarkUser";
+    private static final Long ACL_CHANGE_SET_ID = 1L;
+
+    @Param({"1000", "100000"})
+    public int nodeCount;
+
+    @Param({"1", "20"})
+    public int authorityCount;
+
+    @Param({"1", "50"})
+    public int checksPerTxn;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private PermissionServiceImpl permissionService;
+    private TransactionTemplate readOnlyTxn;
+    private NodeRef[] nodeRefs;
+
+    /**
+     * Authenticates each benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Authentication
+    {
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            AuthenticationUtil.setFullyAuthenticatedUser(USER);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        nodeRefs = new NodeRef[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+        {
+            nodeRefs[i] = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node-" + i);
+        }
+        // Nodes share ACLs, as inherited ACLs are shared by a whole folder
+        final int aclCount = Math.max(nodeCount / 100, 1);
+        final PermissionReference read = SimplePermissionReference.getPermissionReference(ContentModel.TYPE_BASE, PermissionService.READ);
+
+        final Set<String> authorities = new HashSet<>();
+        for (int i = 1; i < authorityCount; i++)
+        {
+            authorities.add("GROUP_benchmark" + i);
+        }
+        // Read is granted to a group the user is not in, then to the user or their last group
+        final String grantee = authorityCount > 1 ? "GROUP_benchmark" + (authorityCount - 1) : USER;
+        final List<AccessControlEntry> entries = new ArrayList<>();
+        entries.add(newEntry("GROUP_otherBenchmark", read));
+        entries.add(newEntry(grantee, read));
+
+        NodeService nodeService = standIn(NodeService.class, (proxy, method, args) -> {
+            switch (method.getName())
+            {
+                case "exists":
+                    return true;
+                case "getType":
+                    return ContentModel.TYPE_CONTENT;
+                case "getAspects":
+                    return new HashSet<>(Collections.singleton(ContentModel.ASPECT_AUDITABLE));
+                default:
+                    return null;
+            }
+        });
+        TenantService tenantService = standIn(TenantService.class,
+                (proxy, method, args) -> "getName".equals(method.getName()) ? args[0] : null);
+        PermissionsDaoComponent permissionsDaoComponent = standIn(PermissionsDaoComponent.class, (proxy, method, args) -> {
+            if ("getAccessControlListProperties".equals(method.getName()))
+            {
+                String id = ((NodeRef) args[0]).getId();
+                return newAclProperties(Long.parseLong(id.substring("node-".length())) % aclCount);
+            }
+            return null;
+        });
+        AclDAO aclDAO = standIn(AclDAO.class, (proxy, method, args) -> {
+            switch (method.getName())
+            {
+                case "getAccessControlListProperties":
+                    return newAclProperties((Long) args[0]);
+                case "getAccessControlList":
+                    SimpleAccessControlList acl = new SimpleAccessControlList();
+                    acl.setProperties(newAclProperties((Long) args[0]));
+                    acl.setEntries(entries);
+                    return acl;
+                default:
+                    return null;
+            }
+        });
+        // A permission model where every permission is granted only by itself and needs nothing else
+        ModelDAO modelDAO = standIn(ModelDAO.class, (proxy, method, args) -> {
+            switch (method.getName())
+            {
+                case "getPermissionReference":
+                    return SimplePermissionReference.getPermissionReference(ContentModel.TYPE_BASE, (String) args[1]);
+                case "getAllPermissions":
+                    return new HashSet<>(Collections.singleton(read));
+                case "getGrantingPermissions":
+                case "getGranteePermissions":
+                    return Collections.singleton(args[0]);
+                case "checkPermission":
+                    return true;
+                case "getRequiredPermissions":
+                case "getUnconditionalRequiredPermissions":
+                case "getGlobalPermissionEntries":
+                    return Collections.emptySet();
+                default:
+                    return null;
+            }
+        });
+        AuthorityService authorityService = standIn(AuthorityService.class,
+                (proxy, method, args) -> "getAuthoritiesForUser".equals(method.getName()) ? new HashSet<>(authorities) : null);
+
+        SimpleCache<Serializable, TransactionalCache.ValueHolder<AccessStatus>> sharedCache = cached
+                ? new DefaultSimpleCache<Serializable, TransactionalCache.ValueHolder<AccessStatus>>(50000, "benchmarkAccessSharedCache")
+                : new NullCache<Serializable, TransactionalCache.ValueHolder<AccessStatus>>();
+        TransactionalCache<Serializable, AccessStatus> accessCache = new TransactionalCache<>();
+        accessCache.setName("benchmarkAccessCache");
+        accessCache.setSharedCache(sharedCache);
+        accessCache.setMaxCacheSize(10000);
+        accessCache.setMutable(true);
+        accessCache.afterPropertiesSet();
+        AccessCacheIndex accessCacheIndex = new AccessCacheIndex();
+        accessCacheIndex.setAccessCache(accessCache);
+        accessCacheIndex.init();
+
+        permissionService = new PermissionServiceImpl();
+        permissionService.setNodeService(nodeService);
+        permissionService.setTenantService(tenantService);
+        permissionService.setPermissionsDaoComponent(permissionsDaoComponent);
+        permissionService.setAclDAO(aclDAO);
+        permissionService.setModelDAO(modelDAO);
+        permissionService.setAuthorityService(authorityService);
+        permissionService.setDictionaryService(standIn(DictionaryService.class, (proxy, method, args) -> null));
+        permissionService.setOwnableService(standIn(OwnableService.class, (proxy, method, args) -> null));
+        permissionService.setPolicyComponent(standIn(PolicyComponent.class, (proxy, method, args) -> null));
+        permissionService.setDynamicAuthorities(Collections.<DynamicAuthority>emptyList());
+        permissionService.setAccessCache(accessCache);
+        permissionService.setAccessCacheIndex(accessCacheIndex);
+        permissionService.setReadersCache(new DefaultSimpleCache<Serializable, Set<String>>(1000, "benchmarkReadersCache"));
+        permissionService.setReadersDeniedCache(new DefaultSimpleCache<Serializable, Set<String>>(1000, "benchmarkReadersDeniedCache"));
+
+        readOnlyTxn = new InMemoryTransactionManager().newTemplate(true);
+    }
+
+    private static SimpleAccessControlEntry newEntry(String authority, PermissionReference permission)
+    {
+        SimpleAccessControlEntry entry = new SimpleAccessControlEntry();
+        entry.setAccessStatus(AccessStatus.ALLOWED);
+        entry.setAceType(ACEType.ALL);
+        entry.setAuthority(authority);
+        entry.setPermission(permission);
+        entry.setPosition(0);
+        return entry;
+    }
+
+    private static SimpleAccessControlListProperties newAclProperties(Long aclId)
+    {
+        SimpleAccessControlListProperties properties = new SimpleAccessControlListProperties();
+        properties.setId(aclId);
+        properties.setAclType(ACLType.DEFINING);
+        properties.setAclChangeSetId(ACL_CHANGE_SET_ID);
+        properties.setInherits(true);
+        return properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T standIn(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    @Benchmark
+    public void hasReadPermission(Authentication authentication, Blackhole blackhole)
+    {
+        readOnlyTxn.executeWithoutResult(status -> {
+            for (int i = 0; i < checksPerTxn; i++)
+            {
+                NodeRef nodeRef = nodeRefs[ThreadLocalRandom.current().nextInt(nodeCount)];
+                blackhole.consume(permissionService.hasPermission(nodeRef, PermissionService.READ));
+            }
+        });
+    }
+}
@@ -48,6 +48,7 @@ import org.alfresco.jlan.util.WildCard;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.model.filefolder.HiddenAspect;
 import org.alfresco.repo.model.filefolder.HiddenAspect.Visibility;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -92,6 +93,7 @@ public class CifsHelper
     private LockService lockService;
     private HiddenAspect hiddenAspect;
     private RetryingTransactionHelper retryingTransactionHelper;
+    private NodeBulkLoader nodeBulkLoader;
 
     private Set<QName> excludedTypes = new HashSet<QName>();
     
@@ -140,6 +142,14 @@ public class CifsHelper
         this.permissionService = permissionService;
     }
 
+    /**
+     * @param nodeBulkLoader used to load the nodes of a folder listing together, optional
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+    
     public void setHiddenAspect(HiddenAspect hiddenAspect)
     {
         this.hiddenAspect = hiddenAspect;
@@ -281,6 +291,51 @@ public class CifsHelper
     }
 
 
+    /**
+     * Get the file info for a batch of nodes, such as the results of a folder search, in a single
+     * transaction. The nodes and their properties are loaded together before the file info is built.
+     * 
+     * @param nodeRefs the nodes
+     * @return Returns the file info in the same order as the nodes, with <tt>null</tt> for any node
+     *         that no longer exists
+     */
+    public List<ContentFileInfo> getFileInformation(final List<NodeRef> nodeRefs, final boolean readOnly, final boolean lockedFilesAsOffline)
+    {
+        RetryingTransactionCallback<List<ContentFileInfo>> cb =  new RetryingTransactionCallback<List<ContentFileInfo>>()
+        {
+            public List<ContentFileInfo> execute() throws IOException
+            {
+                if (nodeBulkLoader != null)
+                {
+                    nodeBulkLoader.cacheNodes(nodeRefs);
+                }
+                List<ContentFileInfo> fileInfos = new ArrayList<ContentFileInfo>(nodeRefs.size());
+                for (NodeRef nodeRef : nodeRefs)
+                {
+                    ContentFileInfo fileInfo = null;
+                    try
+                    {
+                        if (nodeService.exists(nodeRef))
+                        {
+                            fileInfo = getFileInformationImpl(nodeRef, readOnly, lockedFilesAsOffline);
+                        }
+                    }
+                    catch (InvalidNodeRefException e)
+                    {
+                        // Deleted since the search
+                    }
+                    catch (FileNotFoundException e)
+                    {
+                        // Deleted since the search
+                    }
+                    fileInfos.add(fileInfo);
+                }
+                return fileInfos;
+            }
+        };
+        return getRetryingTransactionHelper().doInTransaction(cb, true);
+    }
+
     /**
      * Extract a single node's file info, where the node is reference by
      * a path relative to an ancestor node.
@@ -83,6 +83,11 @@ public class ContentContext extends AlfrescoContext
     
     private NodeMonitor m_nodeMonitor;
     
+    // Path to node cache, kept up to date by the node monitor
+    
+    private int m_pathCacheSize;
+    private NodePathCache m_pathCache;
+    
     // Thread pool
     
     private ThreadRequestPool m_threadPool;
@@ -146,6 +151,17 @@ public class ContentContext extends AlfrescoContext
         m_disableNodeMonitor = disableNodeMonitor;
     }        
 
+    /**
+     * Set the number of share relative paths to cache the nodes of, zero disables the cache.
+     * The cache is only used when the node monitor is enabled.
+     * 
+     * @param pathCacheSize int
+     */
+    public void setPathCacheSize(int pathCacheSize)
+    {
+        m_pathCacheSize = pathCacheSize;
+    }
+
     /**
      * Disable change notifications
      * 
@@ -284,6 +300,26 @@ public class ContentContext extends AlfrescoContext
         return m_disableNodeMonitor;
     }
 
+    /**
+     * Return the number of share relative paths to cache the nodes of
+     * 
+     * @return int
+     */
+    public int getPathCacheSize()
+    {
+        return m_pathCacheSize;
+    }
+
+    /**
+     * Return the path to node cache
+     * 
+     * @return NodePathCache, or <tt>null</tt> if paths are not cached
+     */
+    public NodePathCache getPathCache()
+    {
+        return m_pathCache;
+    }
+
     /**
      * Determine if oplocks support should be disabled
      * 
@@ -384,6 +420,15 @@ public class ContentContext extends AlfrescoContext
     protected void setNodeMonitor( NodeMonitor nodeMonitor) {
         m_nodeMonitor = nodeMonitor;
     }
+    
+    /**
+     * Set the path to node cache
+     * 
+     * @param pathCache NodePathCache
+     */
+    protected void setPathCache( NodePathCache pathCache) {
+        m_pathCache = pathCache;
+    }
 
     /**
      * Start the filesystem
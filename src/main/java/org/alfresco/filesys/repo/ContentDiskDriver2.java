@@ -38,6 +38,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.StringTokenizer;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.filesys.alfresco.AlfrescoContext;
@@ -76,6 +77,7 @@ import org.alfresco.jlan.smb.server.SMBServer;
 import org.alfresco.jlan.smb.server.SMBSrvSession;
 import org.alfresco.jlan.util.DataBuffer;
 import org.alfresco.jlan.util.MemorySize;
+import org.alfresco.jlan.util.WildCard;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
@@ -570,6 +572,13 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
          {     
                 NodeMonitor nodeMonitor = m_nodeMonitorFactory.createNodeMonitor(context);
                 context.setNodeMonitor( nodeMonitor);
+                
+                // Cache the nodes of share relative paths, the node monitor removes the paths of changed nodes
+                if ( context.getPathCacheSize() > 0)
+                {
+                    context.setPathCache( new NodePathCache( context.getPathCacheSize()));
+                    logger.debug("path cache enabled, size=" + context.getPathCacheSize());
+                }
          }
          
          logger.debug("initialise the file state lock manager");
@@ -2007,7 +2016,108 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         throws FileNotFoundException
     {   
         ContentContext ctx = (ContentContext) tree.getContext();   
-        return getCifsHelper().getNodeRef(ctx.getRootNode(), path);
+        NodePathCache pathCache = ctx.getPathCache();
+        if (pathCache == null || WildCard.containsWildcards(path) || NodePathCache.normalize(path).length() == 0)
+        {
+            return getCifsHelper().getNodeRef(ctx.getRootNode(), path);
+        }
+        
+        String userName = AuthenticationUtil.getRunAsUser();
+        NodeRef nodeRef = getCachedNodeForPath(pathCache, ctx.getRootNode(), userName, path);
+        if (nodeRef != null)
+        {
+            pathCache.recordRequest(0);
+            return nodeRef;
+        }
+        
+        // Walk the path from the nearest cached folder above it
+        NodeRef pathRootNodeRef = ctx.getRootNode();
+        String relPath = path;
+        int sepIdx = path.lastIndexOf(FileName.DOS_SEPERATOR);
+        while (sepIdx > 0)
+        {
+            NodeRef folderNodeRef = getCachedNodeForPath(pathCache, ctx.getRootNode(), userName, path.substring(0, sepIdx));
+            if (folderNodeRef != null)
+            {
+                pathRootNodeRef = folderNodeRef;
+                relPath = path.substring(sepIdx);
+                break;
+            }
+            sepIdx = path.lastIndexOf(FileName.DOS_SEPERATOR, sepIdx - 1);
+        }
+        
+        nodeRef = getCifsHelper().getNodeRef(pathRootNodeRef, relPath);
+        pathCache.put(userName, path, nodeRef);
+        
+        int lookups = new StringTokenizer(relPath, FileName.DOS_SEPERATOR_STR).countTokens();
+        pathCache.recordRequest(lookups);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Resolved path " + path + " with " + lookups + " lookups, " + pathCache.getLookupsPerRequest() + " lookups per request");
+        }
+        return nodeRef;
+    }
+    
+    /**
+     * Get the node for a path from the path cache, checking that it still exists with the same name
+     * in case the change that moved it has not been seen by the node monitor.
+     * <p>
+     * The user's read access to the node and to each folder above it is checked again, as it may have
+     * changed since the path was cached without the node monitor seeing it, e.g. when the user leaves a
+     * group or the permissions are changed on another cluster node. These checks are answered from the
+     * permission cache, so they cost less than looking up each path element by name.
+     * 
+     * @return NodeRef, or <tt>null</tt> if the path is not cached
+     */
+    private NodeRef getCachedNodeForPath(NodePathCache pathCache, NodeRef rootNodeRef, String userName, String path)
+    {
+        NodeRef nodeRef = pathCache.get(userName, path);
+        if (nodeRef == null)
+        {
+            return null;
+        }
+        String normalizedPath = NodePathCache.normalize(path);
+        String name = normalizedPath.substring(normalizedPath.lastIndexOf(FileName.DOS_SEPERATOR) + 1);
+        if (nodeService.exists(nodeRef) && name.equalsIgnoreCase((String) nodeService.getProperty(nodeRef, ContentModel.PROP_NAME)))
+        {
+            if (isReadableFromRoot(rootNodeRef, nodeRef, new StringTokenizer(normalizedPath, FileName.DOS_SEPERATOR_STR).countTokens()))
+            {
+                return nodeRef;
+            }
+            
+            // Not readable now, or not reached through primary parents, so resolve the path again
+            
+            return null;
+        }
+        pathCache.removePath(path);
+        return null;
+    }
+    
+    /**
+     * Check that the user can read a node and each folder above it, following primary parents up to the
+     * share root.
+     * 
+     * @param rootNodeRef the share root node
+     * @param nodeRef the node
+     * @param depth the number of path elements between the share root and the node
+     * @return <tt>true</tt> if every node is readable and the share root is reached after <tt>depth</tt> parents
+     */
+    private boolean isReadableFromRoot(NodeRef rootNodeRef, NodeRef nodeRef, int depth)
+    {
+        NodeRef currentNodeRef = nodeRef;
+        for (int i = 0; i < depth; i++)
+        {
+            if (permissionService.hasPermission(currentNodeRef, PermissionService.READ) == AccessStatus.DENIED)
+            {
+                return false;
+            }
+            currentNodeRef = nodeService.getPrimaryParent(currentNodeRef).getParentRef();
+            if (currentNodeRef == null)
+            {
+                return false;
+            }
+        }
+        return rootNodeRef.equals(currentNodeRef);
     }
     
     /**
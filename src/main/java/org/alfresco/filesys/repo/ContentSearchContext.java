@@ -25,7 +25,6 @@
  */
 package org.alfresco.filesys.repo;
 
-import java.io.FileNotFoundException;
 import java.util.List;
 
 import org.alfresco.jlan.server.filesys.FileAttribute;
@@ -33,7 +32,6 @@ import org.alfresco.jlan.server.filesys.FileInfo;
 import org.alfresco.jlan.server.filesys.FileName;
 import org.alfresco.jlan.server.filesys.FileType;
 import org.alfresco.jlan.server.filesys.SearchContext;
-import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -58,6 +56,10 @@ public class ContentSearchContext extends SearchContext
     
     public final static int LinkFileSize	= 512;
     
+    // Number of search results to fetch the file information for at a time
+    
+    public final static int FileInfoBatchSize = 100;
+    
     private InFlightCorrector corrector;
     
     public void setInFlightCorrector(InFlightCorrector corrector)
@@ -73,6 +75,12 @@ public class ContentSearchContext extends SearchContext
 
     private boolean lockedFilesAsOffline;
     
+    // File information for the current batch of results
+    
+    private List<ContentFileInfo> m_batchInfos;
+    private int m_batchStart;
+    private boolean m_batchLockedFilesAsOffline;
+    
     // Resume id
     
     private int resumeId;
@@ -172,97 +180,108 @@ public class ContentSearchContext extends SearchContext
 
         // Return the next available file information for a real file/folder
         
-        try
-        {
-        	// Loop until we get a valid node, might have been deleted since the initial folder search
+    	// Loop until we get a valid node, might have been deleted since the initial folder search
 
-        	ContentFileInfo nextInfo = null;
-        	NodeRef nextNodeRef = null;
-        	
-        	while ( nextInfo == null && index < results.size())
-        	{
-        		//	Get the next node from the search
-        	
-        		nextNodeRef = results.get(index);
-            
-        		try {
-
-        			// Get the file information and copy across to the caller's file info
-    	            
-		            nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, lockedFilesAsOffline);
-		            info.copyFrom(nextInfo);
+    	ContentFileInfo nextInfo = null;
+    	NodeRef nextNodeRef = null;
+    	
+    	while ( nextInfo == null && index < results.size())
+    	{
+    		//	Get the next node from the search
+    	
+    		nextNodeRef = results.get(index);
+    		
+    		// Get the file information, fetched along with the following results
+    		
+    		nextInfo = getResultFileInfo(index, lockedFilesAsOffline);
+    		if ( nextInfo == null) {
 
-		            /**
-		             * Apply in flight correction
-		             */
-		            if(corrector != null)
-		            {
-		                corrector.correct(info, m_relPath);
-		            }
-		            
-	        	}
-	        	catch ( InvalidNodeRefException ex) {
-
-	        		// Log a warning
-	        		
-	        		if ( logger.isWarnEnabled())
-	        		{
-	        			logger.warn("Noderef " + nextNodeRef + " no longer valid, ignoring");
-	        		}
-	        		
-	        		// Update the node index, node no longer exists, try the next node in the search
-	        		
-	        		index++;
-	        		resumeId++;
-	        	}
-        	}
-        	
-        	// Check if we have finished returning file info
-        	
-        	if ( nextInfo == null)
-        	{
-        		return false;
-        	}
-        	
-        	// Generate a file id for the current file
-        	
-        	StringBuilder pathStr = new StringBuilder( m_relPath);
-        	pathStr.append ( info.getFileName());
-        	
-        	// Check if this is a link node
-        	if ( nextInfo.isLinkNode())
-        	{
-        		// Set a dummy file size for the link data that will be generated if/when the file is opened
-        		
-        		info.setFileSize( LinkFileSize);
+        		// Log a warning
         		
-        		// Make the link read-only
+        		if ( logger.isWarnEnabled())
+        		{
+        			logger.warn("Noderef " + nextNodeRef + " no longer valid, ignoring");
+        		}
         		
-        		if ( info.isReadOnly() == false)
-        			info.setFileAttributes( info.getFileAttributes() + FileAttribute.ReadOnly);
+        		// Update the node index, node no longer exists, try the next node in the search
         		
-        		// Set the file type to indicate a symbolic link
-        		
-        		info.setFileType( FileType.SymbolicLink);
-        	}
-        	else
-        		info.setFileType( FileType.RegularFile);
-        	
-        	// Keep track of the last file name returned
-        	
-        	m_lastFileName = info.getFileName();
-        	
-        	// Indicate that the file information is valid
-            
-            return true;
-        }
-        catch (FileNotFoundException e)
+        		index++;
+        		resumeId++;
+        		continue;
+    		}
+
+    		// Copy the file information across to the caller's file info
+    		
+            info.copyFrom(nextInfo);
+
+            /**
+             * Apply in flight correction
+             */
+            if(corrector != null)
+            {
+                corrector.correct(info, m_relPath);
+            }
+    	}
+    	
+    	// Check if we have finished returning file info
+    	
+    	if ( nextInfo == null)
+    	{
+    		return false;
+    	}
+    	
+    	// Generate a file id for the current file
+    	
+    	StringBuilder pathStr = new StringBuilder( m_relPath);
+    	pathStr.append ( info.getFileName());
+    	
+    	// Check if this is a link node
+    	if ( nextInfo.isLinkNode())
+    	{
+    		// Set a dummy file size for the link data that will be generated if/when the file is opened
+    		
+    		info.setFileSize( LinkFileSize);
+    		
+    		// Make the link read-only
+    		
+    		if ( info.isReadOnly() == false)
+    			info.setFileAttributes( info.getFileAttributes() + FileAttribute.ReadOnly);
+    		
+    		// Set the file type to indicate a symbolic link
+    		
+    		info.setFileType( FileType.SymbolicLink);
+    	}
+    	else
+    		info.setFileType( FileType.RegularFile);
+    	
+    	// Keep track of the last file name returned
+    	
+    	m_lastFileName = info.getFileName();
+    	
+    	// Indicate that the file information is valid
+        
+        return true;
+    }
+    
+    /**
+     * Return the file information for a search result. The file information is fetched for a batch
+     * of results at a time, in a single transaction, rather than a result at a time.
+     * 
+     * @param idx index of the search result
+     * @param lockedAsOffline whether locked files are marked as offline
+     * @return ContentFileInfo, or <tt>null</tt> if the node no longer exists
+     */
+    private ContentFileInfo getResultFileInfo(int idx, boolean lockedAsOffline)
+    {
+        if ( m_batchInfos == null || idx < m_batchStart || idx >= m_batchStart + m_batchInfos.size()
+                || m_batchLockedFilesAsOffline != lockedAsOffline)
         {
+            int batchEnd = Math.min( idx + FileInfoBatchSize, results.size());
+            m_batchInfos = cifsHelper.getFileInformation( results.subList( idx, batchEnd), false, lockedAsOffline);
+            m_batchStart = idx;
+            m_batchLockedFilesAsOffline = lockedAsOffline;
         }
-        
-        // File information is not valid
-        
-        return false;
+        return m_batchInfos.get( idx - m_batchStart);
     }
 
     /**
@@ -285,14 +304,9 @@ public class ContentSearchContext extends SearchContext
 
         // Get the next file info from the node search
             
-        NodeRef nextNodeRef = results.get(index);
-        
-        try
+        FileInfo nextInfo = getResultFileInfo(index, false);
+        if ( nextInfo != null)
         {
-            // Get the file information and copy across to the callers file info
-            
-            FileInfo nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, false);
-
             // Keep track of the last file name returned
             
             m_lastFileName = nextInfo.getFileName();
@@ -301,9 +315,6 @@ public class ContentSearchContext extends SearchContext
             
             return nextInfo.getFileName();
         }
-        catch (FileNotFoundException e)
-        {
-        }
         
         // No more files
         
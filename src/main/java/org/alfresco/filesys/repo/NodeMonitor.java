@@ -29,6 +29,7 @@ package org.alfresco.filesys.repo;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.jlan.server.filesys.FileStatus;
 import org.alfresco.jlan.server.filesys.NotifyChange;
@@ -40,6 +41,8 @@ import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.security.permissions.PermissionServicePolicies;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -71,6 +74,10 @@ public class NodeMonitor extends TransactionListenerAdapter
 									 NodeServicePolicies.OnUpdatePropertiesPolicy,
 									 NodeServicePolicies.BeforeDeleteNodePolicy,
 									 NodeServicePolicies.OnMoveNodePolicy,
+									 PermissionServicePolicies.OnGrantLocalPermission,
+									 PermissionServicePolicies.OnRevokeLocalPermission,
+									 PermissionServicePolicies.OnInheritPermissionsEnabled,
+									 PermissionServicePolicies.OnInheritPermissionsDisabled,
 									 Runnable
 {
     // Logging
@@ -81,6 +88,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     
     public static final String FileSysNodeEvent  = "FileSysNodeEvent";
     public static final String FileSysNodeEvent2 = "FileSysNodeEvent2";
+    public static final String FileSysPathChange = "FileSysPathChange";
     
     // Services/components
 	
@@ -111,6 +119,22 @@ public class NodeMonitor extends TransactionListenerAdapter
 	private Thread m_thread;
 	private boolean m_shutdown;
 	
+	// Removes the paths changed by a transaction from the path cache once it has committed
+	
+	private final TransactionListenerAdapter m_pathCacheListener = new TransactionListenerAdapter()
+	{
+	    @Override
+	    public void afterCommit()
+	    {
+	        NodePathCache pathCache = m_filesysCtx.getPathCache();
+	        Set<String> paths = TransactionalResourceHelper.getSet( FileSysPathChange);
+	        for ( String path : paths)
+	        {
+	            pathCache.removePath( path);
+	        }
+	    }
+	};
+	
 	/**
 	 * Class constructor
 	 * 
@@ -164,6 +188,17 @@ public class NodeMonitor extends TransactionListenerAdapter
                 this, new JavaBehaviour(this, "onMoveNode"));
         m_policyComponent.bindClassBehaviour( QName.createQName(NamespaceService.ALFRESCO_URI, "onUpdateProperties"),
     		  	this, new JavaBehaviour(this, "onUpdateProperties"));
+        
+        // Register for permission changes, which invalidate the cached paths
+        
+        m_policyComponent.bindClassBehaviour( PermissionServicePolicies.OnGrantLocalPermission.QNAME,
+                this, new JavaBehaviour(this, "onGrantLocalPermission"));
+        m_policyComponent.bindClassBehaviour( PermissionServicePolicies.OnRevokeLocalPermission.QNAME,
+                this, new JavaBehaviour(this, "onRevokeLocalPermission"));
+        m_policyComponent.bindClassBehaviour( PermissionServicePolicies.OnInheritPermissionsEnabled.QNAME,
+                this, new JavaBehaviour(this, "onInheritPermissionsEnabled"));
+        m_policyComponent.bindClassBehaviour( PermissionServicePolicies.OnInheritPermissionsDisabled.QNAME,
+                this, new JavaBehaviour(this, "onInheritPermissionsDisabled"));
 
         // Get the store for the root node.
         
@@ -304,6 +339,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     			ChildAssociationRef childAssocRef = m_nodeService.getPrimaryParent(nodeRef);
     			String relPath2 = buildRelativePathString(childAssocRef.getParentRef(), beforeName);
     			String relPath3 = buildRelativePathString(childAssocRef.getParentRef(), afterName);
+    			removeCachedPath(relPath2);
     			fireNodeEvent(new MoveNodeEvent( fType, nodeRef, relPath2 , relPath3));
     		}
     	}
@@ -338,6 +374,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     		// Build the share relative path to the node
     		String relPath = buildRelativePathString(oldChildAssocRef.getParentRef(), fName);
     		String relPath2 = buildRelativePathString(newChildAssocRef.getParentRef(), fName);
+    		removeCachedPath(relPath);
     		
     		// DEBUG
     		
@@ -379,6 +416,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     		
             StringBuilder pathStr = calculateDisplayPath(nodeRef);
             String relPath = (null != pathStr) ? (pathStr.toString()):("");
+            removeCachedPath(relPath);
     		
     		// Create an event to process the node deletion
     		
@@ -398,6 +436,47 @@ public class NodeMonitor extends TransactionListenerAdapter
     	}
 	}
 
+	/**
+	 * Permission granted event
+	 * 
+	 * @param nodeRef NodeRef
+	 * @param authority String
+	 * @param permission String
+	 */
+	public void onGrantLocalPermission(NodeRef nodeRef, String authority, String permission) {
+	    clearCachedPaths( nodeRef);
+	}
+
+	/**
+	 * Permission revoked event
+	 * 
+	 * @param nodeRef NodeRef
+	 * @param authority String
+	 * @param permission String
+	 */
+	public void onRevokeLocalPermission(NodeRef nodeRef, String authority, String permission) {
+	    clearCachedPaths( nodeRef);
+	}
+
+	/**
+	 * Permission inheritance enabled event
+	 * 
+	 * @param nodeRef NodeRef
+	 */
+	public void onInheritPermissionsEnabled(NodeRef nodeRef) {
+	    clearCachedPaths( nodeRef);
+	}
+
+	/**
+	 * Permission inheritance disabled event
+	 * 
+	 * @param nodeRef NodeRef
+	 * @param async boolean
+	 */
+	public void onInheritPermissionsDisabled(NodeRef nodeRef, boolean async) {
+	    clearCachedPaths( nodeRef);
+	}
+
     private StringBuilder calculateDisplayPath(final NodeRef nodeRef)
     {
         return AuthenticationUtil.runAs(new RunAsWork<StringBuilder>()
@@ -447,6 +526,49 @@ public class NodeMonitor extends TransactionListenerAdapter
 		return pathStr.toString();
 	}
 
+	/**
+	 * Removes the path of a renamed, moved or deleted node, and the paths below it, from the path cache.
+	 * The paths are removed again once the transaction commits in case they were cached from another
+	 * transaction in the meantime.
+	 * 
+	 * @param path the display path of the node before the change
+	 */
+	private void removeCachedPath(String path) {
+	    
+	    NodePathCache pathCache = m_filesysCtx.getPathCache();
+	    if ( pathCache == null || path.startsWith( m_rootPath) == false)
+	        return;
+	    
+	    String relPath = path.substring( m_rootPath.length());
+	    pathCache.removePath( relPath);
+	    
+	    Set<String> paths = TransactionalResourceHelper.getSet( FileSysPathChange);
+	    paths.add( relPath);
+	    AlfrescoTransactionSupport.bindListener( m_pathCacheListener);
+	}
+
+	/**
+	 * Removes all paths from the path cache when permissions change in the filesystem store. A cached path
+	 * would otherwise still resolve for a user who can no longer access one of the folders along it, and it
+	 * is not known which cached paths lie below the node.
+	 * 
+	 * @param nodeRef the node whose permissions changed
+	 */
+	private void clearCachedPaths(NodeRef nodeRef) {
+	    
+	    NodePathCache pathCache = m_filesysCtx.getPathCache();
+	    if ( pathCache == null || nodeRef.getStoreRef().equals( m_storeRef) == false)
+	        return;
+	    
+	    pathCache.clear();
+	    
+	    // The share root covers all paths, clear them again once the transaction commits
+	    
+	    Set<String> paths = TransactionalResourceHelper.getSet( FileSysPathChange);
+	    paths.add( "");
+	    AlfrescoTransactionSupport.bindListener( m_pathCacheListener);
+	}
+
 	/**
 	 * Queues a node event for execution post-commit.
 	 *  
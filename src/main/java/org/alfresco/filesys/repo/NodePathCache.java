@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.filesys.repo;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.jlan.server.filesys.FileName;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.Pair;
+
+/**
+ * Bounded, least recently used cache of share relative paths to the nodes they resolve to.
+ * 
+ * <p>Entries are held per user, as resolving a path checks the user's access to each folder along it.
+ * Paths are compared without case, in the same way as the file state cache. Entries are removed by the
+ * node monitor when a node is renamed, moved or deleted, which also removes the paths below it. The
+ * cached paths are also indexed in path order, so that the paths below a folder are removed as a range
+ * rather than by scanning the whole cache.
+ * 
+ * <p>The disk driver checks the user's read access to a cached node and the folders above it on each hit,
+ * as access can change without the node monitor seeing it, e.g. when group membership changes or when
+ * permissions are changed on another cluster node. The node monitor also clears the cache when
+ * permissions change locally.
+ */
+public class NodePathCache
+{
+    // Separator following the DOS separator in character order, ends the range of the paths below a folder
+    
+    private static final char SEPARATOR_END = (char) (FileName.DOS_SEPERATOR + 1);
+    
+    private final Map<Pair<String, String>, NodeRef> m_cache;
+    
+    // Users holding each cached path, in path order
+    
+    private final TreeMap<String, Set<String>> m_usersByPath = new TreeMap<String, Set<String>>();
+
+    // Path resolution statistics
+    
+    private final AtomicLong m_requests = new AtomicLong();
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_lookups = new AtomicLong();
+    
+    /**
+     * Class constructor
+     * 
+     * @param maxSize the maximum number of paths to hold
+     */
+    public NodePathCache(final int maxSize)
+    {
+        m_cache = new LinkedHashMap<Pair<String, String>, NodeRef>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair<String, String>, NodeRef> eldest)
+            {
+                if (size() <= maxSize)
+                {
+                    return false;
+                }
+                unindex(eldest.getKey());
+                return true;
+            }
+        };
+    }
+    
+    /**
+     * Get the node a path was last resolved to for the user
+     * 
+     * @param userName the user that resolved the path
+     * @param path share relative path
+     * @return the node or <tt>null</tt> if the path is not cached
+     */
+    public synchronized NodeRef get(String userName, String path)
+    {
+        return m_cache.get(new Pair<String, String>(userName, normalize(path)));
+    }
+    
+    /**
+     * Record the node a path resolved to for the user
+     * 
+     * @param userName the user that resolved the path
+     * @param path share relative path
+     * @param nodeRef the node at the path
+     */
+    public synchronized void put(String userName, String path, NodeRef nodeRef)
+    {
+        String normalizedPath = normalize(path);
+        Set<String> users = m_usersByPath.get(normalizedPath);
+        if (users == null)
+        {
+            users = new HashSet<String>(4);
+            m_usersByPath.put(normalizedPath, users);
+        }
+        users.add(userName);
+        m_cache.put(new Pair<String, String>(userName, normalizedPath), nodeRef);
+    }
+    
+    /**
+     * Remove a path, and all of the paths below it, for all users
+     * 
+     * @param path share relative path
+     */
+    public synchronized void removePath(String path)
+    {
+        String normalizedPath = normalize(path);
+        removeUsers(normalizedPath, m_usersByPath.remove(normalizedPath));
+        
+        // The paths below sort together, between the path followed by a separator and the next separator character
+        
+        Map<String, Set<String>> below = m_usersByPath.subMap(normalizedPath + FileName.DOS_SEPERATOR, normalizedPath + SEPARATOR_END);
+        Iterator<Map.Entry<String, Set<String>>> entries = below.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<String, Set<String>> entry = entries.next();
+            removeUsers(entry.getKey(), entry.getValue());
+            entries.remove();
+        }
+    }
+    
+    /**
+     * Remove all paths
+     */
+    public synchronized void clear()
+    {
+        m_cache.clear();
+        m_usersByPath.clear();
+    }
+    
+    /**
+     * Return the number of cached paths
+     * 
+     * @return int
+     */
+    public synchronized int size()
+    {
+        return m_cache.size();
+    }
+    
+    /**
+     * Record the resolution of a path
+     * 
+     * @param lookups the number of path elements that had to be looked up in the repository,
+     *                zero if the path was found in the cache
+     */
+    public void recordRequest(int lookups)
+    {
+        m_requests.incrementAndGet();
+        if (lookups == 0)
+        {
+            m_hits.incrementAndGet();
+        }
+        m_lookups.addAndGet(lookups);
+    }
+    
+    /**
+     * @return the number of paths resolved
+     */
+    public long getRequestCount()
+    {
+        return m_requests.get();
+    }
+    
+    /**
+     * @return the number of paths resolved from the cache without any repository lookups
+     */
+    public long getHitCount()
+    {
+        return m_hits.get();
+    }
+    
+    /**
+     * @return the number of path elements looked up in the repository
+     */
+    public long getLookupCount()
+    {
+        return m_lookups.get();
+    }
+    
+    /**
+     * @return the average number of path elements looked up in the repository per path resolved
+     */
+    public double getLookupsPerRequest()
+    {
+        long requests = m_requests.get();
+        return requests == 0 ? 0.0 : (double) m_lookups.get() / requests;
+    }
+    
+    /**
+     * Remove a path for each of the users holding it
+     */
+    private void removeUsers(String normalizedPath, Set<String> users)
+    {
+        if (users != null)
+        {
+            for (String userName : users)
+            {
+                m_cache.remove(new Pair<String, String>(userName, normalizedPath));
+            }
+        }
+    }
+    
+    /**
+     * Remove an evicted path from the path index
+     */
+    private void unindex(Pair<String, String> key)
+    {
+        Set<String> users = m_usersByPath.get(key.getSecond());
+        if (users != null)
+        {
+            users.remove(key.getFirst());
+            if (users.isEmpty())
+            {
+                m_usersByPath.remove(key.getSecond());
+            }
+        }
+    }
+    
+    /**
+     * Normalize a path to use DOS separators, without a trailing separator, in upper case
+     */
+    static String normalize(String path)
+    {
+        String normalizedPath = path.replace('/', FileName.DOS_SEPERATOR);
+        while (normalizedPath.endsWith(FileName.DOS_SEPERATOR_STR))
+        {
+            normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+        }
+        if (normalizedPath.length() > 0 && !normalizedPath.startsWith(FileName.DOS_SEPERATOR_STR))
+        {
+            normalizedPath = FileName.DOS_SEPERATOR_STR + normalizedPath;
+        }
+        return normalizedPath.toUpperCase();
+    }
+}
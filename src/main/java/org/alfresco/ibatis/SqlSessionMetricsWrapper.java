@@ -80,6 +80,21 @@ public class SqlSessionMetricsWrapper implements SqlSession
         }
     }
 
+    private void reportRowsAffected(final int rows, final String queryTypeTag, final String statementID)
+    {
+        try
+        {
+            if (dbMetricsReporter != null && dbMetricsReporter.isQueryMetricsEnabled())
+            {
+                dbMetricsReporter.reportRowsAffected(rows, queryTypeTag, statementID);
+            }
+        }
+        catch (Exception e)
+        {
+            logCouldNotReportDBQueryExecution(e);
+        }
+    }
+
     @Override
     public <T> T selectOne(String statement)
     {
@@ -252,7 +267,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.insert(statement);
+            int rows = this.sqlSession.insert(statement);
+            reportRowsAffected(rows, INSERT_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -266,7 +283,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.insert(statement, parameter);
+            int rows = this.sqlSession.insert(statement, parameter);
+            reportRowsAffected(rows, INSERT_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -280,7 +299,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.update(statement);
+            int rows = this.sqlSession.update(statement);
+            reportRowsAffected(rows, UPDATE_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -294,7 +315,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.update(statement, parameter);
+            int rows = this.sqlSession.update(statement, parameter);
+            reportRowsAffected(rows, UPDATE_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -308,7 +331,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.delete(statement);
+            int rows = this.sqlSession.delete(statement);
+            reportRowsAffected(rows, DELETE_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -322,7 +347,9 @@ public class SqlSessionMetricsWrapper implements SqlSession
         long startTime = System.currentTimeMillis();
         try
         {
-            return this.sqlSession.delete(statement, parameter);
+            int rows = this.sqlSession.delete(statement, parameter);
+            reportRowsAffected(rows, DELETE_LABEL, statement);
+            return rows;
         }
         finally
         {
@@ -40,6 +40,20 @@ public interface DBMetricsReporter extends MetricsReporter
      */
     void reportQueryExecutionTime(final long milliseconds, final String queryTpe, final String statementID);
 
+    /**
+     * Report the number of rows changed by an insert, update or delete statement.
+     * Together with the number of executions recorded by {@link #reportQueryExecutionTime(long, String, String)}
+     * this shows how many rows each statement writes, e.g. for statements that write several rows at once.
+     *
+     * @param rows         the number of rows changed by the statement
+     * @param queryTpe     mandatory, the type of query that we report for: "insert", "update" or "delete"
+     * @param statementID  optional, used only if "isQueryStatementsMetricsEnabled()" is true
+     */
+    default void reportRowsAffected(final int rows, final String queryTpe, final String statementID)
+    {
+        // Not recorded unless the reporter supports it
+    }
+
     boolean isEnabled();
 
     boolean isQueryMetricsEnabled();
@@ -47,6 +47,15 @@ public class DBMetricsReporterProxy implements DBMetricsReporter, ApplicationCon
         }
     }
 
+    @Override
+    public void reportRowsAffected(int rows, String queryTpe, String statementID)
+    {
+        if (dbMetricsReporterImpl != null)
+        {
+            dbMetricsReporterImpl.reportRowsAffected(rows, queryTpe, statementID);
+        }
+    }
+
     @Override
     public boolean isEnabled()
     {
@@ -83,6 +83,7 @@ import org.alfresco.sync.repo.Client.ClientType;
 import org.alfresco.repo.action.executer.ContentMetadataExtracter;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.coci.CheckOutCheckInServiceImpl;
+import org.alfresco.repo.content.RangedContentReader;
 import org.alfresco.sync.repo.events.EventPreparator;
 import org.alfresco.sync.repo.events.EventPublisher;
 import org.alfresco.repo.model.filefolder.GetChildrenCannedQuery;
@@ -1757,7 +1758,15 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
                     len = contentReader.getSize() - off;
                 }
 
-                result.setStream(new RangeInputStream(contentReader.getContentInputStream(), off, len));
+                if (contentReader instanceof RangedContentReader)
+                {
+                    // let the reader go straight to the offset
+                    result.setStream(((RangedContentReader) contentReader).getContentInputStream(off, len));
+                }
+                else
+                {
+                    result.setStream(new RangeInputStream(contentReader.getContentInputStream(), off, len));
+                }
                 result.setLength(BigInteger.valueOf(len));
                 publishReadEvent(streamNodeRef, info.getName(), result.getMimeType(), contentSize, contentReader.getEncoding(), off+" - "+len);
             }
@@ -43,10 +43,16 @@ public class RangeInputStream extends InputStream
         this.length = length;
         this.bytesRead = 0;
 
-        long l = this.inputStream.skip(offset);
-        if (l < offset)
+        // skip may return before the offset is reached
+        long skipped = 0;
+        while (skipped < offset)
         {
-            this.inputStream.skip(offset);
+            long l = this.inputStream.skip(offset - skipped);
+            if (l <= 0)
+            {
+                break;
+            }
+            skipped += l;
         }
     }
 
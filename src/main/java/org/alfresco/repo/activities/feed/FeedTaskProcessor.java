@@ -38,6 +38,7 @@ import java.net.URL;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -227,7 +228,36 @@ public abstract class FeedTaskProcessor
                     
                     int excludedConnections = 0;
                     
-                    for (String recipient : recipients)
+                    // The summary is the same for every recipient - allows JSON to simply pass straight through
+                    String activitySummary = activityPost.getActivityData();
+                    boolean validSummary = false;
+                    if (activitySummary.equals(""))
+                    {
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Empty template result for activityType '" + activityType + "' using format '" + FeedTaskProcessor.FEED_FORMAT_JSON + "' hence skip feed entries (activity post " + activityPost.getId() + ")");
+                        }
+                    }
+                    else if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
+                    {
+                        logger.warn("Skip feed entries (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
+                    }
+                    else
+                    {
+                        validSummary = true;
+                    }
+                    
+                    //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                    if (! userNamesAreCaseSensitive)
+                    {
+                        postingUserId = postingUserId.toLowerCase();
+                    }
+                    
+                    // Collect the entries of all recipients to write them together
+                    List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(validSummary ? recipients.size() : 0);
+                    Date feedDate = new Date();
+                    
+                    for (String recipient : (validSummary ? recipients : Collections.<String>emptySet()))
                     {
                         List<FeedControlEntity> feedControls = null;
                         if (! recipient.equals(""))
@@ -255,59 +285,35 @@ public abstract class FeedTaskProcessor
                                 continue;
                             }
                             
-                            for (String fmTemplate : fmTemplates)
+                            //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                            if (! userNamesAreCaseSensitive)
+                            {
+                                recipient = recipient.toLowerCase();
+                            }
+                            
+                            for (int i = 0; i < fmTemplates.size(); i++)
                             {
-                                String formatFound = FeedTaskProcessor.FEED_FORMAT_JSON;
-                                
                                 ActivityFeedEntity feed = new ActivityFeedEntity();
-                                
-                                // Generate activity feed summary 
-                                //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
-                                if (! userNamesAreCaseSensitive)
-                                {
-                                    recipient = recipient.toLowerCase();
-                                    postingUserId = postingUserId.toLowerCase();
-                                }
                                 feed.setFeedUserId(recipient);
                                 feed.setPostUserId(postingUserId);
                                 feed.setActivityType(activityType);
-                                
-                                String activitySummary = null;
-                                    // allows JSON to simply pass straight through
-                                    activitySummary = activityPost.getActivityData();
-                                
-                                if (! activitySummary.equals(""))
-                                {
-                                    if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
-                                    {
-                                        logger.warn("Skip feed entry (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
-                                    }
-                                    else
-                                    {
-                                        feed.setActivitySummary(activitySummary);
-                                        feed.setSiteNetwork(thisSite);
-                                        feed.setAppTool(activityPost.getAppTool());
-                                        feed.setPostDate(activityPost.getPostDate());
-                                        feed.setPostId(activityPost.getId());
-                                        feed.setFeedDate(new Date());
-                                        
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
-                                        
-                                        totalGenerated++;
-                                    }
-                                }
-                                else
-                                {
-                                    if (logger.isDebugEnabled())
-                                    {
-                                        logger.debug("Empty template result for activityType '" + activityType + "' using format '" + formatFound + "' hence skip feed entry (activity post " + activityPost.getId() + ")");
-                                    }
-                                }
+                                feed.setActivitySummary(activitySummary);
+                                feed.setSiteNetwork(thisSite);
+                                feed.setAppTool(activityPost.getAppTool());
+                                feed.setPostDate(activityPost.getPostDate());
+                                feed.setPostId(activityPost.getId());
+                                feed.setFeedDate(feedDate);
+                                feeds.add(feed);
                             }
                         }
                     }
                     
+                    // Insert activity feeds
+                    if (feeds.size() > 0)
+                    {
+                        totalGenerated += insertFeedEntries(feeds);
+                    }
+                    
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
                     
                     commitTransaction();
@@ -335,7 +341,13 @@ public abstract class FeedTaskProcessor
             // TODO i18n info message
             StringBuilder sb = new StringBuilder();
             sb.append("Generated ").append(totalGenerated).append(" activity feed entr").append(totalGenerated == 1 ? "y" : "ies");
-            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(System.currentTimeMillis() - startTime).append(" msecs)");
+            long duration = System.currentTimeMillis() - startTime;
+            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(duration).append(" msecs");
+            if (duration > 0)
+            {
+                sb.append(", ").append(totalGenerated * 1000L / duration).append(" entries/sec");
+            }
+            sb.append(")");
             logger.info(sb.toString());
         }
     }
@@ -445,6 +457,20 @@ public abstract class FeedTaskProcessor
 
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Insert the feed entries generated for an activity post.  Override to write the entries with fewer statements.
+     * 
+     * @return the number of feed entries inserted
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed); // ignore returned feedId
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
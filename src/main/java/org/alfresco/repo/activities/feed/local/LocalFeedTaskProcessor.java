@@ -215,6 +215,16 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         return feedDAO.insertFeedEntry(feed);
     }
 
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Inserting " + feeds.size() + " feed entries for post: " + feeds.get(0).getPostId());
+        }
+        return feedDAO.insertFeedEntries(feeds);
+    }
+
     public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
     {
         if (logger.isDebugEnabled())
@@ -81,6 +81,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AuditWriteBehindQueue auditWriteBehindQueue;
     
     /**
      * Default constructor
@@ -137,6 +138,20 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the queue used to write audit entries in the background.  Entries are written in the
+     * recording transaction if the queue is not set or not running.
+     */
+    public void setAuditWriteBehindQueue(AuditWriteBehindQueue auditWriteBehindQueue)
+    {
+        this.auditWriteBehindQueue = auditWriteBehindQueue;
+    }
+
+    private boolean isWriteBehind()
+    {
+        return auditWriteBehindQueue != null && auditWriteBehindQueue.isRunning();
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -578,6 +593,25 @@ public class AuditComponentImpl implements AuditComponent
         
         // We have something to record.  Start a transaction, if necessary
         TxnReadState txnState = AlfrescoTransactionSupport.getTransactionReadState();
+        if (isWriteBehind())
+        {
+            // Nothing is written in the recording transaction so there is no need for a writable one
+            if (txnState == TxnReadState.TXN_READ_WRITE)
+            {
+                return recordAuditValuesImpl(mappedValues);
+            }
+            // As for direct writes, read-only callers record in a new transaction so that the entries are queued
+            // even if their own transaction rolls back
+            RetryingTransactionCallback<Map<String, Serializable>> callback =
+                    new RetryingTransactionCallback<Map<String,Serializable>>()
+            {
+                public Map<String, Serializable> execute() throws Throwable
+                {
+                    return recordAuditValuesImpl(mappedValues);
+                }
+            };
+            return transactionService.getRetryingTransactionHelper().doInTransaction(callback, true, true);
+        }
         switch (txnState)
         {
         case TXN_NONE:
@@ -747,7 +781,16 @@ public class AuditComponentImpl implements AuditComponent
         {
             // Persist the values (if not just gathering data in a pre call for use in a post call)
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
-            if (!justGatherPreCallData)
+            if (justGatherPreCallData)
+            {
+                // Nothing to persist
+            }
+            else if (isWriteBehind())
+            {
+                // Written once the transaction commits; there is no entry ID yet
+                auditWriteBehindQueue.write(applicationId, time, username, auditData);
+            }
+            else
             {
                 entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
             }
@@ -0,0 +1,441 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.WriteBehindSpool;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Write-behind persistence of audit entries.
+ * <p/>
+ * Entries recorded within a transaction are handed over when the transaction commits to a {@link WriteBehindSpool},
+ * whose single background thread writes them in batches of up to {@link #setBatchSize(int) batchSize} entries, one
+ * transaction per batch. Values shared by the entries of a batch, such as user names and node references, go through
+ * the property value caches and are therefore looked up or created once per batch rather than once per entry.
+ * <p/>
+ * The {@link Durability durability} determines what happens to entries that have not been written when the server
+ * stops:
+ * <ul>
+ *   <li><b>MEMORY</b>: entries are held in memory only; anything still queued at shutdown is written before the
+ *       writer stops but a crash loses it.</li>
+ *   <li><b>SPOOL</b>: entries are also appended to a spool file and the last written entry is checkpointed, so a
+ *       restart writes whatever was not written before.</li>
+ *   <li><b>SYNC</b>: as for <b>SPOOL</b>, but the spool file is forced to disk before the committing thread
+ *       continues.</li>
+ * </ul>
+ * When the in-memory queue is full, committing threads wait up to {@link #setMaxBlockMillis(long) maxBlockMillis}
+ * for space. If there is still none, the entry is queued beyond the capacity (<b>MEMORY</b>) or left in the spool
+ * file for the writer to read back once it catches up; either way the writer keeps the entries in order. A batch that still can not be written after
+ * {@link #setMaxRetries(int) maxRetries} retries is moved to the {@link #FAILED_FILE_NAME failed file} (or dropped,
+ * for <b>MEMORY</b>) so that it does not hold back the entries behind it.
+ */
+public class AuditWriteBehindQueue
+{
+    private static final Log logger = LogFactory.getLog(AuditWriteBehindQueue.class);
+
+    static final String SPOOL_NAME = "audit";
+    static final String FAILED_FILE_NAME = SPOOL_NAME + WriteBehindSpool.FAILED_SUFFIX;
+    private static final String KEY_PENDING_ENTRIES = AuditWriteBehindQueue.class.getName() + ".pendingEntries";
+
+    /**
+     * What is kept of entries that have not been written yet
+     */
+    public enum Durability
+    {
+        MEMORY,
+        SPOOL,
+        SYNC
+    }
+
+    private boolean enabled = false;
+    private Durability durability = Durability.SPOOL;
+    private File directory;
+    private int capacity = 10000;
+    private int batchSize = 200;
+    private long maxBlockMillis = 1000;
+    private long retryWaitMillis = 5000;
+    private long maxRetryWaitMillis = 300000;
+    private int maxRetries = 10;
+    private long maxSpoolSize = 64 * 1024 * 1024;
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+
+    private final AfterCommitListener afterCommitListener = new AfterCommitListener();
+    private WriteBehindSpool<Entry> spool;
+
+    /**
+     * @param enabled           <tt>true</tt> to write audit entries in the background rather than in the
+     *                          transaction that records them
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the queue is accepting entries
+     */
+    public boolean isRunning()
+    {
+        return spool != null && spool.isRunning();
+    }
+
+    /**
+     * @param durability        one of the {@link Durability} values
+     */
+    public void setDurability(String durability)
+    {
+        this.durability = Durability.valueOf(durability.trim().toUpperCase());
+    }
+
+    /**
+     * @param directory         the directory holding the spool and checkpoint files
+     */
+    public void setDirectory(String directory)
+    {
+        this.directory = new File(directory);
+    }
+
+    /**
+     * @param capacity          the maximum number of entries held in memory waiting to be written
+     */
+    public void setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param batchSize         the maximum number of entries written in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxBlockMillis    how long a committing thread waits for space in a full queue
+     */
+    public void setMaxBlockMillis(long maxBlockMillis)
+    {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * @param retryWaitMillis   how long the writer waits before first retrying a batch that could not be written
+     */
+    public void setRetryWaitMillis(long retryWaitMillis)
+    {
+        this.retryWaitMillis = retryWaitMillis;
+    }
+
+    /**
+     * @param maxRetryWaitMillis the longest the writer waits between retries of a batch that could not be written
+     */
+    public void setMaxRetryWaitMillis(long maxRetryWaitMillis)
+    {
+        this.maxRetryWaitMillis = maxRetryWaitMillis;
+    }
+
+    /**
+     * @param maxRetries        the number of times a batch is retried before it is given up on, or <tt>-1</tt> to
+     *                          retry until it is written
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param maxSpoolSize      the spool size in bytes beyond which a fully written spool is truncated
+     */
+    public void setMaxSpoolSize(long maxSpoolSize)
+    {
+        this.maxSpoolSize = maxSpoolSize;
+    }
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Open the spool, work out what still has to be written and start the writer thread
+     */
+    public void init()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+
+        spool = new WriteBehindSpool<Entry>(SPOOL_NAME, new EntryCodec(), this::flush);
+        spool.setThreadNamePrefix("AuditWriteBehind");
+        if (durability != Durability.MEMORY)
+        {
+            PropertyCheck.mandatory(this, "directory", directory);
+            spool.setDirectory(directory);
+            spool.setSyncOnAppend(durability == Durability.SYNC);
+        }
+        spool.setCapacity(capacity);
+        spool.setBatchSize(batchSize);
+        spool.setMaxBlockMillis(maxBlockMillis);
+        spool.setRetryWaitMillis(retryWaitMillis);
+        spool.setMaxRetryWaitMillis(maxRetryWaitMillis);
+        spool.setMaxRetries(maxRetries);
+        spool.setMaxSpoolSize(maxSpoolSize);
+        spool.start();
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Audit write-behind started with " + durability + " durability and " + spool.getPendingCount() + " entries to replay.");
+        }
+    }
+
+    /**
+     * Stop the writer thread.  Queued entries are written before returning if they are only held in memory;
+     * otherwise they are replayed on the next start.
+     */
+    public void destroy()
+    {
+        if (spool != null)
+        {
+            spool.stop();
+        }
+    }
+
+    /**
+     * Queue an audit entry for writing.  Within a transaction, the entry is only queued once the transaction commits.
+     * 
+     * @see AuditDAO#createAuditEntry(Long, long, String, Map)
+     */
+    public void write(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        if (!isRunning())
+        {
+            throw new AlfrescoRuntimeException("The audit write-behind queue is not running");
+        }
+        Entry entry = new Entry(applicationId, time, username, values);
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            spool.append(Collections.singletonList(entry));
+        }
+        else
+        {
+            List<Entry> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+            pendingEntries.add(entry);
+            AlfrescoTransactionSupport.bindListener(afterCommitListener);
+        }
+    }
+
+    /**
+     * @return the number of entries waiting in memory to be written
+     */
+    public int getQueueDepth()
+    {
+        return spool == null ? 0 : spool.getQueueDepth();
+    }
+
+    /**
+     * @return the number of entries that have not been written yet, including any only held in the spool
+     */
+    public long getPendingCount()
+    {
+        return spool == null ? 0L : spool.getPendingCount();
+    }
+
+    /**
+     * @return the time in milliseconds taken to write the last batch
+     */
+    public long getLastFlushLatencyMillis()
+    {
+        return spool == null ? 0L : spool.getLastLatencyMillis();
+    }
+
+    /**
+     * @return the mean time in milliseconds taken to write a batch
+     */
+    public double getMeanFlushLatencyMillis()
+    {
+        return spool == null ? 0.0 : spool.getMeanLatencyMillis();
+    }
+
+    /**
+     * @return the time in milliseconds between the first entry of the last batch being queued and being written
+     */
+    public long getLastLagMillis()
+    {
+        return spool == null ? 0L : spool.getLastLagMillis();
+    }
+
+    public long getWrittenCount()
+    {
+        return spool == null ? 0L : spool.getHandledCount();
+    }
+
+    public long getFailedFlushCount()
+    {
+        return spool == null ? 0L : spool.getFailedCount();
+    }
+
+    /**
+     * @return the number of entries that did not fit in the queue
+     */
+    public long getOverflowCount()
+    {
+        return spool == null ? 0L : spool.getOverflowCount();
+    }
+
+    /**
+     * @return the number of entries given up on after running out of retries
+     */
+    public long getAbandonedCount()
+    {
+        return spool == null ? 0L : spool.getAbandonedCount();
+    }
+
+    /**
+     * Write a batch of entries in a single transaction
+     */
+    private void flush(final List<Entry> batch)
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (Entry entry : batch)
+                {
+                    auditDAO.createAuditEntry(entry.applicationId, entry.time, entry.username, entry.values);
+                }
+                return null;
+            }
+        };
+        transactionService.getRetryingTransactionHelper().doInTransaction(callback, false, true);
+    }
+
+    /**
+     * Queues the entries of a transaction once it has committed
+     */
+    private class AfterCommitListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void afterCommit()
+        {
+            List<Entry> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+            if (pendingEntries.isEmpty())
+            {
+                return;
+            }
+            try
+            {
+                spool.append(new ArrayList<Entry>(pendingEntries));
+            }
+            catch (Throwable e)
+            {
+                // The transaction has committed; don't fail the caller
+                logger.error("Unable to queue " + pendingEntries.size() + " audit entries", e);
+            }
+            pendingEntries.clear();
+        }
+    }
+
+    private static class Entry implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final HashMap<String, Serializable> values;
+
+        private Entry(Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values == null ? null : new HashMap<String, Serializable>(values);
+        }
+    }
+
+    /**
+     * Spools entries using Java serialization
+     */
+    private static class EntryCodec implements WriteBehindSpool.Codec<Entry>
+    {
+        @Override
+        public byte[] encode(Entry entry) throws IOException
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+            {
+                out.writeObject(entry);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Entry decode(byte[] data) throws IOException
+        {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)))
+            {
+                return (Entry) in.readObject();
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException("Unable to read a spooled audit entry", e);
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -39,13 +40,21 @@ import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.node.integrity.IntegrityException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -64,12 +73,23 @@ import org.springframework.context.ApplicationEventPublisher;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p/>
+ * Optionally, work can be {@link #setPrefetchSize(int) prefetched} on a separate thread, the batch size can be
+ * {@link #setAdaptiveBatchSize(int, int, long) adapted} to the observed transaction durations and retries, batches
+ * that fail can be {@link #setSplitFailedBatches(boolean) split} to isolate the failing entries, and throughput and
+ * retry metrics can be {@link #setMbeanExporter(DynamicMBeanExportOperations) published} as a {@link BatchProcessorMBean}.
  * 
  * @author dward
  */
 @AlfrescoPublicApi
-public class BatchProcessor<T> implements BatchMonitor
+public class BatchProcessor<T> implements BatchMonitor, BatchProcessorMBean
 {
+    /** The number of buckets in the retry histogram. */
+    private static final int RETRY_HISTOGRAM_SIZE = 6;
+
+    /** The upper bounds of the batch duration histogram buckets. */
+    private static final long[] BATCH_DURATION_BOUNDS_MS = {10L, 100L, 1000L, 10000L, 60000L};
+
     /** The factory for all new threads */
     private TraceableThreadFactory threadFactory;
     
@@ -121,6 +141,46 @@ public class BatchProcessor<T> implements BatchMonitor
     /** The end time. */
     private Date endTime;
 
+    /** The number of entries to fetch ahead on a separate thread, or 0 to fetch work on the calling thread. */
+    private int prefetchSize;
+
+    /** The smallest batch size that adaptive sizing may choose. */
+    private int minBatchSize;
+
+    /** The largest batch size that adaptive sizing may choose. */
+    private int maxBatchSize;
+
+    /** The transaction duration that adaptive sizing aims for, or 0 to always use {@link #batchSize}. */
+    private long targetBatchMillis;
+
+    /** The number of entries to put into the next batch. */
+    private volatile int currentBatchSize;
+
+    /** Are failing batches split in half and reprocessed? */
+    private boolean splitFailedBatches;
+    private int maxSplitDepth = 4;
+
+    /** Publishes the {@link BatchProcessorMBean} while processing (may be <tt>null</tt>). */
+    private DynamicMBeanExportOperations mbeanExporter;
+
+    /** The prefetching iterator while processing, if prefetching. */
+    private volatile PrefetchingIterator<T> prefetcher;
+
+    /** The number of batches whose transactions have completed. */
+    private long completedBatches;
+
+    /** The total number of transaction retries. */
+    private long totalRetries;
+
+    /** The number of failed batches that were split. */
+    private long splitBatches;
+
+    /** The number of batches by number of retries. */
+    private final long[] retryHistogram = new long[RETRY_HISTOGRAM_SIZE];
+
+    /** The number of batches by transaction duration. */
+    private final long[] batchDurationHistogram = new long[BATCH_DURATION_BOUNDS_MS.length + 1];
+
     /**
      * Instantiates a new batch processor.
      * 
@@ -220,6 +280,7 @@ public class BatchProcessor<T> implements BatchMonitor
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.currentBatchSize = batchSize;
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -237,6 +298,77 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Fetch work on a separate thread, keeping up to the given number of entries queued so that workers are not
+     * left idle while the {@link BatchProcessWorkProvider} pages through its source. The work provider is then
+     * called on a different thread to {@link #process(BatchProcessWorker, boolean) process}, running as the same
+     * user, so it must not rely on the caller's transaction.
+     * 
+     * @param prefetchSize
+     *            the number of entries to queue, or 0 (the default) to fetch work on the calling thread
+     */
+    public void setPrefetchSize(int prefetchSize)
+    {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Adapt the batch size to the observed transaction durations. A batch that needed retrying or took longer than
+     * the target halves the batch size, while a full batch that took less than half the target grows it by a quarter.
+     * 
+     * @param minBatchSize
+     *            the smallest batch size to use
+     * @param maxBatchSize
+     *            the largest batch size to use
+     * @param targetBatchMillis
+     *            the transaction duration to aim for, or 0 to disable adaptive sizing
+     */
+    public void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetBatchMillis)
+    {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+        {
+            throw new IllegalArgumentException("Invalid batch size bounds: " + minBatchSize + " to " + maxBatchSize);
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetBatchMillis = targetBatchMillis;
+        this.currentBatchSize = targetBatchMillis > 0 ? Math.max(minBatchSize, Math.min(maxBatchSize, this.batchSize)) : this.batchSize;
+    }
+
+    /**
+     * Reprocess a batch whose transaction fails as two halves, recursively, so that only the failing entries are
+     * reported as errors. Only applies when transactions are split.
+     * 
+     * @param splitFailedBatches
+     *            <code>true</code> to split failing batches
+     */
+    public void setSplitFailedBatches(boolean splitFailedBatches)
+    {
+        this.splitFailedBatches = splitFailedBatches;
+    }
+
+    /**
+     * Limit how many times a failing batch is halved, so that a batch in which every entry fails costs at most
+     * <code>2^(maxSplitDepth+1) - 1</code> transactions. Halves that still fail at this depth are reported as a
+     * single error. The default is 4.
+     * 
+     * @param maxSplitDepth
+     *            the number of times a failing batch may be halved
+     */
+    public void setMaxSplitDepth(int maxSplitDepth)
+    {
+        this.maxSplitDepth = maxSplitDepth;
+    }
+
+    /**
+     * @param mbeanExporter
+     *            used to publish the {@link BatchProcessorMBean} for the duration of each process (may be <tt>null</tt>)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -312,6 +444,85 @@ public class BatchProcessor<T> implements BatchMonitor
         return this.workProvider.getTotalEstimatedWorkSize();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized double getEntriesPerSecond()
+    {
+        if (this.startTime == null)
+        {
+            return 0.0;
+        }
+        long end = this.endTime == null ? System.currentTimeMillis() : this.endTime.getTime();
+        long duration = end - this.startTime.getTime();
+        return duration <= 0 ? 0.0 : (this.successfullyProcessedEntries + this.totalErrors) * 1000.0 / duration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getCurrentBatchSize()
+    {
+        return this.currentBatchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getCompletedBatches()
+    {
+        return this.completedBatches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getTotalRetries()
+    {
+        return this.totalRetries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getSplitBatches()
+    {
+        return this.splitBatches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long[] getRetryHistogram()
+    {
+        return this.retryHistogram.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long[] getBatchDurationHistogram()
+    {
+        return this.batchDurationHistogram.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[] getBatchDurationBoundsMs()
+    {
+        return BATCH_DURATION_BOUNDS_MS.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getPrefetchedEntries()
+    {
+        PrefetchingIterator<T> prefetcher = this.prefetcher;
+        return prefetcher == null ? 0 : prefetcher.queue.size();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -386,21 +597,32 @@ public class BatchProcessor<T> implements BatchMonitor
 
                 },
                 threadFactory) : null;
+        ObjectName mbeanName = null;
         try
         {
-            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+            mbeanName = registerMBean();
+            Iterator<T> iterator;
+            if (this.prefetchSize > 0)
+            {
+                this.prefetcher = new PrefetchingIterator<T>(this.workProvider, this.prefetchSize, this.threadFactory);
+                iterator = this.prefetcher;
+            }
+            else
+            {
+                iterator = new WorkProviderIterator<T>(this.workProvider);
+            }
             int id=0;
-            List<T> batch = new ArrayList<T>(this.batchSize);
+            List<T> batch = new ArrayList<T>(this.currentBatchSize);
             while (iterator.hasNext())
             {
                 batch.add(iterator.next());
                 boolean hasNext = iterator.hasNext();
-                if (batch.size() >= this.batchSize || !hasNext)
+                if (batch.size() >= this.currentBatchSize || !hasNext)
                 {
                     final TxnCallback callback = new TxnCallback(id++, worker, batch, splitTxns);
                     if (hasNext)
                     {
-                        batch = new ArrayList<T>(this.batchSize);
+                        batch = new ArrayList<T>(this.currentBatchSize);
                     }
                     
                     if (executorService == null)
@@ -417,6 +639,11 @@ public class BatchProcessor<T> implements BatchMonitor
         }
         finally
         {
+            if (this.prefetcher != null)
+            {
+                this.prefetcher.close();
+                this.prefetcher = null;
+            }
             if (executorService != null)
             {
                 executorService.shutdown();
@@ -450,10 +677,94 @@ public class BatchProcessor<T> implements BatchMonitor
                             + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
                             this.lastError);
                 }
+                if (this.logger.isDebugEnabled())
+                {
+                    this.logger.debug(getProcessName() + ": " + this.completedBatches + " batches, "
+                            + this.totalRetries + " retries, " + this.splitBatches + " split. Retry histogram: "
+                            + Arrays.toString(this.retryHistogram) + ", duration histogram: "
+                            + Arrays.toString(this.batchDurationHistogram) + " (bounds "
+                            + Arrays.toString(BATCH_DURATION_BOUNDS_MS) + "ms)");
+                }
+            }
+            if (mbeanName != null)
+            {
+                this.mbeanExporter.unregisterMBean(mbeanName);
             }
         }
     }
 
+    /**
+     * Publishes this processor as a {@link BatchProcessorMBean}, if an exporter is available.
+     * 
+     * @return the name the processor was published under or <tt>null</tt>
+     */
+    private ObjectName registerMBean()
+    {
+        if (this.mbeanExporter == null)
+        {
+            return null;
+        }
+        try
+        {
+            ObjectName name = new ObjectName("Alfresco:Name=BatchProcessor,Process=" + ObjectName.quote(this.processName));
+            this.mbeanExporter.registerMBean(this, name);
+            return name;
+        }
+        catch (MalformedObjectNameException e)
+        {
+            this.logger.warn(getProcessName() + ": Unable to publish batch metrics", e);
+            return null;
+        }
+        catch (RuntimeException e)
+        {
+            // Most likely another run of a process with the same name is already published
+            this.logger.warn(getProcessName() + ": Unable to publish batch metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the outcome of a batch transaction and, if enabled, adapts the batch size.
+     * 
+     * @param entries
+     *            the number of entries in the batch
+     * @param durationMs
+     *            the time taken by the transaction, including retries
+     * @param retries
+     *            the number of times the transaction was retried
+     */
+    private synchronized void recordBatch(int entries, long durationMs, int retries)
+    {
+        this.completedBatches++;
+        this.totalRetries += retries;
+        this.retryHistogram[Math.min(retries, RETRY_HISTOGRAM_SIZE - 1)]++;
+        int bucket = 0;
+        while (bucket < BATCH_DURATION_BOUNDS_MS.length && durationMs >= BATCH_DURATION_BOUNDS_MS[bucket])
+        {
+            bucket++;
+        }
+        this.batchDurationHistogram[bucket]++;
+
+        if (this.targetBatchMillis > 0)
+        {
+            int size = this.currentBatchSize;
+            if (retries > 0 || durationMs > this.targetBatchMillis)
+            {
+                size = Math.max(this.minBatchSize, size / 2);
+            }
+            else if (durationMs < this.targetBatchMillis / 2 && entries >= size)
+            {
+                size = Math.min(this.maxBatchSize, size + Math.max(1, size / 4));
+            }
+            if (size != this.currentBatchSize && this.logger.isDebugEnabled())
+            {
+                this.logger.debug(getProcessName() + ": Batch of " + entries + " took " + durationMs + "ms with "
+                        + retries + " retries. Batch size now " + size);
+            }
+            this.currentBatchSize = size;
+        }
+    }
+
     /**
      * Reports the current progress.
      * 
@@ -626,6 +937,150 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Iterator fed by a thread that pulls entries from a {@link BatchProcessWorkProvider} into a bounded queue,
+     * so that the next entries are ready as soon as a batch has been handed to the workers. Errors from the work
+     * provider are rethrown to the consuming thread once the entries fetched before them have been consumed.
+     */
+    private static class PrefetchingIterator<T> implements Iterator<T>, Runnable
+    {
+        /** Marks the end of the work. */
+        private static final Object END = new Object();
+
+        /** Stands in for <tt>null</tt> entries, which the queue cannot hold. */
+        private static final Object NULL = new Object();
+
+        private final BlockingQueue<Object> queue;
+        private final WorkProviderIterator<T> source;
+        private final String runAsUser;
+        private final Thread thread;
+        private volatile boolean closed;
+        private volatile Throwable error;
+        private Object next;
+
+        private PrefetchingIterator(BatchProcessWorkProvider<T> workProvider, int prefetchSize, ThreadFactory threadFactory)
+        {
+            this.queue = new ArrayBlockingQueue<Object>(prefetchSize);
+            this.source = new WorkProviderIterator<T>(workProvider);
+            this.runAsUser = AuthenticationUtil.getRunAsUser();
+            this.thread = threadFactory.newThread(this);
+            this.thread.start();
+        }
+
+        public void run()
+        {
+            try
+            {
+                if (runAsUser == null)
+                {
+                    fetch();
+                }
+                else
+                {
+                    AuthenticationUtil.runAs(new RunAsWork<Void>()
+                    {
+                        public Void doWork() throws Exception
+                        {
+                            fetch();
+                            return null;
+                        }
+                    }, runAsUser);
+                }
+            }
+            catch (Throwable e)
+            {
+                if (!closed)
+                {
+                    error = e;
+                }
+            }
+            finally
+            {
+                if (!closed)
+                {
+                    try
+                    {
+                        queue.put(END);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Closed while waiting for space
+                    }
+                }
+            }
+        }
+
+        private void fetch() throws InterruptedException
+        {
+            while (!closed && source.hasNext())
+            {
+                T entry = source.next();
+                queue.put(entry == null ? NULL : entry);
+            }
+        }
+
+        public boolean hasNext()
+        {
+            if (next == null)
+            {
+                try
+                {
+                    next = queue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new AlfrescoRuntimeException("Interrupted while waiting for work", e);
+                }
+            }
+            if (next == END)
+            {
+                Throwable t = error;
+                error = null;
+                if (t instanceof RuntimeException)
+                {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error)
+                {
+                    throw (Error) t;
+                }
+                if (t != null)
+                {
+                    throw new AlfrescoRuntimeException("Failed to fetch work", t);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Object entry = next;
+            next = null;
+            return entry == NULL ? null : (T) entry;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops the fetching thread, discarding any entries not yet consumed.
+         */
+        private void close()
+        {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
     /**
      * A callback that invokes a worker on a batch, optionally in a new transaction.
      */
@@ -643,14 +1098,23 @@ public class BatchProcessor<T> implements BatchMonitor
          *            If <code>true</code>, the worker invocation is made in a new transaction.
          */
         public TxnCallback(int id, BatchProcessWorker<T> worker, List<T> batch, boolean splitTxns)
+        {
+            this(id, worker, batch, splitTxns, 0);
+        }
+
+        private TxnCallback(int id, BatchProcessWorker<T> worker, List<T> batch, boolean splitTxns, int splitDepth)
         {
             this.id = id;
             this.worker = worker;
             this.batch = batch;
             this.splitTxns = splitTxns;
+            this.splitDepth = splitDepth;
         }
 
         private final int id;
+
+        /** The number of times the original batch was halved to give this one. */
+        private final int splitDepth;
         
         /** The worker. */
         private final BatchProcessWorker<T> worker;
@@ -675,9 +1139,13 @@ public class BatchProcessor<T> implements BatchMonitor
 
         /** The last error entry id. */
         private String txnLastErrorEntryId;
+
+        /** The number of times the transaction has been started. */
+        private int attempts;
         
         public Object execute() throws Throwable
         {
+            this.attempts++;
             reset();
             if (this.batch.isEmpty())
             {
@@ -762,6 +1230,7 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 Throwable tt = null;
                 worker.beforeProcess();
+                long start = System.currentTimeMillis();
                 try
                 {
                     BatchProcessor.this.retryingTransactionHelper.doInTransaction(callback, false, splitTxns);
@@ -771,6 +1240,7 @@ public class BatchProcessor<T> implements BatchMonitor
                     // Keep this and rethrow
                     tt = t;
                 }
+                recordBatch(this.batch.size(), System.currentTimeMillis() - start, Math.max(0, this.attempts - 1));
                 worker.afterProcess();
                 // Throw if there was a processing exception
                 if (tt != null)
@@ -781,7 +1251,12 @@ public class BatchProcessor<T> implements BatchMonitor
             catch (Throwable t)
             {
                 // If the callback was in its own transaction, it must have run out of retries
-                if (this.splitTxns)
+                if (this.splitTxns && BatchProcessor.this.splitFailedBatches && this.batch.size() > 1
+                        && this.splitDepth < BatchProcessor.this.maxSplitDepth)
+                {
+                    splitAndRun(t);
+                }
+                else if (this.splitTxns)
                 {
                     this.txnLastError = t;
                     this.txnLastErrorEntryId = (t instanceof IntegrityException) ? "unknown" : this.txnEntryId;
@@ -811,6 +1286,31 @@ public class BatchProcessor<T> implements BatchMonitor
             commitProgress();
         }
 
+        /**
+         * Reprocesses the two halves of a failed batch in turn, each in its own transaction. The halves are run with
+         * the same id, so still wait for any earlier failing batches.
+         * 
+         * @param t
+         *            the cause of the failure
+         */
+        private void splitAndRun(Throwable t)
+        {
+            if (BatchProcessor.this.logger.isDebugEnabled())
+            {
+                BatchProcessor.this.logger.debug(getProcessName() + ": Batch of " + this.batch.size()
+                        + " entries failed. Reprocessing in halves.", t);
+            }
+            // Nothing from the failed transaction was committed
+            reset();
+            synchronized (BatchProcessor.this)
+            {
+                BatchProcessor.this.splitBatches++;
+            }
+            int half = this.batch.size() / 2;
+            new TxnCallback(this.id, this.worker, new ArrayList<T>(this.batch.subList(0, half)), true, this.splitDepth + 1).run();
+            new TxnCallback(this.id, this.worker, new ArrayList<T>(this.batch.subList(half, this.batch.size())), true, this.splitDepth + 1).run();
+        }
+
         /**
          * Resets the callback state for a retry.
          */
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+/**
+ * Management interface for a running {@link BatchProcessor}, adding throughput, retry and batch
+ * sizing metrics to those of the {@link BatchMonitor}.
+ */
+public interface BatchProcessorMBean extends BatchMonitor
+{
+    /**
+     * @return              the number of entries processed per second since the process started
+     */
+    public double getEntriesPerSecond();
+
+    /**
+     * @return              the number of entries that will go into the next batch
+     */
+    public int getCurrentBatchSize();
+
+    /**
+     * @return              the number of batches whose transactions have completed
+     */
+    public long getCompletedBatches();
+
+    /**
+     * @return              the total number of transaction retries across all batches
+     */
+    public long getTotalRetries();
+
+    /**
+     * @return              the number of failed batches that were split in half and reprocessed
+     */
+    public long getSplitBatches();
+
+    /**
+     * Element <tt>n</tt> holds the number of batches that completed after <tt>n</tt> retries.
+     * The last element also counts batches needing more retries.
+     * 
+     * @return              the retry histogram
+     */
+    public long[] getRetryHistogram();
+
+    /**
+     * Element <tt>n</tt> holds the number of batches whose transaction took less than the
+     * <tt>n</tt>th bound of {@link #getBatchDurationBoundsMs()}. The last element counts
+     * batches exceeding every bound.
+     * 
+     * @return              the batch duration histogram
+     */
+    public long[] getBatchDurationHistogram();
+
+    /**
+     * @return              the upper bounds (ms) of the batch duration histogram buckets
+     */
+    public long[] getBatchDurationBoundsMs();
+
+    /**
+     * @return              the number of prefetched entries waiting to be put into batches
+     */
+    public int getPrefetchedEntries();
+}
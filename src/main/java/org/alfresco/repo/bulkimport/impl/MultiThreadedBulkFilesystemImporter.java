@@ -33,6 +33,7 @@ import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.FilesystemTracker;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.node.integrity.IntegrityException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.tenant.TenantUtil;
@@ -54,6 +55,10 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
     protected int defaultBatchSize;
     protected int defaultNumThreads;
     protected int defaultLoggingInterval = 100;
+    protected int prefetchSize = 0;
+    protected long adaptiveBatchTargetMillis = 0;
+    protected int maxAdaptiveBatchSize = 200;
+    protected DynamicMBeanExportOperations mbeanExporter;
 
     protected int getLoggingInterval(BulkImportParameters bulkImportParameters)
     {
@@ -159,6 +164,13 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
                 numThreads, batchSize,
                 applicationContext,
                 logger, loggingInterval);
+        // The striping work provider only reads the filesystem, so it can run ahead of the workers
+        batchProcessor.setPrefetchSize(prefetchSize);
+        if (adaptiveBatchTargetMillis > 0)
+        {
+            batchProcessor.setAdaptiveBatchSize(1, Math.max(maxAdaptiveBatchSize, batchSize), adaptiveBatchTargetMillis);
+        }
+        batchProcessor.setMbeanExporter(mbeanExporter);
 		
 		return batchProcessor;
     }
@@ -173,6 +185,40 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 		this.defaultBatchSize = defaultBatchSize;
 	}
 
+    /**
+     * @param prefetchSize      the number of importable items to read ahead of the worker threads, or 0 to read
+     *                          them between batches
+     */
+    public void setPrefetchSize(int prefetchSize)
+    {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @param adaptiveBatchTargetMillis the transaction duration to adapt the batch size to, or 0 to always use the
+     *                          requested batch size
+     */
+    public void setAdaptiveBatchTargetMillis(long adaptiveBatchTargetMillis)
+    {
+        this.adaptiveBatchTargetMillis = adaptiveBatchTargetMillis;
+    }
+
+    /**
+     * @param maxAdaptiveBatchSize the largest batch size that adaptive sizing may choose
+     */
+    public void setMaxAdaptiveBatchSize(int maxAdaptiveBatchSize)
+    {
+        this.maxAdaptiveBatchSize = maxAdaptiveBatchSize;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the metrics of each import over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
 	public int getDefaultNumThreads()
 	{
 		return defaultNumThreads;
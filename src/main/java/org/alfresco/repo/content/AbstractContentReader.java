@@ -37,6 +37,7 @@ import java.io.Reader;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
@@ -56,6 +57,8 @@ import org.alfresco.service.cmr.repository.TransformationOptionPair;
 import org.alfresco.service.cmr.repository.TransformationOptionPair.Action;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.aop.framework.ProxyFactory;
@@ -73,7 +76,7 @@ import org.springframework.util.FileCopyUtils;
  * @author Derek Hulley
  */
 @AlfrescoPublicApi
-public abstract class AbstractContentReader extends AbstractContentAccessor implements ContentReader
+public abstract class AbstractContentReader extends AbstractContentAccessor implements RangedContentReader
 {
     private static final Log logger = LogFactory.getLog(AbstractContentReader.class);
     private static final Timer timer = new Timer(true); 
@@ -435,6 +438,43 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
         }
     }
 
+    /**
+     * Positions the channel at the offset if it is a {@link SeekableByteChannel}, such as the
+     * channel of a random-access {@link org.alfresco.repo.content.filestore.FileContentReader},
+     * and otherwise reads up to the offset.
+     * 
+     * @see RangedContentReader#getContentInputStream(long, long)
+     */
+    public InputStream getContentInputStream(long offset, long length) throws ContentIOException
+    {
+        try
+        {
+            ReadableByteChannel channel = getReadableChannel();
+            InputStream is;
+            if (channel instanceof SeekableByteChannel)
+            {
+                ((SeekableByteChannel) channel).position(offset);
+                is = Channels.newInputStream(channel);
+            }
+            else
+            {
+                is = Channels.newInputStream(channel);
+                IOUtils.skipFully(is, offset);
+            }
+            BoundedInputStream bounded = new BoundedInputStream(is, length);
+            bounded.setPropagateClose(true);
+            return new BufferedInputStream(bounded);
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to open stream onto range of channel: \n" +
+                    "   accessor: " + this + "\n" +
+                    "   offset: " + offset + "\n" +
+                    "   length: " + length,
+                    e);
+        }
+    }
+
     /**
      * Copies the {@link #getContentInputStream() input stream} to the given
      * <code>OutputStream</code>
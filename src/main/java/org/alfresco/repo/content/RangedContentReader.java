@@ -0,0 +1,50 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.io.InputStream;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * A {@link ContentReader} that can provide a stream onto part of its content.  Implementations
+ * go straight to the start of the range where the underlying storage allows it, rather than
+ * reading and discarding the content before it.
+ */
+public interface RangedContentReader extends ContentReader
+{
+    /**
+     * Get a stream onto a range of the content.  As with the other content access methods,
+     * the reader may only be used once.
+     * 
+     * @param offset            the position of the first byte to read
+     * @param length            the maximum number of bytes to read
+     * @return                  a stream that ends after <b>length</b> bytes or at the end of the content
+     * @throws ContentIOException if the content could not be opened
+     */
+    public InputStream getContentInputStream(long offset, long length) throws ContentIOException;
+}
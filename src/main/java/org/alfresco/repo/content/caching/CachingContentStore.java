@@ -70,6 +70,7 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     private final static ReentrantReadWriteLock[] locks; 
     private ContentStore backingStore;
     private ContentCache cache;
+    private ContentCacheIndex cacheIndex;
     private QuotaManagerStrategy quota = new UnlimitedQuotaStrategy();
     private boolean cacheOnInbound;
     private int maxCacheTries = 2;
@@ -176,7 +177,12 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         {
             if (cache.contains(contentUrl))
             {
-                return cache.getReader(contentUrl);
+                ContentReader reader = cache.getReader(contentUrl);
+                if (cacheIndex != null)
+                {
+                    cacheIndex.recordHit(reader.getSize());
+                }
+                return reader;
             }
         }
         catch(CacheMissException e)
@@ -188,6 +194,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             readLock.unlock();
         }
         
+        if (cacheIndex != null)
+        {
+            cacheIndex.recordMiss();
+        }
         return cacheAndRead(contentUrl);
     }    
     
@@ -425,6 +435,16 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return this.cache;
     }
 
+    /**
+     * Sets the index that records cache hits, misses and the bytes served from the cache.
+     * 
+     * @param cacheIndex ContentCacheIndex, may be null
+     */
+    public void setCacheIndex(ContentCacheIndex cacheIndex)
+    {
+        this.cacheIndex = cacheIndex;
+    }
+
     public void setCacheOnInbound(boolean cacheOnInbound)
     {
         this.cacheOnInbound = cacheOnInbound;
@@ -48,7 +48,8 @@ import org.apache.commons.logging.LogFactory;
  * The one and only implementation of the ContentCache class. Binary content data itself
  * is stored on disk in the location specified by {@link #cacheRoot}.
  * <p>
- * The in-memory lookup table is provided by a SimpleCache implementation.
+ * The in-memory lookup table is provided by a SimpleCache implementation. An optional
+ * {@link ContentCacheIndex} tracks the size and last access time of every cache file.
  * 
  * @author Matt Ward
  */
@@ -59,6 +60,7 @@ public class ContentCacheImpl implements ContentCache
     private static final String CACHE_FILE_TEMP_EXT = ".tmp";
     private File cacheRoot;
     private SimpleCache<Key, String> memoryStore;
+    private ContentCacheIndex index;
     
     
     @Override
@@ -128,6 +130,10 @@ public class ContentCacheImpl implements ContentCache
             File cacheFile = new File(path);
             if (cacheFile.exists())
             {
+                if (index != null)
+                {
+                    index.touch(path);
+                }
                 return new FileContentReader(cacheFile, contentUrl);
             }
         }
@@ -157,6 +163,10 @@ public class ContentCacheImpl implements ContentCache
     {
         memoryStore.put(Key.forUrl(contentUrl), cacheFile.getAbsolutePath());
         memoryStore.put(Key.forCacheFile(cacheFile), contentUrl);
+        if (index != null)
+        {
+            index.put(cacheFile, contentUrl, System.currentTimeMillis());
+        }
     }
     
     /**
@@ -192,8 +202,13 @@ public class ContentCacheImpl implements ContentCache
     @Override
     public void deleteFile(String url)
     {
-        File cacheFile = new File(getCacheFilePath(url));
+        String path = getCacheFilePath(url);
+        File cacheFile = new File(path);
         cacheFile.delete();
+        if (index != null)
+        {
+            index.remove(cacheFile.getAbsolutePath());
+        }
     }
 
     @Override
@@ -307,6 +322,25 @@ public class ContentCacheImpl implements ContentCache
         this.memoryStore = memoryStore;
     }
     
+    /**
+     * Configure ContentCache with an index of the cache files, allowing eviction
+     * candidates to be found without scanning the cache directory.
+     * 
+     * @param index the index to maintain, may be null
+     */
+    public void setIndex(ContentCacheIndex index)
+    {
+        this.index = index;
+    }
+    
+    /**
+     * @return the index of cache files, or null if none has been configured
+     */
+    public ContentCacheIndex getIndex()
+    {
+        return this.index;
+    }
+    
     /**
      * Specify the directory where cache files will be written.
      * 
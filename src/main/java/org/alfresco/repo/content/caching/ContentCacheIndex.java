@@ -0,0 +1,572 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * On-heap index of the files held by a {@link ContentCacheImpl}, recording the size and last access
+ * time of each cache file in least-recently-used order.
+ * <p>
+ * The index allows the {@link org.alfresco.repo.content.caching.cleanup.CachedContentCleaner} to find
+ * eviction candidates without walking the cache directory tree: freeing a number of bytes is a
+ * matter of taking the {@link #coldest(long) coldest} entries, and entries old enough to be cleaned
+ * up are found in {@link #createdBefore(long, Entry, int) creation order} a bounded number at a time.
+ * <p>
+ * Reads only {@link #touch(String) touch} an entry, which takes no lock; adding and removing
+ * entries is synchronized. Entries are kept in access order, so the cleaner walks from the
+ * least recently used end and stops once it has found enough bytes.
+ * <p>
+ * The index only becomes {@link #isComplete() complete} once it is known to cover every file on disk,
+ * either after a full scan by the cleaner or after loading a snapshot written at shutdown. The
+ * snapshot is removed once loaded so that an unclean shutdown results in a full scan rather than
+ * an index that is missing files.
+ */
+public class ContentCacheIndex implements ContentCacheIndexMBean
+{
+    private static final Log log = LogFactory.getLog(ContentCacheIndex.class);
+    private static final String MBEAN_NAME = "Alfresco:Name=ContentCacheIndex";
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_TEMP_EXT = ".tmp";
+
+    private static final Comparator<Entry> CREATED_ORDER = new Comparator<Entry>()
+    {
+        @Override
+        public int compare(Entry e1, Entry e2)
+        {
+            int result = Long.compare(e1.created, e2.created);
+            return result != 0 ? result : e1.path.compareTo(e2.path);
+        }
+    };
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>(1024);
+    // The same entries ordered by creation time, for the cleaner to walk a part at a time
+    private final ConcurrentSkipListSet<Entry> entriesByCreated = new ConcurrentSkipListSet<Entry>(CREATED_ORDER);
+    // The same entries keyed by access order number; a higher number is more recently used.
+    // Racing touches may leave keys behind for an entry's earlier numbers, or for an entry that has
+    // since been removed, so a key only counts while it is the current number of an indexed entry.
+    private final ConcurrentSkipListMap<Long, Entry> entriesByAccess = new ConcurrentSkipListMap<Long, Entry>();
+    // Source of access order numbers
+    private final AtomicLong accessClock = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private volatile boolean complete;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private File snapshotFile;
+    private DynamicMBeanExportOperations mbeanExporter;
+
+    /**
+     * @param snapshotFile          optional file used to persist the index between restarts
+     */
+    public void setSnapshotFile(File snapshotFile)
+    {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param mbeanExporter         optional exporter used to publish the {@link ContentCacheIndexMBean}
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * Loads the snapshot, if there is one, and registers the management interface.
+     */
+    public void init()
+    {
+        loadSnapshot();
+
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                mbeanExporter.registerMBean(this, new ObjectName(MBEAN_NAME));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid MBean name: " + MBEAN_NAME, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot so that the next startup does not have to scan the cache.
+     */
+    public void shutdown()
+    {
+        saveSnapshot();
+    }
+
+    /**
+     * Record a cache file, replacing any existing entry for the same file. The new entry becomes
+     * the most recently used.
+     * 
+     * @param cacheFile             the cache file
+     * @param contentUrl            the URL of the cached content, if known
+     * @param created               the time the cache file was written (ms since epoch)
+     */
+    public void put(File cacheFile, String contentUrl, long created)
+    {
+        Entry entry = new Entry(cacheFile.getAbsolutePath(), contentUrl, cacheFile.length(), created);
+        entry.accessOrder = accessClock.incrementAndGet();
+        synchronized (this)
+        {
+            add(entry);
+        }
+    }
+
+    private void add(Entry entry)
+    {
+        Entry previous = entries.put(entry.path, entry);
+        if (previous != null)
+        {
+            entriesByCreated.remove(previous);
+            entriesByAccess.remove(previous.accessOrder, previous);
+            totalBytes.addAndGet(-previous.size);
+        }
+        entriesByCreated.add(entry);
+        entriesByAccess.put(entry.accessOrder, entry);
+        totalBytes.addAndGet(entry.size);
+    }
+
+    /**
+     * Mark a cache file as the most recently used.
+     * 
+     * @param path                  absolute path of the cache file
+     */
+    public void touch(String path)
+    {
+        Entry entry = entries.get(path);
+        if (entry != null)
+        {
+            entry.lastAccess = System.currentTimeMillis();
+            long previousOrder = entry.accessOrder;
+            long accessOrder = accessClock.incrementAndGet();
+            entry.accessOrder = accessOrder;
+            // Add the new key before dropping the old one so that the entry is never missing
+            entriesByAccess.put(accessOrder, entry);
+            entriesByAccess.remove(previousOrder, entry);
+        }
+    }
+
+    /**
+     * @param path                  absolute path of the cache file
+     * @return                      <tt>true</tt> if the file is known to the index
+     */
+    public boolean contains(String path)
+    {
+        return entries.containsKey(path);
+    }
+
+    /**
+     * Forget a cache file, usually because it has been deleted.
+     * 
+     * @param path                  absolute path of the cache file
+     * @return                      the removed entry or <tt>null</tt> if the file was not known
+     */
+    public synchronized Entry remove(String path)
+    {
+        Entry entry = entries.remove(path);
+        if (entry != null)
+        {
+            entriesByCreated.remove(entry);
+            entriesByAccess.remove(entry.accessOrder, entry);
+            totalBytes.addAndGet(-entry.size);
+        }
+        return entry;
+    }
+
+    /**
+     * Record that a cache file was removed in order to free space.
+     */
+    public void recordEviction()
+    {
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Get the least recently used entries whose combined size reaches the given number of bytes.
+     * The entries are not removed; callers remove each one once its file has been deleted.
+     * 
+     * @param targetBytes           the number of bytes to be freed
+     * @return                      entries in least-recently-used order
+     */
+    public List<Entry> coldest(long targetBytes)
+    {
+        List<Entry> coldest = new ArrayList<Entry>();
+        long bytes = 0L;
+        for (Map.Entry<Long, Entry> accessEntry : entriesByAccess.entrySet())
+        {
+            if (bytes >= targetBytes)
+            {
+                break;
+            }
+            Entry entry = accessEntry.getValue();
+            if (isCurrent(accessEntry.getKey(), entry))
+            {
+                coldest.add(entry);
+                bytes += entry.size;
+            }
+        }
+        return coldest;
+    }
+
+    /**
+     * Check that an access order key still belongs to an indexed entry, dropping it if not.
+     */
+    private boolean isCurrent(long accessOrder, Entry entry)
+    {
+        if (entry.accessOrder == accessOrder && entries.get(entry.path) == entry)
+        {
+            return true;
+        }
+        entriesByAccess.remove(accessOrder, entry);
+        return false;
+    }
+
+    /**
+     * Get entries created before the given time in order of creation, continuing after a previous call.
+     * 
+     * @param createdBefore         only entries created before this time (ms since epoch) are returned
+     * @param after                 the last entry returned by the previous call or <tt>null</tt> to start
+     *                              with the oldest entry
+     * @param max                   the maximum number of entries to return
+     * @return                      fewer than <tt>max</tt> entries once there are no more
+     */
+    public List<Entry> createdBefore(long createdBefore, Entry after, int max)
+    {
+        Entry end = new Entry("", null, 0L, createdBefore);
+        List<Entry> found = new ArrayList<Entry>(Math.min(max, 1024));
+        if (after != null && CREATED_ORDER.compare(after, end) >= 0)
+        {
+            return found;
+        }
+        for (Entry entry : after == null ? entriesByCreated.headSet(end) : entriesByCreated.subSet(after, false, end, false))
+        {
+            if (found.size() >= max)
+            {
+                break;
+            }
+            found.add(entry);
+        }
+        return found;
+    }
+
+    /**
+     * @return                      a copy of all entries in least-recently-used order
+     */
+    public List<Entry> getEntries()
+    {
+        List<Entry> copy = new ArrayList<Entry>(entries.size());
+        for (Map.Entry<Long, Entry> accessEntry : entriesByAccess.entrySet())
+        {
+            if (isCurrent(accessEntry.getKey(), accessEntry.getValue()))
+            {
+                copy.add(accessEntry.getValue());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Discard all entries, e.g. before rebuilding the index from a scan of the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        entriesByCreated.clear();
+        entriesByAccess.clear();
+        totalBytes.set(0L);
+        complete = false;
+    }
+
+    /**
+     * Declare that the index covers every cache file on disk.
+     */
+    public void markComplete()
+    {
+        this.complete = true;
+    }
+
+    /**
+     * Record a read served from a cache file.
+     * 
+     * @param bytes                 the size of the cached content
+     */
+    public void recordHit(long bytes)
+    {
+        hits.incrementAndGet();
+        bytesServed.addAndGet(bytes);
+    }
+
+    /**
+     * Record a read that could not be served from the cache.
+     */
+    public void recordMiss()
+    {
+        misses.incrementAndGet();
+    }
+
+    @Override
+    public int getEntryCount()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public long getTotalBytes()
+    {
+        return totalBytes.get();
+    }
+
+    @Override
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0L ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getBytesServed()
+    {
+        return bytesServed.get();
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Write the index to the snapshot file. Nothing is written unless the index is complete.
+     * The file is written alongside and then renamed, so a failed write never leaves a partial snapshot.
+     */
+    public void saveSnapshot()
+    {
+        if (snapshotFile == null)
+        {
+            return;
+        }
+        if (!complete)
+        {
+            return;
+        }
+        List<Entry> snapshot = getEntries();
+
+        File tempFile = new File(snapshotFile.getPath() + SNAPSHOT_TEMP_EXT);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+        {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Entry entry : snapshot)
+            {
+                out.writeUTF(entry.path);
+                out.writeBoolean(entry.contentUrl != null);
+                if (entry.contentUrl != null)
+                {
+                    out.writeUTF(entry.contentUrl);
+                }
+                out.writeLong(entry.size);
+                out.writeLong(entry.created);
+                out.writeLong(entry.lastAccess);
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write content cache index snapshot: " + tempFile, e);
+            tempFile.delete();
+            return;
+        }
+
+        snapshotFile.delete();
+        if (!tempFile.renameTo(snapshotFile))
+        {
+            log.warn("Failed to rename content cache index snapshot: " + tempFile);
+            tempFile.delete();
+        }
+        else if (log.isDebugEnabled())
+        {
+            log.debug("Wrote content cache index snapshot with " + snapshot.size() + " entries: " + snapshotFile);
+        }
+    }
+
+    /**
+     * Replace the contents of the index with the snapshot file, if there is one. The snapshot is
+     * deleted once read. An unreadable snapshot leaves the index empty and incomplete.
+     */
+    public void loadSnapshot()
+    {
+        if (snapshotFile == null || !snapshotFile.exists())
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            clear();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile))))
+            {
+                int version = in.readInt();
+                if (version != SNAPSHOT_VERSION)
+                {
+                    log.warn("Ignoring content cache index snapshot with unknown version " + version + ": " + snapshotFile);
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++)
+                {
+                    String path = in.readUTF();
+                    String contentUrl = in.readBoolean() ? in.readUTF() : null;
+                    Entry entry = new Entry(path, contentUrl, in.readLong(), in.readLong());
+                    entry.lastAccess = in.readLong();
+                    // The snapshot is in least-recently-used order
+                    entry.accessOrder = accessClock.incrementAndGet();
+                    add(entry);
+                }
+                complete = true;
+                if (log.isInfoEnabled())
+                {
+                    log.info("Loaded content cache index snapshot with " + count + " entries (" + totalBytes.get() + " bytes)");
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to read content cache index snapshot, the cache will be rescanned: " + snapshotFile, e);
+                clear();
+            }
+            finally
+            {
+                snapshotFile.delete();
+            }
+        }
+    }
+
+    /**
+     * A cache file known to the index.
+     */
+    public static final class Entry
+    {
+        private final String path;
+        private final String contentUrl;
+        private final long size;
+        private final long created;
+        private volatile long lastAccess;
+        private volatile long accessOrder;
+
+        private Entry(String path, String contentUrl, long size, long created)
+        {
+            this.path = path;
+            this.contentUrl = contentUrl;
+            this.size = size;
+            this.created = created;
+            this.lastAccess = created;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        public File getFile()
+        {
+            return new File(path);
+        }
+
+        public String getContentUrl()
+        {
+            return contentUrl;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getCreated()
+        {
+            return created;
+        }
+
+        public long getLastAccess()
+        {
+            return lastAccess;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Entry[path=" + path + ", contentUrl=" + contentUrl + ", size=" + size + "]";
+        }
+    }
+}
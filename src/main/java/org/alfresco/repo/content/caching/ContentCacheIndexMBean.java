@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+/**
+ * Management interface exposing the size and effectiveness of the content cache,
+ * as tracked by the {@link ContentCacheIndex}.
+ */
+public interface ContentCacheIndexMBean
+{
+    /**
+     * @return              the number of cache files known to the index
+     */
+    public int getEntryCount();
+
+    /**
+     * @return              the total size of the cache files known to the index
+     */
+    public long getTotalBytes();
+
+    /**
+     * @return              <tt>true</tt> if the index covers every cache file on disk
+     */
+    public boolean isComplete();
+
+    /**
+     * @return              the number of reads served from cache files
+     */
+    public long getHits();
+
+    /**
+     * @return              the number of reads that had to go to the backing store
+     */
+    public long getMisses();
+
+    /**
+     * @return              hits as a fraction of all reads, or <tt>0</tt> if there have been none
+     */
+    public double getHitRatio();
+
+    /**
+     * @return              the total size of the content served from cache files
+     */
+    public long getBytesServed();
+
+    /**
+     * @return              the number of cache files removed through the index
+     */
+    public long getEvictions();
+}
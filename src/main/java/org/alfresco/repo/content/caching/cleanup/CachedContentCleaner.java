@@ -27,9 +27,11 @@ package org.alfresco.repo.content.caching.cleanup;
 
 import java.io.File;
 import java.util.Date;
+import java.util.List;
 
 import org.alfresco.repo.content.caching.CacheFileProps;
 import org.alfresco.repo.content.caching.ContentCacheImpl;
+import org.alfresco.repo.content.caching.ContentCacheIndex;
 import org.alfresco.repo.content.caching.FileHandler;
 import org.alfresco.repo.content.caching.quota.UsageTracker;
 import org.alfresco.util.Deleter;
@@ -43,6 +45,12 @@ import org.springframework.context.ApplicationEventPublisherAware;
 /**
  * Cleans up redundant cache files from the cached content file store. Once references to cache files are
  * no longer in the in-memory cache, the binary content files can be removed.
+ * <p>
+ * If the cache maintains a {@link ContentCacheIndex} then the first run scans the cache directory
+ * to populate it, and later runs work from the index alone: aggressive cleans delete the least
+ * recently used files until the target reduction is met, without visiting the rest of the cache.
+ * Each run then checks at most {@link #setMaxIndexEntriesPerRun(int) maxIndexEntriesPerRun} entries
+ * for cleanup, carrying on from where the previous run stopped.
  * 
  * @author Matt Ward
  */
@@ -52,6 +60,9 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
     private ContentCacheImpl cache;   // impl specific functionality required
     private long minFileAgeMillis = 0;
     private Integer maxDeleteWatchCount = 1;
+    private int maxIndexEntriesPerRun = 10000;
+    // The last index entry checked, so that the next run carries on after it
+    private ContentCacheIndex.Entry indexCursor;
     private boolean running;
     private UsageTracker usageTracker;
     private long newDiskUsage;
@@ -123,7 +134,24 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         }
         resetStats();
         timeStarted = new Date();
-        cache.processFiles(this);
+        ContentCacheIndex index = cache.getIndex();
+        if (index != null && index.isComplete())
+        {
+            cleanFromIndex(index);
+        }
+        else
+        {
+            if (index != null)
+            {
+                // Rebuild the index from the files found on disk
+                index.clear();
+            }
+            cache.processFiles(this);
+            if (index != null)
+            {
+                index.markComplete();
+            }
+        }
         timeFinished = new Date(); 
         
         if (usageTracker != null)
@@ -177,6 +205,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         }
         numFilesSeen++;
         CacheFileProps props = null;
+        String url = null;
         boolean deleted = false;
         
         if (targetReductionBytes > 0 && sizeFilesDeleted < targetReductionBytes)
@@ -199,7 +228,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
                                 "ms - considering for cleanup: " + cachedContentFile);
                 }
                 props = new CacheFileProps(cachedContentFile);        
-                String url = cache.getContentUrl(cachedContentFile);
+                url = cache.getContentUrl(cachedContentFile);
                 if (url == null)
                 {
                     // Not in the cache, check the properties file 
@@ -232,7 +261,61 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
             }
             long size = cachedContentFile.length() + props.fileSize();
             newDiskUsage += size;
+            
+            ContentCacheIndex index = cache.getIndex();
+            if (index != null)
+            {
+                index.put(cachedContentFile, url, cachedContentFile.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Clean the cache using the entries of a complete {@link ContentCacheIndex} rather than scanning
+     * the cache directory. In aggressive mode the coldest entries are deleted until the target reduction
+     * has been met, then the remaining entries are considered for normal cleanup as in {@link #handle(File)}.
+     * Disk usage is taken from the index, so excludes the small properties files kept beside cache files.
+     */
+    private void cleanFromIndex(ContentCacheIndex index)
+    {
+        if (targetReductionBytes > 0)
+        {
+            for (ContentCacheIndex.Entry entry : index.coldest(targetReductionBytes))
+            {
+                numFilesSeen++;
+                if (deleteFilesNow(entry.getFile()))
+                {
+                    index.recordEviction();
+                }
+            }
+            if (log.isDebugEnabled())
+            {
+                log.debug("Target reduction " + targetReductionBytes + " bytes, deleted from index: " + sizeFilesDeleted);
+            }
+        }
+        
+        long createdBefore = minFileAgeMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - minFileAgeMillis;
+        List<ContentCacheIndex.Entry> entries = index.createdBefore(createdBefore, indexCursor, maxIndexEntriesPerRun);
+        // Start again with the oldest entries once the end is reached
+        indexCursor = entries.size() < maxIndexEntriesPerRun ? null : entries.get(entries.size() - 1);
+        for (ContentCacheIndex.Entry entry : entries)
+        {
+            numFilesSeen++;
+            File cachedContentFile = entry.getFile();
+            String url = entry.getContentUrl();
+            if (url == null)
+            {
+                url = cache.getContentUrl(cachedContentFile);
+            }
+            if (url == null || !cache.contains(url))
+            {
+                CacheFileProps props = new CacheFileProps(cachedContentFile);
+                props.load();
+                markOrDelete(cachedContentFile, props);
+            }
         }
+        
+        newDiskUsage = index.getTotalBytes();
     }
 
     
@@ -245,6 +328,11 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
      * @return true if the file is older than minFileAgeMillis, false otherwise.
      */
     private boolean oldEnoughForCleanup(File file)
+    {
+        return oldEnoughForCleanup(minFileAgeMillis == 0 ? 0L : file.lastModified());
+    }
+
+    private boolean oldEnoughForCleanup(long lastModified)
     {
         if (minFileAgeMillis == 0)
         {
@@ -253,7 +341,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         else
         {
             long now = System.currentTimeMillis();
-            return (file.lastModified() < (now - minFileAgeMillis));
+            return (lastModified < (now - minFileAgeMillis));
         }
     }
 
@@ -323,6 +411,11 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         props.delete();
         long fileSize = cacheFile.length();
         boolean deleted = cacheFile.delete();
+        ContentCacheIndex index = cache.getIndex();
+        if (index != null && (deleted || !cacheFile.exists()))
+        {
+            index.remove(cacheFile.getAbsolutePath());
+        }
         if (deleted)
         {
             if (log.isTraceEnabled())
@@ -380,6 +473,22 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
     }
 
 
+    /**
+     * Sets the maximum number of index entries checked for cleanup by a single run. Runs carry on from
+     * where the previous run stopped, so every entry is checked once in a number of runs.
+     * 
+     * @param maxIndexEntriesPerRun int
+     */
+    public void setMaxIndexEntriesPerRun(int maxIndexEntriesPerRun)
+    {
+        if (maxIndexEntriesPerRun <= 0)
+        {
+            throw new IllegalArgumentException("maxIndexEntriesPerRun must be positive [value=" + maxIndexEntriesPerRun + "]");
+        }
+        this.maxIndexEntriesPerRun = maxIndexEntriesPerRun;
+    }
+
+
     /**
      * @param usageTracker the usageTracker to set
      */
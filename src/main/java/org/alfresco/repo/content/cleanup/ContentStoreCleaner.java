@@ -27,16 +27,29 @@ package org.alfresco.repo.content.cleanup;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
-import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO.OrphanedContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
@@ -44,6 +57,7 @@ import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
@@ -77,10 +91,17 @@ import org.apache.commons.logging.LogFactory;
  * Lazy cleanup protects the content for a given period (e.g. 7 days) giving plenty of
  * time for a backup to be taken; this allows hot backup without needing metadata-content
  * consistency to be enforced.
+ * <p/>
+ * <u><b>Parallel cleanup:</b></u><p/>
+ * Orphaned URLs are walked in ascending ID ranges of {@link #setBatchSize(int) batchSize}, each range
+ * being removed from the database in its own transaction.  An interrupted run therefore resumes from
+ * the first uncommitted range.  When {@link #setWorkerThreads(int) workerThreads} is greater than 1,
+ * the binaries of each range are removed from the stores by a bounded pool of worker threads.
+ * Progress and throughput are exposed via {@link ContentStoreCleanerMBean}.
  * 
  * @author Derek Hulley
  */
-public class ContentStoreCleaner
+public class ContentStoreCleaner implements ContentStoreCleanerMBean
 {
     /*
      * TODO: Use the ScheduledJobLockExecuter, which borrows (and fixes) some of the code use here
@@ -112,6 +133,7 @@ public class ContentStoreCleaner
     
     private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentStoreCleaner"); 
     private static final long LOCK_TTL = 30000L;
+    private static final String MBEAN_NAME = "Alfresco:Name=ContentStoreCleaner";
     
     private static Log logger = LogFactory.getLog(ContentStoreCleaner.class);
     
@@ -124,13 +146,27 @@ public class ContentStoreCleaner
     private DictionaryService dictionaryService;
     private ContentService contentService;
     private TransactionService transactionService;
+    private DynamicMBeanExportOperations mbeanExporter;
     private int protectDays;
     private DeleteFailureAction deletionFailureAction;
+    private int batchSize;
+    private int workerThreads;
+    
+    private final AtomicBoolean cleanupRunning = new AtomicBoolean(false);
+    private final AtomicLong urlsDeleted = new AtomicLong();
+    private final AtomicLong urlsFailed = new AtomicLong();
+    private final AtomicLong bytesFreed = new AtomicLong();
+    private final AtomicLong batchesCompleted = new AtomicLong();
+    private volatile long lastProcessedId = -1L;
+    private volatile long lastRunStartTime;
+    private volatile long lastRunEndTime;
     
     public ContentStoreCleaner()
     {
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
+        this.batchSize = 1000;
+        this.workerThreads = 1;
     }
 
     /**
@@ -203,12 +239,53 @@ public class ContentStoreCleaner
         this.deletionFailureAction = deletionFailureAction;
     }
 
+    /**
+     * Set the maximum number of orphaned URLs removed per transaction.  The default is 1000.
+     * 
+     * @param batchSize                 the number of URLs per batch (1 or greater)
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the number of threads used to delete binaries from the stores.  The default of 1
+     * deletes binaries on the cleanup thread itself.
+     * 
+     * @param workerThreads             the number of deletion threads (1 or greater)
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @param mbeanExporter             optional exporter used to publish the {@link ContentStoreCleanerMBean}
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
     /**
      * Initializes the cleaner.
      */
     public void init()
     {
         checkProperties();
+        
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                mbeanExporter.registerMBean(this, new ObjectName(MBEAN_NAME));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid MBean name: " + MBEAN_NAME, e);
+            }
+        }
     }
     
     /**
@@ -234,6 +311,14 @@ public class ContentStoreCleaner
                     "Property 'protectDays' is set to 0.  " +
                     "Please ensure that your backup strategy is appropriate for this setting.");
         }
+        if (batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'batchSize' must be 1 or greater");
+        }
+        if (workerThreads < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'workerThreads' must be 1 or greater");
+        }
     }
     
     /**
@@ -292,6 +377,7 @@ public class ContentStoreCleaner
         {
             logger.debug("Content store cleanup started.");
             lockToken = acquireLock(lockCallback);
+            startRun();
             executeInternal();
             // Done
             if (logger.isDebugEnabled())
@@ -317,42 +403,98 @@ public class ContentStoreCleaner
         }
         finally
         {
+            if (cleanupRunning.compareAndSet(true, false))
+            {
+                lastRunEndTime = System.currentTimeMillis();
+            }
             releaseLock(lockCallback, lockToken);
         }
     }
     
+    /**
+     * Reset the run statistics once this server owns the cleanup lock
+     */
+    private void startRun()
+    {
+        urlsDeleted.set(0L);
+        urlsFailed.set(0L);
+        bytesFreed.set(0L);
+        batchesCompleted.set(0L);
+        lastProcessedId = -1L;
+        lastRunStartTime = System.currentTimeMillis();
+        lastRunEndTime = 0L;
+        cleanupRunning.set(true);
+    }
+    
     private void executeInternal()
     {
         final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
-        // execute in READ-WRITE txn
-        RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
-        {
-            public Long execute() throws Exception
-            {
-                return cleanBatch(maxOrphanTime, 1000);
-            };
-        };
-        while (true)
+        final ExecutorService deletionExecutor = createDeletionExecutor();
+        try
         {
-            Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
-            if (vmShutdownListener.isVmShuttingDown())
+            Long minIdInclusive = null;
+            while (true)
             {
-                throw new VmShutdownException();
-            }
-            if (lastProcessedOrphanId == null)
-            {
-                // There is no more to process
-                break;
+                final Long batchMinId = minIdInclusive;
+                // execute in READ-WRITE txn
+                RetryingTransactionCallback<BatchResult> getAndDeleteWork = new RetryingTransactionCallback<BatchResult>()
+                {
+                    public BatchResult execute() throws Exception
+                    {
+                        return cleanBatch(maxOrphanTime, batchMinId, batchSize, deletionExecutor);
+                    };
+                };
+                BatchResult result = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (result == null)
+                {
+                    // There is no more to process
+                    break;
+                }
+                // The batch has been committed, so record the progress
+                urlsDeleted.addAndGet(result.deleted);
+                urlsFailed.addAndGet(result.failed);
+                bytesFreed.addAndGet(result.bytes);
+                batchesCompleted.incrementAndGet();
+                lastProcessedId = result.lastId;
+                // There is still more to delete, so continue from the next ID
+                minIdInclusive = result.lastId + 1L;
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "   Removed orphaned content URLs up to ID " + result.lastId +
+                            " (" + getUrlsDeleted() + " URLs, " + getBytesFreed() + " bytes so far)");
+                }
             }
-            // There is still more to delete, so continue
-            if (logger.isDebugEnabled())
+        }
+        finally
+        {
+            if (deletionExecutor != null)
             {
-                logger.debug("   Removed orphaned content URLs up orphan time " + new Date(lastProcessedOrphanId));
+                deletionExecutor.shutdownNow();
             }
         }
         // Done
     }
     
+    /**
+     * @return          a bounded pool for store deletions or <tt>null</tt> to delete on the calling thread
+     */
+    private ExecutorService createDeletionExecutor()
+    {
+        if (workerThreads <= 1)
+        {
+            return null;
+        }
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("ContentStoreCleaner");
+        return Executors.newFixedThreadPool(workerThreads, threadFactory);
+    }
+    
     private class LockCallback implements JobLockRefreshCallback
     {
         final AtomicBoolean running = new AtomicBoolean(true);
@@ -374,26 +516,50 @@ public class ContentStoreCleaner
         }
     }
     
+    /**
+     * Outcome of a single cleanup batch
+     */
+    private static class BatchResult
+    {
+        private final long lastId;
+        private long deleted;
+        private long failed;
+        private long bytes;
+        
+        private BatchResult(long lastId)
+        {
+            this.lastId = lastId;
+        }
+    }
+    
     /**
      * 
      * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param minIdInclusive        the lowest orphan ID to process or <tt>null</tt> to start at the beginning
      * @param batchSize             the maximum number of orphans to process
-     * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
+     * @param deletionExecutor      the pool to delete binaries with or <tt>null</tt> to delete inline
+     * @return                      Returns the batch outcome or <tt>null</tt> if nothing was processed
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private BatchResult cleanBatch(
+            final long maxTimeExclusive,
+            final Long minIdInclusive,
+            final int batchSize,
+            final ExecutorService deletionExecutor)
     {
         // Get a bunch of cleanable URLs
         final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
-        ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
+        final Map<Long, Long> sizesById = new HashMap<Long, Long>(batchSize * 2);
+        OrphanedContentUrlHandler contentUrlHandler = new OrphanedContentUrlHandler()
         {
             @Override
-            public void handle(Long id, String contentUrl, Long orphanTime)
+            public void handle(Long id, String contentUrl, Long size, Long orphanTime)
             {
                 urlsById.put(id, contentUrl);
+                sizesById.put(id, size);
             }
         };
         // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
+        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, minIdInclusive, batchSize);
         
         // Shortcut, if necessary
         if (urlsById.size() == 0)
@@ -402,19 +568,27 @@ public class ContentStoreCleaner
         }
         
         // Compile list of IDs and do a mass delete, recording the IDs to find the largest
-        Long lastId = urlsById.lastKey();
+        BatchResult result = new BatchResult(urlsById.lastKey());
         List<Long> ids = new ArrayList<Long>(urlsById.keySet());
         contentDataDAO.deleteContentUrls(ids);
         // No problems, so far (ALF-1998: contentStoreCleanerJob leads to foreign key exception)
 
         // Now attempt to physically delete the URLs
+        Map<Long, Boolean> deletedById = deleteFromStores(urlsById, deletionExecutor);
         for (Long id : ids)
         {
             String contentUrl = urlsById.get(id);
             // Handle failures
-            boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
-            if (!deleted)
+            boolean deleted = deletedById.get(id);
+            if (deleted)
             {
+                Long size = sizesById.get(id);
+                result.deleted++;
+                result.bytes += (size == null ? 0L : size.longValue());
+            }
+            else
+            {
+                result.failed++;
                 switch (deletionFailureAction)
                 {
                     case KEEP_URL:
@@ -429,6 +603,134 @@ public class ContentStoreCleaner
         }
         
         // Done
-        return lastId;
+        return result;
+    }
+    
+    /**
+     * Physically delete the binaries, spreading the work over the given pool if there is one.
+     * Failure actions are left to the caller, which holds the transaction.
+     * 
+     * @return                      the success of the deletion, keyed by URL ID
+     */
+    private Map<Long, Boolean> deleteFromStores(Map<Long, String> urlsById, ExecutorService deletionExecutor)
+    {
+        Map<Long, Boolean> deletedById = new HashMap<Long, Boolean>(urlsById.size() * 2);
+        if (deletionExecutor == null)
+        {
+            for (Map.Entry<Long, String> entry : urlsById.entrySet())
+            {
+                deletedById.put(entry.getKey(), eagerContentStoreCleaner.deleteFromStores(entry.getValue()));
+            }
+            return deletedById;
+        }
+        
+        Map<Long, Future<Boolean>> futuresById = new LinkedHashMap<Long, Future<Boolean>>(urlsById.size() * 2);
+        for (Map.Entry<Long, String> entry : urlsById.entrySet())
+        {
+            final String contentUrl = entry.getValue();
+            Callable<Boolean> deleteWork = new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    return eagerContentStoreCleaner.deleteFromStores(contentUrl);
+                }
+            };
+            futuresById.put(entry.getKey(), deletionExecutor.submit(deleteWork));
+        }
+        for (Map.Entry<Long, Future<Boolean>> entry : futuresById.entrySet())
+        {
+            Long id = entry.getKey();
+            try
+            {
+                deletedById.put(id, entry.getValue().get());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while deleting orphaned content", e);
+            }
+            catch (ExecutionException e)
+            {
+                logger.error("Content deletion failed: \n" +
+                        "   URL:    " + urlsById.get(id),
+                        e.getCause());
+                deletedById.put(id, Boolean.FALSE);
+            }
+        }
+        return deletedById;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return cleanupRunning.get();
+    }
+
+    @Override
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+
+    @Override
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    @Override
+    public long getUrlsDeleted()
+    {
+        return urlsDeleted.get();
+    }
+
+    @Override
+    public long getUrlsFailed()
+    {
+        return urlsFailed.get();
+    }
+
+    @Override
+    public long getBytesFreed()
+    {
+        return bytesFreed.get();
+    }
+
+    @Override
+    public long getBatchesCompleted()
+    {
+        return batchesCompleted.get();
+    }
+
+    @Override
+    public double getUrlsPerSecond()
+    {
+        long start = lastRunStartTime;
+        if (start == 0L)
+        {
+            return 0.0;
+        }
+        long end = cleanupRunning.get() || lastRunEndTime == 0L ? System.currentTimeMillis() : lastRunEndTime;
+        long elapsed = Math.max(1L, end - start);
+        return (urlsDeleted.get() + urlsFailed.get()) * 1000.0 / elapsed;
+    }
+
+    @Override
+    public long getLastProcessedId()
+    {
+        return lastProcessedId;
+    }
+
+    @Override
+    public long getLastRunStartTime()
+    {
+        return lastRunStartTime;
+    }
+
+    @Override
+    public long getLastRunEndTime()
+    {
+        return lastRunEndTime;
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.cleanup;
+
+/**
+ * Management interface exposing the progress and throughput of the {@link ContentStoreCleaner}.
+ * <p/>
+ * Counters cover the current run, or the last completed run if the cleaner is idle.
+ */
+public interface ContentStoreCleanerMBean
+{
+    /**
+     * @return              <tt>true</tt> if a cleanup run is currently in progress on this server
+     */
+    public boolean isRunning();
+
+    /**
+     * @return              the number of threads deleting binaries from the stores (1 means inline deletion)
+     */
+    public int getWorkerThreads();
+
+    /**
+     * @return              the maximum number of orphaned URLs processed per transaction
+     */
+    public int getBatchSize();
+
+    /**
+     * @return              the number of orphaned URLs removed from the stores
+     */
+    public long getUrlsDeleted();
+
+    /**
+     * @return              the number of orphaned URLs that could not be removed from all stores
+     */
+    public long getUrlsFailed();
+
+    /**
+     * @return              the total recorded size of the binaries removed
+     */
+    public long getBytesFreed();
+
+    /**
+     * @return              the number of committed batches
+     */
+    public long getBatchesCompleted();
+
+    /**
+     * @return              the average number of URLs processed per second
+     */
+    public double getUrlsPerSecond();
+
+    /**
+     * @return              the ID of the last orphaned URL processed or <tt>-1</tt> if none
+     */
+    public long getLastProcessedId();
+
+    /**
+     * @return              the start time of the current or last run (ms since epoch) or <tt>0</tt>
+     */
+    public long getLastRunStartTime();
+
+    /**
+     * @return              the end time of the last run (ms since epoch) or <tt>0</tt> if still running
+     */
+    public long getLastRunEndTime();
+}
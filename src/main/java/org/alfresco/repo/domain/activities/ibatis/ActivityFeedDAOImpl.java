@@ -47,9 +47,14 @@ import org.apache.ibatis.session.RowBounds;
 public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFeedDAO
 {
     private static final int DEFAULT_FETCH_BATCH_SIZE = 150;
+    private static final int DEFAULT_INSERT_BATCH_SIZE = 100;
+    private static final String INSERT_ACTIVITY_FEEDS = "alfresco.activities.insert.insert_activity_feeds";
 
     private TenantService tenantService;
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
+    private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+    /** Whether the dialect provides the multi-row feed insert, or <tt>null</tt> if not looked up yet */
+    private volatile Boolean multiRowInsert;
     
     public void setTenantService(TenantService tenantService)
     {
@@ -61,6 +66,16 @@ public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFe
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * @param insertBatchSize   the maximum number of feed entries to insert with a single statement,
+     *                          or <tt>1</tt> to use one statement per entry.  Entries are only inserted
+     *                          together when the dialect provides a multi-row insert.
+     */
+    public void setInsertBatchSize(int insertBatchSize)
+    {
+        this.insertBatchSize = insertBatchSize;
+    }
+
     public long insertFeedEntry(ActivityFeedEntity activityFeed) throws SQLException
     {
         template.insert("alfresco.activities.insert.insert_activity_feed", activityFeed);
@@ -68,6 +83,40 @@ public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFe
         return (id != null ? id : -1);
     }
     
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> activityFeeds) throws SQLException
+    {
+        if (insertBatchSize <= 1 || !isMultiRowInsert())
+        {
+            for (ActivityFeedEntity activityFeed : activityFeeds)
+            {
+                insertFeedEntry(activityFeed);
+            }
+            return activityFeeds.size();
+        }
+        int count = 0;
+        for (int i = 0; i < activityFeeds.size(); i += insertBatchSize)
+        {
+            count += template.insert(INSERT_ACTIVITY_FEEDS,
+                    activityFeeds.subList(i, Math.min(i + insertBatchSize, activityFeeds.size())));
+        }
+        return count;
+    }
+    
+    /**
+     * Only the dialects supporting multi-row <tt>VALUES</tt> provide the multi-row feed insert
+     */
+    private boolean isMultiRowInsert()
+    {
+        Boolean supported = multiRowInsert;
+        if (supported == null)
+        {
+            supported = template.getConfiguration().hasStatement(INSERT_ACTIVITY_FEEDS);
+            multiRowInsert = supported;
+        }
+        return supported;
+    }
+    
     @Override
     public int deleteFeedEntries(Integer maxIdRange) throws SQLException
     {
@@ -122,6 +122,31 @@ public interface ContentDataDAO
             Long maxOrphanTimeExclusive,
             int maxResults);
     
+    /**
+     * Interface for callbacks during orphaned content URL enumeration, including the size
+     * recorded against the URL.
+     */
+    public static interface OrphanedContentUrlHandler
+    {
+        void handle(Long id, String contentUrl, Long size, Long orphanTime);
+    }
+    
+    /**
+     * Enumerate available content URLs that were orphaned on or before the given time, in ascending
+     * ID order and starting at the given ID.  This allows callers to walk the orphans in ID ranges
+     * without revisiting rows that have already been handled.
+     * 
+     * @param contentUrlHandler         the callback object to process the rows
+     * @param maxOrphanTimeExclusive    the maximum orphan time (exclusive)
+     * @param minIdInclusive            the lowest URL ID to consider (inclusive) or <tt>null</tt> to start at the beginning
+     * @param maxResults                the maximum number of results (1 or greater)
+     */
+    void getContentUrlsOrphaned(
+            OrphanedContentUrlHandler contentUrlHandler,
+            Long maxOrphanTimeExclusive,
+            Long minIdInclusive,
+            int maxResults);
+    
     /**
      * Enumerate all available content URLs that were orphaned and cleanup for these urls failed
      * 
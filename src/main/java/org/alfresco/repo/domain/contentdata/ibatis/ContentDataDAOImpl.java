@@ -168,6 +168,32 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         }
     }
     
+    @Override
+    public void getContentUrlsOrphaned(
+            final OrphanedContentUrlHandler contentUrlHandler,
+            final Long maxOrphanTimeExclusive,
+            final Long minIdInclusive,
+            final int maxResults)
+    {
+        ParameterCheck.mandatory("maxOrphanTimeExclusive", maxOrphanTimeExclusive);
+        
+        ContentUrlOrphanQuery query = new ContentUrlOrphanQuery();
+        query.setMaxOrphanTimeExclusive(maxOrphanTimeExclusive);
+        query.setMinIdInclusive(minIdInclusive == null ? Long.valueOf(0L) : minIdInclusive);
+        List<ContentUrlEntity> results = template.selectList(SELECT_CONTENT_URLS_ORPHANED, 
+                                                                                      query, 
+                                                                                      new RowBounds(0, maxResults));
+        // Pass the result to the callback
+        for (ContentUrlEntity result : results)
+        {
+            contentUrlHandler.handle(
+                    result.getId(),
+                    result.getContentUrl(),
+                    result.getSize(),
+                    result.getOrphanTime());
+        }
+    }
+    
     @Override
     public void getContentUrlsKeepOrphaned(
             final ContentUrlHandler contentUrlHandler,
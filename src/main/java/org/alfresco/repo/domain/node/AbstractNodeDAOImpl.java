@@ -144,6 +144,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private UsageDAO usageDAO;
 
     private int cachingThreshold = 10;
+    private int bulkLoadBatchSize = 256;
 
     /**
      * Cache for the Store root nodes by StoreRef:<br/>
@@ -199,6 +200,12 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      * Cache for fast lookups of child nodes by <b>cm:name</b>. 
      */
     private SimpleCache<ChildByNameKey, ChildAssocEntity> childByNameCache;
+    /**
+     * Optional non-clustered cache for the paths of nodes:<br/>
+     * KEY: (nodeId, primaryOnly) pair <br/>
+     * VALUE: the paths and the transaction IDs of the nodes they were built from
+     */
+    private SimpleCache<Pair<Long, Boolean>, PathsInfo> pathsCache;
     
     /**
      * Constructor.  Set up various instance-specific members such as caches and locks.
@@ -237,6 +244,15 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 		this.cachingThreshold = cachingThreshold;
 	}
 
+    /**
+     * @param bulkLoadBatchSize         the maximum number of node IDs to use in a single
+     *                                  select when pre-loading nodes, aspects and properties
+     */
+    public void setBulkLoadBatchSize(int bulkLoadBatchSize)
+    {
+        this.bulkLoadBatchSize = bulkLoadBatchSize;
+    }
+
     /**
      * @param policyBehaviourFilter     the service to determine the behaviour for <b>cm:auditable</b> and
      *                                  other inherent capabilities.
@@ -402,6 +418,18 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         this.childByNameCache = childByNameCache;
     }
 
+    /**
+     * Set the cache that keeps the paths built for nodes.  The paths of a node are only reused while
+     * the node and all its ancestors are in the transactions they were in when the paths were built,
+     * so moves and renames anywhere above the node need no explicit invalidation.
+     * 
+     * @param pathsCache            the cache or <tt>null</tt> to build the paths on each call
+     */
+    public void setPathsCache(SimpleCache<Pair<Long, Boolean>, PathsInfo> pathsCache)
+    {
+        this.pathsCache = pathsCache;
+    }
+
     /*
      * Initialize
      */
@@ -1931,6 +1959,28 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         invalidateNodeChildrenCaches(primaryParentNodeId, true, false);
     }
     
+    @Override
+    public void setPrimaryChildrenSharedAclId(
+            List<Long> primaryParentNodeIds,
+            Long optionalOldSharedAlcIdInAdditionToNull,
+            Long newSharedAclId)
+    {
+        if (primaryParentNodeIds.isEmpty())
+        {
+            return;
+        }
+        Long txnId = getCurrentTransaction().getId();
+        updatePrimaryChildrenSharedAclId(
+                txnId,
+                primaryParentNodeIds,
+                optionalOldSharedAlcIdInAdditionToNull,
+                newSharedAclId);
+        for (Long primaryParentNodeId : primaryParentNodeIds)
+        {
+            invalidateNodeChildrenCaches(primaryParentNodeId, true, false);
+        }
+    }
+    
     @Override
     public void deleteNode(Long nodeId)
     {
@@ -3788,15 +3838,21 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     @Override
     public List<Path> getPaths(Pair<Long, NodeRef> nodePair, boolean primaryOnly) throws InvalidNodeRefException
     {
-        // create storage for the paths - only need 1 bucket if we are looking for the primary path
-        List<Path> paths = new ArrayList<Path>(primaryOnly ? 1 : 10);
-        // create an empty current path to start from
-        Path currentPath = new Path();
-        // create storage for touched associations
-        Stack<Long> assocIdStack = new Stack<Long>();
-        
-        // call recursive method to sort it out
-        prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+        List<Path> paths;
+        if (pathsCache != null)
+        {
+            // copy the shared paths as the caller may modify them
+            List<Path> cachedPaths = getPathsCached(nodePair, primaryOnly, new HashSet<Long>()).getPaths();
+            paths = new ArrayList<Path>(cachedPaths.size());
+            for (Path cachedPath : cachedPaths)
+            {
+                paths.add(new Path().append(cachedPath));
+            }
+        }
+        else
+        {
+            paths = getPathsUncached(nodePair, primaryOnly);
+        }
         
         // check that for the primary only case we have exactly one path
         if (primaryOnly && paths.size() != 1)
@@ -3826,6 +3882,188 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return paths;
     }
     
+    private List<Path> getPathsUncached(Pair<Long, NodeRef> nodePair, boolean primaryOnly)
+    {
+        // create storage for the paths - only need 1 bucket if we are looking for the primary path
+        List<Path> paths = new ArrayList<Path>(primaryOnly ? 1 : 10);
+        // create an empty current path to start from
+        Path currentPath = new Path();
+        // create storage for touched associations
+        Stack<Long> assocIdStack = new Stack<Long>();
+        
+        // call recursive method to sort it out
+        prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+        return paths;
+    }
+    
+    /**
+     * Get the paths of a node from the {@link #setPathsCache(SimpleCache) paths cache}, building them by
+     * extending the cached paths of its parents if the cached entry is missing or out of date.
+     * 
+     * @param nodePair              the node to get the paths for
+     * @param primaryOnly           <tt>true</tt> to follow only primary parent associations
+     * @param visiting              the nodes whose paths are being built, to detect cyclic relationships
+     */
+    private PathsInfo getPathsCached(Pair<Long, NodeRef> nodePair, boolean primaryOnly, Set<Long> visiting)
+    {
+        Long nodeId = nodePair.getFirst();
+        Pair<Long, Boolean> cacheKey = new Pair<Long, Boolean>(nodeId, primaryOnly);
+        PathsInfo pathsInfo = pathsCache.get(cacheKey);
+        if (pathsInfo != null && pathsInfo.isValid(nodesCache))
+        {
+            return pathsInfo;
+        }
+        if (!visiting.add(nodeId))
+        {
+            // The node is its own ancestor; walk the hierarchy the long way to report the cycle
+            return new PathsInfo(getPathsUncached(nodePair, primaryOnly), Collections.<Long, String>emptyMap());
+        }
+        
+        Node node = getNodeNotNull(nodeId, false);
+        Map<Long, String> txnIds = new HashMap<Long, String>(16);
+        txnIds.put(nodeId, node.getTransaction().getChangeTxnId());
+        
+        ParentAssocsInfo parentAssocInfo = getParentAssocsCached(nodeId); // note: currently may throw NotLiveNodeException
+        ArrayList<Long> toLoad = new ArrayList<Long>(parentAssocInfo.getParentAssocs().size());
+        for (ChildAssocEntity assoc : parentAssocInfo.getParentAssocs().values())
+        {
+            toLoad.add(assoc.getParentNode().getId());
+        }
+        cacheNodesById(toLoad);
+        
+        List<Path> paths = new ArrayList<Path>(primaryOnly ? 1 : 2);
+        boolean hasParents = parentAssocInfo.getParentAssocs().size() > 0;
+        if (parentAssocInfo.isRoot() && !(primaryOnly && hasParents))
+        {
+            paths.add(makeRootPath(nodePair));
+        }
+        for (ChildAssocEntity assoc : parentAssocInfo.getParentAssocs().values())
+        {
+            ChildAssociationRef assocRef = assoc.getRef(qnameDAO);
+            if (primaryOnly && !assocRef.isPrimary())
+            {
+                continue;
+            }
+            assocRef.setNthSibling(-1);
+            Pair<Long, NodeRef> parentNodePair = new Pair<Long, NodeRef>(assoc.getParentNode().getId(), assocRef.getParentRef());
+            PathsInfo parentPathsInfo = getPathsCached(parentNodePair, primaryOnly, visiting);
+            txnIds.putAll(parentPathsInfo.getTxnIds());
+            extendPaths(parentNodePair, parentPathsInfo.getPaths(), assocRef, paths);
+        }
+        
+        visiting.remove(nodeId);
+        pathsInfo = new PathsInfo(paths, txnIds);
+        // Paths built from nodes changed by this transaction are not shared, as they could change again
+        // without a new transaction ID
+        if (!txnIds.containsValue(AlfrescoTransactionSupport.getTransactionId()))
+        {
+            pathsCache.put(cacheKey, pathsInfo);
+        }
+        return pathsInfo;
+    }
+    
+    /**
+     * @return                      the single element path of a root node
+     */
+    private Path makeRootPath(Pair<Long, NodeRef> nodePair)
+    {
+        NodeRef rootNodeRef = getRootNode(nodePair.getSecond().getStoreRef()).getSecond();
+        Path rootPath = new Path();
+        rootPath.append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, rootNodeRef)));
+        return rootPath;
+    }
+    
+    /**
+     * Add a path to <b>paths</b> for each of the parent paths, extended by the association to the child.
+     * 
+     * @param parentNodePair        the parent of the association
+     * @param parentPaths           the paths of the parent
+     * @param assocRef              the association from the parent to the child
+     * @param paths                 the child paths to add to
+     */
+    private void extendPaths(Pair<Long, NodeRef> parentNodePair, List<Path> parentPaths, ChildAssociationRef assocRef, List<Path> paths)
+    {
+        for (Path parentPath : parentPaths)
+        {
+            Path path = new Path();
+            Path.ChildAssocElement parentFirst = (Path.ChildAssocElement) parentPath.get(0);
+            if (parentPath.size() == 1 && parentFirst.getRef().getParentRef() == null)
+            {
+                // The parent is a root: the association is made to appear to be from the store root,
+                // as it is when prepending paths
+                NodeRef rootNodeRef = parentFirst.getRef().getChildRef();
+                boolean parentIsStoreRoot = getParentAssocsCached(parentNodePair.getFirst()).isStoreRoot();
+                path.append(parentFirst);
+                path.append(new Path.ChildAssocElement(new ChildAssociationRef(
+                        parentIsStoreRoot ? ContentModel.ASSOC_CHILDREN : assocRef.getTypeQName(),
+                        rootNodeRef,
+                        assocRef.getQName(),
+                        assocRef.getChildRef())));
+            }
+            else
+            {
+                path.append(parentPath);
+                path.append(new Path.ChildAssocElement(assocRef));
+            }
+            paths.add(path);
+        }
+    }
+    
+    @Override
+    public List<Path> getPaths(Pair<Long, NodeRef> nodePair, Map<Long, List<Path>> knownPaths) throws InvalidNodeRefException
+    {
+        return getPathsKnown(nodePair, knownPaths, new HashSet<Long>());
+    }
+    
+    /**
+     * Build the paths for a node by extending the paths of each of its parents, which are built (or found) first.
+     * The paths are the same, and in the same order, as those built by {@link #prependPaths}.
+     * 
+     * @param nodePair              the node to build the paths for
+     * @param knownPaths            the paths already built, keyed by node ID
+     * @param visiting              the nodes whose paths are being built, to detect cyclic relationships
+     */
+    private List<Path> getPathsKnown(Pair<Long, NodeRef> nodePair, Map<Long, List<Path>> knownPaths, Set<Long> visiting)
+    {
+        Long nodeId = nodePair.getFirst();
+        List<Path> paths = knownPaths.get(nodeId);
+        if (paths != null)
+        {
+            return paths;
+        }
+        if (!visiting.add(nodeId))
+        {
+            // The node is its own ancestor; walk the hierarchy the long way to report the cycle
+            return getPaths(nodePair, false);
+        }
+        
+        ParentAssocsInfo parentAssocInfo = getParentAssocsCached(nodeId); // note: currently may throw NotLiveNodeException
+        ArrayList<Long> toLoad = new ArrayList<Long>(parentAssocInfo.getParentAssocs().size());
+        for (ChildAssocEntity assoc : parentAssocInfo.getParentAssocs().values())
+        {
+            toLoad.add(assoc.getParentNode().getId());
+        }
+        cacheNodesById(toLoad);
+        
+        paths = new ArrayList<Path>(2);
+        if (parentAssocInfo.isRoot())
+        {
+            // The root of its own path
+            paths.add(makeRootPath(nodePair));
+        }
+        for (ChildAssocEntity assoc : parentAssocInfo.getParentAssocs().values())
+        {
+            ChildAssociationRef assocRef = assoc.getRef(qnameDAO);
+            assocRef.setNthSibling(-1);
+            Pair<Long, NodeRef> parentNodePair = new Pair<Long, NodeRef>(assoc.getParentNode().getId(), assocRef.getParentRef());
+            extendPaths(parentNodePair, getPathsKnown(parentNodePair, knownPaths, visiting), assocRef, paths);
+        }
+        
+        visiting.remove(nodeId);
+        knownPaths.put(nodeId, paths);
+        return paths;
+    }
+    
     private void bindFixAssocAndCollectLostAndFound(final Pair<Long, NodeRef> lostNodePair, final String lostName, final Long assocId, final boolean orphanChild)
     {
         // Remember the items already deleted in inner transactions
@@ -4642,7 +4880,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         StoreEntity store = getStoreNotNull(storeRef);
         Long storeId = store.getId();
         
-        int batchSize = 256;
+        int batchSize = bulkLoadBatchSize;
         SortedSet<String> batch = new TreeSet<String>();
         for (String uuid : uuids)
         {
@@ -4665,7 +4903,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     
     private void cacheNodesBatch(List<Long> nodeIds)
     {
-        int batchSize = 256;
+        int batchSize = bulkLoadBatchSize;
         SortedSet<Long> batch = new TreeSet<Long>();
         for (Long nodeId : nodeIds)
         {
@@ -4718,6 +4956,18 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             logger.debug("Pre-loaded " + propertiesNodeIds.size() + " aspects");
         }
         
+        cacheNodeAspectsAndProperties(aspectNodeIds, propertiesNodeIds);
+    }
+
+    /**
+     * Bulk-fetch the aspects and properties of nodes that are already in the node cache.
+     * All node IDs passed in are fetched.
+     * 
+     * @param aspectNodeIds             the nodes whose aspects must be loaded (modified by this method)
+     * @param propertiesNodeIds         the nodes whose properties must be loaded
+     */
+    private void cacheNodeAspectsAndProperties(SortedSet<Long> aspectNodeIds, SortedSet<Long> propertiesNodeIds)
+    {
         Map<NodeVersionKey, Set<QName>> nodeAspects = selectNodeAspects(aspectNodeIds);
         for (Map.Entry<NodeVersionKey, Set<QName>> entry : nodeAspects.entrySet())
         {
@@ -4747,6 +4997,122 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Nodes, aspects and properties that are not cached are loaded using IN-list selects
+     * of up to {@link #setBulkLoadBatchSize(int) bulkLoadBatchSize} IDs.
+     */
+    @Override
+    public Map<Long, Map<QName, Serializable>> getNodePropertiesBulk(List<Long> nodeIds)
+    {
+        // The auditable properties depend on the aspects, so load both
+        List<Long> existingNodeIds = cacheNodeMetadataBulk(nodeIds, true);
+        Map<Long, Map<QName, Serializable>> propertiesByNodeId = new HashMap<Long, Map<QName, Serializable>>(existingNodeIds.size() * 2);
+        for (Long nodeId : existingNodeIds)
+        {
+            propertiesByNodeId.put(nodeId, getNodeProperties(nodeId));
+        }
+        return propertiesByNodeId;
+    }
+
+    @Override
+    public void cacheNodePropertiesById(List<Long> nodeIds)
+    {
+        cacheNodeMetadataBulk(nodeIds, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Nodes and aspects that are not cached are loaded using IN-list selects of up to
+     * {@link #setBulkLoadBatchSize(int) bulkLoadBatchSize} IDs.
+     */
+    @Override
+    public Map<Long, Set<QName>> getNodeAspectsBulk(List<Long> nodeIds)
+    {
+        List<Long> existingNodeIds = cacheNodeMetadataBulk(nodeIds, false);
+        Map<Long, Set<QName>> aspectsByNodeId = new HashMap<Long, Set<QName>>(existingNodeIds.size() * 2);
+        for (Long nodeId : existingNodeIds)
+        {
+            aspectsByNodeId.put(nodeId, getNodeAspects(nodeId));
+        }
+        return aspectsByNodeId;
+    }
+
+    @Override
+    public void cacheNodeAspectsById(List<Long> nodeIds)
+    {
+        cacheNodeMetadataBulk(nodeIds, false);
+    }
+
+    /**
+     * Ensure that the given nodes and their aspects (and, optionally, properties) are cached.
+     * Unlike {@link #cacheNodesById(List)}, this also reloads the aspects and properties of nodes
+     * that are cached but whose aspects or properties have been evicted.
+     * 
+     * @param nodeIds                   the nodes to cache
+     * @param includeProperties         <tt>true</tt> to cache the node properties as well as the aspects
+     * @return                          the IDs of the nodes that exist, in the order given
+     */
+    private List<Long> cacheNodeMetadataBulk(List<Long> nodeIds, boolean includeProperties)
+    {
+        // Nodes that are loaded come with their aspects and properties
+        List<Long> uncachedNodeIds = new ArrayList<Long>(nodeIds.size());
+        for (Long nodeId : nodeIds)
+        {
+            if (nodesCache.getValue(nodeId) == null)
+            {
+                uncachedNodeIds.add(nodeId);
+            }
+        }
+        if (uncachedNodeIds.size() > 0)
+        {
+            cacheNodesBatch(uncachedNodeIds);
+        }
+        
+        // Now pick up the cached nodes whose aspects or properties are missing
+        List<Long> existingNodeIds = new ArrayList<Long>(nodeIds.size());
+        SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
+        SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesCache.getValue(nodeId);
+            if (node == null)
+            {
+                // The node does not exist
+                continue;
+            }
+            existingNodeIds.add(nodeId);
+            NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
+            if (aspectsCache.getValue(nodeVersionKey) == null)
+            {
+                aspectNodeIds.add(nodeId);
+            }
+            if (includeProperties && propertiesCache.getValue(nodeVersionKey) == null)
+            {
+                propertiesNodeIds.add(nodeId);
+            }
+            if (aspectNodeIds.size() >= bulkLoadBatchSize || propertiesNodeIds.size() >= bulkLoadBatchSize)
+            {
+                cacheNodeAspectsAndProperties(aspectNodeIds, propertiesNodeIds);
+                aspectNodeIds.clear();
+                propertiesNodeIds.clear();
+            }
+        }
+        // Load any remaining aspects and properties
+        if (aspectNodeIds.size() > 0 || propertiesNodeIds.size() > 0)
+        {
+            cacheNodeAspectsAndProperties(aspectNodeIds, propertiesNodeIds);
+        }
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Bulk-loaded metadata for " + existingNodeIds.size() + " nodes.");
+        }
+        return existingNodeIds;
+    }
+
     /**
      * {@inheritDoc}
      * <p/>
@@ -4898,6 +5264,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Long primaryParentNodeId,
             Long optionalOldSharedAlcIdInAdditionToNull,
             Long newSharedAlcId);
+    protected abstract void updatePrimaryChildrenSharedAclId(
+            Long txnId,
+            List<Long> primaryParentNodeIds,
+            Long optionalOldSharedAlcIdInAdditionToNull,
+            Long newSharedAlcId);
     protected abstract int deleteNodeById(Long nodeId);
     protected abstract int deleteNodesByCommitTime(long fromTxnCommitTimeMs, long toTxnCommitTimeMs);
     protected abstract NodeEntity selectNodeById(Long id);
@@ -257,6 +257,18 @@ public interface NodeDAO extends NodeBulkLoader
             Long optionalOldSharedAlcIdInAdditionToNull,
             Long newSharedAclId);
     
+    /**
+     * Set the shared ACL of the primary children of several parents using a single statement.
+     * 
+     * @param primaryParentNodeIds                      the parents whose primary children are updated
+     * @param optionalOldSharedAlcIdInAdditionToNull    children with this ACL are updated as well as children without an ACL
+     * @param newSharedAclId                            the new shared ACL
+     */
+    public void setPrimaryChildrenSharedAclId(
+            List<Long> primaryParentNodeIds,
+            Long optionalOldSharedAlcIdInAdditionToNull,
+            Long newSharedAclId);
+    
     /**
      * An object that contains data giving a 'view' of the node to be deleted.
      * It is used for ensuring that node cleanup is only done for node-related
@@ -346,6 +358,26 @@ public interface NodeDAO extends NodeBulkLoader
 
     public Map<QName, Serializable> getNodeProperties(Long nodeId);
     
+    /**
+     * Get the properties of many nodes at once.  Nodes and properties that are not already
+     * cached are fetched in batches and added to the caches; there is no need to split the
+     * list up before calling this method.
+     * 
+     * @param nodeIds           the nodes to fetch
+     * @return                  the properties of each node, as given by {@link #getNodeProperties(Long)},
+     *                          keyed by node ID.  Nodes that do not exist are not included.
+     */
+    public Map<Long, Map<QName, Serializable>> getNodePropertiesBulk(List<Long> nodeIds);
+    
+    /**
+     * Ensure that the properties and aspects of many nodes are cached, fetching any that are not
+     * in batches.  Use this rather than {@link #getNodePropertiesBulk(List)} when the properties
+     * are read later, one node at a time.
+     * 
+     * @param nodeIds           the nodes to cache
+     */
+    public void cacheNodePropertiesById(List<Long> nodeIds);
+    
     public boolean setNodeProperties(Long nodeId, Map<QName, Serializable> properties);
     
     public boolean addNodeProperty(Long nodeId, QName qname, Serializable value);
@@ -384,6 +416,26 @@ public interface NodeDAO extends NodeBulkLoader
     
     public Set<QName> getNodeAspects(Long nodeId);
     
+    /**
+     * Get the aspects of many nodes at once.  Nodes and aspects that are not already
+     * cached are fetched in batches and added to the caches; there is no need to split the
+     * list up before calling this method.
+     * 
+     * @param nodeIds           the nodes to fetch
+     * @return                  the aspects of each node, as given by {@link #getNodeAspects(Long)},
+     *                          keyed by node ID.  Nodes that do not exist are not included.
+     */
+    public Map<Long, Set<QName>> getNodeAspectsBulk(List<Long> nodeIds);
+    
+    /**
+     * Ensure that the aspects of many nodes are cached, fetching any that are not in batches.
+     * Use this rather than {@link #getNodeAspectsBulk(List)} when the aspects are read later,
+     * one node at a time.
+     * 
+     * @param nodeIds           the nodes to cache
+     */
+    public void cacheNodeAspectsById(List<Long> nodeIds);
+    
     public boolean hasNodeAspect(Long nodeId, QName aspectQName);
     
     public boolean addNodeAspects(Long nodeId, Set<QName> aspectQNames);
@@ -762,6 +814,19 @@ public interface NodeDAO extends NodeBulkLoader
      */
     public List<Path> getPaths(Pair<Long, NodeRef> nodePair, boolean primaryOnly) throws InvalidNodeRefException;
     
+    /**
+     * Build all the paths for a node, reusing the paths already built for its ancestors.
+     * <p/>
+     * The paths built for the node and any ancestors visited on the way are added to <b>knownPaths</b>, so that
+     * nodes sharing a parent only walk up the hierarchy once.  The caller decides how long to keep the map;
+     * it is only valid while the hierarchy does not change.  The returned paths are shared with the map
+     * and must not be modified.
+     * 
+     * @param nodePair              the leave or child node to start with
+     * @param knownPaths            the paths already built, keyed by node ID
+     */
+    public List<Path> getPaths(Pair<Long, NodeRef> nodePair, Map<Long, List<Path>> knownPaths) throws InvalidNodeRefException;
+    
     /**
      * Perform a check for cyclic relationships
      */
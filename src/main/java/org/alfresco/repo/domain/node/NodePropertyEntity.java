@@ -43,6 +43,8 @@ public class NodePropertyEntity
     private List<Long> qnameIds;
     /** Carries data for queries */
     private List<Long> nodeIds;
+    /** Carries data for deletes */
+    private List<NodePropertyKey> keys;
     
     /**
      * Required default constructor
@@ -116,4 +118,14 @@ public class NodePropertyEntity
     {
         this.nodeIds = nodeIds;
     }
+
+    public List<NodePropertyKey> getKeys()
+    {
+        return keys;
+    }
+
+    public void setKeys(List<NodePropertyKey> keys)
+    {
+        this.keys = keys;
+    }
 }
\ No newline at end of file
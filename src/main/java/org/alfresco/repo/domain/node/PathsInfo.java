@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.util.Pair;
+
+/**
+ * Object to keep hold of the paths of a node along with the change transaction IDs of the
+ * node and all the ancestors that the paths were built from.  The paths are shared and
+ * must be copied before being handed to callers.
+ */
+public class PathsInfo implements Serializable
+{
+    private static final long serialVersionUID = 7362318479125633105L;
+
+    private final List<Path> paths;
+    private final Map<Long, String> txnIds;
+
+    /**
+     * @param paths             the paths of the node
+     * @param txnIds            the change transaction ID of each node on the paths, keyed by node ID
+     */
+    PathsInfo(List<Path> paths, Map<Long, String> txnIds)
+    {
+        this.paths = Collections.unmodifiableList(paths);
+        this.txnIds = Collections.unmodifiableMap(new HashMap<Long, String>(txnIds));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PathsInfo [paths=" + paths + ", txnIds=" + txnIds + "]";
+    }
+
+    public List<Path> getPaths()
+    {
+        return paths;
+    }
+
+    public Map<Long, String> getTxnIds()
+    {
+        return txnIds;
+    }
+
+    /**
+     * Check that none of the nodes the paths were built from have been changed since.  Any change to
+     * the parent associations of a node puts the node into a new transaction.
+     * 
+     * @param nodesCache        the cache of current node entities
+     * @return                  <tt>true</tt> if the paths are still current
+     */
+    boolean isValid(EntityLookupCache<Long, Node, NodeRef> nodesCache)
+    {
+        for (Map.Entry<Long, String> entry : txnIds.entrySet())
+        {
+            Pair<Long, Node> nodePair = nodesCache.getByKey(entry.getKey());
+            if (nodePair == null || !entry.getValue().equals(nodePair.getSecond().getTransaction().getChangeTxnId()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.node;
 
+import java.util.List;
+
 /**
  * Carry bulk acl update info.
  * 
@@ -36,6 +38,7 @@ public class PrimaryChildrenAclUpdateEntity
 {
     Long txnId;
     Long primaryParentNodeId; 
+    List<Long> primaryParentNodeIds;
     Long optionalOldSharedAclIdInAdditionToNull;
     Long newSharedAclId;
     
@@ -63,6 +66,20 @@ public class PrimaryChildrenAclUpdateEntity
         this.primaryParentNodeId = primaryParentNodeId;
     }
 
+    /**
+     * @return              the parents whose primary children are updated, or <tt>null</tt>
+     *                      if only the {@link #getPrimaryParentNodeId() single parent} is used
+     */
+    public List<Long> getPrimaryParentNodeIds()
+    {
+        return primaryParentNodeIds;
+    }
+
+    public void setPrimaryParentNodeIds(List<Long> primaryParentNodeIds)
+    {
+        this.primaryParentNodeIds = primaryParentNodeIds;
+    }
+
     public Long getOptionalOldSharedAclIdInAdditionToNull()
     {
         return optionalOldSharedAclIdInAdditionToNull;
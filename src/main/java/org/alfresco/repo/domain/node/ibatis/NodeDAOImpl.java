@@ -106,6 +106,7 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_PROPERTIES_BY_ACTUAL_TYPE = "alfresco.node.select_PropertiesByActualType";
     private static final String SELECT_NODE_ASPECTS = "alfresco.node.select_NodeAspects";
     private static final String INSERT_NODE_PROPERTY = "alfresco.node.insert_NodeProperty";
+    private static final String INSERT_NODE_PROPERTIES = "alfresco.node.insert.insert_NodeProperties";
     private static final String UPDATE_PRIMARY_CHILDREN_SHARED_ACL = "alfresco.node.update.update_PrimaryChildrenSharedAcl";
     private static final String INSERT_NODE_ASPECT = "alfresco.node.insert_NodeAspect";
     private static final String DELETE_NODE_ASPECTS = "alfresco.node.delete_NodeAspects";
@@ -171,12 +172,26 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     protected DictionaryService dictionaryService;
 
     private SqlSessionTemplate template;
+    private int propertyBatchSize = 100;
+    /** Whether the dialect provides the multi-row property insert, or <tt>null</tt> if not looked up yet */
+    private volatile Boolean multiRowPropertyInsert;
     
     public void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) 
     {
         this.template = sqlSessionTemplate;
     }
 
+    /**
+     * @param propertyBatchSize         the maximum number of property rows of a node to insert or
+     *                                  delete with a single statement, or <tt>1</tt> to use one
+     *                                  statement per row.  Rows are only inserted together when the
+     *                                  dialect provides a multi-row insert.
+     */
+    public void setPropertyBatchSize(int propertyBatchSize)
+    {
+        this.propertyBatchSize = propertyBatchSize;
+    }
+
     @Override
     public void setQnameDAO(QNameDAO qnameDAO)
     {
@@ -392,6 +407,22 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         template.update(UPDATE_PRIMARY_CHILDREN_SHARED_ACL, primaryChildrenAclUpdateEntity);
     }
 
+    @Override
+    protected void updatePrimaryChildrenSharedAclId(
+            Long txnId,
+            List<Long> primaryParentNodeIds,
+            Long optionalOldSharedAlcIdInAdditionToNull,
+            Long newSharedAlcId)
+    {
+        PrimaryChildrenAclUpdateEntity primaryChildrenAclUpdateEntity = new PrimaryChildrenAclUpdateEntity();
+        primaryChildrenAclUpdateEntity.setTxnId(txnId);
+        primaryChildrenAclUpdateEntity.setPrimaryParentNodeIds(primaryParentNodeIds);
+        primaryChildrenAclUpdateEntity.setOptionalOldSharedAclIdInAdditionToNull(optionalOldSharedAlcIdInAdditionToNull);
+        primaryChildrenAclUpdateEntity.setNewSharedAclId(newSharedAlcId);
+        
+        template.update(UPDATE_PRIMARY_CHILDREN_SHARED_ACL, primaryChildrenAclUpdateEntity);
+    }
+
     @Override
     protected int deleteNodeById(Long nodeId)
     {
@@ -649,8 +680,18 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         // Node
         prop.setNodeId(nodeId);
         
-        startBatch();
         int count = 0;
+        if (propertyBatchSize > 1)
+        {
+            for (int i = 0; i < propKeys.size(); i += propertyBatchSize)
+            {
+                prop.setKeys(propKeys.subList(i, Math.min(i + propertyBatchSize, propKeys.size())));
+                count += template.delete(DELETE_NODE_PROPERTIES, prop);
+            }
+            return count;
+        }
+        
+        startBatch();
         try
         {
             for (NodePropertyKey propKey : propKeys)
@@ -676,6 +717,15 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         
         List<NodePropertyEntity> rows = makePersistentRows(nodeId, persistableProps);
         
+        if (propertyBatchSize > 1 && rows.size() > 1 && isMultiRowPropertyInsert())
+        {
+            for (int i = 0; i < rows.size(); i += propertyBatchSize)
+            {
+                template.insert(INSERT_NODE_PROPERTIES, rows.subList(i, Math.min(i + propertyBatchSize, rows.size())));
+            }
+            return;
+        }
+        
         startBatch();
         try
         {
@@ -690,6 +740,25 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         }
     }
 
+    /**
+     * Only some dialects support multi-row <tt>VALUES</tt> and provide the multi-row property insert,
+     * the others insert one row per statement.
+     */
+    private boolean isMultiRowPropertyInsert()
+    {
+        Boolean supported = multiRowPropertyInsert;
+        if (supported == null)
+        {
+            supported = template.getConfiguration().hasStatement(INSERT_NODE_PROPERTIES);
+            if (!supported && logger.isDebugEnabled())
+            {
+                logger.debug("The dialect has no multi-row property insert, property rows are inserted one at a time");
+            }
+            multiRowPropertyInsert = supported;
+        }
+        return supported;
+    }
+
     @Override
     protected Map<NodeVersionKey, Set<QName>> selectNodeAspects(Set<Long> nodeIds)
     {
@@ -29,6 +29,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -74,6 +75,9 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
     
     /**maxim transaction time allowed for {@link #setFixedAcls(Long, Long, Long, Long, List, boolean, AsyncCallParameters, boolean)} */
     private long fixedAclMaxTransactionTime = 10 * 1000;
+    
+    /** maximum number of parents whose primary children are given the shared ACL in one statement */
+    private int primaryChildrenAclUpdateBatchSize = 500;
 
     public void setNodeDAO(NodeDAO nodeDAO)
     {
@@ -90,6 +94,15 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
         this.fixedAclMaxTransactionTime = fixedAclMaxTransactionTime;
     }
     
+    /**
+     * Set the maximum number of sibling nodes whose primary children are given a new shared ACL
+     * in a single update statement while ACLs are propagated down a tree.
+     */
+    public void setPrimaryChildrenAclUpdateBatchSize(int primaryChildrenAclUpdateBatchSize)
+    {
+        this.primaryChildrenAclUpdateBatchSize = Math.max(1, primaryChildrenAclUpdateBatchSize);
+    }
+    
     public void setBehaviourFilter(BehaviourFilter behaviourFilter)
     {
         this.behaviourFilter = behaviourFilter;
@@ -381,6 +394,18 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
      *            in the classical way, will have ASPECT_PENDING_FIX_ACL, which will be used in {@link FixedAclUpdater} for later processing
      */
     public void setFixedAcls(Long nodeId, Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, List<AclChange> changes, boolean set, boolean asyncCall, boolean propagateOnChildren) 
+    {
+        setFixedAcls(nodeId, inheritFrom, mergeFrom, sharedAclToReplace, changes, set, asyncCall, propagateOnChildren, null);
+    }
+    
+    /**
+     * @param knownChildren
+     *            the primary children of the node, read before their ACLs were replaced, if the parent has already
+     *            updated them as part of a batch; otherwise <code>null</code>
+     * @see #setFixedAcls(Long, Long, Long, Long, List, boolean, boolean, boolean)
+     */
+    private void setFixedAcls(Long nodeId, Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, List<AclChange> changes, boolean set, boolean asyncCall, boolean propagateOnChildren,
+            List<NodeIdAndAclId> knownChildren) 
     {
         if (log.isDebugEnabled())
         {
@@ -405,24 +430,35 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
                 nodeDAO.setNodeAclId(nodeId, mergeFrom);
             }
             
-            List<NodeIdAndAclId> children = nodeDAO.getPrimaryChildrenAcls(nodeId);
-            
-            if(children.size() > 0)
+            List<NodeIdAndAclId> children = knownChildren;
+            if (children == null)
             {
-                nodeDAO.setPrimaryChildrenSharedAclId(nodeId, sharedAclToReplace, mergeFrom);
+                children = nodeDAO.getPrimaryChildrenAcls(nodeId);
+                if(children.size() > 0)
+                {
+                    nodeDAO.setPrimaryChildrenSharedAclId(nodeId, sharedAclToReplace, mergeFrom);
+                }
             }
             
             if (!propagateOnChildren)
             {
                 return;
             }
-            for (NodeIdAndAclId child : children)
+            Map<Long, List<NodeIdAndAclId>> grandChildren = null;
+            for (int i = 0; i < children.size(); i++)
             {
+                NodeIdAndAclId child = children.get(i);
+                if (propagateOnChildren && (grandChildren == null || !grandChildren.containsKey(child.getId())))
+                {
+                    // Give the next chunk of inheriting children's own children the shared ACL in one go
+                    grandChildren = setGrandChildrenSharedAcl(children.subList(i, Math.min(children.size(), i + primaryChildrenAclUpdateBatchSize)), sharedAclToReplace, mergeFrom);
+                }
                 Long acl = child.getAclId();
                 
                 if (acl == null)
                 {
-                    propagateOnChildren = setFixAclPending(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, changes, false, asyncCall, propagateOnChildren);
+                    propagateOnChildren = setFixAclPending(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, changes, false, asyncCall, propagateOnChildren,
+                            grandChildren == null ? null : grandChildren.get(child.getId()));
                 }
                 else
                 {
@@ -433,7 +469,8 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
                     // Still has old shared ACL or already replaced
                     if(acl.equals(sharedAclToReplace) || acl.equals(mergeFrom))
                     {
-                        propagateOnChildren = setFixAclPending(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, changes, false, asyncCall, propagateOnChildren);
+                        propagateOnChildren = setFixAclPending(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, changes, false, asyncCall, propagateOnChildren,
+                                grandChildren == null ? null : grandChildren.get(child.getId()));
                     }
                     else
                     {
@@ -460,6 +497,51 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
         }
     }
     
+    /**
+     * Reads the primary children of each node that inherits the shared ACL and then gives those children
+     * the shared ACL using a single multi-parent update, rather than one statement per node.  Replacing
+     * the ACL is idempotent, so nodes that are later deferred to the {@link FixedAclUpdater} are still
+     * processed correctly.
+     * <p>
+     * The transaction time is checked before each node's children are read, so that a slow chunk stops
+     * as soon as the time allowed by {@link #setFixedAclMaxTransactionTime(long)} runs out rather than
+     * after the whole chunk.  The nodes that were not reached are left out of the result.
+     * 
+     * @return the primary children of each node reached, in order, as they were before the update; nodes
+     *         that do not inherit the shared ACL map to <code>null</code>
+     */
+    private Map<Long, List<NodeIdAndAclId>> setGrandChildrenSharedAcl(List<NodeIdAndAclId> children, Long sharedAclToReplace, Long mergeFrom)
+    {
+        Map<Long, List<NodeIdAndAclId>> grandChildren = new LinkedHashMap<>(children.size() * 2);
+        List<Long> parentIds = new ArrayList<>(children.size());
+        for (NodeIdAndAclId child : children)
+        {
+            if (isFixedAclTransactionTimeExceeded())
+            {
+                break;
+            }
+            grandChildren.put(child.getId(), null);
+            Long acl = child.getAclId();
+            if (acl == null || acl.equals(sharedAclToReplace) || acl.equals(mergeFrom))
+            {
+                List<NodeIdAndAclId> childChildren = nodeDAO.getPrimaryChildrenAcls(child.getId());
+                grandChildren.put(child.getId(), childChildren);
+                if (childChildren.size() > 0)
+                {
+                    parentIds.add(child.getId());
+                }
+            }
+        }
+        nodeDAO.setPrimaryChildrenSharedAclId(parentIds, sharedAclToReplace, mergeFrom);
+        return grandChildren;
+    }
+    
+    private boolean isFixedAclTransactionTimeExceeded()
+    {
+        long transactionTime = System.currentTimeMillis() - AlfrescoTransactionSupport.getTransactionStartTime();
+        return transactionTime >= fixedAclMaxTransactionTime;
+    }
+    
     /**
      * Adds ASPECT_PENDING_FIX_ACL aspect to nodes when transactionTime reaches max admitted time
      * MNT-18308: No longer checks if call is async in order to evaluate time passed to decide if nodes should be
@@ -482,11 +564,13 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
      *            if the call was initially set as async
      * @param propagateOnChildren
      *            current setting of child propagation of ACL creation
+     * @param knownChildren
+     *            the node's primary children if they have already been given the shared ACL, otherwise <code>null</code>
      * @return new setting on child propagation of ACL creation
      * 
      */
     private boolean setFixAclPending(Long nodeId, Long inheritFrom, Long mergeFrom, Long sharedAclToReplace,
-            List<AclChange> changes, boolean set, boolean asyncCall, boolean propagateOnChildren)
+            List<AclChange> changes, boolean set, boolean asyncCall, boolean propagateOnChildren, List<NodeIdAndAclId> knownChildren)
     {
         // check transaction time
         long transactionStartTime = AlfrescoTransactionSupport.getTransactionStartTime();
@@ -494,7 +578,7 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
         if (transactionTime < fixedAclMaxTransactionTime)
         {
             // make regular method call if time is under max transaction configured time
-            setFixedAcls(nodeId, inheritFrom, mergeFrom, sharedAclToReplace, changes, set, asyncCall, propagateOnChildren);
+            setFixedAcls(nodeId, inheritFrom, mergeFrom, sharedAclToReplace, changes, set, asyncCall, propagateOnChildren, knownChildren);
             return true;
         }
 
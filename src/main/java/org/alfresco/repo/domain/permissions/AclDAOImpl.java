@@ -1636,7 +1636,7 @@ public class AclDAOImpl implements AclDAO
         return changes;
     }
 
-    private static final String RESOURCE_KEY_ACL_CHANGE_SET_ID = "acl.change.set.id";
+    public static final String RESOURCE_KEY_ACL_CHANGE_SET_ID = "acl.change.set.id";
 
     private UpdateChangeSetListener updateChangeSetListener = new UpdateChangeSetListener();
     /**
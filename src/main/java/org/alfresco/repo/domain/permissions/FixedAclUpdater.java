@@ -35,6 +35,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.batch.BatchProcessor;
@@ -43,6 +47,7 @@ import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
@@ -66,14 +71,20 @@ import org.springframework.context.ApplicationContextAware;
 
 /**
  * Finds nodes with ASPECT_PENDING_FIX_ACL aspect and sets fixed ACLs for them
+ * <p/>
+ * Each pending node is the root of a partition of the tree that is processed in its own transaction,
+ * so partitions are fixed concurrently by the worker threads.  Partitions that cannot be finished within
+ * the configured transaction time mark their unvisited subtrees as pending, and these are picked up by
+ * further passes of the same run, up to {@link #setMaxPasses(int) maxPasses}.
  * 
  * @author Andreea Dragoi
  * @author sglover
  * @since 4.2.7
  */
-public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware
+public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware, FixedAclUpdaterMBean
 {
     private static final Log log = LogFactory.getLog(FixedAclUpdater.class);
+    private static final String MBEAN_NAME = "Alfresco:Name=FixedAclUpdater";
     private static final Set<QName> PENDING_FIX_ACL_ASPECT_PROPS = pendingFixAclAspectProps();
 
     public static final String FIXED_ACL_ASYNC_REQUIRED_KEY = "FIXED_ACL_ASYNC_REQUIRED";
@@ -90,6 +101,21 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
     private int maxItemBatchSize = 100;
     private int numThreads = 4;
+    private int maxPasses = 10;
+    private int prefetchSize = 0;
+    private long adaptiveBatchTargetMillis = 0;
+    private int maxAdaptiveBatchSize = 1000;
+
+    private DynamicMBeanExportOperations mbeanExporter;
+
+    // Progress of the current or last run
+    private volatile boolean running;
+    private volatile BatchProcessor<NodeRef> currentProcessor;
+    private volatile int passPendingNodes;
+    private volatile long passesProcessedNodes;
+    private volatile int passes;
+    private volatile long lastRunStartTime;
+    private volatile long lastRunEndTime;
 
     private ClassPolicyDelegate<OnInheritPermissionsDisabled> onInheritPermissionsDisabledDelegate;    
     private PolicyComponent policyComponent;    
@@ -100,6 +126,51 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.numThreads = numThreads;
     }
 
+    /**
+     * Set the maximum number of passes over the pending nodes made by each run.  Further passes pick
+     * up the partitions deferred by the previous pass.
+     * 
+     * @param maxPasses         the maximum number of passes (at least 1)
+     */
+    public void setMaxPasses(int maxPasses)
+    {
+        this.maxPasses = Math.max(1, maxPasses);
+    }
+
+    /**
+     * @param prefetchSize      the number of pending nodes to look up ahead of the workers, or 0 to look them up
+     *                          between batches
+     */
+    public void setPrefetchSize(int prefetchSize)
+    {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @param adaptiveBatchTargetMillis the transaction duration to adapt the batch size to, or 0 to always use
+     *                          batches of {@link #setMaxItemBatchSize(int) maxItemBatchSize} nodes
+     */
+    public void setAdaptiveBatchTargetMillis(long adaptiveBatchTargetMillis)
+    {
+        this.adaptiveBatchTargetMillis = adaptiveBatchTargetMillis;
+    }
+
+    /**
+     * @param maxAdaptiveBatchSize the largest batch size that adaptive sizing may choose
+     */
+    public void setMaxAdaptiveBatchSize(int maxAdaptiveBatchSize)
+    {
+        this.maxAdaptiveBatchSize = maxAdaptiveBatchSize;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the progress, and the metrics of each pass, over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException
     {
@@ -150,6 +221,94 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     public void init()
     {
         onInheritPermissionsDisabledDelegate = policyComponent.registerClassPolicy(PermissionServicePolicies.OnInheritPermissionsDisabled.class);
+
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                mbeanExporter.registerMBean(this, new ObjectName(MBEAN_NAME));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid MBean name: " + MBEAN_NAME, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    @Override
+    public int getMaxItemBatchSize()
+    {
+        return maxItemBatchSize;
+    }
+
+    @Override
+    public int getPendingNodes()
+    {
+        BatchProcessor<NodeRef> processor = currentProcessor;
+        int processed = (processor == null) ? 0 : processor.getSuccessfullyProcessedEntries();
+        return Math.max(0, passPendingNodes - processed);
+    }
+
+    @Override
+    public long getNodesProcessed()
+    {
+        BatchProcessor<NodeRef> processor = currentProcessor;
+        return passesProcessedNodes + ((processor == null) ? 0 : processor.getSuccessfullyProcessedEntries());
+    }
+
+    @Override
+    public double getNodesPerSecond()
+    {
+        long start = lastRunStartTime;
+        if (start == 0L)
+        {
+            return 0.0;
+        }
+        long end = running ? System.currentTimeMillis() : lastRunEndTime;
+        long elapsed = Math.max(1L, end - start);
+        return getNodesProcessed() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining()
+    {
+        int pending = getPendingNodes();
+        if (pending == 0)
+        {
+            return 0L;
+        }
+        double rate = getNodesPerSecond();
+        return rate > 0.0 ? (long) Math.ceil(pending / rate) : -1L;
+    }
+
+    @Override
+    public int getPasses()
+    {
+        return passes;
+    }
+
+    @Override
+    public long getLastRunStartTime()
+    {
+        return lastRunStartTime;
+    }
+
+    @Override
+    public long getLastRunEndTime()
+    {
+        return lastRunEndTime;
     }
 
     private class GetNodesWithAspects
@@ -387,22 +546,59 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     {
         String lockToken = null;
         FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback = new FixedAclUpdaterJobLockRefreshCallback();
+        boolean started = false;
 
         try
         {
             lockToken = jobLockService.getLock(lockQName, lockTimeToLive, 0, 1);
             jobLockService.refreshLock(lockToken, lockQName, lockRefreshTime, jobLockRefreshCallback);
 
-            AclWorkProvider provider = new AclWorkProvider();
-            AclWorker worker = new AclWorker();
-            BatchProcessor<NodeRef> bp = new BatchProcessor<>(
-                    "FixedAclUpdater",
-                    transactionService.getRetryingTransactionHelper(),
-                    provider,
-                    numThreads, maxItemBatchSize,
-                    applicationContext,
-                    log, 100);
-            int count = bp.process(worker, true);
+            startRun();
+            started = true;
+            int count = 0;
+            while (passes < maxPasses && jobLockRefreshCallback.isActive())
+            {
+                AclWorkProvider provider = new AclWorkProvider();
+                passPendingNodes = provider.getTotalEstimatedWorkSize();
+                if (passPendingNodes == 0)
+                {
+                    break;
+                }
+                passes++;
+                
+                AclWorker worker = new AclWorker();
+                BatchProcessor<NodeRef> bp = new BatchProcessor<>(
+                        "FixedAclUpdater",
+                        transactionService.getRetryingTransactionHelper(),
+                        provider,
+                        numThreads, maxItemBatchSize,
+                        applicationContext,
+                        log, 100);
+                // Isolate failing nodes instead of abandoning the whole batch
+                bp.setSplitFailedBatches(true);
+                bp.setPrefetchSize(prefetchSize);
+                if (adaptiveBatchTargetMillis > 0)
+                {
+                    bp.setAdaptiveBatchSize(1, Math.max(maxAdaptiveBatchSize, 1), adaptiveBatchTargetMillis);
+                }
+                bp.setMbeanExporter(mbeanExporter);
+                currentProcessor = bp;
+                int passCount = bp.process(worker, true);
+                passesProcessedNodes += bp.getSuccessfullyProcessedEntries();
+                passPendingNodes = Math.max(0, passPendingNodes - bp.getSuccessfullyProcessedEntries());
+                currentProcessor = null;
+                count += passCount;
+                
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Fixed ACLs pass " + passes + " processed " + passCount + " of " + passPendingNodes + " pending nodes");
+                }
+                if (passCount == 0)
+                {
+                    // No progress is being made
+                    break;
+                }
+            }
             return count;
         }
         catch (LockAcquisitionException e)
@@ -412,6 +608,10 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
         finally
         {
+            if (started)
+            {
+                endRun();
+            }
             jobLockRefreshCallback.isActive.set(false);
             if(lockToken != null)
             {
@@ -420,6 +620,23 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
     }
 
+    private void startRun()
+    {
+        passes = 0;
+        passPendingNodes = 0;
+        passesProcessedNodes = 0L;
+        lastRunStartTime = System.currentTimeMillis();
+        lastRunEndTime = 0L;
+        running = true;
+    }
+
+    private void endRun()
+    {
+        currentProcessor = null;
+        lastRunEndTime = System.currentTimeMillis();
+        running = false;
+    }
+
     @Override
     public void afterCommit()
     {
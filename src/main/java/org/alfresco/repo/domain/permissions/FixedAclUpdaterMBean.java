@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+/**
+ * Management interface exposing the backlog and progress of the {@link FixedAclUpdater}.
+ * <p/>
+ * Counters cover the current run, or the last completed run if the updater is idle.
+ */
+public interface FixedAclUpdaterMBean
+{
+    /**
+     * @return              <tt>true</tt> if a run is currently in progress on this server
+     */
+    public boolean isRunning();
+
+    /**
+     * @return              the number of threads processing nodes
+     */
+    public int getNumThreads();
+
+    /**
+     * @return              the maximum number of nodes processed per transaction
+     */
+    public int getMaxItemBatchSize();
+
+    /**
+     * @return              the estimated number of nodes still waiting for their ACLs to be fixed
+     */
+    public int getPendingNodes();
+
+    /**
+     * @return              the number of pending nodes processed
+     */
+    public long getNodesProcessed();
+
+    /**
+     * @return              the average number of pending nodes processed per second
+     */
+    public double getNodesPerSecond();
+
+    /**
+     * @return              the estimated number of seconds needed to clear the backlog or <tt>-1</tt> if unknown
+     */
+    public long getEstimatedSecondsRemaining();
+
+    /**
+     * @return              the number of passes over the pending nodes made by the run
+     */
+    public int getPasses();
+
+    /**
+     * @return              the start time of the current or last run (ms since epoch) or <tt>0</tt>
+     */
+    public long getLastRunStartTime();
+
+    /**
+     * @return              the end time of the last run (ms since epoch) or <tt>0</tt> if still running
+     */
+    public long getLastRunEndTime();
+}
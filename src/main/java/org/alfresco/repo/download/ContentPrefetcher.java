@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.util.TempFileProvider;
+import org.alfresco.util.TraceableThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the content of upcoming download entries to local temporary files on a small pool of
+ * threads, keeping a fixed window ahead of the {@link ZipDownloadExporter}.  The exporter then
+ * {@link #take(String) takes} the local copy instead of reading from the content store, so the
+ * store's time-to-first-byte and transfer time overlap with writing the archive.  At most
+ * <tt>window</tt> entries are held on disk at any time.
+ * <p/>
+ * The content URLs are gathered in crawl order by the size estimation pass.  Should the order
+ * differ during the export, or a copy fail, the exporter reads the content from the store as
+ * usual; prefetching never affects the archive content.
+ */
+public class ContentPrefetcher
+{
+    private static final Logger log = LoggerFactory.getLogger(ContentPrefetcher.class);
+
+    private static final String TEMP_FILE_PREFIX = "download-prefetch";
+    private static final String TEMP_FILE_SUFFIX = ".bin";
+
+    private final ContentService contentService;
+    private final List<String> contentUrls;
+    private final int window;
+    private final ExecutorService executor;
+    /** the outstanding copies by content URL; only used by the exporting thread */
+    private final Map<String, Future<File>> copies = new HashMap<String, Future<File>>();
+
+    private int submitted;
+    private int consumed;
+
+    /**
+     * @param contentService    used to obtain raw readers for the content URLs
+     * @param contentUrls       the content URLs in the order they will be exported
+     * @param threads           the number of prefetch threads (1 or greater)
+     * @param window            the number of entries to prefetch ahead of the exporter (1 or greater)
+     */
+    public ContentPrefetcher(ContentService contentService, List<String> contentUrls, int threads, int window)
+    {
+        this.contentService = contentService;
+        this.contentUrls = contentUrls;
+        this.window = window;
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("DownloadPrefetch");
+        this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * Submit the first window of entries.
+     */
+    public void start()
+    {
+        fill();
+    }
+
+    /**
+     * Record that the exporter has reached the next content entry, top up the window and hand
+     * over the local copy of the entry's content, waiting for it to complete if necessary.
+     * 
+     * @param contentUrl        the content URL of the entry (may be <tt>null</tt>)
+     * @return                  a local copy of the content, which the caller must delete, or
+     *                          <tt>null</tt> if the content has to be read from the store
+     */
+    public File take(String contentUrl)
+    {
+        consumed++;
+        Future<File> copy = contentUrl == null ? null : copies.remove(contentUrl);
+        fill();
+        if (copy == null)
+        {
+            return null;
+        }
+        try
+        {
+            return copy.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            // The exporter will report the problem if the content really is unreadable
+            log.debug("Failed to prefetch content {}", contentUrl, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Abandon any outstanding prefetches and delete the copies not taken.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        for (Future<File> copy : copies.values())
+        {
+            if (!copy.cancel(true))
+            {
+                deleteCopy(copy);
+            }
+        }
+        copies.clear();
+    }
+
+    private void fill()
+    {
+        int limit = Math.min(contentUrls.size(), consumed + window);
+        while (submitted < limit)
+        {
+            final String contentUrl = contentUrls.get(submitted++);
+            if (contentUrl != null && !copies.containsKey(contentUrl))
+            {
+                copies.put(contentUrl, executor.submit(() -> prefetch(contentUrl)));
+            }
+        }
+    }
+
+    private File prefetch(String contentUrl)
+    {
+        ContentReader reader = contentService.getRawReader(contentUrl);
+        File file = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        try
+        {
+            reader.getContent(file);
+        }
+        catch (RuntimeException e)
+        {
+            file.delete();
+            throw e;
+        }
+        if (executor.isShutdown())
+        {
+            // Nobody is going to take it
+            file.delete();
+            return null;
+        }
+        return file;
+    }
+
+    private void deleteCopy(Future<File> copy)
+    {
+        try
+        {
+            File file = copy.get();
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            // Nothing was left behind
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.alfresco.model.ContentModel;
@@ -49,6 +50,7 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -86,22 +88,28 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
     private DictionaryService dictionaryService;
+    private ContentService contentService;
 
     private long maximumContentSize = -1l;
+    private int prefetchThreads = 0;
+    private int prefetchWindow = 8;
     
     private static class SizeEstimator extends BaseExporter 
     {
         /**
          * @param checkOutCheckInService CheckOutCheckInService
          * @param nodeService NodeService
+         * @param recordContentUrls boolean
          */
-        SizeEstimator(CheckOutCheckInService checkOutCheckInService, NodeService nodeService)
+        SizeEstimator(CheckOutCheckInService checkOutCheckInService, NodeService nodeService, boolean recordContentUrls)
         {
             super(checkOutCheckInService, nodeService);
+            this.contentUrls = recordContentUrls ? new ArrayList<String>() : null;
         }
 
         private long size = 0;
         private long fileCount = 0;
+        private final List<String> contentUrls;
 
 
         @Override
@@ -109,6 +117,18 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         {
             size = size + contentData.getSize();
             fileCount = fileCount + 1;
+            if (contentUrls != null && content != null)
+            {
+                contentUrls.add(contentData.getContentUrl());
+            }
+        }
+
+        /**
+         * @return the URLs of the exported content in crawl order, or <tt>null</tt> if not recorded
+         */
+        public List<String> getContentUrls()
+        {
+            return contentUrls;
         }
 
         public long getSize()
@@ -174,6 +194,36 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.dictionaryService = dictionaryService;
     }
 
+    /**
+     * Set the content service used to prefetch content ahead of the archive writer.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * Set the number of threads warming the content of upcoming archive entries.
+     * 0 (the default) disables prefetching.
+     */
+    public void setPrefetchThreads(int prefetchThreads)
+    {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    /**
+     * Set the number of archive entries that are prefetched ahead of the archive writer.
+     */
+    public void setPrefetchWindow(int prefetchWindow)
+    {
+        this.prefetchWindow = prefetchWindow;
+    }
+
+    private boolean isPrefetchEnabled()
+    {
+        return prefetchThreads > 0 && prefetchWindow > 0 && contentService != null;
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -207,7 +257,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
                 crawlerParameters.setExcludeAspects(new QName[] {ContentModel.ASPECT_WORKING_COPY});
         
                 // Get an estimate of the size for statuses
-                SizeEstimator estimator = new SizeEstimator(checkOutCheckInService, nodeService);
+                SizeEstimator estimator = new SizeEstimator(checkOutCheckInService, nodeService, isPrefetchEnabled());
                 exporterService.exportView(estimator, crawlerParameters, null);
                 
                 if (maximumContentSize > 0 && estimator.getSize() > maximumContentSize) 
@@ -254,6 +304,12 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        ContentPrefetcher prefetcher = null;
+        if (estimator.getContentUrls() != null && estimator.getContentUrls().size() > 1)
+        {
+            prefetcher = new ContentPrefetcher(contentService, estimator.getContentUrls(), prefetchThreads, prefetchWindow);
+            handler.setContentPrefetcher(prefetcher);
+        }
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -265,6 +321,10 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            if (prefetcher != null)
+            {
+                prefetcher.shutdown();
+            }
             tempFile.delete();
         }
     }
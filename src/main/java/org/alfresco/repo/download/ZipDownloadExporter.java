@@ -26,16 +26,20 @@
 package org.alfresco.repo.download;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
@@ -66,6 +70,31 @@ public class ZipDownloadExporter extends BaseExporter
     private static Logger log = LoggerFactory.getLogger(ZipDownloadExporter.class);
     
     private static final String PATH_SEPARATOR = "/";
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** ALF-16289 - only update the status every 10MB */
+    private static final int READS_PER_STATUS_UPDATE = (10 * 1024 * 1024) / BUFFER_SIZE;
+    
+    /**
+     * Formats that are already compressed.  These are added to the archive with the STORED
+     * method, as deflating them again costs CPU for little or no reduction in size.
+     */
+    private static final Set<String> COMPRESSED_MIMETYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            MimetypeMap.MIMETYPE_IMAGE_JPEG,
+            MimetypeMap.MIMETYPE_IMAGE_PNG,
+            MimetypeMap.MIMETYPE_IMAGE_GIF,
+            MimetypeMap.MIMETYPE_MP3,
+            MimetypeMap.MIMETYPE_AUDIO_MP4,
+            MimetypeMap.MIMETYPE_ZIP,
+            MimetypeMap.MIMETYPE_OPENXML_WORDPROCESSING,
+            MimetypeMap.MIMETYPE_OPENXML_SPREADSHEET,
+            MimetypeMap.MIMETYPE_OPENXML_PRESENTATION,
+            MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT,
+            MimetypeMap.MIMETYPE_OPENDOCUMENT_SPREADSHEET,
+            MimetypeMap.MIMETYPE_OPENDOCUMENT_PRESENTATION,
+            "application/x-gzip",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed")));
 
     protected ZipArchiveOutputStream zipStream;
 
@@ -84,7 +113,9 @@ public class ZipDownloadExporter extends BaseExporter
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
-    private OutputStream outputStream;
+    private File zipFile;
+    private ContentPrefetcher prefetcher;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
 
     /**
      * Construct
@@ -103,28 +134,42 @@ public class ZipDownloadExporter extends BaseExporter
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, DictionaryService dictionaryService, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.zipFile = zipFile;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        this.dictionaryService = dictionaryService;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    /**
+     * @param prefetcher    optional component copying the content of upcoming entries locally
+     */
+    public void setContentPrefetcher(ContentPrefetcher prefetcher)
+    {
+        this.prefetcher = prefetcher;
+    }
+
+    @Override
+    public void start(final ExporterContext context)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            this.dictionaryService = dictionaryService;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            // Writing to the file directly (rather than a stream) allows STORED entries
+            // to be written without knowing their size and CRC up front
+            zipStream = new ZipArchiveOutputStream(zipFile);
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ExporterException("Failed to create zip file", e);
         }
-    }
-
-    @Override
-    public void start(final ExporterContext context)
-    {
-        zipStream = new ZipArchiveOutputStream(outputStream);
+        if (prefetcher != null)
+        {
+            prefetcher.start();
+        }
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
@@ -163,14 +208,34 @@ public class ZipDownloadExporter extends BaseExporter
             return;
         }
         
+        File prefetched = null;
+        if (prefetcher != null)
+        {
+            prefetched = prefetcher.take(contentData == null ? null : contentData.getContentUrl());
+        }
+        
         try
         {
             // ALF-2016
             ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
+            if (contentData != null && isCompressed(contentData.getMimetype()))
+            {
+                zipEntry.setMethod(ZipArchiveEntry.STORED);
+            }
             zipStream.putArchiveEntry(zipEntry);
             
-            // copy export stream to zip
-            copyStream(zipStream, content);
+            // copy export stream to zip, preferring the local copy if there is one
+            if (prefetched != null)
+            {
+                try (InputStream in = new FileInputStream(prefetched))
+                {
+                    copyStream(zipStream, in);
+                }
+            }
+            else
+            {
+                copyStream(zipStream, content);
+            }
             
             zipStream.closeArchiveEntry();
             filesAddedCount = filesAddedCount + 1;
@@ -179,6 +244,13 @@ public class ZipDownloadExporter extends BaseExporter
         {
             throw new ExporterException("Failed to zip export stream", e);
         }
+        finally
+        {
+            if (prefetched != null)
+            {
+                prefetched.delete();
+            }
+        }
     }
     
     @Override
@@ -200,6 +272,22 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Determine whether content of the given type is already compressed and should
+     * be stored in the archive as-is.
+     * 
+     * @param mimetype      the content mimetype (may be <tt>null</tt>)
+     * @return              <tt>true</tt> if the content should not be deflated again
+     */
+    protected boolean isCompressed(String mimetype)
+    {
+        if (mimetype == null)
+        {
+            return false;
+        }
+        return COMPRESSED_MIMETYPES.contains(mimetype) || mimetype.startsWith("video/");
+    }
+
     private String getPath()
     {
         if (path.size() < 1) 
@@ -234,8 +322,7 @@ public class ZipDownloadExporter extends BaseExporter
     private void copyStream(OutputStream output, InputStream in)
         throws IOException
     {
-        byte[] buffer = new byte[2048 * 10];
-        int read = in.read(buffer, 0, 2048 *10);
+        int read = in.read(buffer, 0, BUFFER_SIZE);
         int i = 0;
         while (read != -1)
         {
@@ -243,13 +330,13 @@ public class ZipDownloadExporter extends BaseExporter
             done = done + read;
             
             // ALF-16289 - only update the status every 10MB
-            if (i++%500 == 0)
+            if (i++%READS_PER_STATUS_UPDATE == 0)
             {
                 updateStatus();
                 checkCancelled();
             }
             
-            read = in.read(buffer, 0, 2048 *10);
+            read = in.read(buffer, 0, BUFFER_SIZE);
         }
     }
     
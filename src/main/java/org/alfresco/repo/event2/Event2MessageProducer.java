@@ -60,15 +60,34 @@ public class Event2MessageProducer extends AbstractEventProducer implements Init
         send(this.endpoint, null, event, null);
     }
 
+    /**
+     * Serialise an event to JSON, so that it can be held and sent later as it is
+     *
+     * @param event the event, which is returned as it is if it is already serialised
+     * @return the JSON representation of the event
+     */
+    public String serialize(Object event)
+    {
+        if (event instanceof String)
+        {
+            return (String) event;
+        }
+        try
+        {
+            return this.objectMapper.writeValueAsString(event);
+        }
+        catch (Exception e)
+        {
+            throw new AlfrescoRuntimeException(ERROR_SENDING, e);
+        }
+    }
+
     @Override
     public void send(String endpointUri, ExchangePattern exchangePattern, Object event, Map<String, Object> headers)
     {
         try
         {
-            if (!(event instanceof String))
-            {
-                event = this.objectMapper.writeValueAsString(event);
-            }
+            event = serialize(event);
             if (exchangePattern == null)
             {
                 exchangePattern = ExchangePattern.InOnly;
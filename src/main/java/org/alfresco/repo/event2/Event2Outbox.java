@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.WriteBehindSpool;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A durable, bounded, in-process outbox for repository events.
+ * <p/>
+ * Events are serialised once on the committing thread and appended, in commit order, to a {@link WriteBehindSpool}
+ * in the outbox directory. A single sender thread hands the events to the {@link EventSender} in batches, so that
+ * they leave in the order they were committed, and checkpoints each sent batch so that a restart replays only the
+ * events that were not sent. When the in-memory queue is full, committing threads wait up to
+ * {@link #setMaxBlockMillis(long) maxBlockMillis} for space and then leave the events to be read back from disk.
+ * <p/>
+ * A batch that can not be sent is retried, waiting twice as long after each failure up to
+ * {@link #setMaxRetryWaitMillis(long) maxRetryWaitMillis}. After {@link #setMaxRetries(int) maxRetries} retries the
+ * batch is moved to the {@link #FAILED_FILE_NAME failed events file} so that it does not hold back the events behind
+ * it.
+ */
+public class Event2Outbox
+{
+    private static final Log LOGGER = LogFactory.getLog(Event2Outbox.class);
+
+    static final String SPOOL_NAME = "outbox";
+    static final String FAILED_FILE_NAME = SPOOL_NAME + WriteBehindSpool.FAILED_SUFFIX;
+
+    /** events are held as UTF-8 */
+    static final WriteBehindSpool.Codec<String> CODEC = new WriteBehindSpool.Codec<String>()
+    {
+        @Override
+        public byte[] encode(String event)
+        {
+            return event.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] data)
+        {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Sends a batch of serialised events to the broker
+     */
+    public interface EventSender
+    {
+        void send(List<String> events);
+    }
+
+    private boolean enabled = false;
+    private File directory;
+    private int capacity = 10000;
+    private int batchSize = 100;
+    private long maxBlockMillis = 1000;
+    private long retryWaitMillis = 5000;
+    private long maxRetryWaitMillis = 300000;
+    private int maxRetries = 10;
+    private long maxLogSize = 64 * 1024 * 1024;
+    private boolean syncOnAppend = false;
+    private EventSender eventSender;
+    private Event2MessageProducer event2MessageProducer;
+    private TransactionService transactionService;
+
+    private WriteBehindSpool<String> spool;
+    /**
+     * @param enabled <tt>true</tt> to send events through the outbox rather than on the committing thread
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param directory the directory holding the spooled, checkpoint and failed events
+     */
+    public void setDirectory(String directory)
+    {
+        this.directory = new File(directory);
+    }
+
+    /**
+     * @param capacity the maximum number of events held in memory waiting to be sent
+     */
+    public void setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param batchSize the maximum number of events sent together
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxBlockMillis how long a committing thread waits for space in a full queue
+     */
+    public void setMaxBlockMillis(long maxBlockMillis)
+    {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * @param retryWaitMillis how long the sender waits before first retrying a batch that could not be sent
+     */
+    public void setRetryWaitMillis(long retryWaitMillis)
+    {
+        this.retryWaitMillis = retryWaitMillis;
+    }
+
+    /**
+     * @param maxRetryWaitMillis the longest the sender waits between retries of a batch that could not be sent
+     */
+    public void setMaxRetryWaitMillis(long maxRetryWaitMillis)
+    {
+        this.maxRetryWaitMillis = maxRetryWaitMillis;
+    }
+
+    /**
+     * @param maxRetries the number of times a batch is retried before it is moved to the failed events file, or
+     *                   <tt>-1</tt> to retry until it is sent
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param maxLogSize the spool size in bytes beyond which a fully sent spool is truncated
+     */
+    public void setMaxLogSize(long maxLogSize)
+    {
+        this.maxLogSize = maxLogSize;
+    }
+
+    /**
+     * @param syncOnAppend <tt>true</tt> to force appended events to disk before the committing thread continues
+     */
+    public void setSyncOnAppend(boolean syncOnAppend)
+    {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * @param eventSender the sender to use, overriding the default of sending through the message producer
+     */
+    public void setEventSender(EventSender eventSender)
+    {
+        this.eventSender = eventSender;
+    }
+
+    public void setEvent2MessageProducer(Event2MessageProducer event2MessageProducer)
+    {
+        this.event2MessageProducer = event2MessageProducer;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Open the spool, work out what still has to be sent and start the sender thread
+     */
+    public void init()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "directory", directory);
+        if (eventSender == null)
+        {
+            PropertyCheck.mandatory(this, "event2MessageProducer", event2MessageProducer);
+            PropertyCheck.mandatory(this, "transactionService", transactionService);
+            eventSender = new ProducerEventSender();
+        }
+
+        spool = new WriteBehindSpool<String>(SPOOL_NAME, CODEC, eventSender::send);
+        spool.setThreadNamePrefix("Event2OutboxSender");
+        spool.setDirectory(directory);
+        spool.setSyncOnAppend(syncOnAppend);
+        spool.setCapacity(capacity);
+        spool.setBatchSize(batchSize);
+        spool.setMaxBlockMillis(maxBlockMillis);
+        spool.setRetryWaitMillis(retryWaitMillis);
+        spool.setMaxRetryWaitMillis(maxRetryWaitMillis);
+        spool.setMaxRetries(maxRetries);
+        spool.setMaxSpoolSize(maxLogSize);
+        spool.start();
+
+        if (LOGGER.isInfoEnabled())
+        {
+            LOGGER.info("Event outbox started in " + directory + " with " + spool.getPendingCount() + " events to replay.");
+        }
+    }
+
+    /**
+     * Stop the sender thread and close the spool.  Events not yet sent are replayed on the next start.
+     */
+    public void destroy()
+    {
+        if (spool != null)
+        {
+            spool.stop();
+        }
+    }
+
+    /**
+     * Append the serialised events of one transaction to the outbox
+     * 
+     * @param events the events, in the order they should be sent
+     */
+    public void append(List<String> events)
+    {
+        if (spool == null || !spool.isRunning())
+        {
+            throw new AlfrescoRuntimeException("The event outbox is not running");
+        }
+        spool.append(events);
+    }
+
+    /**
+     * @return the number of events waiting in memory to be sent
+     */
+    public int getQueueDepth()
+    {
+        return spool == null ? 0 : spool.getQueueDepth();
+    }
+
+    /**
+     * @return the number of appended events that have not been sent yet, including any only held on disk
+     */
+    public long getPendingCount()
+    {
+        return spool == null ? 0L : spool.getPendingCount();
+    }
+
+    /**
+     * @return the time in milliseconds between the last sent batch being appended and being sent
+     */
+    public long getLastLagMillis()
+    {
+        return spool == null ? 0L : spool.getLastLagMillis();
+    }
+
+    /**
+     * @return the time in milliseconds taken to send the last batch
+     */
+    public long getLastSendLatencyMillis()
+    {
+        return spool == null ? 0L : spool.getLastLatencyMillis();
+    }
+
+    /**
+     * @return the mean time in milliseconds taken to send a batch
+     */
+    public double getMeanSendLatencyMillis()
+    {
+        return spool == null ? 0.0 : spool.getMeanLatencyMillis();
+    }
+
+    public long getSentCount()
+    {
+        return spool == null ? 0L : spool.getHandledCount();
+    }
+
+    public long getFailedSendCount()
+    {
+        return spool == null ? 0L : spool.getFailedCount();
+    }
+
+    /**
+     * @return the number of events that did not fit in the queue and were read back from disk
+     */
+    public long getOverflowCount()
+    {
+        return spool == null ? 0L : spool.getOverflowCount();
+    }
+
+    /**
+     * @return the number of events moved to the failed events file after running out of retries
+     */
+    public long getAbandonedCount()
+    {
+        return spool == null ? 0L : spool.getAbandonedCount();
+    }
+
+    /**
+     * Sends each event through the message producer within a read-only transaction, as Camel expects
+     */
+    private class ProducerEventSender implements EventSender
+    {
+        @Override
+        public void send(final List<String> events)
+        {
+            transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
+                for (String event : events)
+                {
+                    event2MessageProducer.send(event);
+                }
+                return null;
+            }, true, true);
+        }
+    }
+}
@@ -28,8 +28,10 @@ package org.alfresco.repo.event2;
 import java.io.Serializable;
 import java.net.URI;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -90,6 +92,7 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
     private DescriptorService descriptorService;
     private EventFilterRegistry eventFilterRegistry;
     private Event2MessageProducer event2MessageProducer;
+    private Event2Outbox event2Outbox;
     private TransactionService transactionService;
     private PersonService personService;
     private NodeResourceHelper nodeResourceHelper;
@@ -182,6 +185,15 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
         this.event2MessageProducer = event2MessageProducer;
     }
 
+    /**
+     * @param event2Outbox the outbox used to send events asynchronously; when not set or disabled, events are sent on
+     *                     the committing thread
+     */
+    public void setEvent2Outbox(Event2Outbox event2Outbox)
+    {
+        this.event2Outbox = event2Outbox;
+    }
+
     public void setTransactionService(TransactionService transactionService)
     {
         this.transactionService = transactionService;
@@ -396,26 +408,38 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
             try
             {
                 final Consolidators consolidators = getTxnConsolidators(this);
+                // When the outbox is in use the events are collected and handed over in one go
+                final List<RepoEvent<?>> outboxEvents = (event2Outbox != null && event2Outbox.isEnabled()) ? new ArrayList<>() : null;
 
                 // Node events
                 for (Map.Entry<NodeRef, EventConsolidator> entry : consolidators.getNodes().entrySet())
                 {
                     EventConsolidator eventConsolidator = entry.getValue();
-                    sendEvent(entry.getKey(), eventConsolidator);
+                    sendEvent(entry.getKey(), eventConsolidator, outboxEvents);
                 }
 
                 // Child assoc events
                 for (Map.Entry<ChildAssociationRef, ChildAssociationEventConsolidator> entry : consolidators.getChildAssocs().entrySet())
                 {
                     ChildAssociationEventConsolidator eventConsolidator = entry.getValue();
-                    sendEvent(entry.getKey(), eventConsolidator);
+                    sendEvent(entry.getKey(), eventConsolidator, outboxEvents);
                 }
 
                 // Peer assoc events
                 for (Map.Entry<AssociationRef, PeerAssociationEventConsolidator> entry : consolidators.getPeerAssocs().entrySet())
                 {
                     PeerAssociationEventConsolidator eventConsolidator = entry.getValue();
-                    sendEvent(entry.getKey(), eventConsolidator);
+                    sendEvent(entry.getKey(), eventConsolidator, outboxEvents);
+                }
+
+                if (outboxEvents != null && !outboxEvents.isEmpty())
+                {
+                    List<String> serializedEvents = new ArrayList<>(outboxEvents.size());
+                    for (RepoEvent<?> event : outboxEvents)
+                    {
+                        serializedEvents.add(event2MessageProducer.serialize(event));
+                    }
+                    event2Outbox.append(serializedEvents);
                 }
             }
             catch (Exception e)
@@ -425,7 +449,7 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
             }
         }
 
-        private void sendEvent(NodeRef nodeRef, EventConsolidator consolidator)
+        private void sendEvent(NodeRef nodeRef, EventConsolidator consolidator, List<RepoEvent<?>> outboxEvents)
         {
             if (consolidator.isTemporaryNode())
             {
@@ -463,10 +487,11 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
                 return;
             }
 
-            logAndSendEvent(event, consolidator.getEventTypes());
+            logAndSendEvent(event, consolidator.getEventTypes(), outboxEvents);
         }
 
-        private void sendEvent(ChildAssociationRef childAssociationRef, ChildAssociationEventConsolidator consolidator)
+        private void sendEvent(ChildAssociationRef childAssociationRef, ChildAssociationEventConsolidator consolidator,
+                               List<RepoEvent<?>> outboxEvents)
         {
             if (consolidator.isTemporaryChildAssociation())
             {
@@ -503,10 +528,11 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
                 return;
             }
 
-            logAndSendEvent(event, consolidator.getEventTypes());
+            logAndSendEvent(event, consolidator.getEventTypes(), outboxEvents);
         }
 
-        private void sendEvent(AssociationRef peerAssociationRef, PeerAssociationEventConsolidator consolidator)
+        private void sendEvent(AssociationRef peerAssociationRef, PeerAssociationEventConsolidator consolidator,
+                               List<RepoEvent<?>> outboxEvents)
         {
             if (consolidator.isTemporaryPeerAssociation())
             {
@@ -522,16 +548,21 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
             // so we can take the latest association info into account
             final RepoEvent<?> event = consolidator.getRepoEvent(getEventInfo(user));
 
-            logAndSendEvent(event, consolidator.getEventTypes());
+            logAndSendEvent(event, consolidator.getEventTypes(), outboxEvents);
         }
 
-        private void logAndSendEvent(RepoEvent<?> event, Deque<EventType> listOfEvents)
+        private void logAndSendEvent(RepoEvent<?> event, Deque<EventType> listOfEvents, List<RepoEvent<?>> outboxEvents)
         {
             if (LOGGER.isTraceEnabled())
             {
                 LOGGER.trace("List of Events:" + listOfEvents);
                 LOGGER.trace("Sending event:" + event);
             }
+            if (outboxEvents != null)
+            {
+                outboxEvents.add(event);
+                return;
+            }
             // Need to execute this in another read txn because Camel expects it
             transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
                 event2MessageProducer.send(event);
@@ -666,7 +666,8 @@ public class ExporterComponent
                 }
                 else
                 {
-                    InputStream inputStream = reader.getContentInputStream();
+                    // The store stream is only opened if the exporter reads the content
+                    InputStream inputStream = new ContentReaderInputStream(reader);
                     try
                     {
                         exporter.content(nodeRef, property, inputStream, reader.getContentData(), index);
@@ -1250,4 +1251,62 @@ public class ExporterComponent
 
     }
     
+    /**
+     * Input stream that defers opening the content reader's stream until the content is first
+     * read, so exporters that only need the content data, or that hold a copy of the content,
+     * do not open a store connection per entry.
+     */
+    private static class ContentReaderInputStream extends InputStream
+    {
+        private final ContentReader reader;
+        private InputStream in;
+        
+        private ContentReaderInputStream(ContentReader reader)
+        {
+            this.reader = reader;
+        }
+        
+        private InputStream getStream()
+        {
+            if (in == null)
+            {
+                in = reader.getContentInputStream();
+            }
+            return in;
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+            return getStream().read();
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return getStream().read(b, off, len);
+        }
+        
+        @Override
+        public long skip(long n) throws IOException
+        {
+            return getStream().skip(n);
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+            return in == null ? 0 : in.available();
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            if (in != null)
+            {
+                in.close();
+            }
+        }
+    }
+    
 }
@@ -336,9 +336,20 @@ public interface ImapService
         public final long uidValidity;
         public final String changeToken;
         public final NavigableMap<Long, FileInfo> search;
+        /** The flags of each message when the status was built, keyed by UID, or <tt>null</tt> if not known */
+        final NavigableMap<Long, Flags> flags;
 
+        /**
+         * A status without the flags of each message, which can not be updated from the messages changed since
+         */
         public FolderStatus(int messageCount, int recentCount, int firstUnseen, int unseenCount, long uidValidity,
                 String changeToken, NavigableMap<Long, FileInfo> search)
+        {
+            this(messageCount, recentCount, firstUnseen, unseenCount, uidValidity, changeToken, search, null);
+        }
+
+        public FolderStatus(int messageCount, int recentCount, int firstUnseen, int unseenCount, long uidValidity,
+                String changeToken, NavigableMap<Long, FileInfo> search, NavigableMap<Long, Flags> flags)
         {
             this.messageCount = messageCount;
             this.recentCount = recentCount;
@@ -347,6 +358,7 @@ public interface ImapService
             this.uidValidity = uidValidity;
             this.changeToken = changeToken;
             this.search = search;
+            this.flags = flags;
         }
     }
 
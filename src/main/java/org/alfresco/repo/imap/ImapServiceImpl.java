@@ -46,6 +46,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.mail.Flags;
@@ -64,6 +65,8 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.imap.AlfrescoImapConst.ImapViewMode;
 import org.alfresco.repo.imap.config.ImapConfigMountPointsBean;
 import org.alfresco.repo.imap.exception.AlfrescoImapRuntimeException;
+import org.alfresco.repo.model.filefolder.HiddenAspect;
+import org.alfresco.repo.model.filefolder.HiddenAspect.Visibility;
 import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
 import org.alfresco.repo.node.NodeServicePolicies.OnCreateChildAssociationPolicy;
 import org.alfresco.repo.node.NodeServicePolicies.OnDeleteChildAssociationPolicy;
@@ -154,6 +157,13 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     // change token.  Key is username, changeToken
     private Map<Pair<String, String>, FolderStatus> folderCache;
     private int folderCacheSize = 1000;
+    // The messages changed in folders by transactions committed on this server, so that a cached folder
+    // status can be brought up to date without listing the folder again.  Key is the new changeToken.
+    private Map<String, FolderChange> folderChanges;
+    // The number of folder statuses brought up to date from an older status, and worked out by listing the folder
+    private final AtomicLong folderStatusUpdates = new AtomicLong();
+    private final AtomicLong folderStatusListings = new AtomicLong();
+    private HiddenAspect hiddenAspect;
     private ReentrantReadWriteLock folderCacheLock = new ReentrantReadWriteLock();
     private SimpleCache<NodeRef, CacheItem> messageCache;
     private Map<String, ImapConfigMountPointsBean> imapConfigMountPoints;
@@ -289,6 +299,31 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     {
         this.folderCacheSize = folderCacheSize;
     }
+    
+    /**
+     * @return the number of folder statuses brought up to date from an older status of the folder
+     */
+    long getFolderStatusUpdateCount()
+    {
+        return folderStatusUpdates.get();
+    }
+    
+    /**
+     * @return the number of folder statuses worked out by listing the folder
+     */
+    long getFolderStatusListingCount()
+    {
+        return folderStatusListings.get();
+    }
+    
+    /**
+     * @param hiddenAspect      used to check that changed messages are still visible to IMAP clients
+     *                          when updating a cached folder status
+     */
+    public void setHiddenAspect(HiddenAspect hiddenAspect)
+    {
+        this.hiddenAspect = hiddenAspect;
+    }
 
     public String getDefaultFromAddress()
     {
@@ -392,6 +427,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         PropertyCheck.mandatory(this, "namespaceService", namespaceService);
         PropertyCheck.mandatory(this, "searchService", getSearchService());
         this.folderCache = new MaxSizeMap<Pair<String,String>, FolderStatus>(folderCacheSize, false);
+        this.folderChanges = new MaxSizeMap<String, FolderChange>(folderCacheSize, false);
         
         // be sure that a default e-mail is correct
         try
@@ -854,6 +890,8 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         }, AuthenticationUtil.getSystemUserName());
 
         Pair<String, String> cacheKey = null;
+        FolderStatus previousResult = null;
+        Set<NodeRef> changedNodeRefs = new HashSet<NodeRef>();
         if (changeToken != null)
         {
             cacheKey = new Pair<String, String>(userName, changeToken);
@@ -865,6 +903,15 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                 {
                     return result;
                 }
+                // Look for an older status of the folder and the messages changed since
+                String token = changeToken;
+                FolderChange folderChange;
+                while (previousResult == null && (folderChange = this.folderChanges.get(token)) != null)
+                {
+                    changedNodeRefs.addAll(folderChange.changedNodeRefs);
+                    token = folderChange.previousChangeToken;
+                    previousResult = this.folderCache.get(new Pair<String, String>(userName, token));
+                }
             }
             finally
             {
@@ -872,52 +919,65 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             }
         }
         
-        List<FileInfo> fileInfos = null;
-        FileFilterMode.setClient(Client.imap);
-        try
-        {
-            fileInfos = fileFolderService.listFiles(contextNodeRef);
-        }
-        finally
-        {
-            FileFilterMode.clearClient();
-        }
-        
         final NavigableMap<Long, FileInfo> currentSearch = new TreeMap<Long, FileInfo>();
-
-        switch (viewMode)
+        NavigableMap<Long, Flags> currentFlags = new TreeMap<Long, Flags>();
+        
+        if (previousResult != null && previousResult.flags != null)
         {
-        case MIXED:
-            for (FileInfo fileInfo : fileInfos)
+            // Only the changed messages need to be looked at again
+            for (Map.Entry<Long, FileInfo> entry : previousResult.search.entrySet())
             {
-                currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
+                if (!changedNodeRefs.contains(entry.getValue().getNodeRef()))
+                {
+                    currentSearch.put(entry.getKey(), entry.getValue());
+                    currentFlags.put(entry.getKey(), previousResult.flags.get(entry.getKey()));
+                }
             }
-            break;
-        case ARCHIVE:
-            for (FileInfo fileInfo : fileInfos)
+            for (NodeRef changedNodeRef : changedNodeRefs)
             {
-                if (nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+                FileInfo fileInfo = getFolderMessage(contextNodeRef, changedNodeRef);
+                if (fileInfo != null && isInView(changedNodeRef, viewMode))
                 {
-                    currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
+                    Long uid = (Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID);
+                    currentSearch.put(uid, fileInfo);
+                    currentFlags.put(uid, getFlags(fileInfo));
                 }
             }
-            break;
-        case VIRTUAL:
+            folderStatusUpdates.incrementAndGet();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Updated folder status from changeToken:" + previousResult.changeToken + " with " + changedNodeRefs.size() + " changed messages");
+            }
+        }
+        else
+        {
+            folderStatusListings.incrementAndGet();
+            List<FileInfo> fileInfos = null;
+            FileFilterMode.setClient(Client.imap);
+            try
+            {
+                fileInfos = fileFolderService.listFiles(contextNodeRef);
+            }
+            finally
+            {
+                FileFilterMode.clearClient();
+            }
+            
             for (FileInfo fileInfo : fileInfos)
             {
-                if (!nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+                if (isInView(fileInfo.getNodeRef(), viewMode))
                 {
-                    currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
+                    Long uid = (Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID);
+                    currentSearch.put(uid, fileInfo);
+                    currentFlags.put(uid, getFlags(fileInfo));
                 }
             }
-            break;
         }
 
         int messageCount = currentSearch.size(), recentCount = 0, unseenCount = 0, firstUnseen = 0;
         int i = 1;
-        for (FileInfo fileInfo : currentSearch.values())
+        for (Flags flags : currentFlags.values())
         {
-            Flags flags = getFlags(fileInfo);
             if (flags.contains(Flags.Flag.RECENT))
             {
                 recentCount++;
@@ -952,7 +1012,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         }
         Long uidValidity = (Long) nodeService.getProperty(contextNodeRef, ImapModel.PROP_UIDVALIDITY);
         FolderStatus result = new FolderStatus(messageCount, recentCount, firstUnseen, unseenCount,
-                uidValidity == null ? 0 : uidValidity, changeToken, currentSearch);
+                uidValidity == null ? 0 : uidValidity, changeToken, currentSearch, currentFlags);
         this.folderCacheLock.writeLock().lock();
         try
         {
@@ -980,6 +1040,68 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         }
     }
 
+    /**
+     * @return true if the message belongs in a folder with the given view mode
+     */
+    private boolean isInView(NodeRef nodeRef, ImapViewMode viewMode)
+    {
+        switch (viewMode)
+        {
+        case ARCHIVE:
+            return nodeService.hasAspect(nodeRef, ImapModel.ASPECT_IMAP_CONTENT);
+        case VIRTUAL:
+            return !nodeService.hasAspect(nodeRef, ImapModel.ASPECT_IMAP_CONTENT);
+        default:
+            return true;
+        }
+    }
+    
+    /**
+     * Get a changed message as it would be listed in a folder for the current user.
+     * 
+     * @return the message or <tt>null</tt> if it is no longer listed in the folder
+     */
+    private FileInfo getFolderMessage(final NodeRef folderNodeRef, final NodeRef nodeRef)
+    {
+        // Make the checks of the folder listing that do not depend on the user
+        boolean listed = AuthenticationUtil.runAs(new RunAsWork<Boolean>()
+        {
+            @Override
+            public Boolean doWork() throws Exception
+            {
+                if (!nodeService.exists(nodeRef) ||
+                        !serviceRegistry.getDictionaryService().isSubClass(nodeService.getType(nodeRef), ContentModel.TYPE_CONTENT))
+                {
+                    return false;
+                }
+                if (hiddenAspect != null && hiddenAspect.getVisibility(Client.imap, nodeRef) == Visibility.NotVisible)
+                {
+                    return false;
+                }
+                for (ChildAssociationRef parentAssoc : nodeService.getParentAssocs(nodeRef))
+                {
+                    if (parentAssoc.getParentRef().equals(folderNodeRef))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, AuthenticationUtil.getSystemUserName());
+        if (!listed)
+        {
+            return null;
+        }
+        try
+        {
+            return fileFolderService.getFileInfo(nodeRef);
+        }
+        catch (AccessDeniedException e)
+        {
+            return null;
+        }
+    }
+
     public void subscribe(AlfrescoImapUser user, String mailbox)
     {
         if (logger.isDebugEnabled())
@@ -1780,7 +1902,9 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                     long newId = (Long) nodeService.getProperty(childNodeRef, ContentModel.PROP_NODE_DBID);
                     // Keep a record of minimum and maximum node IDs in this folder in this transaction and add a listener that will
                     // update the UIDVALIDITY and MAXUID properties appropriately. Also force generation of a new change token
-                    getUidValidityTransactionListener(childAssocRef.getParentRef()).recordNewUid(newId);
+                    UidValidityTransactionListener listener = getUidValidityTransactionListener(childAssocRef.getParentRef());
+                    listener.recordNewUid(newId);
+                    listener.recordChangedNode(childNodeRef);
                     // Flag new content as recent
                     setFlag(childNodeRef, Flags.Flag.RECENT, true);
                 }
@@ -1807,7 +1931,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                         ContentModel.TYPE_CONTENT))
                 {
                     // Force generation of a new change token
-                    getUidValidityTransactionListener(childAssocRef.getParentRef());
+                    getUidValidityTransactionListener(childAssocRef.getParentRef()).recordChangedNode(childNodeRef);
 
                     // Remove the message from the cache
                     messageCache.remove(childNodeRef);
@@ -1879,6 +2003,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
 
                         // Force generation of a new change token for the parent folders
                         UidValidityTransactionListener listener = getUidValidityTransactionListener(folderRef);
+                        listener.recordChangedNode(nodeRef);
                 
                         // if we have a significant change then we need to force a new uidvalidity.
                         if(hasChanged)
@@ -1913,7 +2038,9 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                 if (nodeService.hasAspect(folderRef, ImapModel.ASPECT_IMAP_FOLDER))
                 {
                     // Force generation of a new change token and updating the UIDVALIDITY 
-                    getUidValidityTransactionListener(folderRef).recordNewUid(newId);
+                    UidValidityTransactionListener listener = getUidValidityTransactionListener(folderRef);
+                    listener.recordNewUid(newId);
+                    listener.recordChangedNode(childNodeRef);
                 }
                 return null;
             }
@@ -1936,7 +2063,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                         messageCache.remove(nodeRef);
 
                         // Force generation of a new change token
-                        getUidValidityTransactionListener(folderRef);
+                        getUidValidityTransactionListener(folderRef).recordChangedNode(nodeRef);
                     }
                 }
                 return null;
@@ -1967,6 +2094,8 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         private Long minUid;
         private Long maxUid;
         private boolean forceNewUidValidity = false;
+        private Set<NodeRef> changedNodeRefs = new HashSet<NodeRef>();
+        private String previousChangeToken;
         
         public UidValidityTransactionListener(NodeRef folderNodeRef)
         {
@@ -1993,6 +2122,11 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                 this.maxUid = newUid;
             }
         }
+        
+        public void recordChangedNode(NodeRef nodeRef)
+        {
+            this.changedNodeRefs.add(nodeRef);
+        }
 
         @Override
         public void beforeCommit(boolean readOnly)
@@ -2035,11 +2169,46 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                             }
                         }
                     }
+                    previousChangeToken = (String) nodeService.getProperty(folderNodeRef, ImapModel.PROP_CHANGE_TOKEN);
                     nodeService.setProperty(folderNodeRef, ImapModel.PROP_CHANGE_TOKEN, changeToken);                            
                     return null;
                 }                        
             });
         }
+
+        @Override
+        public void afterCommit()
+        {
+            if (previousChangeToken == null)
+            {
+                return;
+            }
+            // Allow cached folder statuses to be brought up to date with the changes
+            folderCacheLock.writeLock().lock();
+            try
+            {
+                folderChanges.put(changeToken, new FolderChange(previousChangeToken, changedNodeRefs));
+            }
+            finally
+            {
+                folderCacheLock.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * The messages changed in a folder by a transaction
+     */
+    private static class FolderChange
+    {
+        private final String previousChangeToken;
+        private final Set<NodeRef> changedNodeRefs;
+        
+        private FolderChange(String previousChangeToken, Set<NodeRef> changedNodeRefs)
+        {
+            this.previousChangeToken = previousChangeToken;
+            this.changedNodeRefs = changedNodeRefs;
+        }
     }
 
     public NodeRef getNodeSiteContainer(final NodeRef inputNodeRef)
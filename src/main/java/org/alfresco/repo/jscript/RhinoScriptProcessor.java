@@ -35,12 +35,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.acegisecurity.AuthenticationException;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.processor.ProcessorExtension;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.processor.BaseProcessor;
 import org.alfresco.scripts.ScriptException;
 import org.alfresco.scripts.ScriptResourceHelper;
@@ -54,6 +56,7 @@ import org.alfresco.service.cmr.repository.ScriptLocation;
 import org.alfresco.service.cmr.repository.ScriptProcessor;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mozilla.javascript.Context;
@@ -108,6 +111,14 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     /** Cache of runtime compiled script instances */
     private final Map<String, Script> scriptCache = new ConcurrentHashMap<String, Script>(256);
     
+    /** Optional cache of compiled repository scripts, checked against the content of the script and its imports */
+    private SimpleCache<Pair<NodeRef, QName>, RepositoryScript> repositoryScriptCache;
+    
+    /** Statistics of the repository script cache */
+    private final AtomicLong repositoryScriptHits = new AtomicLong();
+    private final AtomicLong repositoryScriptMisses = new AtomicLong();
+    private final AtomicLong repositoryScriptCompileNanos = new AtomicLong();
+    
     
     /**
      * Set the default store reference
@@ -143,6 +154,41 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     {
         this.shareSealedScopes = shareSealedScopes;
     }
+    
+    /**
+     * Set the cache of compiled scripts held in repository content.  A compiled script is reused for as long
+     * as the content URLs of the script and of all the repository scripts it imports are unchanged.
+     * 
+     * @param repositoryScriptCache the cache or <tt>null</tt> to compile repository scripts on each execution
+     */
+    public void setRepositoryScriptCache(SimpleCache<Pair<NodeRef, QName>, RepositoryScript> repositoryScriptCache)
+    {
+        this.repositoryScriptCache = repositoryScriptCache;
+    }
+    
+    /**
+     * @return the number of repository script executions that used a cached compiled script
+     */
+    public long getRepositoryScriptCacheHits()
+    {
+        return repositoryScriptHits.get();
+    }
+    
+    /**
+     * @return the number of repository script executions that had to compile the script
+     */
+    public long getRepositoryScriptCacheMisses()
+    {
+        return repositoryScriptMisses.get();
+    }
+    
+    /**
+     * @return the total time spent compiling repository scripts, in milliseconds
+     */
+    public long getRepositoryScriptCompileTimeMs()
+    {
+        return repositoryScriptCompileNanos.get() / 1000000L;
+    }
 
     /**
      * @see org.alfresco.service.cmr.repository.ScriptProcessor#reset()
@@ -150,6 +196,10 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     public void reset()
     {
         this.scriptCache.clear();
+        if (this.repositoryScriptCache != null)
+        {
+            this.repositoryScriptCache.clear();
+        }
     }
     
     /**
@@ -247,14 +297,21 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
             
             // compile the script based on the node content
             Script script;
-            Context cx = Context.enter();
-            try
+            if (this.compile && this.repositoryScriptCache != null)
             {
-                script = cx.compileString(resolveScriptImports(cr.getContentString()), nodeRef.toString(), 1, null);
+                script = getRepositoryScript(nodeRef, contentProp, cr);
             }
-            finally
+            else
             {
-                Context.exit();
+                Context cx = Context.enter();
+                try
+                {
+                    script = cx.compileString(resolveScriptImports(cr.getContentString()), nodeRef.toString(), 1, null);
+                }
+                finally
+                {
+                    Context.exit();
+                }
             }
             
             return executeScriptImpl(script, model, false, nodeRef.toString());
@@ -265,6 +322,117 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         }
     }
 
+    /**
+     * Get the compiled script for the content of a node from the {@link #setRepositoryScriptCache(SimpleCache) cache},
+     * compiling and caching it if there is no cached script or if the script or any of its repository imports
+     * have new content.
+     * 
+     * @param nodeRef       the script node
+     * @param contentProp   the content property holding the script
+     * @param cr            the reader for the current script content
+     * 
+     * @return the compiled script
+     */
+    private Script getRepositoryScript(NodeRef nodeRef, QName contentProp, ContentReader cr)
+    {
+        Pair<NodeRef, QName> cacheKey = new Pair<NodeRef, QName>(nodeRef, contentProp);
+        RepositoryScript repositoryScript = this.repositoryScriptCache.get(cacheKey);
+        if (repositoryScript != null && repositoryScript.isCurrent(cr.getContentUrl()))
+        {
+            repositoryScriptHits.incrementAndGet();
+            return repositoryScript.script;
+        }
+        repositoryScriptMisses.incrementAndGet();
+        
+        // resolve the imports, recording the content URL of each repository script imported
+        final Map<String, String> importContentUrls = new HashMap<String, String>(8);
+        String source = ScriptResourceHelper.resolveScriptImports(cr.getContentString(), new ScriptResourceLoader()
+        {
+            public String loadScriptResource(String resource)
+            {
+                if (resource.startsWith(PATH_CLASSPATH))
+                {
+                    return RhinoScriptProcessor.this.loadScriptResource(resource);
+                }
+                try
+                {
+                    ContentReader importReader = getScriptResourceReader(resource);
+                    importContentUrls.put(resource, importReader.getContentUrl());
+                    return importReader.getContentString();
+                }
+                catch (ContentIOException err)
+                {
+                    throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+                }
+            }
+        }, logger);
+        
+        long startTime = System.nanoTime();
+        Script script;
+        Context cx = Context.enter();
+        try
+        {
+            script = cx.compileString(source, nodeRef.toString(), 1, null);
+        }
+        finally
+        {
+            Context.exit();
+        }
+        long compileTime = System.nanoTime() - startTime;
+        repositoryScriptCompileNanos.addAndGet(compileTime);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Compiled repository script " + nodeRef + " in " + compileTime / 1000000L + " ms");
+        }
+        
+        this.repositoryScriptCache.put(cacheKey, new RepositoryScript(script, cr.getContentUrl(), importContentUrls));
+        return script;
+    }
+    
+    /**
+     * A compiled repository script along with the content URLs it was compiled from
+     */
+    /*package*/ class RepositoryScript
+    {
+        private final Script script;
+        private final String contentUrl;
+        private final Map<String, String> importContentUrls;
+        
+        private RepositoryScript(Script script, String contentUrl, Map<String, String> importContentUrls)
+        {
+            this.script = script;
+            this.contentUrl = contentUrl;
+            this.importContentUrls = importContentUrls;
+        }
+        
+        /**
+         * @return true if neither the script nor any of the repository scripts it imports have changed
+         */
+        private boolean isCurrent(String currentContentUrl)
+        {
+            if (!contentUrl.equals(currentContentUrl))
+            {
+                return false;
+            }
+            for (Map.Entry<String, String> entry : importContentUrls.entrySet())
+            {
+                try
+                {
+                    if (!entry.getValue().equals(getScriptResourceReader(entry.getKey()).getContentUrl()))
+                    {
+                        return false;
+                    }
+                }
+                catch (AlfrescoRuntimeException err)
+                {
+                    // the import has gone - recompile to report it
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * @see org.alfresco.service.cmr.repository.ScriptProcessor#executeString(java.lang.String, java.util.Map)
      */
@@ -369,60 +537,74 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         }
         else
         {
-            NodeRef scriptRef;
-            if (resource.startsWith("/"))
+            // load from NodeRef default content property
+            try
             {
-                // resolve from default SpacesStore as cm:name based path
-                // TODO: remove this once FFS correctly allows name path resolving from store root!
-                NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
-                List<NodeRef> nodes = this.services.getSearchService().selectNodes(
-                        rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
-                if (nodes.size() == 0)
-                {
-                    throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
-                }
-                StringTokenizer tokenizer = new StringTokenizer(resource, "/");
-                List<String> elements = new ArrayList<String>(6);
-                if (tokenizer.hasMoreTokens())
-                {
-                    tokenizer.nextToken();
-                }
-                while (tokenizer.hasMoreTokens())
-                {
-                    elements.add(tokenizer.nextToken());
-                }
-                try
-                {
-                    FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
-                    scriptRef = fileInfo.getNodeRef();
-                }
-                catch (FileNotFoundException err)
-                {
-                    throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
-                }
+                result = getScriptResourceReader(resource).getContentString();
             }
-            else
+            catch (ContentIOException err)
             {
-                scriptRef = new NodeRef(resource);
+                throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Get a reader for the default content property of a repository script resource.
+     * 
+     * @param resource      a NodeRef or cm:name path based script resource
+     * 
+     * @return the content reader
+     * 
+     * @throws AlfrescoRuntimeException if the resource cannot be found
+     */
+    private ContentReader getScriptResourceReader(String resource)
+    {
+        NodeRef scriptRef;
+        if (resource.startsWith("/"))
+        {
+            // resolve from default SpacesStore as cm:name based path
+            // TODO: remove this once FFS correctly allows name path resolving from store root!
+            NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
+            List<NodeRef> nodes = this.services.getSearchService().selectNodes(
+                    rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
+            if (nodes.size() == 0)
+            {
+                throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
+            }
+            StringTokenizer tokenizer = new StringTokenizer(resource, "/");
+            List<String> elements = new ArrayList<String>(6);
+            if (tokenizer.hasMoreTokens())
+            {
+                tokenizer.nextToken();
+            }
+            while (tokenizer.hasMoreTokens())
+            {
+                elements.add(tokenizer.nextToken());
             }
-            
-            // load from NodeRef default content property
             try
             {
-                ContentReader cr = this.services.getContentService().getReader(scriptRef, ContentModel.PROP_CONTENT);
-                if (cr == null || cr.exists() == false)
-                {
-                    throw new AlfrescoRuntimeException("Included Script Node content not found: " + resource);
-                }
-                result = cr.getContentString();
+                FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
+                scriptRef = fileInfo.getNodeRef();
             }
-            catch (ContentIOException err)
+            catch (FileNotFoundException err)
             {
                 throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
             }
         }
+        else
+        {
+            scriptRef = new NodeRef(resource);
+        }
         
-        return result;
+        ContentReader cr = this.services.getContentService().getReader(scriptRef, ContentModel.PROP_CONTENT);
+        if (cr == null || cr.exists() == false)
+        {
+            throw new AlfrescoRuntimeException("Included Script Node content not found: " + resource);
+        }
+        return cr;
     }
     
     /**
@@ -46,6 +46,7 @@ import org.alfresco.query.CannedQueryResults;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
 import org.alfresco.repo.copy.AbstractBaseCopyService;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.model.filefolder.HiddenAspect.Visibility;
 import org.alfresco.repo.model.filefolder.traitextender.FileFolderServiceExtension;
 import org.alfresco.repo.model.filefolder.traitextender.FileFolderServiceTrait;
@@ -56,6 +57,7 @@ import org.alfresco.repo.search.QueryParameterDefImpl;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue.PermissionCheckedValueMixin;
+import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.Auditable;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -144,6 +146,8 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
     private NamespaceService namespaceService;
     private DictionaryService dictionaryService;
     private NodeService nodeService;
+    private NodeDAO nodeDAO;
+    private TenantService tenantService;
     private CopyService copyService;
     private SearchService searchService;
     private ContentService contentService;
@@ -186,6 +190,22 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
         this.nodeService = nodeService;
     }
 
+    /**
+     * @param nodeDAO           used to bulk-load the properties and aspects of listed nodes (optional)
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param tenantService     converts listed nodes to their tenant specific references before bulk-loading them
+     */
+    public void setTenantService(TenantService tenantService)
+    {
+        this.tenantService = tenantService;
+    }
+
     public void setCopyService(CopyService copyService)
     {
         this.copyService = copyService;
@@ -384,6 +404,33 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
         return results;
     }
     
+    /**
+     * Bulk-load the properties and aspects needed to build the {@link FileInfo} of each node
+     * rather than fetching them one node at a time.
+     */
+    private void preloadFileInfo(List<NodeRef> nodeRefs)
+    {
+        if (nodeDAO == null || nodeRefs.isEmpty())
+        {
+            return;
+        }
+        List<Long> nodeIds = new ArrayList<Long>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            // The listed nodes are already in the node cache, but are given without any tenant domain
+            if (tenantService != null)
+            {
+                nodeRef = tenantService.getName(nodeRef);
+            }
+            Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+            if (nodePair != null)
+            {
+                nodeIds.add(nodePair.getFirst());
+            }
+        }
+        nodeDAO.cacheNodePropertiesById(nodeIds);
+    }
+    
     private PagingResults<FileInfo> getPagingResults(PagingRequest pagingRequest, final CannedQueryResults<NodeRef> results)
     {
         List<NodeRef> nodeRefs = null;
@@ -407,6 +454,7 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
             totalCount = null;
         }
         
+        preloadFileInfo(nodeRefs);
         final List<FileInfo> nodeInfos = new ArrayList<FileInfo>(nodeRefs.size());
         for (NodeRef nodeRef : nodeRefs)
         {
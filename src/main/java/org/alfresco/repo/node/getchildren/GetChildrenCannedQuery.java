@@ -109,6 +109,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     protected NodeService nodeService;
     
     private boolean applyPostQueryPermissions = false; // if true, the permissions will be applied post-query (else should be applied as part of the "queryAndFilter")
+    private boolean preloadAspects = false; // if true, the aspects are needed for filtering
     
     public GetChildrenCannedQuery(
             NodeDAO nodeDAO,
@@ -140,6 +141,8 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         {
             applyPostQueryPermissions = true;
         }
+        
+        preloadAspects = (paramBean.getInclusiveAspects() != null) || (paramBean.getExclusiveAspects() != null);
     }
     
     protected FilterSortChildQueryCallback getFilterSortChildQuery(final List<FilterSortNode> children, final List<FilterProp> filterProps, GetChildrenCannedQueryParams paramBean)
@@ -666,6 +669,15 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
             logger.trace("Pre-load: "+nodeRefs.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
         }
     }
+    
+    private void preloadAspects(List<Long> nodeIds)
+    {
+        if (preloadAspects)
+        {
+            // cached nodes may have had their aspects evicted
+            nodeDAO.cacheNodeAspectsById(nodeIds);
+        }
+    }
 
     protected interface FilterSortChildQueryCallback
     {
@@ -797,12 +809,15 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         private void preloadFilterSort()
         {
         	List<NodeRef> nodeRefs = new ArrayList<>(results.size());
+        	List<Long> nodeIds = new ArrayList<>(results.size());
             for (FilterSortNodeEntity result : results)
             {
             	nodeRefs.add(result.getNode().getNodeRef());
+            	nodeIds.add(result.getNode().getId());
             }
             
             preload(nodeRefs);
+            preloadAspects(nodeIds);
             
             for (FilterSortNodeEntity result : results)
             {
@@ -928,12 +943,14 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         
         private static final int BATCH_SIZE = 256 * 4;
         private final List<NodeRef> nodeRefs;
+        private final List<Long> nodeIds;
         
         private UnsortedResultHandler(UnsortedChildQueryCallback resultsCallback)
         {
             this.resultsCallback = resultsCallback;
             
             nodeRefs = new LinkedList<NodeRef>(); 
+            nodeIds = new ArrayList<Long>(BATCH_SIZE);
         }
         
         public boolean handleResult(NodeEntity result)
@@ -953,6 +970,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
             }
             
             nodeRefs.add(nodeRef);
+            nodeIds.add(result.getId());
             
             return more;
         }
@@ -960,6 +978,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         private void preloadAndApplyPermissions()
         {
             preload(nodeRefs);
+            preloadAspects(nodeIds);
             
             // TODO track total time for incremental permission checks ... and cutoff (eg. based on some config)
             List<NodeRef> results = applyPostQueryPermissions(nodeRefs, nodeRefs.size());
@@ -976,6 +995,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
             }
             
             nodeRefs.clear();
+            nodeIds.clear();
         }
         
         public void done()
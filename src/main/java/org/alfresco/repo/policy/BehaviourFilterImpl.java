@@ -25,8 +25,11 @@
  */
 package org.alfresco.repo.policy;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.repo.policy.traitextender.BehaviourFilterExtension;
 import org.alfresco.repo.policy.traitextender.BehaviourFilterTrait;
@@ -453,17 +456,18 @@ public class BehaviourFilterImpl implements BehaviourFilter, Extensible
         }
 
         // Search for the super classes to be disabled with subclasses
+        Set<QName> subClassFilters = getSubClassFilters(classFilters);
+        if (subClassFilters.isEmpty())
+        {
+            // No need to look up the hierarchy
+            return true;
+        }
         while (className != null)
         {
-            classFilter = getClassFilter(className);
-            if (classFilter != null && classFilter.isDisableSubClasses())
+            if (subClassFilters.contains(className))
             {
-                MutableInt filterNumber = classFilters.get(classFilter);
-                if (filterNumber != null && filterNumber.intValue() > 0)
-                {
-                    // the class is disabled
-                    return false;
-                }
+                // the class is disabled
+                return false;
             }
             // continue search
             // look up the hierarchy
@@ -472,6 +476,37 @@ public class BehaviourFilterImpl implements BehaviourFilter, Extensible
         return true;
     }
 
+    /**
+     * Collects, in a single pass, the classes whose active filter also disables their subclasses.
+     * As with {@link #getClassFilter(QName)}, only the first filter found for each class counts.
+     * 
+     * @param classFilters the class filters of the transaction
+     * @return the names of the classes disabled together with their subclasses
+     */
+    private Set<QName> getSubClassFilters(Map<ClassFilter, MutableInt> classFilters)
+    {
+        Set<QName> seenClassNames = new HashSet<QName>(classFilters.size() * 2);
+        Set<QName> subClassFilters = null;
+        for (Map.Entry<ClassFilter, MutableInt> entry : classFilters.entrySet())
+        {
+            ClassFilter classFilter = entry.getKey();
+            if (!seenClassNames.add(classFilter.getClassName()))
+            {
+                continue;
+            }
+            MutableInt filterNumber = entry.getValue();
+            if (classFilter.isDisableSubClasses() && filterNumber != null && filterNumber.intValue() > 0)
+            {
+                if (subClassFilters == null)
+                {
+                    subClassFilters = new HashSet<QName>(3);
+                }
+                subClassFilters.add(classFilter.getClassName());
+            }
+        }
+        return (subClassFilters == null) ? Collections.<QName>emptySet() : subClassFilters;
+    }
+
     private ClassFilter getClassFilter(QName className)
     {
         ParameterCheck.mandatory("className", className);
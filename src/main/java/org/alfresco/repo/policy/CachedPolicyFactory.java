@@ -27,6 +27,7 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -39,6 +40,10 @@ import org.apache.commons.logging.LogFactory;
 
 /**
  * Policy Factory with caching support.
+ * <p/>
+ * The caches are immutable maps that are replaced (copy-on-write) whenever an entry is added
+ * or invalidated, so looking up a cached policy does not take any lock.  The lock only serialises
+ * the writers.
  *
  * @author David Caruana
  *
@@ -54,18 +59,18 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     // Behaviour Filter
     private BehaviourFilter behaviourFilter = null;
     
-    // Cache Lock
+    // Cache Lock (writers only)
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
 
     /**
      * Cache for a single Policy interface (keyed by Binding)
      */
-    private Map<B, P> singleCache = new HashMap<B, P>();
+    private volatile Map<B, P> singleCache = Collections.emptyMap();
     
     /**
      * Cache for a collection of Policy interfaces (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
+    private volatile Map<B, Collection<P>> listCache = Collections.emptyMap();
 
     // Try lock timeout (MNT-11371)
     private long tryLockTimeout;
@@ -94,14 +99,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCache(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCache(binding);
             }
         });
     }
@@ -110,37 +113,31 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     @Override
     public P create(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        // When the binding is filtered out bypass the cache 
+        if (!isCacheable(binding))
         {
             return super.create(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
-        {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-        }
-        finally
+        P policyInterface = singleCache.get(binding);
+        if (policyInterface != null)
         {
-            lock.readLock().unlock();
+            return policyInterface;
         }
         
         // There wasn't one
         LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
         try
         {
-            P policyInterface = singleCache.get(binding);
+            policyInterface = singleCache.get(binding);
             if (policyInterface != null)
             {
                 return policyInterface;
             }
             policyInterface = super.create(binding);
-            singleCache.put(binding, policyInterface);
+            Map<B, P> cache = new HashMap<B, P>(singleCache);
+            cache.put(binding, policyInterface);
+            singleCache = cache;
             
             if (logger.isDebugEnabled())
                 logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
@@ -157,37 +154,31 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     @Override
     public Collection<P> createList(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        // When the binding is filtered out bypass the cache 
+        if (!isCacheable(binding))
         {
             return super.createList(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
-        try
-        {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
-            {
-                return policyInterfaces;
-            }
-        }
-        finally
+        Collection<P> policyInterfaces = listCache.get(binding);
+        if (policyInterfaces != null)
         {
-            lock.readLock().unlock();
+            return policyInterfaces;
         }
         
         // There wasn't one
         LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
         try
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
+            policyInterfaces = listCache.get(binding);
             if (policyInterfaces != null)
             {
                 return policyInterfaces;
             }
             policyInterfaces = super.createList(binding);
-            listCache.put(binding, policyInterfaces);
+            Map<B, Collection<P>> cache = new HashMap<B, Collection<P>>(listCache);
+            cache.put(binding, policyInterfaces);
+            listCache = cache;
     
             if (logger.isDebugEnabled())
                 logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
@@ -201,70 +192,100 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     }
     
     /**
-     * Clear entries in the cache based on binding changes.
+     * Determine if the cached policies can be used for a binding.  The behaviour index only
+     * applies the filter to the class (and node) of the binding itself, so the cached policies
+     * remain valid whenever that class is enabled, even if other behaviours are filtered.
+     * 
+     * @param binding  the binding
+     * @return  <tt>true</tt> if the policies for the binding may be served from the cache
+     */
+    private boolean isCacheable(B binding)
+    {
+        if (behaviourFilter == null || !behaviourFilter.isActivated())
+        {
+            return true;
+        }
+        if (binding instanceof ClassBehaviourBinding)
+        {
+            return ClassBehaviourIndex.isEnabled(behaviourFilter, (ClassBehaviourBinding) binding);
+        }
+        return false;
+    }
+    
+    /**
+     * Clear entries in the caches based on binding changes.
+     * 
+     * @param binding  the binding
+     */
+    private void clearCache(B binding)
+    {
+        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
+        try
+        {
+            singleCache = clearCache("aggregate delegate", singleCache, binding);
+            listCache = clearCache("delegate collection", listCache, binding);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Build a copy of a cache without the entries affected by a binding change.
      * 
      * @param cacheDescription  description of cache to clear
      * @param cache  the cache to clear
      * @param binding  the binding
+     * @return  the cache to use from now on
      */
-    private void clearCache(String cacheDescription, Map<B, ?> cache, B binding)
+    private <V> Map<B, V> clearCache(String cacheDescription, Map<B, V> cache, B binding)
     {
+        if (cache.isEmpty())
+        {
+            return cache;
+        }
         if (binding == null)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            // A specific binding has not been provided, so clear all entries
+            if (logger.isDebugEnabled())
+                logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
+            
+            return Collections.emptyMap();
         }
-        else
+        
+        // A specific binding has been provided.  Build a list of entries
+        // that require removal.  An entry is removed if the binding in the
+        // list is equal or derived from the changed binding. 
+        Collection<B> invalidBindings = new ArrayList<B>();
+        for (B cachedBinding : cache.keySet())
         {
-            // A specific binding has been provided.  Build a list of entries
-            // that require removal.  An entry is removed if the binding in the
-            // list is equal or derived from the changed binding. 
-            Collection<B> invalidBindings = new ArrayList<B>();
-            for (B cachedBinding : cache.keySet())
+            // Determine if binding is equal or derived from changed binding
+            BehaviourBinding generalisedBinding = cachedBinding;
+            while(generalisedBinding != null)
             {
-                // Determine if binding is equal or derived from changed binding
-                BehaviourBinding generalisedBinding = cachedBinding;
-                while(generalisedBinding != null)
+                if (generalisedBinding.equals(binding))
                 {
-                    if (generalisedBinding.equals(binding))
-                    {
-                        invalidBindings.add(cachedBinding);
-                        break;
-                    }
-                    generalisedBinding = generalisedBinding.generaliseBinding();
+                    invalidBindings.add(cachedBinding);
+                    break;
                 }
+                generalisedBinding = generalisedBinding.generaliseBinding();
             }
+        }
+        if (invalidBindings.isEmpty())
+        {
+            return cache;
+        }
 
-            // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
-            {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
-                    {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
-                    }
-                }
-                finally
-                {
-                    lock.writeLock().unlock();
-                }
-            }
+        // Remove all invalid bindings
+        Map<B, V> clearedCache = new HashMap<B, V>(cache);
+        for (B invalidBinding : invalidBindings)
+        {
+            clearedCache.remove(invalidBinding);
+            
+            if (logger.isDebugEnabled())
+                logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
         }
+        return clearedCache;
     }
 }
@@ -171,7 +171,7 @@ import org.alfresco.util.LockHelper;
             // Find class behaviour by scanning up the class hierarchy
             List<BehaviourDefinition<B>> behaviour = null;
 
-            if (isEnabled(binding))
+            if (isEnabled(filter, binding))
             {
                 while (binding != null)
                 {
@@ -263,7 +263,14 @@ import org.alfresco.util.LockHelper;
         }
     }
 
-    private boolean isEnabled(B binding)
+    /**
+     * Determine if the behaviours bound to the class of a binding are enabled
+     * 
+     * @param filter  the behaviour filter (may be <tt>null</tt>)
+     * @param binding  the class binding
+     * @return  <tt>true</tt> if the class (and node, if given) have not been filtered out
+     */
+    /*package*/ static boolean isEnabled(BehaviourFilter filter, ClassBehaviourBinding binding)
     {
         // Determine if behaviour has been disabled
         boolean isEnabled = true;
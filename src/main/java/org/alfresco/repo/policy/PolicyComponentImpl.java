@@ -31,6 +31,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.alfresco.repo.policy.Policy.Arg;
 import org.alfresco.repo.tenant.TenantService;
@@ -70,13 +72,13 @@ public class PolicyComponentImpl implements PolicyComponent
     private Map<PolicyKey, PolicyDefinition> registeredPolicies;; 
 
     // Map of Class Behaviours (by policy name)
-    private Map<QName, ClassBehaviourIndex<ClassBehaviourBinding>> classBehaviours = new HashMap<QName, ClassBehaviourIndex<ClassBehaviourBinding>>();
+    private ConcurrentMap<QName, ClassBehaviourIndex<ClassBehaviourBinding>> classBehaviours = new ConcurrentHashMap<QName, ClassBehaviourIndex<ClassBehaviourBinding>>();
     
     // Map of Property Behaviours (by policy name)
-    private Map<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>> propertyBehaviours = new HashMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>>();
+    private ConcurrentMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>> propertyBehaviours = new ConcurrentHashMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>>();
 
     // Map of Association Behaviours (by policy name)
-    private Map<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>> associationBehaviours = new HashMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>>();
+    private ConcurrentMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>> associationBehaviours = new ConcurrentHashMap<QName, ClassBehaviourIndex<ClassFeatureBehaviourBinding>>();
 
     // Wild Card Feature
     private static final QName FEATURE_WILDCARD = QName.createQName(NamespaceService.DEFAULT_URI, "*"); 
@@ -440,14 +442,18 @@ public class PolicyComponentImpl implements PolicyComponent
      * @param policy  the policy
      * @return  the class behaviour index
      */
-    private synchronized ClassBehaviourIndex<ClassBehaviourBinding> getClassBehaviourIndex(QName policy)
+    private ClassBehaviourIndex<ClassBehaviourBinding> getClassBehaviourIndex(QName policy)
     {
         ClassBehaviourIndex<ClassBehaviourBinding> index = classBehaviours.get(policy);
         if (index == null)
         {
             index = new ClassBehaviourIndex<ClassBehaviourBinding>(behaviourFilter);
             index.setTryLockTimeout(tryLockTimeout);
-            classBehaviours.put(policy, index);
+            ClassBehaviourIndex<ClassBehaviourBinding> existing = classBehaviours.putIfAbsent(policy, index);
+            if (existing != null)
+            {
+                index = existing;
+            }
         }
         return index;
     }
@@ -459,14 +465,18 @@ public class PolicyComponentImpl implements PolicyComponent
      * @param policy  the policy
      * @return  the property behaviour index
      */
-    private synchronized ClassBehaviourIndex<ClassFeatureBehaviourBinding> getPropertyBehaviourIndex(QName policy)
+    private ClassBehaviourIndex<ClassFeatureBehaviourBinding> getPropertyBehaviourIndex(QName policy)
     {
         ClassBehaviourIndex<ClassFeatureBehaviourBinding> index = propertyBehaviours.get(policy);
         if (index == null)
         {
             index = new ClassBehaviourIndex<ClassFeatureBehaviourBinding>(behaviourFilter);
             index.setTryLockTimeout(tryLockTimeout);
-            propertyBehaviours.put(policy, index);
+            ClassBehaviourIndex<ClassFeatureBehaviourBinding> existing = propertyBehaviours.putIfAbsent(policy, index);
+            if (existing != null)
+            {
+                index = existing;
+            }
         }
         return index;
     }
@@ -478,14 +488,18 @@ public class PolicyComponentImpl implements PolicyComponent
      * @param policy  the policy
      * @return  the association behaviour index
      */
-    private synchronized ClassBehaviourIndex<ClassFeatureBehaviourBinding> getAssociationBehaviourIndex(QName policy)
+    private ClassBehaviourIndex<ClassFeatureBehaviourBinding> getAssociationBehaviourIndex(QName policy)
     {
         ClassBehaviourIndex<ClassFeatureBehaviourBinding> index = associationBehaviours.get(policy);
         if (index == null)
         {
             index = new ClassBehaviourIndex<ClassFeatureBehaviourBinding>(behaviourFilter);
             index.setTryLockTimeout(tryLockTimeout);
-            associationBehaviours.put(policy, index);
+            ClassBehaviourIndex<ClassFeatureBehaviourBinding> existing = associationBehaviours.putIfAbsent(policy, index);
+            if (existing != null)
+            {
+                index = existing;
+            }
         }
         return index;
     }
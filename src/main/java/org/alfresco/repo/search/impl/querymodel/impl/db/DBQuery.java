@@ -71,6 +71,10 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
     private Long sysDeletedType;
 
     private Long sinceTxId;
+
+    private int limit;
+
+    private boolean permissionChecked;
     
     Set<String> selectorGroup;
 
@@ -133,6 +137,39 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
         this.sinceTxId = sinceTxId;
     }
 
+    /**
+     * @return the maximum number of rows to select, used by dialects that support a row limit
+     */
+    public int getLimit()
+    {
+        return this.limit;
+    }
+
+    /**
+     * @param limit the maximum number of rows to select
+     */
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+
+    /**
+     * @return <tt>true</tt> if the results are filtered for read permission once the query has been executed
+     */
+    public boolean isPermissionChecked()
+    {
+        return this.permissionChecked;
+    }
+
+    /**
+     * @param permissionChecked <tt>true</tt> if the results are filtered for read permission once the query has been
+     *            executed, set by the {@link DBQueryPermissionCheckInterceptor}
+     */
+    public void setPermissionChecked(boolean permissionChecked)
+    {
+        this.permissionChecked = permissionChecked;
+    }
+
     public List<DBQueryBuilderJoinCommand> getJoins()
     {
         HashMap<QName, DBQueryBuilderJoinCommand> singleJoins = new HashMap<QName, DBQueryBuilderJoinCommand>();
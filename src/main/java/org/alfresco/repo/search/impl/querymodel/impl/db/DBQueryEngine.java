@@ -26,6 +26,7 @@
 package org.alfresco.repo.search.impl.querymodel.impl.db;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -38,6 +39,7 @@ import org.alfresco.repo.admin.patch.OptionalPatchApplicationCheckBootstrapBean;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.search.SimpleResultSetMetaData;
 import org.alfresco.repo.search.impl.lucene.PagingLuceneResultSet;
 import org.alfresco.repo.search.impl.querymodel.FunctionEvaluationContext;
 import org.alfresco.repo.search.impl.querymodel.Query;
@@ -46,14 +48,25 @@ import org.alfresco.repo.search.impl.querymodel.QueryEngineResults;
 import org.alfresco.repo.search.impl.querymodel.QueryModelException;
 import org.alfresco.repo.search.impl.querymodel.QueryModelFactory;
 import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSet;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.LimitBy;
+import org.alfresco.service.cmr.search.PermissionEvaluationMode;
 import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.mybatis.spring.SqlSessionTemplate;
 
 /**
@@ -61,7 +74,11 @@ import org.mybatis.spring.SqlSessionTemplate;
  */
 public class DBQueryEngine implements QueryEngine
 {
+    private static Log logger = LogFactory.getLog(DBQueryEngine.class);
+
     private static final String SELECT_BY_DYNAMIC_QUERY = "alfresco.metadata.query.select_byDynamicQuery";
+
+    private static final String SELECT_BY_DYNAMIC_QUERY_LIMITED = "alfresco.metadata.query.select_byDynamicQueryLimited";
     
     private SqlSessionTemplate template;
 
@@ -79,6 +96,16 @@ public class DBQueryEngine implements QueryEngine
     
     private OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2;
 
+    private PermissionService permissionService;
+
+    private boolean pagedExecutionEnabled = false;
+
+    private int permissionCheckBatchSize = 100;
+
+    private int maxPermissionChecks = 1000;
+
+    private long maxPermissionCheckTimeMillis = 10000L;
+
     public void setMetadataIndexCheck2(OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2)
     {
         this.metadataIndexCheck2 = metadataIndexCheck2;
@@ -137,6 +164,50 @@ public class DBQueryEngine implements QueryEngine
         this.nodeDAO = nodeDAO;
     }
 
+    /**
+     * @param permissionService the permissionService to set
+     */
+    public void setPermissionService(PermissionService permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+
+    /**
+     * Enable the paged execution mode. When enabled, and the query asks for a bounded page of results, rows are
+     * streamed from the database and permission checked in batches until the page (plus one row to detect further
+     * results) has been filled, rather than materialising every matching node.
+     * 
+     * @param pagedExecutionEnabled <tt>true</tt> to use paged execution for bounded queries
+     */
+    public void setPagedExecutionEnabled(boolean pagedExecutionEnabled)
+    {
+        this.pagedExecutionEnabled = pagedExecutionEnabled;
+    }
+
+    /**
+     * @param permissionCheckBatchSize the number of streamed rows to bulk load and permission check together
+     */
+    public void setPermissionCheckBatchSize(int permissionCheckBatchSize)
+    {
+        this.permissionCheckBatchSize = permissionCheckBatchSize;
+    }
+
+    /**
+     * @param maxPermissionChecks the default maximum number of permission checks in paged execution mode
+     */
+    public void setMaxPermissionChecks(int maxPermissionChecks)
+    {
+        this.maxPermissionChecks = maxPermissionChecks;
+    }
+
+    /**
+     * @param maxPermissionCheckTimeMillis the default maximum time spent on permission checks in paged execution mode
+     */
+    public void setMaxPermissionCheckTimeMillis(long maxPermissionCheckTimeMillis)
+    {
+        this.maxPermissionCheckTimeMillis = maxPermissionCheckTimeMillis;
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -205,6 +276,15 @@ public class DBQueryEngine implements QueryEngine
         dbQuery.setSinceTxId(sinceTxId);
         
         dbQuery.prepare(namespaceService, dictionaryService, qnameDAO, nodeDAO, tenantService, selectorGroup, null, functionContext, metadataIndexCheck2.getPatchApplied());
+
+        SearchParameters searchParameters = options.getAsSearchParmeters();
+        int requiredRows = getRequiredRows(searchParameters);
+        if (pagedExecutionEnabled && requiredRows > 0)
+        {
+            answer.put(key, executePagedQuery(dbQuery, searchParameters, requiredRows));
+            return new QueryEngineResults(answer);
+        }
+
         List<Node> nodes = template.selectList(SELECT_BY_DYNAMIC_QUERY, dbQuery);
         LinkedHashSet<Long> set = new LinkedHashSet<Long>(nodes.size());
         for(Node node : nodes)
@@ -219,6 +299,219 @@ public class DBQueryEngine implements QueryEngine
         return new QueryEngineResults(answer);
     }
 
+    /**
+     * Get the number of permitted rows needed to answer the requested page: the skipped rows, the page itself and one
+     * more row so that the paging result set can tell whether there are further results.
+     * 
+     * @return the number of rows required or <tt>-1</tt> if the query is not bounded
+     */
+    private int getRequiredRows(SearchParameters searchParameters)
+    {
+        int maxItems = searchParameters.getMaxItems();
+        if (maxItems < 0 && searchParameters.getLimitBy() == LimitBy.FINAL_SIZE)
+        {
+            maxItems = searchParameters.getLimit();
+        }
+        if (maxItems < 0)
+        {
+            return -1;
+        }
+        long requiredRows = (long) Math.max(searchParameters.getSkipCount(), 0) + maxItems + 1L;
+        return requiredRows > Integer.MAX_VALUE ? -1 : (int) requiredRows;
+    }
+
+    /**
+     * Stream the query results through a cursor, applying read permission checks in batches, and stop reading as soon
+     * as enough permitted rows have been found to fill the requested page.
+     * <p/>
+     * Rows are only checked if the query was executed through the secured query engine proxy, which marks it as
+     * {@link DBQuery#isPermissionChecked() permission checked}. The returned result set is then already permission
+     * filtered so the after invocation security check does not evaluate it again.
+     */
+    ResultSet executePagedQuery(DBQuery dbQuery, SearchParameters searchParameters, int requiredRows)
+    {
+        boolean checkPermissions = dbQuery.isPermissionChecked();
+        int maxChecks = searchParameters.getMaxPermissionChecks() >= 0 ? searchParameters.getMaxPermissionChecks() : maxPermissionChecks;
+        long maxCheckTime = searchParameters.getMaxPermissionCheckTimeMillis() >= 0 ? searchParameters.getMaxPermissionCheckTimeMillis() : maxPermissionCheckTimeMillis;
+
+        // No more rows can be used than those needed for the page or, when checking, one more than the permission checks allowed
+        long limit = checkPermissions ? Math.max(requiredRows, maxChecks + 1L) : requiredRows;
+        PagingResultHandler resultHandler = new PagingResultHandler(requiredRows, checkPermissions, maxChecks, maxCheckTime);
+        if (limit < Integer.MAX_VALUE)
+        {
+            dbQuery.setLimit((int) limit);
+            template.select(SELECT_BY_DYNAMIC_QUERY_LIMITED, dbQuery, resultHandler);
+            resultHandler.flush();
+            if (!resultHandler.isDone() && resultHandler.getRowsSelected() >= limit)
+            {
+                // Joins returned the same node more than once, so the limited rows did not fill the page.
+                // Rows already read are skipped by the handler.
+                template.select(SELECT_BY_DYNAMIC_QUERY, dbQuery, resultHandler);
+            }
+        }
+        else
+        {
+            template.select(SELECT_BY_DYNAMIC_QUERY, dbQuery, resultHandler);
+        }
+        resultHandler.flush();
+
+        List<Long> nodeIds = resultHandler.getPermittedNodeIds();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Paged query read " + resultHandler.getRowsRead() + " rows, checked " + resultHandler.getPermissionChecks()
+                    + " and found " + nodeIds.size() + " of " + requiredRows + " required rows");
+        }
+
+        ResultSet rs = new DBResultSet(searchParameters, nodeIds, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE);
+        if (!checkPermissions)
+        {
+            return new PagingLuceneResultSet(rs, searchParameters, nodeService);
+        }
+        BitSet inclusionMask = new BitSet(nodeIds.size());
+        inclusionMask.set(0, nodeIds.size());
+        FilteringResultSet filtered = new FilteringResultSet(rs, inclusionMask);
+        LimitBy limitBy = resultHandler.isLimitedByPermissionChecks() ? LimitBy.NUMBER_OF_PERMISSION_EVALUATIONS : LimitBy.UNLIMITED;
+        filtered.setResultSetMetaData(new SimpleResultSetMetaData(limitBy, PermissionEvaluationMode.EAGER, searchParameters));
+        return new PagingLuceneResultSet(filtered, searchParameters, nodeService);
+    }
+
+    /**
+     * Collects node IDs from the query cursor, permission checking them in batches and stopping the cursor once the
+     * required number of permitted rows has been found or the permission check limits have been reached.
+     */
+    private class PagingResultHandler implements ResultHandler
+    {
+        private final int requiredRows;
+        private final boolean checkPermissions;
+        private final int maxChecks;
+        private final long maxCheckTime;
+        private final long startTime;
+
+        private final Set<Long> readNodeIds = new HashSet<Long>();
+        private final List<Long> batch;
+        private final List<Long> permittedNodeIds = new ArrayList<Long>();
+        private int rowsSelected = 0;
+        private int permissionChecks = 0;
+        private boolean limitedByPermissionChecks = false;
+
+        private PagingResultHandler(int requiredRows, boolean checkPermissions, int maxChecks, long maxCheckTime)
+        {
+            this.requiredRows = requiredRows;
+            this.checkPermissions = checkPermissions;
+            this.maxChecks = maxChecks;
+            this.maxCheckTime = maxCheckTime;
+            this.startTime = System.currentTimeMillis();
+            this.batch = new ArrayList<Long>(Math.max(permissionCheckBatchSize, 1));
+        }
+
+        @Override
+        public void handleResult(ResultContext context)
+        {
+            Node node = (Node) context.getResultObject();
+            rowsSelected++;
+            // Joins may return the same node more than once
+            if (!readNodeIds.add(node.getId()))
+            {
+                return;
+            }
+            batch.add(node.getId());
+            if (batch.size() >= permissionCheckBatchSize)
+            {
+                flush();
+            }
+            if (isDone())
+            {
+                context.stop();
+            }
+        }
+
+        private boolean isDone()
+        {
+            return limitedByPermissionChecks || permittedNodeIds.size() >= requiredRows;
+        }
+
+        /**
+         * Bulk load and permission check the current batch of node IDs
+         */
+        private void flush()
+        {
+            if (batch.isEmpty())
+            {
+                return;
+            }
+            if (!checkPermissions)
+            {
+                for (Long nodeId : batch)
+                {
+                    if (isDone())
+                    {
+                        break;
+                    }
+                    permittedNodeIds.add(nodeId);
+                }
+                batch.clear();
+                return;
+            }
+            nodeDAO.cacheNodesById(batch);
+            for (Long nodeId : batch)
+            {
+                if (isDone())
+                {
+                    break;
+                }
+                if (permissionChecks >= maxChecks)
+                {
+                    logger.warn("maxChecks exceeded (" + maxChecks + ")");
+                    limitedByPermissionChecks = true;
+                    break;
+                }
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (elapsed > maxCheckTime)
+                {
+                    logger.warn("maxCheckTime exceeded (" + elapsed + " milliseconds)");
+                    limitedByPermissionChecks = true;
+                    break;
+                }
+                permissionChecks++;
+                Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeId);
+                if (nodePair == null)
+                {
+                    continue;
+                }
+                if (permissionService.hasReadPermission(nodePair.getSecond()) != AccessStatus.DENIED)
+                {
+                    permittedNodeIds.add(nodeId);
+                }
+            }
+            batch.clear();
+        }
+
+        private List<Long> getPermittedNodeIds()
+        {
+            return permittedNodeIds;
+        }
+
+        private int getRowsSelected()
+        {
+            return rowsSelected;
+        }
+
+        private int getRowsRead()
+        {
+            return readNodeIds.size();
+        }
+
+        private int getPermissionChecks()
+        {
+            return permissionChecks;
+        }
+
+        private boolean isLimitedByPermissionChecks()
+        {
+            return limitedByPermissionChecks;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.alfresco.repo.search.impl.querymodel.QueryEngine#getQueryModelFactory()
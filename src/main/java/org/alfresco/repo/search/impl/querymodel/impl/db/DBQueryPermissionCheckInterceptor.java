@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.querymodel.impl.db;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Marks {@link DBQuery queries} executed through the secured query engine proxy as
+ * {@link DBQuery#isPermissionChecked() permission checked}, so that paged execution checks read permission as it
+ * reads rows rather than leaving it all to the after invocation check.  It must sit inside the security interceptor
+ * whose after invocation check filters the results.  Queries executed without going through the proxy are returned
+ * unfiltered, as are those run as the system user, which the after invocation check does not filter either.
+ */
+public class DBQueryPermissionCheckInterceptor implements MethodInterceptor
+{
+    @Override
+    public Object invoke(MethodInvocation mi) throws Throwable
+    {
+        Object[] args = mi.getArguments();
+        if (args.length == 0 || !(args[0] instanceof DBQuery))
+        {
+            return mi.proceed();
+        }
+        DBQuery dbQuery = (DBQuery) args[0];
+        dbQuery.setPermissionChecked(!AuthenticationUtil.isRunAsUserTheSystemUser());
+        try
+        {
+            return mi.proceed();
+        }
+        finally
+        {
+            dbQuery.setPermissionChecked(false);
+        }
+    }
+}
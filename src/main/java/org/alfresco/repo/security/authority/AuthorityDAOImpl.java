@@ -26,9 +26,11 @@
 package org.alfresco.repo.security.authority;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,6 +40,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -49,8 +52,10 @@ import org.alfresco.query.CannedQueryResults;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
 import org.alfresco.repo.cache.AsynchronouslyRefreshedCache;
+import org.alfresco.repo.cache.DefaultSimpleCache;
 import org.alfresco.util.cache.RefreshableCacheEvent;
 import org.alfresco.util.cache.RefreshableCacheListener;
+import org.alfresco.util.cache.RefreshableCacheRefreshedEvent;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
@@ -139,6 +144,14 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     private int zoneAuthoritySampleSize = 10000;
 
     private boolean useBridgeTable = true;
+    /** The most users whose cached authorities are invalidated individually when a group changes, 0 to always clear the cache */
+    private int scopedInvalidationLimit = 10000;
+    /** Whether the user authority cache is held in this JVM; users are only invalidated individually if it is */
+    private boolean userAuthorityCacheLocal = true;
+    /** Users invalidated since the last bridge table refresh, which must be invalidated again once it has been rebuilt */
+    private final Set<String> pendingUserInvalidations = ConcurrentHashMap.newKeySet();
+    /** Set if a change since the last bridge table refresh affected too many users to track */
+    private final AtomicBoolean pendingFullInvalidation = new AtomicBoolean(false);
     /** limits the findAuthorities search query */
     private int findAuthoritiesLimit = 100;
     
@@ -229,6 +242,38 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         this.useBridgeTable = useBridgeTable;
     }
 
+    /**
+     * Sets the largest number of users whose cached authorities are invalidated individually when the membership
+     * of a group changes. Changes affecting more users clear the whole user authority cache.
+     * 
+     * @param scopedInvalidationLimit the maximum number of users to invalidate individually, 0 to always clear the cache
+     */
+    public void setScopedInvalidationLimit(int scopedInvalidationLimit)
+    {
+        this.scopedInvalidationLimit = scopedInvalidationLimit;
+    }
+
+    /**
+     * Sets the shared cache behind the user authority cache. Users are only invalidated individually when it is held
+     * in this JVM, as the default cache factory always builds it: the users invalidated on this server are not known
+     * to the others, so a clustered cache is cleared on every group change and every bridge table refresh.
+     * 
+     * @param userAuthoritySharedCache the shared cache that was built for the user authority cache
+     */
+    public void setUserAuthoritySharedCache(SimpleCache<?, ?> userAuthoritySharedCache)
+    {
+        this.userAuthorityCacheLocal = userAuthoritySharedCache instanceof DefaultSimpleCache;
+        if (!userAuthorityCacheLocal && logger.isInfoEnabled())
+        {
+            logger.info("Group changes clear the whole user authority cache as it is not held in this JVM: " + userAuthoritySharedCache);
+        }
+    }
+
+    private boolean isScopedInvalidation()
+    {
+        return scopedInvalidationLimit > 0 && userAuthorityCacheLocal;
+    }
+
 
     public void setPersonService(PersonService personService)
     {
@@ -375,7 +420,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         else
         {
-            userAuthorityCache.clear();
+            invalidateUserAuthorities(getContainedUsers(childName));
             authorityBridgeTableCache.refresh();
         }
     }
@@ -432,11 +477,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         zoneAuthorityCache.remove(new Pair<String, String>(currentUserDomain, null));
         removeParentsFromChildAuthorityCache(nodeRef, false);
+        Set<String> affectedUsers = AuthorityType.getAuthorityType(name) == AuthorityType.USER ?
+                Collections.singleton(name) : getContainedUsers(name);
         
         nodeService.deleteNode(nodeRef);
         
         authorityLookupCache.remove(cacheKey(name));
-        userAuthorityCache.clear();
+        invalidateUserAuthorities(affectedUsers);
         authorityBridgeTableCache.refresh();
     }
     
@@ -813,7 +860,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         else
         {
-            userAuthorityCache.clear();
+            invalidateUserAuthorities(getContainedUsers(childName));
             if (cacheRefresh)
             {
                 authorityBridgeTableCache.refresh();
@@ -821,6 +868,83 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
     }
 
+    /**
+     * Removes the cached containing authorities of the given users, who are the only users affected when a group
+     * they belong to (directly or through nested groups) gains or loses a parent, or is deleted. The users are also
+     * remembered so that they can be invalidated again once the bridge table has been rebuilt, as lookups made in
+     * the meantime still see the old group hierarchy. If there are too many users the whole cache is cleared instead.
+     * 
+     * @param users the names of the affected users or <tt>null</tt> if there are too many to list
+     */
+    private void invalidateUserAuthorities(Set<String> users)
+    {
+        if (users == null || !isScopedInvalidation())
+        {
+            pendingFullInvalidation.set(true);
+            userAuthorityCache.clear();
+            return;
+        }
+        for (String user : users)
+        {
+            userAuthorityCache.remove(user);
+        }
+        pendingUserInvalidations.addAll(users);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Invalidated cached authorities of " + users.size() + " users");
+        }
+    }
+
+    /**
+     * List the users contained in a group, directly or through nested groups, for invalidating their cached
+     * authorities. The walk gives up once it has seen more than {@link #setScopedInvalidationLimit(int)
+     * scopedInvalidationLimit} members, so a large group costs no more than a bounded number of lookups.
+     * 
+     * @param groupName the name of the group
+     * @return the users or <tt>null</tt> if there are too many to list or scoped invalidation is not in use
+     */
+    private Set<String> getContainedUsers(String groupName)
+    {
+        if (!isScopedInvalidation())
+        {
+            return null;
+        }
+        NodeRef groupRef = getAuthorityOrNull(groupName);
+        if (groupRef == null)
+        {
+            throw new UnknownAuthorityException("An authority was not found for " + groupName);
+        }
+        Set<String> members = new HashSet<String>();
+        Set<String> users = new TreeSet<String>();
+        Set<NodeRef> visitedGroups = new HashSet<NodeRef>();
+        Deque<NodeRef> groupsToVisit = new ArrayDeque<NodeRef>();
+        groupsToVisit.push(groupRef);
+        visitedGroups.add(groupRef);
+        while (!groupsToVisit.isEmpty())
+        {
+            Pair<Map<NodeRef, String>, List<NodeRef>> childAuthorities = getChildAuthorities(groupsToVisit.pop());
+            for (String memberName : childAuthorities.getFirst().values())
+            {
+                if (members.add(memberName))
+                {
+                    addAuthorityNameIfMatches(users, memberName, AuthorityType.USER);
+                }
+            }
+            if (members.size() > scopedInvalidationLimit)
+            {
+                return null;
+            }
+            for (NodeRef childGroupRef : childAuthorities.getSecond())
+            {
+                if (visitedGroups.add(childGroupRef))
+                {
+                    groupsToVisit.push(childGroupRef);
+                }
+            }
+        }
+        return users;
+    }
+
     /**
      * Explicitly use the bridge table to list authorities.
      */
@@ -882,16 +1006,24 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             if (authorities == null)
             {
                 authorities = new TreeSet<String>();
+                boolean cacheable = true;
                 if(useBridgeTable)
                 {
+                    // Don't cache results from a bridge table that is about to be replaced, as group changes only
+                    // invalidate the users they affect
+                    cacheable = authorityBridgeTableCache.isUpToDate();
                     listAuthoritiesByBridgeTable(authorities, name);
                 }
                 else
                 {
                     listAuthorities(null, name, authorities, true, true);
                 }
-                // Add the set back to the cache. Name has already been normalized. If the value is locked then nothing will happen.
-                userAuthorityCache.put(name, Collections.unmodifiableSet(authorities));
+                authorities = Collections.unmodifiableSet(authorities);
+                if (cacheable)
+                {
+                    // Add the set back to the cache. Name has already been normalized. If the value is locked then nothing will happen.
+                    userAuthorityCache.put(name, authorities);
+                }
             }
             // If we wanted the unfiltered set we are done
             if (type == null)
@@ -1795,10 +1927,35 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     @Override
     public void onRefreshableCacheEvent(RefreshableCacheEvent refreshableCacheEvent)
     {
+        // A rebuilt bridge table only affects the users invalidated since the last rebuild. Without a record of
+        // them the whole cache must be cleared. A clustered cache is always cleared, as the refresh may have been
+        // triggered by a change on another server that this one has no record of.
+        boolean trackedChanges = isScopedInvalidation() && !pendingFullInvalidation.get() && !pendingUserInvalidations.isEmpty();
+        if (trackedChanges && !(refreshableCacheEvent instanceof RefreshableCacheRefreshedEvent))
+        {
+            // Wait for the refresh to complete
+            return;
+        }
+        if (trackedChanges)
+        {
+            List<String> users = new ArrayList<String>(pendingUserInvalidations);
+            pendingUserInvalidations.removeAll(users);
+            if(logger.isDebugEnabled())
+            {
+                logger.debug("Bridge Table cache triggering userAuthorityCache.remove() for " + users.size() + " users");
+            }
+            for (String user : users)
+            {
+                userAuthorityCache.remove(user);
+            }
+            return;
+        }
         if(logger.isDebugEnabled())
         {
             logger.debug("Bridge Table cache triggering userAuthorityCache.clear()");
         }
+        pendingFullInvalidation.set(false);
+        pendingUserInvalidations.clear();
         userAuthorityCache.clear();
     }
 
@@ -158,4 +158,16 @@ public interface PermissionServiceSPI extends PermissionService
      * @return - the node permission entry
      */
     public NodePermissionEntry getSetPermissions(StoreRef storeRef);
+    
+    /**
+     * Optimised read permission evaluation for all nodes sharing an ACL.
+     * <p/>
+     * {@link AccessStatus#ALLOWED} means that the current user can read every node protected by the ACL.
+     * Any other status is not conclusive for individual nodes (ownership may still grant access), so
+     * {@link #hasReadPermission(NodeRef)} must be used for them.
+     * 
+     * @param aclId the ACL ID
+     * @return ALLOWED if the ACL grants read access by itself, UNDETERMINED otherwise
+     */
+    public AccessStatus hasReadPermission(Long aclId);
 }
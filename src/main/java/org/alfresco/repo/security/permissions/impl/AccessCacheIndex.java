@@ -0,0 +1,465 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.alfresco.repo.cache.CacheStatistics;
+import org.alfresco.repo.cache.DefaultCacheFactory;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.TransactionStats;
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reverse index over the keys held in the permissions access cache.
+ * <p/>
+ * Keys are indexed by ACL ID (or as node keys for old style permission evaluation) and by the authorities they were
+ * evaluated for. This allows node moves and group membership changes to remove only the affected cache entries
+ * rather than clearing the whole cache.
+ * <p/>
+ * The index only knows about keys put into the cache by this server, so it is only used when the
+ * {@link #setSharedCache(SimpleCache) shared access cache} is held in this JVM, which is always the case for the
+ * caches built by the {@link DefaultCacheFactory}.  For a clustered cache every invalidation clears the whole cache,
+ * as entries evaluated on other cluster members are not indexed here.  The index is also
+ * bounded in size. Once the bound is reached
+ * the index stops tracking new keys and the next invalidation falls back to clearing the whole cache, after which
+ * tracking starts again.
+ * <p/>
+ * Hits, misses and invalidated entries are recorded against the {@link CacheStatistics} under the index {@link #setName(String) name}.
+ */
+public class AccessCacheIndex
+{
+    private static final String KEY_TXN_STATS = AccessCacheIndex.class.getName() + ".stats";
+
+    private static Log logger = LogFactory.getLog(AccessCacheIndex.class);
+
+    private SimpleCache<Serializable, AccessStatus> accessCache;
+    private SimpleCache<?, ?> sharedCache;
+    private CacheStatistics cacheStats;
+    private boolean cacheStatsEnabled = false;
+    private String name = "org.alfresco.permissionsAccessCacheIndex";
+    private int maxIndexedKeys = 100000;
+    private boolean enabled = false;
+
+    private final ConcurrentMap<Long, Set<AccessCacheKey>> keysByAcl = new ConcurrentHashMap<Long, Set<AccessCacheKey>>();
+    private final ConcurrentMap<String, Set<AccessCacheKey>> keysByAuthority = new ConcurrentHashMap<String, Set<AccessCacheKey>>();
+    private final Set<AccessCacheKey> nodeKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger indexedKeyCount = new AtomicInteger(0);
+    private volatile boolean overflowed = false;
+    /** Registration and targeted invalidation share the lock; a full clear takes it exclusively */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong invalidationCount = new AtomicLong(0);
+
+    private final StatsListener statsListener = new StatsListener();
+
+    /**
+     * @param accessCache the permissions access cache being indexed
+     */
+    public void setAccessCache(SimpleCache<Serializable, AccessStatus> accessCache)
+    {
+        this.accessCache = accessCache;
+    }
+
+    public void setCacheStats(CacheStatistics cacheStats)
+    {
+        this.cacheStats = cacheStats;
+    }
+
+    public void setCacheStatsEnabled(boolean cacheStatsEnabled)
+    {
+        this.cacheStatsEnabled = cacheStatsEnabled;
+    }
+
+    /**
+     * @param name the name the index statistics are recorded against
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @param maxIndexedKeys the maximum number of keys tracked before falling back to clearing the whole cache
+     */
+    public void setMaxIndexedKeys(int maxIndexedKeys)
+    {
+        this.maxIndexedKeys = maxIndexedKeys;
+    }
+
+    /**
+     * @param enabled <tt>false</tt> to stop indexing keys, so that every invalidation clears the whole cache
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param sharedCache the shared cache behind the access cache; the index is only used if it is held in this JVM.
+     *                    If not set, the access cache itself is checked.
+     */
+    public void setSharedCache(SimpleCache<?, ?> sharedCache)
+    {
+        this.sharedCache = sharedCache;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "accessCache", accessCache);
+        SimpleCache<?, ?> builtCache = (sharedCache == null) ? accessCache : sharedCache;
+        if (enabled && !(builtCache instanceof DefaultSimpleCache))
+        {
+            logger.warn("The access cache index is disabled as the access cache is not held in this JVM: " + builtCache);
+            enabled = false;
+        }
+        if (cacheStatsEnabled)
+        {
+            PropertyCheck.mandatory(this, "cacheStats", cacheStats);
+        }
+    }
+
+    /**
+     * Look up a cached access status, recording the hit or miss
+     */
+    public AccessStatus get(AccessCacheKey key)
+    {
+        AccessStatus status = accessCache.get(key);
+        if (status == null)
+        {
+            missCount.incrementAndGet();
+            recordStats(OpType.GET_MISS, 1);
+        }
+        else
+        {
+            hitCount.incrementAndGet();
+            recordStats(OpType.GET_HIT, 1);
+        }
+        return status;
+    }
+
+    /**
+     * Cache an access status and index its key
+     */
+    public void put(AccessCacheKey key, AccessStatus status)
+    {
+        accessCache.put(key, status);
+        register(key);
+    }
+
+    private void register(AccessCacheKey key)
+    {
+        if (!enabled || overflowed)
+        {
+            return;
+        }
+        indexLock.readLock().lock();
+        try
+        {
+            boolean added;
+            if (key.getAclId() != null)
+            {
+                added = getKeySet(keysByAcl, key.getAclId()).add(key);
+            }
+            else
+            {
+                added = nodeKeys.add(key);
+            }
+            if (!added)
+            {
+                return;
+            }
+            if (indexedKeyCount.incrementAndGet() > maxIndexedKeys)
+            {
+                if (!overflowed && logger.isDebugEnabled())
+                {
+                    logger.debug("Access cache index is full (" + maxIndexedKeys + " keys); the next invalidation will clear the cache.");
+                }
+                overflowed = true;
+                return;
+            }
+            for (String authority : getAuthorities(key))
+            {
+                getKeySet(keysByAuthority, authority).add(key);
+            }
+        }
+        finally
+        {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the cache entries evaluated against any of the given ACLs
+     */
+    public void invalidateAcls(Collection<Long> aclIds)
+    {
+        if (!enabled || overflowed)
+        {
+            clear();
+            return;
+        }
+        List<AccessCacheKey> keys = new ArrayList<AccessCacheKey>();
+        for (Long aclId : aclIds)
+        {
+            Set<AccessCacheKey> aclKeys = keysByAcl.get(aclId);
+            if (aclKeys != null)
+            {
+                keys.addAll(aclKeys);
+            }
+        }
+        remove(keys);
+    }
+
+    /**
+     * Remove the cache entries evaluated for any of the given authorities.  For entries keyed by user name this is the
+     * user; for entries keyed by a full authority set it is any authority in the set.
+     */
+    public void invalidateAuthorities(Collection<String> authorities)
+    {
+        if (!enabled || overflowed)
+        {
+            clear();
+            return;
+        }
+        List<AccessCacheKey> keys = new ArrayList<AccessCacheKey>();
+        for (String authority : authorities)
+        {
+            Set<AccessCacheKey> authorityKeys = keysByAuthority.get(authority);
+            if (authorityKeys != null)
+            {
+                keys.addAll(authorityKeys);
+            }
+        }
+        remove(keys);
+    }
+
+    /**
+     * Remove all the cache entries from old style, node based permission evaluation.  These depend on the position of
+     * the node in the hierarchy and can not be scoped to an ACL.
+     */
+    public void invalidateNodeKeys()
+    {
+        if (!enabled || overflowed)
+        {
+            clear();
+            return;
+        }
+        remove(new ArrayList<AccessCacheKey>(nodeKeys));
+    }
+
+    /**
+     * Clear the cache and the index
+     */
+    public void clear()
+    {
+        indexLock.writeLock().lock();
+        try
+        {
+            accessCache.clear();
+            keysByAcl.clear();
+            keysByAuthority.clear();
+            nodeKeys.clear();
+            indexedKeyCount.set(0);
+            overflowed = false;
+        }
+        finally
+        {
+            indexLock.writeLock().unlock();
+        }
+        recordStats(OpType.CLEAR, 1);
+    }
+
+    private void remove(List<AccessCacheKey> keys)
+    {
+        if (keys.isEmpty())
+        {
+            return;
+        }
+        int removed = 0;
+        indexLock.readLock().lock();
+        try
+        {
+            for (AccessCacheKey key : keys)
+            {
+                boolean wasIndexed;
+                if (key.getAclId() != null)
+                {
+                    Set<AccessCacheKey> aclKeys = keysByAcl.get(key.getAclId());
+                    wasIndexed = aclKeys != null && aclKeys.remove(key);
+                }
+                else
+                {
+                    wasIndexed = nodeKeys.remove(key);
+                }
+                for (String authority : getAuthorities(key))
+                {
+                    Set<AccessCacheKey> authorityKeys = keysByAuthority.get(authority);
+                    if (authorityKeys != null)
+                    {
+                        authorityKeys.remove(key);
+                    }
+                }
+                if (wasIndexed)
+                {
+                    indexedKeyCount.decrementAndGet();
+                    accessCache.remove(key);
+                    removed++;
+                }
+            }
+        }
+        finally
+        {
+            indexLock.readLock().unlock();
+        }
+        invalidationCount.addAndGet(removed);
+        recordStats(OpType.REMOVE, removed);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Removed " + removed + " access cache entries");
+        }
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of entries removed by targeted invalidation
+     */
+    public long getInvalidationCount()
+    {
+        return invalidationCount.get();
+    }
+
+    /**
+     * @return the number of keys currently tracked
+     */
+    public int getIndexedKeyCount()
+    {
+        return Math.min(indexedKeyCount.get(), maxIndexedKeys);
+    }
+
+    private static <K> Set<AccessCacheKey> getKeySet(ConcurrentMap<K, Set<AccessCacheKey>> map, K key)
+    {
+        Set<AccessCacheKey> keys = map.get(key);
+        if (keys == null)
+        {
+            Set<AccessCacheKey> newKeys = ConcurrentHashMap.newKeySet();
+            keys = map.putIfAbsent(key, newKeys);
+            if (keys == null)
+            {
+                keys = newKeys;
+            }
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<String> getAuthorities(AccessCacheKey key)
+    {
+        Serializable authorities = key.getAuthorities();
+        if (authorities instanceof Collection)
+        {
+            return (Collection<String>) authorities;
+        }
+        return Collections.emptySet();
+    }
+
+    private void recordStats(OpType opType, int count)
+    {
+        if (!cacheStatsEnabled || count == 0 || AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            return;
+        }
+        TransactionStats stats = (TransactionStats) AlfrescoTransactionSupport.getResource(KEY_TXN_STATS);
+        if (stats == null)
+        {
+            stats = new TransactionStats();
+            AlfrescoTransactionSupport.bindResource(KEY_TXN_STATS, stats);
+            AlfrescoTransactionSupport.bindListener(statsListener);
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            stats.record(now, now, opType);
+        }
+    }
+
+    /**
+     * Aggregates the statistics of each transaction into the central cache statistics
+     */
+    private class StatsListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void afterCommit()
+        {
+            addStats();
+        }
+
+        @Override
+        public void afterRollback()
+        {
+            addStats();
+        }
+
+        private void addStats()
+        {
+            TransactionStats stats = (TransactionStats) AlfrescoTransactionSupport.getResource(KEY_TXN_STATS);
+            if (stats != null)
+            {
+                cacheStats.add(name, stats);
+            }
+        }
+    }
+}
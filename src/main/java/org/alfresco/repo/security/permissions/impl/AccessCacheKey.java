@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.EqualsHelper;
+
+/**
+ * Key for entries in the permissions access cache.
+ * <p/>
+ * Keys are either scoped to an ACL - the ACL ID and the ACL change set it was last changed in, so that any change to
+ * the ACL produces a new key - or, for old style permission evaluation, to a node and the transaction the node was last
+ * changed in. The authorities part of the key is the user name where the authorities are resolved lazily for a user, or
+ * the full set of authorities otherwise.
+ */
+final class AccessCacheKey implements Serializable
+{
+    private static final long serialVersionUID = -2855286102934306574L;
+
+    private final String permission;
+    private final Serializable authorities;
+    private final Long aclId;
+    private final Long aclChangeSetId;
+    private final NodeRef nodeRef;
+    private final Serializable nodeVersion;
+    private final QName typeQName;
+    private final Set<QName> aspectQNames;
+    private final Serializable dynamicAuthorities;
+    private final PermissionServiceImpl.CacheType cacheType;
+    /** Computed on first use, as the key may have been deserialized from another cluster member */
+    private transient int hashCode;
+
+    private AccessCacheKey(
+            String permission, Serializable authorities,
+            Long aclId, Long aclChangeSetId,
+            NodeRef nodeRef, Serializable nodeVersion,
+            QName typeQName, Set<QName> aspectQNames, Serializable dynamicAuthorities,
+            PermissionServiceImpl.CacheType cacheType)
+    {
+        this.permission = permission;
+        this.authorities = authorities;
+        this.aclId = aclId;
+        this.aclChangeSetId = aclChangeSetId;
+        this.nodeRef = nodeRef;
+        this.nodeVersion = nodeVersion;
+        this.typeQName = typeQName;
+        this.aspectQNames = aspectQNames;
+        this.dynamicAuthorities = dynamicAuthorities;
+        this.cacheType = cacheType;
+    }
+
+    /**
+     * Create a key for an old style permission check against a node
+     * 
+     * @param permission        the permission being checked
+     * @param authorities       the user name or full set of authorities
+     * @param nodeRef           the node being checked
+     * @param nodeVersion       the ID of the transaction that last changed the node
+     * @param cacheType         the type of check being cached
+     */
+    static AccessCacheKey forNode(String permission, Serializable authorities, NodeRef nodeRef, Serializable nodeVersion, PermissionServiceImpl.CacheType cacheType)
+    {
+        return new AccessCacheKey(permission, authorities, null, null, nodeRef, nodeVersion, null, null, null, cacheType);
+    }
+
+    /**
+     * Create a key for a permission check against an ACL
+     * 
+     * @param permission            the permission being checked
+     * @param authorities           the user name or full set of authorities
+     * @param aclId                 the ID of the ACL
+     * @param aclChangeSetId        the ACL change set in which the ACL was last changed
+     * @param typeQName             the type of the node the ACL is evaluated for
+     * @param aspectQNames          the aspects of the node the ACL is evaluated for
+     * @param dynamicAuthorities    the dynamic authority assignments of the permission context
+     */
+    static AccessCacheKey forAcl(
+            String permission, Serializable authorities, Long aclId, Long aclChangeSetId,
+            QName typeQName, Set<QName> aspectQNames, Serializable dynamicAuthorities)
+    {
+        Set<QName> aspects = (aspectQNames == null) ? Collections.<QName>emptySet() : new HashSet<QName>(aspectQNames);
+        return new AccessCacheKey(permission, authorities, aclId, aclChangeSetId, null, null, typeQName, aspects, dynamicAuthorities,
+                PermissionServiceImpl.CacheType.HAS_PERMISSION);
+    }
+
+    public String getPermission()
+    {
+        return permission;
+    }
+
+    public Serializable getAuthorities()
+    {
+        return authorities;
+    }
+
+    /**
+     * @return the ACL ID or <tt>null</tt> if this key is for an old style node check
+     */
+    public Long getAclId()
+    {
+        return aclId;
+    }
+
+    /**
+     * @return the node or <tt>null</tt> if this key is for an ACL check
+     */
+    public NodeRef getNodeRef()
+    {
+        return nodeRef;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof AccessCacheKey))
+        {
+            return false;
+        }
+        AccessCacheKey that = (AccessCacheKey) obj;
+        return this.hashCode() == that.hashCode()
+                && this.cacheType == that.cacheType
+                && this.permission.equals(that.permission)
+                && EqualsHelper.nullSafeEquals(this.authorities, that.authorities)
+                && EqualsHelper.nullSafeEquals(this.aclId, that.aclId)
+                && EqualsHelper.nullSafeEquals(this.aclChangeSetId, that.aclChangeSetId)
+                && EqualsHelper.nullSafeEquals(this.nodeRef, that.nodeRef)
+                && EqualsHelper.nullSafeEquals(this.nodeVersion, that.nodeVersion)
+                && EqualsHelper.nullSafeEquals(this.typeQName, that.typeQName)
+                && EqualsHelper.nullSafeEquals(this.aspectQNames, that.aspectQNames)
+                && EqualsHelper.nullSafeEquals(this.dynamicAuthorities, that.dynamicAuthorities);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = hashCode;
+        if (result == 0)
+        {
+            // The enum ordinal, unlike its identity hash code, is the same on every cluster member
+            result = permission.hashCode();
+            result = 31 * result + (authorities == null ? 0 : authorities.hashCode());
+            result = 31 * result + (aclId == null ? 0 : aclId.hashCode());
+            result = 31 * result + (nodeRef == null ? 0 : nodeRef.hashCode());
+            result = 31 * result + cacheType.ordinal();
+            hashCode = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("AccessCacheKey[")
+          .append("permission=").append(permission)
+          .append(", authorities=").append(authorities);
+        if (aclId != null)
+        {
+            sb.append(", aclId=").append(aclId)
+              .append(", aclChangeSetId=").append(aclChangeSetId)
+              .append(", type=").append(typeQName);
+        }
+        else
+        {
+            sb.append(", nodeRef=").append(nodeRef)
+              .append(", nodeVersion=").append(nodeVersion);
+        }
+        sb.append(", cacheType=").append(cacheType)
+          .append("]");
+        return sb.toString();
+    }
+}
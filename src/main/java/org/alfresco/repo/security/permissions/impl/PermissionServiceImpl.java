@@ -29,6 +29,7 @@ import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -42,6 +43,7 @@ import net.sf.acegisecurity.providers.dao.User;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.domain.permissions.AclDAOImpl;
 import org.alfresco.repo.domain.permissions.FixedAclUpdater;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.JavaBehaviour;
@@ -78,6 +80,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AccessPermission;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
@@ -113,6 +116,9 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
+
+    /** optional reverse index over the access cache, allowing targeted invalidation */
+    protected AccessCacheIndex accessCacheIndex;
     
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
@@ -207,7 +213,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void setAnyDenyDenies(boolean anyDenyDenies)
     {
         this.anyDenyDenies = anyDenyDenies;
-        accessCache.clear();
+        clearAccessCache();
         readersCache.clear();
         readersDeniedCache.clear();
     }
@@ -311,6 +317,18 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.accessCache = accessCache;
     }
 
+    /**
+     * Set the index over the permissions access cache.  When set, node moves and group membership changes only
+     * remove the affected entries from the access cache rather than clearing it.
+     * 
+     * @param accessCacheIndex
+     *            an index over the {@link #setAccessCache(SimpleCache) access cache}
+     */
+    public void setAccessCacheIndex(AccessCacheIndex accessCacheIndex)
+    {
+        this.accessCacheIndex = accessCacheIndex;
+    }
+
     /**
      * @param readersCache the readersCache to set
      */
@@ -344,14 +362,24 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     }
 
     /**
-     * Cache clear on move node
+     * Cache clear on move node.
+     * <p/>
+     * When the access cache is indexed only the entries from old style, node based evaluation are removed.  Entries
+     * for ACLs include the ACL change set, so ACLs changed by the move are not matched by existing entries.
      * 
      * @param oldChildAssocRef ChildAssociationRef
      * @param newChildAssocRef ChildAssociationRef
      */
     public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
     {
-        accessCache.clear();
+        if (accessCacheIndex == null)
+        {
+            accessCache.clear();
+        }
+        else
+        {
+            accessCacheIndex.invalidateNodeKeys();
+        }
     }
 
     /**
@@ -361,7 +389,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
      */
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateMembershipChange(childAssocRef);
     }
 
     /**
@@ -371,7 +399,85 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
      */
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateMembershipChange(childAssocRef);
+    }
+
+    /**
+     * Remove the access cache entries affected by adding or removing a member of a group: entries for the group
+     * itself, the member and, if the member is a group, every authority it contains.
+     */
+    private void invalidateMembershipChange(ChildAssociationRef childAssocRef)
+    {
+        if (accessCacheIndex == null)
+        {
+            accessCache.clear();
+            return;
+        }
+        String parentName = getAuthorityName(childAssocRef.getParentRef());
+        String childName = getAuthorityName(childAssocRef.getChildRef());
+        if (parentName == null || childName == null)
+        {
+            accessCacheIndex.clear();
+            return;
+        }
+        Set<String> affected = new HashSet<String>();
+        affected.add(parentName);
+        affected.add(childName);
+        if (AuthorityType.getAuthorityType(childName) == AuthorityType.GROUP)
+        {
+            affected.addAll(authorityService.getContainedAuthorities(null, childName, false));
+        }
+        accessCacheIndex.invalidateAuthorities(affected);
+    }
+
+    private String getAuthorityName(NodeRef authorityRef)
+    {
+        if (authorityRef == null || !nodeService.exists(authorityRef))
+        {
+            return null;
+        }
+        QName type = nodeService.getType(authorityRef);
+        if (dictionaryService.isSubClass(type, ContentModel.TYPE_AUTHORITY_CONTAINER))
+        {
+            return (String) nodeService.getProperty(authorityRef, ContentModel.PROP_AUTHORITY_NAME);
+        }
+        else if (dictionaryService.isSubClass(type, ContentModel.TYPE_PERSON))
+        {
+            return (String) nodeService.getProperty(authorityRef, ContentModel.PROP_USERNAME);
+        }
+        return null;
+    }
+
+    /**
+     * Clear the access cache, and its index if there is one
+     */
+    protected void clearAccessCache()
+    {
+        if (accessCacheIndex == null)
+        {
+            accessCache.clear();
+        }
+        else
+        {
+            accessCacheIndex.clear();
+        }
+    }
+
+    private AccessStatus getCachedAccess(AccessCacheKey key)
+    {
+        return (accessCacheIndex == null) ? accessCache.get(key) : accessCacheIndex.get(key);
+    }
+
+    private void putCachedAccess(AccessCacheKey key, AccessStatus status)
+    {
+        if (accessCacheIndex == null)
+        {
+            accessCache.put(key, status);
+        }
+        else
+        {
+            accessCacheIndex.put(key, status);
+        }
     }
 
     @Override
@@ -623,10 +729,10 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         available.add(getAllPermissionReference());
         available.add(OLD_ALL_PERMISSIONS_REFERENCE);
 
-        final Serializable key = generateKey(authorisations, nodeRef, perm, CacheType.HAS_PERMISSION);
+        final AccessCacheKey key = generateKey(authorisations, nodeRef, perm, CacheType.HAS_PERMISSION);
         if (!(available.contains(perm)))
         {
-            accessCache.put(key, AccessStatus.DENIED);
+            putCachedAccess(key, AccessStatus.DENIED);
             return AccessStatus.DENIED;
         }
 
@@ -641,7 +747,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             public AccessStatus doWork() throws Exception
             {
 
-                AccessStatus status = accessCache.get(key);
+                AccessStatus status = getCachedAccess(key);
                 if (status != null)
                 {
                     return status;
@@ -668,7 +774,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                 }
 
                 status = result ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-                accessCache.put(key, status);
+                putCachedAccess(key, status);
                 return status;
             }
         }, AuthenticationUtil.getSystemUserName());
@@ -781,6 +887,16 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             permission = getAllPermissionReference();
         }
 
+        AccessCacheKey key = generateAclKey(authorisations, aclId, context, permission);
+        if (key != null)
+        {
+            AccessStatus status = getCachedAccess(key);
+            if (status != null)
+            {
+                return status;
+            }
+        }
+
         boolean result;
         if (context.getStoreAcl() == null)
         {
@@ -794,6 +910,10 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             result = aclTest.evaluate(authorisations, aclId, context) && aclTest.evaluate(storeAuthorisations, context.getStoreAcl(), context);
         }
         AccessStatus status = result ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        if (key != null)
+        {
+            putCachedAccess(key, status);
+        }
         return status;
 
     }
@@ -825,25 +945,55 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
      * Key for a cache object is built from all the known Authorities (which can change dynamically so they must all be
      * used) the NodeRef ID and the permission reference itself. This gives a unique key for each permission test.
      */
-    Serializable generateKey(Set<String> auths, NodeRef nodeRef, PermissionReference perm, CacheType type)
+    AccessCacheKey generateKey(Set<String> auths, NodeRef nodeRef, PermissionReference perm, CacheType type)
+    {
+        // Ensure some concept of node version or transaction is included in the key so we can track without cache replication 
+        NodeRef.Status nodeStatus = nodeService.getNodeStatus(nodeRef);
+        Serializable nodeVersion = nodeStatus == null ? "null" : nodeStatus.getChangeTxnId();
+        return AccessCacheKey.forNode(perm.toString(), getAuthoritiesKey(auths), nodeRef, nodeVersion, type);
+    }
+
+    /**
+     * The authorities part of an access cache key.  We will just have to key our dynamic sets by username.
+     */
+    private Serializable getAuthoritiesKey(Set<String> auths)
     {
-        LinkedHashSet<Serializable> key = new LinkedHashSet<Serializable>();
-        key.add(perm.toString());
-        // We will just have to key our dynamic sets by username. We wrap it so as not to be confused with a static set
         if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
         {
-            key.add((Serializable)Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername()));
+            return (Serializable) Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet) auths).getUsername());
         }
         else
         {
-            key.addAll(auths);            
-        }        
-        key.add(nodeRef);
-        // Ensure some concept of node version or transaction is included in the key so we can track without cache replication 
-        NodeRef.Status nodeStatus = nodeService.getNodeStatus(nodeRef);
-        key.add(nodeStatus == null ? "null" : nodeStatus.getChangeTxnId());
-        key.add(type);
-        return key;
+            return new HashSet<String>(auths);
+        }
+    }
+
+    /**
+     * Key for caching the evaluation of an ACL.  The ACL change set is part of the key so any change to the ACL gives
+     * a new key.  ACLs changed in the current transaction, and contexts that carry a store ACL or additional
+     * context, are not cached.
+     * 
+     * @return the key or <tt>null</tt> if the evaluation can not be cached
+     */
+    private AccessCacheKey generateAclKey(Set<String> auths, Long aclId, PermissionContext context, PermissionReference perm)
+    {
+        if (context.getStoreAcl() != null || (context.getAdditionalContext() != null && !context.getAdditionalContext().isEmpty()))
+        {
+            return null;
+        }
+        AccessControlListProperties properties = aclDaoComponent.getAccessControlListProperties(aclId);
+        if (properties == null || properties.getAclChangeSetId() == null)
+        {
+            return null;
+        }
+        Long currentChangeSetId = (Long) AlfrescoTransactionSupport.getResource(AclDAOImpl.RESOURCE_KEY_ACL_CHANGE_SET_ID);
+        if (properties.getAclChangeSetId().equals(currentChangeSetId))
+        {
+            return null;
+        }
+        HashMap<String, Set<String>> dynamicAuthorities = new HashMap<String, Set<String>>(context.getDynamicAuthorityAssignment());
+        return AccessCacheKey.forAcl(perm.toString(), getAuthoritiesKey(auths), aclId, properties.getAclChangeSetId(),
+                context.getType(), context.getAspects(), dynamicAuthorities);
     }
 
     /**
@@ -960,7 +1110,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(StoreRef storeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(storeRef, authority);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -973,7 +1123,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(StoreRef storeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(storeRef, authority, perm);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -981,7 +1131,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(StoreRef storeRef)
     {
         permissionsDaoComponent.deletePermissions(storeRef);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -994,7 +1144,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void setPermission(StoreRef storeRef, String authority, PermissionReference permission, boolean allow)
     {
         permissionsDaoComponent.setPermission(storeRef, authority, permission, allow);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1002,7 +1152,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodeRef nodeRef)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef));
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, null, null, false);
     }
@@ -1012,7 +1162,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodePermissionEntry nodePermissionEntry)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodePermissionEntry.getNodeRef()));
-        accessCache.clear();
+        clearAccessCache();
     }
 
     /**
@@ -1031,7 +1181,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(NodeRef nodeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(tenantService.getName(nodeRef), authority, perm);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, authority, (perm != null? perm.getName():null), false);
     }
@@ -1058,13 +1208,13 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(NodeRef nodeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef), authority);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     protected void setPermission(NodeRef nodeRef, String authority, PermissionReference perm, boolean allow)
     {
         permissionsDaoComponent.setPermission(tenantService.getName(nodeRef), authority, perm, allow);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, authority, perm.getName(), allow);
     }
@@ -1075,7 +1225,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef - currently only used by tests
         permissionsDaoComponent.setPermission(permissionEntry);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1084,7 +1234,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef- currently only used by tests
         permissionsDaoComponent.setPermission(nodePermissionEntry);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1093,7 +1243,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         NodeRef actualRef = tenantService.getName(nodeRef);
         permissionsDaoComponent.setInheritParentPermissions(actualRef, inheritParentPermissions);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeOnPermissionsInheritedPolicy(nodeRef, inheritParentPermissions, false);
     }
@@ -1125,7 +1275,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             invokeOnPermissionsInheritedPolicy(nodeRef, inheritParentPermissions, false);
         }
         
-        accessCache.clear();
+        clearAccessCache();
     }
     
     private void invokeOnPermissionsInheritedPolicy(NodeRef nodeRef, final boolean inheritParentPermissions, boolean async)
@@ -1230,7 +1380,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(String recipient)
     {
         permissionsDaoComponent.deletePermissions(recipient);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     /**
@@ -1271,8 +1421,34 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             return AccessStatus.ALLOWED;
         }
 
-        // any dynamic authorities other than those defined in the default permissions model with full
-        // control or read permission force hasPermission check
+        if(isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * Any dynamic authorities other than those defined in the default permissions model with full
+     * control or read permission force a full hasPermission check
+     */
+    private boolean isForceHasPermission()
+    {
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
         if(forceHasPermission == null)
         {
@@ -1293,27 +1469,35 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
+        return forceHasPermission == Boolean.TRUE;
+    }
 
-        if(forceHasPermission == Boolean.TRUE)
+    /**
+     * Optimised read permission evaluation for an ACL, as used by {@link #hasReadPermission(NodeRef)}
+     * but without the node-specific ownership check.
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public AccessStatus hasReadPermission(Long aclId)
+    {
+        if (aclId == null || AuthenticationUtil.getRunAsUser() == null)
         {
-            return hasPermission(nodeRef, PermissionService.READ);
+            return AccessStatus.UNDETERMINED;
         }
 
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
+        if (AuthenticationUtil.isRunAsUserTheSystemUser())
         {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+            return AccessStatus.ALLOWED;
         }
-        else
+
+        if (isForceHasPermission())
         {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+            // Dynamic authorities may depend on the node
+            return AccessStatus.UNDETERMINED;
         }
 
-        return status;
+        return (canRead(aclId) == AccessStatus.ALLOWED ||
+                adminRead() == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.UNDETERMINED;
     }
 
     protected AccessStatus adminRead()
@@ -1697,9 +1881,9 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             nodeRef = tenantService.getName(nodeRef);
 
-            Serializable key = generateKey(authorisations, nodeRef, this.required, CacheType.SINGLE_PERMISSION_GLOBAL);
+            AccessCacheKey key = generateKey(authorisations, nodeRef, this.required, CacheType.SINGLE_PERMISSION_GLOBAL);
 
-            AccessStatus status = accessCache.get(key);
+            AccessStatus status = getCachedAccess(key);
             if (status != null)
             {
                 return status == AccessStatus.ALLOWED;
@@ -1709,7 +1893,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
             if (checkGlobalPermissions(authorisations))
             {
-                accessCache.put(key, AccessStatus.ALLOWED);
+                putCachedAccess(key, AccessStatus.ALLOWED);
                 return true;
             }
 
@@ -1734,14 +1918,14 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             denied.addAll(getDenied(nodeRef));
 
             // Cache non denied
-            Serializable key = null;
+            AccessCacheKey key = null;
             if (denied.size() == 0)
             {
                 key = generateKey(authorisations, nodeRef, this.required, CacheType.SINGLE_PERMISSION);
             }
             if (key != null)
             {
-                AccessStatus status = accessCache.get(key);
+                AccessStatus status = getCachedAccess(key);
                 if (status != null)
                 {
                     return status == AccessStatus.ALLOWED;
@@ -1754,7 +1938,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             {
                 if (key != null)
                 {
-                    accessCache.put(key, AccessStatus.ALLOWED);
+                    putCachedAccess(key, AccessStatus.ALLOWED);
                 }
                 return true;
             }
@@ -1773,7 +1957,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                     {
                         if (key != null)
                         {
-                            accessCache.put(key, AccessStatus.ALLOWED);
+                            putCachedAccess(key, AccessStatus.ALLOWED);
                         }
                         return true;
                     }
@@ -1781,7 +1965,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                     {
                         if (key != null)
                         {
-                            accessCache.put(key, AccessStatus.DENIED);
+                            putCachedAccess(key, AccessStatus.DENIED);
                         }
                         return false;
                     }
@@ -1790,7 +1974,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                 {
                     if (key != null)
                     {
-                        accessCache.put(key, AccessStatus.DENIED);
+                        putCachedAccess(key, AccessStatus.DENIED);
                     }
                     return false;
                 }
@@ -1799,7 +1983,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             {
                 if (key != null)
                 {
-                    accessCache.put(key, AccessStatus.DENIED);
+                    putCachedAccess(key, AccessStatus.DENIED);
                 }
                 return false;
             }
@@ -52,9 +52,11 @@ import org.alfresco.repo.security.permissions.PermissionCheckCollection;
 import org.alfresco.repo.security.permissions.PermissionCheckValue;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
@@ -103,6 +105,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
 	private int optimisePermissionsBulkFetchSize;
     private boolean anyDenyDenies = false;
     private boolean postProcessDenies = false;
+    private boolean groupReadChecksByAcl = false;
     /**
      * Default constructor
      */
@@ -527,6 +530,15 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     {
         this.postProcessDenies = postProcessDenies;
     }
+
+    /**
+     * When optimised read checks are used, evaluate each distinct ACL in a result set only once.
+     * Only ACL evaluations and per-node fallbacks count towards the maximum permission checks.
+     */
+    public void setGroupReadChecksByAcl(boolean groupReadChecksByAcl)
+    {
+        this.groupReadChecksByAcl = groupReadChecksByAcl;
+    }
     
 	private ResultSet decide(Authentication authentication, Object object, ConfigAttributeDefinition config, ResultSet returnedObject) throws AccessDeniedException
     {
@@ -609,6 +621,16 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
             returnedObject.setBulkFetch(builkFetch);
         }
 
+        // ACL grouping only applies to the optimised read checks
+        PermissionServiceSPI aclReadChecker = null;
+        if (supportedDefinitions == null && groupReadChecksByAcl && permissionService instanceof PermissionServiceSPI)
+        {
+            aclReadChecker = (PermissionServiceSPI) permissionService;
+        }
+        Map<Long, AccessStatus> aclReadStatus = new HashMap<Long, AccessStatus>();
+        int checks = 0;
+        int deduplicatedChecks = 0;
+
         try
         {
             // Iterate over all the elements.
@@ -621,7 +643,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                 // All permission checks must pass
                 filteringResultSet.setIncluded(i, true);
 
-                if (i >= maxChecks)
+                if ((aclReadChecker == null ? i : checks) >= maxChecks)
                 {
                     log.warn("maxChecks exceeded (" + maxChecks + ")", new Exception("Back Trace"));
                     filteringResultSet.setResultSetMetaData(new SimpleResultSetMetaData(LimitBy.NUMBER_OF_PERMISSION_EVALUATIONS, PermissionEvaluationMode.EAGER, returnedObject
@@ -664,6 +686,34 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                         }
                     }
                 }
+                else if (aclReadChecker != null)
+                {
+                    // Nodes sharing an ACL that grants read access need no further checks
+                    Long aclId = getNodeAclId(nodeRef);
+                    if (aclId != null)
+                    {
+                        AccessStatus aclStatus = aclReadStatus.get(aclId);
+                        if (aclStatus == null)
+                        {
+                            aclStatus = aclReadChecker.hasReadPermission(aclId);
+                            aclReadStatus.put(aclId, aclStatus);
+                            checks++;
+                        }
+                        else
+                        {
+                            deduplicatedChecks++;
+                        }
+                        if (aclStatus == AccessStatus.ALLOWED)
+                        {
+                            continue;
+                        }
+                    }
+                    checks++;
+                    if (permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
+                    {
+                        filteringResultSet.setIncluded(i, false);
+                    }
+                }
                 else  if (permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
                     // If supportedDefinitions is not passed as parameter, permissionService is used to check permission on results.
                 {
@@ -679,9 +729,34 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
             returnedObject.setBulkFetchSize(oldFetchSize);
         }
 
+        if (aclReadChecker != null && log.isDebugEnabled())
+        {
+            log.debug("Read permissions for " + returnedObject.length() + " results: " + aclReadStatus.size() + " distinct ACLs, " + checks
+                    + " checks, " + deduplicatedChecks + " checks deduplicated");
+        }
+
         return filteringResultSet;
     }
 
+    /**
+     * @return the ACL of the node or <tt>null</tt> if it is not available (e.g. version store or deleted nodes)
+     */
+    private Long getNodeAclId(NodeRef nodeRef)
+    {
+        try
+        {
+            return nodeService.getNodeAclId(nodeRef);
+        }
+        catch (InvalidNodeRefException e)
+        {
+            return null;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return null;
+        }
+    }
+
     /**
      * Compute a (Weak)FilteringResultSet by selecting the first maxSize elements from returnedObject.
      *
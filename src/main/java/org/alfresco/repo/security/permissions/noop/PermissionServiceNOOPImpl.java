@@ -284,6 +284,12 @@ public class PermissionServiceNOOPImpl implements PermissionServiceSPI
         return AccessStatus.ALLOWED;
     }
 
+    @Override
+    public AccessStatus hasReadPermission(Long aclId)
+    {
+        return AccessStatus.ALLOWED;
+    }
+
     @Override
 	public Set<String> getAuthorisations()
 	{
@@ -32,6 +32,7 @@ import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorker;
 import org.alfresco.repo.dictionary.constraint.NameChecker;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.management.subsystems.ActivateableBean;
 import org.alfresco.repo.management.subsystems.ChildApplicationContextManager;
 import org.alfresco.repo.security.authentication.AuthenticationException;
@@ -184,6 +185,18 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
 
     /** The number of worker threads. */
     private int workerThreads = 2;
+
+    /** The number of users and groups to read from a user registry ahead of the worker threads. */
+    private int prefetchSize = 0;
+
+    /** The transaction duration that batch sizes adapt to, or zero to use fixed batch sizes. */
+    private long adaptiveBatchTargetMillis = 0;
+
+    /** The largest batch size that adaptive sizing may choose. */
+    private int maxAdaptiveBatchSize = 100;
+
+    /** Publishes the metrics of each batch process over JMX. */
+    private DynamicMBeanExportOperations mbeanExporter;
     
     private MBeanServerConnection mbeanServer;
 
@@ -400,6 +413,50 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     {
         this.syncDelete = syncDelete;
     }
+
+    /**
+     * Sets the number of users and groups to read from a user registry ahead of the worker threads.
+     * 
+     * @param prefetchSize
+     *            the number of entries to read ahead or zero to read them between batches
+     */
+    public void setPrefetchSize(int prefetchSize)
+    {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Sets the transaction duration that batch sizes adapt to.
+     * 
+     * @param adaptiveBatchTargetMillis
+     *            the target duration in milliseconds or zero to use fixed batch sizes
+     */
+    public void setAdaptiveBatchTargetMillis(long adaptiveBatchTargetMillis)
+    {
+        this.adaptiveBatchTargetMillis = adaptiveBatchTargetMillis;
+    }
+
+    /**
+     * Sets the largest batch size that adaptive sizing may choose.
+     * 
+     * @param maxAdaptiveBatchSize
+     *            the largest batch size
+     */
+    public void setMaxAdaptiveBatchSize(int maxAdaptiveBatchSize)
+    {
+        this.maxAdaptiveBatchSize = maxAdaptiveBatchSize;
+    }
+
+    /**
+     * Sets the exporter used to publish the metrics of each batch process over JMX.
+     * 
+     * @param mbeanExporter
+     *            the exporter (may be <tt>null</tt>)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
     
     @Override
     public SynchronizeDiagnostic testSynchronize(String authenticatorName)
@@ -901,6 +958,28 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         private String title;
     }
 
+    /**
+     * Applies the configured prefetching, adaptive batch sizing and JMX export to a batch processor.
+     * 
+     * @param batchProcessor
+     *            the batch processor
+     * @param readsRegistry
+     *            does the processor page through a user registry, rather than a collection already in memory? Only
+     *            these benefit from reading ahead.
+     */
+    private void configureBatchProcessor(BatchProcessor<?> batchProcessor, boolean readsRegistry)
+    {
+        if (readsRegistry)
+        {
+            batchProcessor.setPrefetchSize(this.prefetchSize);
+        }
+        if (this.adaptiveBatchTargetMillis > 0)
+        {
+            batchProcessor.setAdaptiveBatchSize(1, Math.max(this.maxAdaptiveBatchSize, 1), this.adaptiveBatchTargetMillis);
+        }
+        batchProcessor.setMbeanExporter(this.mbeanExporter);
+    }
+
 
     /**
      * Synchronizes local groups and users with a {@link UserRegistry} for a particular zone, optionally handling
@@ -996,6 +1075,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                 this.applicationEventPublisher,
                 ChainingUserRegistrySynchronizer.logger, 
                 this.loggingInterval);
+        this.configureBatchProcessor(groupProcessor, true);
         class Analyzer extends BaseBatchProcessWorker<NodeDescription>
         {
             private final Map<String, String> groupsToCreate = new TreeMap<String, String>();
@@ -1527,6 +1607,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                                     ChainingUserRegistrySynchronizer.this.applicationEventPublisher,
                                     ChainingUserRegistrySynchronizer.logger,
                                     ChainingUserRegistrySynchronizer.this.loggingInterval);
+                            ChainingUserRegistrySynchronizer.this.configureBatchProcessor(groupScanner, false);
                             groupScanner.process(new BaseBatchProcessWorker<String>()
                             {
 
@@ -1569,6 +1650,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                                 ChainingUserRegistrySynchronizer.this.applicationEventPublisher,
                                 ChainingUserRegistrySynchronizer.logger,
                                 ChainingUserRegistrySynchronizer.this.loggingInterval);
+                        ChainingUserRegistrySynchronizer.this.configureBatchProcessor(groupCreator, false);
                         groupCreator.process(new BaseBatchProcessWorker<Map.Entry<String, Set<String>>>()
                         {
                             public String getIdentifier(Map.Entry<String, Set<String>> entry)
@@ -1624,6 +1706,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             ChainingUserRegistrySynchronizer.this.applicationEventPublisher,
                             ChainingUserRegistrySynchronizer.logger,
                             ChainingUserRegistrySynchronizer.this.loggingInterval);
+                    ChainingUserRegistrySynchronizer.this.configureBatchProcessor(groupCreator, false);
                     groupCreator.process(new BaseBatchProcessWorker<Map.Entry<String, Set<String>>>()
                     {
                         public String getIdentifier(Map.Entry<String, Set<String>> entry)
@@ -1656,6 +1739,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             ChainingUserRegistrySynchronizer.this.applicationEventPublisher,
                             ChainingUserRegistrySynchronizer.logger,
                             ChainingUserRegistrySynchronizer.this.loggingInterval);
+                    ChainingUserRegistrySynchronizer.this.configureBatchProcessor(groupCreator, false);
                     groupCreator.process(new BaseBatchProcessWorker<Map.Entry<String, Set<String>>>()
                     {
                         public String getIdentifier(Map.Entry<String, Set<String>> entry)
@@ -1778,6 +1862,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                 this.applicationEventPublisher,
                 ChainingUserRegistrySynchronizer.logger,
                 this.loggingInterval);
+        this.configureBatchProcessor(personProcessor, true);
 
         final UserRegistry userRegistryFinalRef = userRegistry;
 
@@ -1953,6 +2038,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                     this.applicationEventPublisher,
                     ChainingUserRegistrySynchronizer.logger,
                     this.loggingInterval);
+            this.configureBatchProcessor(authorityDeletionProcessor, false);
             class AuthorityDeleter extends BaseBatchProcessWorker<String>
             {
                 private int personProcessedCount;
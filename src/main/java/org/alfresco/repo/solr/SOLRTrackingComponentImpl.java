@@ -102,6 +102,8 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
     private DictionaryService dictionaryService;
     private boolean enabled = true;
     private boolean cacheAncestors =true;
+    private boolean streamMetadata = false;
+    private int metadataBatchSize = 1000;
     private TypeIndexFilter typeIndexFilter;
     private AspectIndexFilter aspectIndexFilter;
     private ShardRegistry shardRegistry;
@@ -130,6 +132,23 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         this.cacheAncestors = cacheAncestors;
     }
 
+    /**
+     * @param streamMetadata <tt>true</tt> to get node metadata in node ID order and in batches, sharing the ancestor
+     *                       paths of the nodes within each batch
+     */
+    public void setStreamMetadata(boolean streamMetadata)
+    {
+        this.streamMetadata = streamMetadata;
+    }
+
+    /**
+     * @param metadataBatchSize the number of nodes (and their ancestors) held in memory at a time when streaming metadata
+     */
+    public void setMetadataBatchSize(int metadataBatchSize)
+    {
+        this.metadataBatchSize = metadataBatchSize;
+    }
+
     public void setSolrDAO(SOLRDAO solrDAO)
     {
         this.solrDAO = solrDAO;
@@ -588,6 +607,13 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
     
     
     private List<Long> preCacheNodes(NodeMetaDataParameters nodeMetaDataParameters)
+    {
+        List<Long> nodeIds = getNodeIds(nodeMetaDataParameters);
+        preCacheNodes(nodeIds);
+        return nodeIds;
+    }
+
+    private List<Long> getNodeIds(NodeMetaDataParameters nodeMetaDataParameters)
     {
         int maxResults = nodeMetaDataParameters.getMaxResults();
         boolean isLimitSet = (maxResults != 0 && maxResults != Integer.MAX_VALUE);
@@ -617,7 +643,11 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                 nodeIds.add(nodeId);
             }
         }
-        
+        return nodeIds;
+    }
+
+    private void preCacheNodes(List<Long> nodeIds)
+    {
         // Pre-evaluate ancestors so we can bulk load them
         List<Long> ancestors;
         if(cacheAncestors)
@@ -632,8 +662,6 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         nodeDAO.setCheckNodeConsistency();
         // bulk load nodes and their ancestors      
         nodeDAO.cacheNodesById(ancestors);
-        
-        return nodeIds;
     }
     
     /**
@@ -798,10 +826,39 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         boolean includeChildIds = (resultFilter == null ? true : resultFilter.getIncludeChildIds());
         boolean includeTxnId = (resultFilter == null ? true : resultFilter.getIncludeTxnId());
         
-        List<Long> nodeIds = preCacheNodes(nodeMetaDataParameters);
+        List<Long> nodeIds;
+        if (streamMetadata)
+        {
+            // Nodes are cached a batch at a time as they are reached
+            nodeIds = new ArrayList<Long>(getNodeIds(nodeMetaDataParameters));
+            Collections.sort(nodeIds);
+        }
+        else
+        {
+            nodeIds = preCacheNodes(nodeMetaDataParameters);
+        }
+        // The paths and names of the ancestors of the nodes in the current batch
+        Map<Long, List<Path>> knownPaths = null;
+        Map<NodeRef, NodeName> knownNames = null;
+        int position = 0;
 
         for(Long nodeId : nodeIds)
         {
+            if (streamMetadata)
+            {
+                if (!rowHandler.isMore())
+                {
+                    break;
+                }
+                if (position % metadataBatchSize == 0)
+                {
+                    // Start the next batch, forgetting the last one
+                    preCacheNodes(nodeIds.subList(position, Math.min(position + metadataBatchSize, nodeIds.size())));
+                    knownPaths = new HashMap<Long, List<Path>>(metadataBatchSize);
+                    knownNames = new HashMap<NodeRef, NodeName>(metadataBatchSize);
+                }
+                position++;
+            }
             Status status = nodeDAO.getNodeIdStatus(nodeId);
             if (status == null)
             {
@@ -1057,7 +1114,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
 
             if (includePaths && !ignoreLargeMetadata)
             {
-                List<Path> directPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), false);
+                List<Path> directPaths = getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), knownPaths);
                 Collection<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>(directPaths.size() + categoryPaths.getPaths().size());
 
                 for (Path path : directPaths)
@@ -1070,7 +1127,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                 }
                 if(unversionedStatus !=  null)
                 {
-                    List<Path>  unversionedPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), false);
+                    List<Path>  unversionedPaths = getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), knownPaths);
                     for (Path path : unversionedPaths)
                     {
                         paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
@@ -1097,14 +1154,13 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                         }
                         ChildAssocElement pathChildAssocElement = (ChildAssocElement) pathElement;
                         NodeRef childNodeRef = pathChildAssocElement.getRef().getChildRef();
-                        Pair<Long, NodeRef> childNodePair = nodeDAO.getNodePair(childNodeRef);
-                        if (childNodePair == null)
+                        NodeName childName = getNodeName(childNodeRef, knownNames);
+                        if (childName == null)
                         {
                             // Gone
                             break;
                         }
-                        Long childNodeId = childNodePair.getFirst();
-                        String childNodeName = (String) nodeDAO.getNodeProperty(childNodeId, ContentModel.PROP_NAME);
+                        String childNodeName = childName.name;
                         if (childNodeName == null)
                         {
                             // We have hit a non-name node, which acts as a root for cm:name
@@ -1135,6 +1191,54 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         }
     }
 
+    /**
+     * Get the paths of a node, building on the paths of ancestors already visited if any are given
+     */
+    private List<Path> getPaths(Pair<Long, NodeRef> nodePair, Map<Long, List<Path>> knownPaths)
+    {
+        if (knownPaths == null)
+        {
+            return nodeDAO.getPaths(nodePair, false);
+        }
+        return nodeDAO.getPaths(nodePair, knownPaths);
+    }
+
+    /**
+     * @return the name of the node or <tt>null</tt> if the node no longer exists
+     */
+    private NodeName getNodeName(NodeRef nodeRef, Map<NodeRef, NodeName> knownNames)
+    {
+        NodeName nodeName = (knownNames == null) ? null : knownNames.get(nodeRef);
+        if (nodeName != null)
+        {
+            return nodeName;
+        }
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+        if (nodePair == null)
+        {
+            return null;
+        }
+        nodeName = new NodeName((String) nodeDAO.getNodeProperty(nodePair.getFirst(), ContentModel.PROP_NAME));
+        if (knownNames != null)
+        {
+            knownNames.put(nodeRef, nodeName);
+        }
+        return nodeName;
+    }
+
+    /**
+     * The <b>cm:name</b> of a node, which may be <tt>null</tt>
+     */
+    private static class NodeName
+    {
+        private final String name;
+
+        private NodeName(String name)
+        {
+            this.name = name;
+        }
+    }
+
     private boolean isVersionNodeRef(NodeRef nodeRef)
     {
     	return nodeRef.getStoreRef().getProtocol().equals(VersionModel.STORE_PROTOCOL) || nodeRef.getStoreRef().getIdentifier().equals(Version2Model.STORE_ID);
@@ -1338,6 +1442,11 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
             
             more = callback.handleNodeMetaData(row);
         }
+
+        public boolean isMore()
+        {
+            return more;
+        }
     }
 
     @Override
@@ -27,12 +27,21 @@ package org.alfresco.repo.tagging;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -42,16 +51,26 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Refresh tag scope action executer
  * 
  * NOTE:  This action is used to facilitate the async refresh of a tag scope.  It is not intended for general usage.
+ * <p>
+ * When a refresh executor is configured and more than one refresh thread is allowed, the subtrees of
+ * any nested tag scopes are counted in parallel on the shared executor, each in its own read-only
+ * transaction, and the per-tag counters are merged into the result for the refreshed scope.
  * 
  * @author Roy Wetherall
  */
 public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
 {
+    private static final Log logger = LogFactory.getLog(RefreshTagScopeActionExecuter.class);
+    
     /** Node Service */
     private NodeService nodeService;
     
@@ -61,6 +80,15 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
     /** Tagging Service */
     private TaggingService taggingService;
     
+    /** Transaction Service, used by the parallel counting threads */
+    private TransactionService transactionService;
+    
+    /** Number of threads used to count nested tag scopes */
+    private int refreshThreads = 1;
+    
+    /** Executor shared by all refreshes for counting nested tag scopes */
+    private ExecutorService refreshExecutor;
+    
     /** Action name and parameters */
     public static final String NAME = "refresh-tagscope";
     
@@ -94,6 +122,39 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         this.taggingService = taggingService;
     }
     
+    /**
+     * Set the transaction service
+     * 
+     * @param transactionService    the transaction service
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+    
+    /**
+     * Set the number of threads used to count the tags of nested tag scopes.  A value of
+     * <tt>1</tt> or less counts everything on the calling thread.
+     * 
+     * @param refreshThreads    the number of counting threads
+     */
+    public void setRefreshThreads(int refreshThreads)
+    {
+        this.refreshThreads = refreshThreads;
+    }
+    
+    /**
+     * Set the executor used to count the tags of nested tag scopes.  The executor is shared by all
+     * refreshes, so it should be sized by the refresh threads.  Without one everything is counted
+     * on the calling thread.
+     * 
+     * @param refreshExecutor   the executor for the counting tasks
+     */
+    public void setRefreshExecutor(ExecutorService refreshExecutor)
+    {
+        this.refreshExecutor = refreshExecutor;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -109,11 +170,15 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
                 @SuppressWarnings("unchecked")
                 public Object doWork() throws Exception
                 {
-                    // Create a new list of tag details
-                    List<TagDetails> tags = new ArrayList<TagDetails>(10);
-                    
                     // Count the tags found in all the (primary) children of the node
-                    countTags(actionedUponNodeRef, tags);
+                    Map<String, MutableInt> counts = countAllTags(actionedUponNodeRef);
+                    
+                    // Create a new list of tag details
+                    List<TagDetails> tags = new ArrayList<TagDetails>(counts.size());
+                    for (Map.Entry<String, MutableInt> entry : counts.entrySet())
+                    {
+                        tags.add(new TagDetailsImpl(entry.getKey(), entry.getValue().intValue()));
+                    }
                     
                     // Order the list
                     Collections.sort(tags);
@@ -136,13 +201,113 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         }
     }
 
-    private void countTags(NodeRef nodeRef, List<TagDetails> tagDetailsList)
+    /**
+     * Count the tags of the tag scope and everything beneath it.  Nested tag scopes are handed
+     * to the refresh executor when parallel counting is enabled and the current
+     * transaction has no pending changes that the other threads would not see.
+     * 
+     * @param tagScope      the tag scope being refreshed
+     * @return              the tag counts keyed by tag name
+     */
+    private Map<String, MutableInt> countAllTags(NodeRef tagScope)
+    {
+        Map<String, MutableInt> counts = new HashMap<String, MutableInt>(64);
+        if (refreshThreads <= 1 || refreshExecutor == null || transactionService == null || AlfrescoTransactionSupport.isDirty())
+        {
+            countTags(tagScope, counts, null);
+            return counts;
+        }
+        
+        // Count everything outside the nested tag scopes here, collecting the scopes as we go
+        List<NodeRef> childScopes = new ArrayList<NodeRef>();
+        countTags(tagScope, counts, childScopes);
+        if (childScopes.isEmpty())
+        {
+            return counts;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Counting tags of " + childScopes.size() + " nested tag scopes of " + tagScope + " in parallel");
+        }
+        
+        List<Future<Map<String, MutableInt>>> futures = new ArrayList<Future<Map<String, MutableInt>>>(childScopes.size());
+        try
+        {
+            for (final NodeRef childScope : childScopes)
+            {
+                futures.add(refreshExecutor.submit(new Callable<Map<String, MutableInt>>()
+                {
+                    public Map<String, MutableInt> call() throws Exception
+                    {
+                        return countTagsInTransaction(childScope);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++)
+            {
+                try
+                {
+                    mergeCounts(futures.get(i).get(), counts);
+                }
+                catch (ExecutionException e)
+                {
+                    throw new AlfrescoRuntimeException("Failed to count the tags of tag scope " + childScopes.get(i), e.getCause());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new AlfrescoRuntimeException("Interrupted while counting the tags of tag scope " + childScopes.get(i), e);
+                }
+            }
+        }
+        finally
+        {
+            // Stop any counting left over after a failure, the executor itself is shared
+            for (Future<Map<String, MutableInt>> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Count the tags beneath a nested tag scope in a new read-only transaction as the system user
+     */
+    private Map<String, MutableInt> countTagsInTransaction(final NodeRef childScope)
+    {
+        return AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Map<String, MutableInt>>()
+        {
+            public Map<String, MutableInt> doWork() throws Exception
+            {
+                return transactionService.getRetryingTransactionHelper().doInTransaction(
+                        new RetryingTransactionCallback<Map<String, MutableInt>>()
+                        {
+                            public Map<String, MutableInt> execute() throws Throwable
+                            {
+                                Map<String, MutableInt> counts = new HashMap<String, MutableInt>(64);
+                                countTags(childScope, counts, null);
+                                return counts;
+                            }
+                        }, true, true);
+            }
+        }, AuthenticationUtil.getSystemUserName());
+    }
+    
+    /**
+     * Count the tags of a node and its primary descendants.
+     * 
+     * @param nodeRef       the node to start from
+     * @param counts        the tag counts to add to
+     * @param childScopes   if not <tt>null</tt>, nested tag scopes are added here instead of being counted
+     */
+    private void countTags(NodeRef nodeRef, Map<String, MutableInt> counts, List<NodeRef> childScopes)
     {
         // Add the tags of passed node
         List<String> tags = this.taggingService.getTags(nodeRef);
         for (String tag : tags)
         {
-            addDetails(tag, tagDetailsList);
+            addCount(tag, 1, counts);
         }
         
         // Iterate over the children of the node
@@ -151,30 +316,40 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         {
             if (assoc.isPrimary() == true)
             {
-                countTags(assoc.getChildRef(), tagDetailsList);
+                NodeRef childRef = assoc.getChildRef();
+                if (childScopes != null && this.nodeService.hasAspect(childRef, ContentModel.ASPECT_TAGSCOPE) == true)
+                {
+                    childScopes.add(childRef);
+                }
+                else
+                {
+                    countTags(childRef, counts, childScopes);
+                }
             }
         }
     }
     
-    private void addDetails(String tag, List<TagDetails> tagDetailsList)
+    /**
+     * Add the counts of one subtree to another
+     */
+    /*package*/ static void mergeCounts(Map<String, MutableInt> from, Map<String, MutableInt> to)
     {
-        TagDetails currentTag = null;
-        for (TagDetails tagDetails : tagDetailsList)
+        for (Map.Entry<String, MutableInt> entry : from.entrySet())
         {
-            if (tagDetails.getName().equals(tag) == true)
-            {
-                currentTag = tagDetails;
-                break;
-            }
+            addCount(entry.getKey(), entry.getValue().intValue(), to);
         }
-        
-        if (currentTag == null)
+    }
+    
+    private static void addCount(String tag, int count, Map<String, MutableInt> counts)
+    {
+        MutableInt current = counts.get(tag);
+        if (current == null)
         {
-            tagDetailsList.add(new TagDetailsImpl(tag, 1));
+            counts.put(tag, new MutableInt(count));
         }
         else
         {
-            ((TagDetailsImpl)currentTag).incrementCount();
+            current.add(count);
         }
     }
 
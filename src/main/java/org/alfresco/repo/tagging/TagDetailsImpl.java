@@ -93,6 +93,16 @@ public class TagDetailsImpl implements TagDetails
         this.tagCount = tagCount - 1;
     }
     
+    /**
+     * Adjust the tag count by a (possibly negative) amount
+     * 
+     * @param delta     the change in the tag count
+     */
+    /*protected*/ void adjustCount(int delta)
+    {
+        this.tagCount = this.tagCount + delta;
+    }
+    
     /**
      * @see java.lang.Object#equals(java.lang.Object)
      */
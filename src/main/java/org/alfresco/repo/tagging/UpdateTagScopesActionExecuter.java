@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -99,7 +100,7 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
     public static final String PARAM_TAG_SCOPES = "tag_scopes";
     
     /** What's the largest number of updates we should claim for a tag scope in one transaction? */
-    private static final int tagUpdateBatchSize = 100;
+    private int tagUpdateBatchSize = 100;
     
     /** How long to lock a tag scope for */
     private static final int tagScopeLockTime = 2500;
@@ -183,6 +184,17 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
         this.behaviourFilter = behaviourFilter;
     }
     
+    /**
+     * Set the largest number of queued updates claimed for a tag scope in one transaction.
+     * All the updates claimed are coalesced into a single rewrite of the tag scope cache.
+     * 
+     * @param tagUpdateBatchSize    the number of audit entries per transaction
+     */
+    public void setTagUpdateBatchSize(int tagUpdateBatchSize)
+    {
+        this.tagUpdateBatchSize = tagUpdateBatchSize;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -399,53 +411,8 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
           }
           String previousTagState = tags.toString();
           
-          // Figure out what changes to make
-          for (String tagName : updates.keySet())
-          {
-              int change = updates.get(tagName);
-              if(change == 0)
-                 continue;
-             
-              // Get the current count for this tag, if we can
-              TagDetailsImpl currentTag = null;
-              for (TagDetails tag : tags)
-              {
-                  if (tag.getName().equals(tagName) == true)
-                  {
-                      currentTag = (TagDetailsImpl)tag;
-                      break;
-                  }
-              }
-              
-              // If we're incrementing, increase our counts
-              if (change > 0)
-              {
-                  if (currentTag == null)
-                  {
-                      currentTag = new TagDetailsImpl(tagName, 0);
-                      tags.add(currentTag);
-                  }
-                  
-                  for(int i=0; i<change; i++)
-                     currentTag.incrementCount();
-              }
-              else
-              {
-                  if (currentTag != null)
-                  {
-                     for(int i=change; i<0; i++)
-                     {
-                        currentTag.decrementCount();
-                     }
-                     
-                     if(currentTag.getCount() <= 0)
-                     {
-                        // All gone
-                        tags.remove(currentTag);
-                     }
-                  }
-              }
-          }
+          // Apply the coalesced changes
+          tags = applyUpdates(tags, updates);
 
           // ACE-1979: emptying tag scope cache by setting content property for the cache to null to avoid zero-size writes. Orphaned content will be deleted with content store
           // cleaner job 
@@ -487,6 +454,49 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
        }
     }
     
+    /**
+     * Apply the net change for each tag to the current tag details.  The tags are indexed
+     * by name first, so the cost is proportional to the number of tags plus updates rather
+     * than their product.  Tags whose count drops to zero or below are dropped.
+     * 
+     * @param tags          the current tag details of the tag scope
+     * @param updates       the net change for each tag
+     * @return              the updated (unsorted) tag details
+     */
+    /*package*/ static List<TagDetails> applyUpdates(List<TagDetails> tags, Map<String,Integer> updates)
+    {
+       Map<String,TagDetailsImpl> byName = new LinkedHashMap<String,TagDetailsImpl>(tags.size() + updates.size());
+       for (TagDetails tag : tags)
+       {
+          byName.put(tag.getName(), (TagDetailsImpl)tag);
+       }
+       
+       for (Map.Entry<String,Integer> update : updates.entrySet())
+       {
+          int change = update.getValue();
+          if(change == 0)
+             continue;
+          
+          TagDetailsImpl currentTag = byName.get(update.getKey());
+          if (currentTag == null)
+          {
+             // Removing a tag we don't know about is a no-op
+             if (change < 0)
+                continue;
+             currentTag = new TagDetailsImpl(update.getKey(), 0);
+             byName.put(update.getKey(), currentTag);
+          }
+          currentTag.adjustCount(change);
+          
+          if(currentTag.getCount() <= 0)
+          {
+             // All gone
+             byName.remove(update.getKey());
+          }
+       }
+       return new ArrayList<TagDetails>(byName.values());
+    }
+    
     /**
      * Checks several batches of updates in the Audit event log,
      *  and returns the list of Tag Scope Node References found there.
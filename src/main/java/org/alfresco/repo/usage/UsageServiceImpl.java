@@ -25,40 +25,110 @@
  */
 package org.alfresco.repo.usage;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.usage.UsageDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.usage.UsageService;
+import org.apache.commons.lang3.mutable.MutableLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * The implementation of the UsageService for tracking usages.
+ * <p>
+ * Deltas inserted in a read-write transaction are summed per usage node and written as a single
+ * delta row per node when the transaction commits.  The committed delta total of each node can
+ * be held in a shared cache; entries are invalidated when a transaction that changes the deltas
+ * of a node commits, and are reloaded from the database on the next read.
  * 
  * @author janv
  * @since 2.9, 3.0
  */
-public class UsageServiceImpl implements UsageService
+public class UsageServiceImpl extends TransactionListenerAdapter implements UsageService
 {
+    private static Log logger = LogFactory.getLog(UsageServiceImpl.class);
+    
+    /** Key to the deltas waiting to be written: usage node to delta */
+    private static final String KEY_PENDING_DELTAS = "usageService.pendingDeltas";
+    /** Key to the deltas already written by this transaction: usage node to delta */
+    private static final String KEY_WRITTEN_DELTAS = "usageService.writtenDeltas";
+    /** Key to the usage nodes whose deltas were removed by this transaction */
+    private static final String KEY_REMOVED_DELTAS = "usageService.removedDeltas";
+    /** Key to the flag set once the pending deltas have been written */
+    private static final String KEY_DELTAS_FLUSHED = "usageService.deltasFlushed";
+    
     private UsageDAO usageDAO;
+    private SimpleCache<NodeRef, Long> usageDeltaSizeCache;
     
     public void setUsageDAO(UsageDAO usageDAO)
     {
         this.usageDAO = usageDAO;
     }
     
+    /**
+     * @param usageDeltaSizeCache   optional transactional cache of the committed delta total for each usage node
+     */
+    public void setUsageDeltaSizeCache(SimpleCache<NodeRef, Long> usageDeltaSizeCache)
+    {
+        this.usageDeltaSizeCache = usageDeltaSizeCache;
+    }
+    
     public void insertDelta(NodeRef usageNodeRef, long deltaSize)
     {
-        usageDAO.insertDelta(usageNodeRef, deltaSize);
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE)
+        {
+            usageDAO.insertDelta(usageNodeRef, deltaSize);
+            return;
+        }
+        if (AlfrescoTransactionSupport.getResource(KEY_DELTAS_FLUSHED) != null)
+        {
+            // Too late to coalesce, e.g. a delta recorded by a later commit listener
+            usageDAO.insertDelta(usageNodeRef, deltaSize);
+            addDelta(getWrittenDeltas(true), usageNodeRef, deltaSize);
+            invalidateDeltaSize(usageNodeRef);
+            return;
+        }
+        addDelta(getPendingDeltas(true), usageNodeRef, deltaSize);
     }
     
     public long getTotalDeltaSize(NodeRef usageNodeRef)
     {
-        return usageDAO.getTotalDeltaSize(usageNodeRef, false);
+        long totalSize = getPendingDelta(usageNodeRef);
+        if (usageDeltaSizeCache == null || isChangedInTransaction(usageNodeRef))
+        {
+            // The database view includes this transaction's changes, which must not be cached
+            totalSize += usageDAO.getTotalDeltaSize(usageNodeRef, false);
+        }
+        else
+        {
+            Long committedSize = usageDeltaSizeCache.get(usageNodeRef);
+            if (committedSize == null)
+            {
+                committedSize = usageDAO.getTotalDeltaSize(usageNodeRef, false);
+                usageDeltaSizeCache.put(usageNodeRef, committedSize);
+            }
+            totalSize += committedSize;
+        }
+        return totalSize;
     }
     
     public long getAndRemoveTotalDeltaSize(NodeRef usageNodeRef)
     {
-        return usageDAO.getTotalDeltaSize(usageNodeRef, true);
+        // Deltas not yet written are included and then discarded along with the stored ones
+        long pendingSize = removePendingDelta(usageNodeRef);
+        long totalSize = usageDAO.getTotalDeltaSize(usageNodeRef, true);
+        recordRemoved(usageNodeRef);
+        return pendingSize + totalSize;
     }
 
     public Set<NodeRef> getUsageDeltaNodes()
@@ -68,6 +138,141 @@ public class UsageServiceImpl implements UsageService
     
     public int deleteDeltas(NodeRef usageNodeRef)
     {
-        return usageDAO.deleteDeltas(usageNodeRef);
+        removePendingDelta(usageNodeRef);
+        int deleted = usageDAO.deleteDeltas(usageNodeRef);
+        recordRemoved(usageNodeRef);
+        return deleted;
+    }
+    
+    /**
+     * Writes one delta per usage node for all the deltas recorded by the transaction
+     */
+    @Override
+    public void beforeCommit(boolean readOnly)
+    {
+        Map<NodeRef, MutableLong> pending = getPendingDeltas(false);
+        AlfrescoTransactionSupport.bindResource(KEY_DELTAS_FLUSHED, Boolean.TRUE);
+        if (pending == null || pending.isEmpty())
+        {
+            return;
+        }
+        Map<NodeRef, MutableLong> written = getWrittenDeltas(true);
+        for (Map.Entry<NodeRef, MutableLong> entry : pending.entrySet())
+        {
+            long deltaSize = entry.getValue().longValue();
+            if (deltaSize == 0L)
+            {
+                continue;
+            }
+            try
+            {
+                usageDAO.insertDelta(entry.getKey(), deltaSize);
+                addDelta(written, entry.getKey(), deltaSize);
+                invalidateDeltaSize(entry.getKey());
+            }
+            catch (InvalidNodeRefException e)
+            {
+                // The usage node was deleted by the transaction, along with its usage
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Dropping usage delta of " + deltaSize + " for deleted node " + entry.getKey());
+                }
+            }
+        }
+        pending.clear();
+    }
+    
+    /**
+     * Invalidates the cached total of a usage node whose deltas changed.  The cache is transactional,
+     * so the shared total is only dropped when the transaction commits.
+     */
+    private void invalidateDeltaSize(NodeRef usageNodeRef)
+    {
+        if (usageDeltaSizeCache != null)
+        {
+            usageDeltaSizeCache.remove(usageNodeRef);
+        }
+    }
+    
+    private static void addDelta(Map<NodeRef, MutableLong> deltas, NodeRef usageNodeRef, long deltaSize)
+    {
+        MutableLong current = deltas.get(usageNodeRef);
+        if (current == null)
+        {
+            deltas.put(usageNodeRef, new MutableLong(deltaSize));
+        }
+        else
+        {
+            current.add(deltaSize);
+        }
+    }
+    
+    private long getPendingDelta(NodeRef usageNodeRef)
+    {
+        Map<NodeRef, MutableLong> pending = getPendingDeltas(false);
+        MutableLong pendingSize = (pending == null) ? null : pending.get(usageNodeRef);
+        return (pendingSize == null) ? 0L : pendingSize.longValue();
+    }
+    
+    private long removePendingDelta(NodeRef usageNodeRef)
+    {
+        Map<NodeRef, MutableLong> pending = getPendingDeltas(false);
+        MutableLong pendingSize = (pending == null) ? null : pending.remove(usageNodeRef);
+        return (pendingSize == null) ? 0L : pendingSize.longValue();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<NodeRef, MutableLong> getPendingDeltas(boolean create)
+    {
+        Map<NodeRef, MutableLong> pending = (Map<NodeRef, MutableLong>) AlfrescoTransactionSupport.getResource(KEY_PENDING_DELTAS);
+        if (pending == null && create)
+        {
+            pending = new LinkedHashMap<NodeRef, MutableLong>(7);
+            AlfrescoTransactionSupport.bindResource(KEY_PENDING_DELTAS, pending);
+            AlfrescoTransactionSupport.bindListener(this);
+        }
+        return pending;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<NodeRef, MutableLong> getWrittenDeltas(boolean create)
+    {
+        Map<NodeRef, MutableLong> written = (Map<NodeRef, MutableLong>) AlfrescoTransactionSupport.getResource(KEY_WRITTEN_DELTAS);
+        if (written == null && create)
+        {
+            written = new HashMap<NodeRef, MutableLong>(7);
+            AlfrescoTransactionSupport.bindResource(KEY_WRITTEN_DELTAS, written);
+            AlfrescoTransactionSupport.bindListener(this);
+        }
+        return written;
+    }
+    
+    /**
+     * @return          <tt>true</tt> if the transaction has written or removed deltas of the usage node
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isChangedInTransaction(NodeRef usageNodeRef)
+    {
+        Set<NodeRef> removed = (Set<NodeRef>) AlfrescoTransactionSupport.getResource(KEY_REMOVED_DELTAS);
+        Map<NodeRef, MutableLong> written = getWrittenDeltas(false);
+        return (removed != null && removed.contains(usageNodeRef)) || (written != null && written.containsKey(usageNodeRef));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void recordRemoved(NodeRef usageNodeRef)
+    {
+        invalidateDeltaSize(usageNodeRef);
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            return;
+        }
+        Set<NodeRef> removed = (Set<NodeRef>) AlfrescoTransactionSupport.getResource(KEY_REMOVED_DELTAS);
+        if (removed == null)
+        {
+            removed = new HashSet<NodeRef>(7);
+            AlfrescoTransactionSupport.bindResource(KEY_REMOVED_DELTAS, removed);
+            AlfrescoTransactionSupport.bindListener(this);
+        }
+        removed.add(usageNodeRef);
     }
 }
@@ -88,6 +88,7 @@ public class UserUsageTrackingComponent extends AbstractLifecycleBean implements
     
     private int clearBatchSize = 50;
     private int updateBatchSize = 50;
+    private int collapseBatchSize = 0;
     
     private boolean enabled = true;
     private static final long LOCK_TTL = 60000L;        // 1 minute
@@ -162,6 +163,16 @@ public class UserUsageTrackingComponent extends AbstractLifecycleBean implements
         this.updateBatchSize = updateBatchSize;
     }
     
+    /**
+     * @param collapseBatchSize         the maximum number of users whose usage deltas are collapsed
+     *                                  per run, or <tt>0</tt> to collapse all pending deltas.
+     *                                  Any remaining deltas are picked up by the next run.
+     */
+    public void setCollapseBatchSize(int collapseBatchSize)
+    {
+        this.collapseBatchSize = collapseBatchSize;
+    }
+    
     public void setEnabled(boolean enabled)
     {
         this.enabled = enabled;
@@ -661,6 +672,14 @@ public class UserUsageTrackingComponent extends AbstractLifecycleBean implements
         int collapseCount = 0;
         for (final NodeRef usageNodeRef : usageNodeRefs)
         {
+            if (collapseBatchSize > 0 && collapseCount >= collapseBatchSize)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("... reached collapse limit of " + collapseBatchSize + " users, remaining deltas deferred to next run");
+                }
+                break;
+            }
             Boolean collapsed = TenantUtil.runAsSystemTenant(new TenantRunAsWork<Boolean>()
             {
                 public Boolean doWork() throws Exception
@@ -422,6 +422,12 @@ public class VirtualPermissionServiceExtension extends
         return getTrait().hasReadPermission(nodeRef);
     }
 
+    @Override
+    public AccessStatus hasReadPermission(Long aclId)
+    {
+        return getTrait().hasReadPermission(aclId);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
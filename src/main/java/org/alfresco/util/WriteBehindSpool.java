@@ -0,0 +1,922 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A bounded queue of items handed, in batches and in the order they were appended, to a single background thread.
+ * <p/>
+ * With a {@link #setDirectory(File) directory}, every item is also appended to a spool file before it is queued and
+ * the last handled item is checkpointed, so a restart hands over whatever was not handled before. When the queue is
+ * full, appending threads wait up to {@link #setMaxBlockMillis(long) maxBlockMillis} for space without holding the
+ * spool lock; if there is still none the items are left in the spool and read back once the background thread catches
+ * up. Without a directory the items are held in memory only, so items that do not fit are queued beyond the capacity
+ * rather than handled out of order; anything still queued when the spool is stopped is handled before it returns.
+ * <p/>
+ * A batch that can not be handled is retried, waiting twice as long after each failure up to
+ * {@link #setMaxRetryWaitMillis(long) maxRetryWaitMillis}. After {@link #setMaxRetries(int) maxRetries} retries the
+ * batch is moved to the failed file, so that it does not hold back the items behind it.
+ * <p/>
+ * The spool and failed files hold one record per item: the sequence number, the length of the encoded item and the
+ * encoded item. The spool is truncated whenever every item in it has been handled and it has grown beyond
+ * {@link #setMaxSpoolSize(long) maxSpoolSize} bytes.
+ * 
+ * @param <T> the type of item queued
+ */
+public class WriteBehindSpool<T>
+{
+    private static final Log logger = LogFactory.getLog(WriteBehindSpool.class);
+
+    public static final String SPOOL_SUFFIX = ".spool";
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    public static final String FAILED_SUFFIX = ".failed";
+    /** sequence number and length of the encoded item */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * Converts items to and from the bytes held in the spool
+     */
+    public interface Codec<T>
+    {
+        byte[] encode(T item) throws IOException;
+
+        T decode(byte[] data) throws IOException;
+    }
+
+    /**
+     * Handles a batch of items on the background thread
+     */
+    public interface BatchHandler<T>
+    {
+        void handle(List<T> batch);
+    }
+
+    private final String name;
+    private final Codec<T> codec;
+    private final BatchHandler<T> handler;
+    private String threadNamePrefix;
+    private File directory;
+    private boolean syncOnAppend = false;
+    private int capacity = 10000;
+    private int batchSize = 100;
+    private long maxBlockMillis = 1000;
+    private long retryWaitMillis = 5000;
+    private long maxRetryWaitMillis = 300000;
+    private int maxRetries = 10;
+    private long maxSpoolSize = 64 * 1024 * 1024;
+
+    private BlockingQueue<Entry<T>> queue;
+    /** bounds the queue; permits are taken before appending so that waiting for space does not hold the spool lock */
+    private Semaphore queueSpace;
+    private File spoolFile;
+    private File checkpointFile;
+    private File failedFile;
+    private FileOutputStream spoolStream;
+    private DataOutputStream spoolOut;
+    /** guards the spool file and the appended sequence */
+    private final Object spoolLock = new Object();
+    private long lastAppendedSeq;
+    private volatile long lastHandledSeq;
+    private volatile boolean running;
+    private Thread handlerThread;
+    /** the spool position the background thread has read up to and the last sequence number before it */
+    private long spoolReadPosition;
+    private long spoolReadSeq;
+
+    private final AtomicLong handledCount = new AtomicLong(0);
+    private final AtomicLong failedCount = new AtomicLong(0);
+    private final AtomicLong overflowCount = new AtomicLong(0);
+    private final AtomicLong abandonedCount = new AtomicLong(0);
+    private final AtomicLong totalHandleMillis = new AtomicLong(0);
+    private final AtomicLong handledBatchCount = new AtomicLong(0);
+    private volatile long lastLatencyMillis;
+    private volatile long lastLagMillis;
+
+    /**
+     * @param name              the name used for the files in the directory and in log messages
+     * @param codec             converts items to and from the bytes held in the spool
+     * @param handler           handles each batch on the background thread
+     */
+    public WriteBehindSpool(String name, Codec<T> codec, BatchHandler<T> handler)
+    {
+        ParameterCheck.mandatoryString("name", name);
+        ParameterCheck.mandatory("codec", codec);
+        ParameterCheck.mandatory("handler", handler);
+        this.name = name;
+        this.codec = codec;
+        this.handler = handler;
+        this.threadNamePrefix = name;
+    }
+
+    /**
+     * @param threadNamePrefix  the name prefix of the background thread
+     */
+    public void setThreadNamePrefix(String threadNamePrefix)
+    {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * @param directory         the directory holding the spool, checkpoint and failed files or <tt>null</tt> to hold
+     *                          items in memory only
+     */
+    public void setDirectory(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @param syncOnAppend      <tt>true</tt> to force appended items to disk before the appending thread continues
+     */
+    public void setSyncOnAppend(boolean syncOnAppend)
+    {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * @param capacity          the maximum number of items held in memory waiting to be handled, unless there is no
+     *                          directory to overflow to
+     */
+    public void setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param batchSize         the maximum number of items handled together
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxBlockMillis    how long an appending thread waits for space in a full queue
+     */
+    public void setMaxBlockMillis(long maxBlockMillis)
+    {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * @param retryWaitMillis   how long to wait before first retrying a batch that could not be handled
+     */
+    public void setRetryWaitMillis(long retryWaitMillis)
+    {
+        this.retryWaitMillis = retryWaitMillis;
+    }
+
+    /**
+     * @param maxRetryWaitMillis the longest wait between retries of a batch that could not be handled
+     */
+    public void setMaxRetryWaitMillis(long maxRetryWaitMillis)
+    {
+        this.maxRetryWaitMillis = maxRetryWaitMillis;
+    }
+
+    /**
+     * @param maxRetries        the number of times a batch is retried before it is moved to the failed file, or
+     *                          <tt>-1</tt> to retry until it is handled
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param maxSpoolSize      the spool size in bytes beyond which a fully handled spool is truncated
+     */
+    public void setMaxSpoolSize(long maxSpoolSize)
+    {
+        this.maxSpoolSize = maxSpoolSize;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the spool is accepting items
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Open the spool, work out what still has to be handled and start the background thread
+     */
+    public void start()
+    {
+        if (directory != null)
+        {
+            try
+            {
+                if (!directory.exists() && !directory.mkdirs())
+                {
+                    throw new IOException("Unable to create directory " + directory);
+                }
+                spoolFile = new File(directory, name + SPOOL_SUFFIX);
+                checkpointFile = new File(directory, name + CHECKPOINT_SUFFIX);
+                failedFile = new File(directory, name + FAILED_SUFFIX);
+
+                lastHandledSeq = readCheckpoint();
+                lastAppendedSeq = Math.max(lastHandledSeq, recoverSpool());
+                openSpool();
+            }
+            catch (IOException e)
+            {
+                throw new AlfrescoRuntimeException("Unable to open the " + name + " spool in " + directory, e);
+            }
+        }
+
+        queue = new LinkedBlockingQueue<Entry<T>>();
+        queueSpace = new Semaphore(capacity);
+        running = true;
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix(threadNamePrefix);
+        handlerThread = threadFactory.newThread(new HandlerRunnable());
+        handlerThread.start();
+    }
+
+    /**
+     * Stop the background thread.  Queued items are handled before returning if they are only held in memory;
+     * otherwise they are handed over again on the next start.
+     */
+    public void stop()
+    {
+        if (!running)
+        {
+            return;
+        }
+        running = false;
+        handlerThread.interrupt();
+        try
+        {
+            handlerThread.join(10000);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (directory == null)
+        {
+            List<Entry<T>> batch = new ArrayList<Entry<T>>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0)
+            {
+                handleAtShutdown(batch);
+                batch.clear();
+            }
+        }
+        else
+        {
+            synchronized (spoolLock)
+            {
+                closeSpool();
+            }
+        }
+    }
+
+    /**
+     * Append items to the spool
+     * 
+     * @param items             the items, in the order they should be handled
+     */
+    public void append(List<T> items)
+    {
+        if (!running)
+        {
+            throw new AlfrescoRuntimeException("The " + name + " spool is not running");
+        }
+        if (items.isEmpty())
+        {
+            return;
+        }
+        List<Entry<T>> entries = new ArrayList<Entry<T>>(items.size());
+        for (T item : items)
+        {
+            entries.add(new Entry<T>(item));
+        }
+        // Wait for space before taking the lock so that a full queue does not hold up the background thread
+        boolean queued = acquireQueueSpace(entries.size());
+        if (directory == null)
+        {
+            synchronized (spoolLock)
+            {
+                for (Entry<T> entry : entries)
+                {
+                    entry.seq = ++lastAppendedSeq;
+                    entry.holdsSpace = queued;
+                }
+                queue.addAll(entries);
+            }
+            if (!queued)
+            {
+                // Nowhere else to keep them; the background thread still handles them after the items before them
+                overflowCount.addAndGet(entries.size());
+            }
+            return;
+        }
+
+        synchronized (spoolLock)
+        {
+            try
+            {
+                for (Entry<T> entry : entries)
+                {
+                    entry.seq = ++lastAppendedSeq;
+                    writeRecord(spoolOut, entry.seq, codec.encode(entry.item));
+                }
+                spoolOut.flush();
+                if (syncOnAppend)
+                {
+                    spoolStream.getFD().sync();
+                }
+            }
+            catch (IOException e)
+            {
+                if (queued)
+                {
+                    queueSpace.release(entries.size());
+                }
+                throw new AlfrescoRuntimeException("Unable to append to the " + name + " spool", e);
+            }
+
+            // Queue while holding the lock so that the queue stays in sequence order.  The space is already taken.
+            if (queued)
+            {
+                queue.addAll(entries);
+            }
+        }
+        if (!queued)
+        {
+            // The background thread reads the items back from the spool
+            overflowCount.addAndGet(entries.size());
+        }
+    }
+
+    private boolean acquireQueueSpace(int count)
+    {
+        if (count > capacity)
+        {
+            return false;
+        }
+        try
+        {
+            return queueSpace.tryAcquire(count, maxBlockMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of items waiting in memory to be handled
+     */
+    public int getQueueDepth()
+    {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of items that have not been handled yet, including any only held in the spool
+     */
+    public long getPendingCount()
+    {
+        if (directory == null)
+        {
+            return getQueueDepth();
+        }
+        synchronized (spoolLock)
+        {
+            return lastAppendedSeq - lastHandledSeq;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds taken to handle the last batch
+     */
+    public long getLastLatencyMillis()
+    {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * @return the mean time in milliseconds taken to handle a batch
+     */
+    public double getMeanLatencyMillis()
+    {
+        long batches = handledBatchCount.get();
+        return batches == 0 ? 0.0 : (double) totalHandleMillis.get() / batches;
+    }
+
+    /**
+     * @return the time in milliseconds between the first item of the last batch being appended and being handled
+     */
+    public long getLastLagMillis()
+    {
+        return lastLagMillis;
+    }
+
+    public long getHandledCount()
+    {
+        return handledCount.get();
+    }
+
+    /**
+     * @return the number of attempts to handle a batch that failed
+     */
+    public long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of items that did not fit in the queue
+     */
+    public long getOverflowCount()
+    {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return the number of items given up on after running out of retries
+     */
+    public long getAbandonedCount()
+    {
+        return abandonedCount.get();
+    }
+
+    /**
+     * Read the items held in a spool or failed file.  A partially written record at the end of the file is ignored.
+     */
+    public static <T> List<T> readFile(File file, Codec<T> codec) throws IOException
+    {
+        List<T> items = new ArrayList<T>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            while (true)
+            {
+                in.readLong();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                items.add(codec.decode(data));
+            }
+        }
+        catch (EOFException e)
+        {
+            // End of the file
+        }
+        return items;
+    }
+
+    private static void writeRecord(DataOutputStream out, long seq, byte[] data) throws IOException
+    {
+        out.writeLong(seq);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private void openSpool() throws IOException
+    {
+        spoolStream = new FileOutputStream(spoolFile, true);
+        spoolOut = new DataOutputStream(new BufferedOutputStream(spoolStream));
+    }
+
+    private void closeSpool()
+    {
+        try
+        {
+            if (spoolOut != null)
+            {
+                spoolOut.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to close the " + name + " spool " + spoolFile, e);
+        }
+        spoolOut = null;
+        spoolStream = null;
+    }
+
+    private long readCheckpoint() throws IOException
+    {
+        if (!checkpointFile.exists())
+        {
+            return 0L;
+        }
+        String checkpoint = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8).trim();
+        return checkpoint.isEmpty() ? 0L : Long.parseLong(checkpoint);
+    }
+
+    private void writeCheckpoint(long seq) throws IOException
+    {
+        File tmp = new File(directory, checkpointFile.getName() + ".tmp");
+        Files.write(tmp.toPath(), Long.toString(seq).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Find the last spooled sequence number, dropping any partially written record left at the end of the spool so
+     * that new records are not appended after it
+     */
+    private long recoverSpool() throws IOException
+    {
+        if (!spoolFile.exists())
+        {
+            return 0L;
+        }
+        long lastSeq = 0L;
+        long validSize = 0L;
+        try (FileChannel channel = FileChannel.open(spoolFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (validSize + RECORD_HEADER_SIZE <= size)
+            {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, validSize + header.position()) >= 0)
+                {
+                    // Keep reading until the header is complete
+                }
+                header.flip();
+                long seq = header.getLong();
+                int length = header.getInt();
+                if (length < 0 || validSize + RECORD_HEADER_SIZE + length > size)
+                {
+                    break;
+                }
+                lastSeq = seq;
+                validSize += RECORD_HEADER_SIZE + length;
+            }
+            if (validSize < size)
+            {
+                logger.warn("Dropping a partially written record at the end of the " + name + " spool " + spoolFile);
+                channel.truncate(validSize);
+            }
+        }
+        return lastSeq;
+    }
+
+    /**
+     * Read spooled items after the given sequence number.  Reading carries on from where the last read stopped, so
+     * the spool is only read from the start again if an earlier item is asked for.
+     */
+    private List<Entry<T>> readFromSpool(long afterSeq, long toSeq, int max) throws IOException
+    {
+        List<Entry<T>> entries = new ArrayList<Entry<T>>();
+        synchronized (spoolLock)
+        {
+            spoolOut.flush();
+        }
+        if (afterSeq < spoolReadSeq)
+        {
+            spoolReadPosition = 0L;
+            spoolReadSeq = 0L;
+        }
+        try (FileChannel channel = FileChannel.open(spoolFile.toPath(), StandardOpenOption.READ))
+        {
+            channel.position(spoolReadPosition);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (entries.size() < max)
+            {
+                long seq;
+                byte[] data;
+                try
+                {
+                    seq = in.readLong();
+                    data = new byte[in.readInt()];
+                    in.readFully(data);
+                }
+                catch (EOFException e)
+                {
+                    // End of the spool
+                    break;
+                }
+                if (seq > toSeq)
+                {
+                    break;
+                }
+                spoolReadPosition += RECORD_HEADER_SIZE + data.length;
+                spoolReadSeq = seq;
+                if (seq > afterSeq)
+                {
+                    Entry<T> entry = new Entry<T>(codec.decode(data));
+                    entry.seq = seq;
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Truncate the spool if every item in it has been handled and it is large enough to be worth it
+     */
+    private void compactSpool() throws IOException
+    {
+        if (directory == null)
+        {
+            return;
+        }
+        synchronized (spoolLock)
+        {
+            if (lastHandledSeq != lastAppendedSeq || spoolFile.length() < maxSpoolSize)
+            {
+                return;
+            }
+            closeSpool();
+            Files.write(spoolFile.toPath(), new byte[0]);
+            openSpool();
+            spoolReadPosition = 0L;
+            spoolReadSeq = lastHandledSeq;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Truncated the " + name + " spool at sequence " + lastHandledSeq);
+        }
+    }
+
+    /**
+     * Get the next batch to handle: from the queue if it carries on from the last handled item, otherwise from the
+     * spool
+     */
+    private List<Entry<T>> nextBatch() throws InterruptedException, IOException
+    {
+        if (directory == null)
+        {
+            Entry<T> first = poll(500);
+            if (first == null)
+            {
+                return Collections.<Entry<T>>emptyList();
+            }
+            return drainAfter(first);
+        }
+        long appended;
+        synchronized (spoolLock)
+        {
+            appended = lastAppendedSeq;
+        }
+        // Only wait for the queue when there is nothing left to handle
+        Entry<T> first = poll(lastHandledSeq < appended ? 0 : 500);
+        if (first == null)
+        {
+            // Nothing queued; pick up anything that is only in the spool
+            return lastHandledSeq < appended ? readFromSpool(lastHandledSeq, appended, batchSize) : Collections.<Entry<T>>emptyList();
+        }
+        // Discard anything already read back from the spool
+        while (first != null && first.seq <= lastHandledSeq)
+        {
+            first = poll(0);
+        }
+        if (first == null)
+        {
+            return Collections.<Entry<T>>emptyList();
+        }
+        if (first.seq > lastHandledSeq + 1)
+        {
+            // Some items did not fit in the queue; handle them from the spool first
+            List<Entry<T>> missed = readFromSpool(lastHandledSeq, first.seq - 1, batchSize);
+            List<Entry<T>> dropped = new ArrayList<Entry<T>>();
+            queue.drainTo(dropped);
+            releaseQueueSpace(dropped);
+            return missed;
+        }
+        return drainAfter(first);
+    }
+
+    private List<Entry<T>> drainAfter(Entry<T> first)
+    {
+        List<Entry<T>> batch = new ArrayList<Entry<T>>(batchSize);
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        releaseQueueSpace(batch.subList(1, batch.size()));
+        return batch;
+    }
+
+    private Entry<T> poll(long timeoutMillis) throws InterruptedException
+    {
+        Entry<T> entry = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (entry != null && entry.holdsSpace)
+        {
+            queueSpace.release();
+        }
+        return entry;
+    }
+
+    private void releaseQueueSpace(List<Entry<T>> entries)
+    {
+        int permits = 0;
+        for (Entry<T> entry : entries)
+        {
+            if (entry.holdsSpace)
+            {
+                permits++;
+            }
+        }
+        queueSpace.release(permits);
+    }
+
+    private void handle(List<Entry<T>> batch)
+    {
+        List<T> items = new ArrayList<T>(batch.size());
+        for (Entry<T> entry : batch)
+        {
+            items.add(entry.item);
+        }
+        long start = System.currentTimeMillis();
+        handler.handle(items);
+        long end = System.currentTimeMillis();
+
+        lastLatencyMillis = end - start;
+        lastLagMillis = end - batch.get(0).appendedAt;
+        totalHandleMillis.addAndGet(lastLatencyMillis);
+        handledBatchCount.incrementAndGet();
+        handledCount.addAndGet(batch.size());
+    }
+
+    private void handleAndCheckpoint(List<Entry<T>> batch) throws IOException
+    {
+        handle(batch);
+        checkpoint(batch);
+    }
+
+    private void handleAtShutdown(List<Entry<T>> batch)
+    {
+        try
+        {
+            handle(batch);
+        }
+        catch (Throwable e)
+        {
+            logger.error("Unable to handle " + batch.size() + " " + name + " items at shutdown", e);
+        }
+    }
+
+    private void checkpoint(List<Entry<T>> batch) throws IOException
+    {
+        if (directory != null)
+        {
+            long seq = batch.get(batch.size() - 1).seq;
+            writeCheckpoint(seq);
+            lastHandledSeq = seq;
+        }
+    }
+
+    /**
+     * Move a batch that has run out of retries to the failed file and carry on after it
+     */
+    private void abandon(List<Entry<T>> batch) throws IOException
+    {
+        if (directory != null)
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(failedFile, true))))
+            {
+                for (Entry<T> entry : batch)
+                {
+                    writeRecord(out, entry.seq, codec.encode(entry.item));
+                }
+            }
+        }
+        abandonedCount.addAndGet(batch.size());
+        checkpoint(batch);
+        logger.error("Gave up on " + name + " items " + batch.get(0).seq + " to " + batch.get(batch.size() - 1).seq
+                + " after " + maxRetries + " retries" + (directory == null ? "" : "; they have been moved to " + failedFile));
+    }
+
+    private long getRetryWaitMillis(int failures)
+    {
+        long wait = retryWaitMillis << Math.min(failures - 1, 20);
+        return Math.min(wait, maxRetryWaitMillis);
+    }
+
+    private class HandlerRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            List<Entry<T>> batch = Collections.emptyList();
+            int failures = 0;
+            while (running)
+            {
+                try
+                {
+                    if (batch.isEmpty())
+                    {
+                        batch = nextBatch();
+                        if (batch.isEmpty())
+                        {
+                            compactSpool();
+                            continue;
+                        }
+                    }
+                    if (maxRetries >= 0 && failures > maxRetries)
+                    {
+                        abandon(batch);
+                    }
+                    else
+                    {
+                        handleAndCheckpoint(batch);
+                    }
+                    batch = Collections.emptyList();
+                    failures = 0;
+                }
+                catch (InterruptedException e)
+                {
+                    // Shutting down
+                    break;
+                }
+                catch (Throwable e)
+                {
+                    failedCount.incrementAndGet();
+                    if (!batch.isEmpty())
+                    {
+                        failures++;
+                    }
+                    long wait = getRetryWaitMillis(Math.max(failures, 1));
+                    logger.error("Unable to handle " + batch.size() + " " + name + " items (failure " + failures + "); retrying in " + wait + "ms", e);
+                    try
+                    {
+                        Thread.sleep(wait);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        break;
+                    }
+                }
+            }
+            if (directory == null && !batch.isEmpty())
+            {
+                // This batch is not in the queue for the shutdown drain
+                handleAtShutdown(batch);
+            }
+        }
+    }
+
+    private static class Entry<T>
+    {
+        private final T item;
+        private final long appendedAt;
+        private long seq;
+        /** <tt>false</tt> if the item was queued beyond the capacity */
+        private boolean holdsSpace = true;
+
+        private Entry(T item)
+        {
+            this.item = item;
+            this.appendedAt = System.currentTimeMillis();
+        }
+    }
+}
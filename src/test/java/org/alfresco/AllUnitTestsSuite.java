@@ -42,6 +42,7 @@ import org.junit.runners.Suite;
     org.alfresco.encryption.EncryptorTest.class,
     org.alfresco.encryption.KeyStoreKeyProviderTest.class,
     org.alfresco.filesys.config.ServerConfigurationBeanTest.class,
+    org.alfresco.filesys.repo.NodePathCacheTest.class,
     org.alfresco.filesys.repo.rules.ShuffleTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
@@ -51,6 +52,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
     org.alfresco.repo.copy.CopyServiceImplUnitTest.class,
     org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class,
+    org.alfresco.repo.download.ContentPrefetcherTest.class,
     org.alfresco.repo.forms.processor.node.FieldProcessorTest.class,
     org.alfresco.repo.forms.processor.workflow.TaskFormProcessorTest.class,
     org.alfresco.repo.forms.processor.workflow.WorkflowFormProcessorTest.class,
@@ -118,6 +120,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.BeanExtenderUnitTest.class,
     org.alfresco.repo.search.impl.solr.SpellCheckDecisionManagerTest.class,
     org.alfresco.repo.search.impl.solr.SolrStoreMappingWrapperTest.class,
+    org.alfresco.repo.search.impl.querymodel.impl.db.DBQueryEnginePagedExecutionTest.class,
     org.alfresco.repo.security.authentication.CompositePasswordEncoderTest.class,
     org.alfresco.repo.security.authentication.PasswordHashingTest.class,
     org.alfresco.traitextender.TraitExtenderIntegrationTest.class,
@@ -158,6 +161,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.action.CompositeActionConditionImplTest.class,
     org.alfresco.repo.audit.AuditableAnnotationTest.class,
     org.alfresco.repo.audit.PropertyAuditFilterTest.class,
+    org.alfresco.repo.audit.AuditWriteBehindQueueTest.class,
     org.alfresco.repo.content.filestore.SpoofedTextContentReaderTest.class,
     org.alfresco.repo.content.ContentDataTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionLimitsTest.class,
@@ -169,6 +173,8 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.content.caching.ContentCacheIndexTest.class,
+    org.alfresco.repo.tagging.TagScopeUpdatesTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
     org.alfresco.repo.search.MLAnaysisModeExpansionTest.class,
     org.alfresco.repo.search.DocumentNavigatorTest.class,
@@ -179,6 +185,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.security.authentication.AlfrescoSSLSocketFactoryTest.class,
     org.alfresco.repo.security.authentication.AuthorizationTest.class,
     org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSetTest.class,
+    org.alfresco.repo.security.permissions.impl.AccessCacheIndexTest.class,
     org.alfresco.repo.security.authentication.ChainingAuthenticationServiceTest.class,
     org.alfresco.repo.security.authentication.NameBasedUserNameGeneratorTest.class,
     org.alfresco.repo.version.common.VersionImplTest.class,
@@ -63,6 +63,7 @@ import org.junit.runners.Suite;
 
     org.alfresco.repo.solr.SOLRTrackingComponentTest.class,
     org.alfresco.repo.tagging.TaggingServiceImplTest.class,
+    org.alfresco.repo.batch.BatchProcessorTest.class,
     org.alfresco.repo.transaction.AlfrescoTransactionSupportTest.class,
     org.alfresco.repo.transaction.RetryingTransactionHelperTest.class,
     org.alfresco.repo.transaction.TransactionAwareSingletonTest.class,
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.filesys.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NodePathCache}
+ */
+public class NodePathCacheTest
+{
+    private static final String USER_A = "userA";
+    private static final String USER_B = "userB";
+    
+    private NodePathCache cache;
+    
+    @Before
+    public void setUp()
+    {
+        cache = new NodePathCache(3);
+    }
+    
+    private static NodeRef nodeRef(String id)
+    {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, id);
+    }
+    
+    @Test
+    public void testPathsIgnoreCaseAndSeparators()
+    {
+        NodeRef nodeRef = nodeRef("1");
+        cache.put(USER_A, "\\Folder\\File.txt", nodeRef);
+        
+        assertEquals(nodeRef, cache.get(USER_A, "\\FOLDER\\file.TXT"));
+        assertEquals(nodeRef, cache.get(USER_A, "/Folder/File.txt"));
+        assertNull("Paths are cached per user", cache.get(USER_B, "\\Folder\\File.txt"));
+    }
+    
+    @Test
+    public void testRemovePathRemovesPathsBelow()
+    {
+        cache.put(USER_A, "\\Folder", nodeRef("1"));
+        cache.put(USER_B, "\\Folder\\File.txt", nodeRef("2"));
+        cache.put(USER_A, "\\Folder2", nodeRef("3"));
+        
+        cache.removePath("\\folder\\");
+        
+        assertNull(cache.get(USER_A, "\\Folder"));
+        assertNull(cache.get(USER_B, "\\Folder\\File.txt"));
+        assertEquals(nodeRef("3"), cache.get(USER_A, "\\Folder2"));
+    }
+    
+    @Test
+    public void testRemovePathLeavesSiblingsWithSamePrefix()
+    {
+        cache.put(USER_A, "\\Folder\\Sub\\File.txt", nodeRef("1"));
+        cache.put(USER_A, "\\Folder A", nodeRef("2"));
+        cache.put(USER_B, "\\Folder[1]", nodeRef("3"));
+        
+        cache.removePath("\\Folder");
+        
+        assertNull(cache.get(USER_A, "\\Folder\\Sub\\File.txt"));
+        assertEquals(nodeRef("2"), cache.get(USER_A, "\\Folder A"));
+        assertEquals(nodeRef("3"), cache.get(USER_B, "\\Folder[1]"));
+        
+        cache.removePath("");
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void testDroppedPathIsNoLongerRemoved()
+    {
+        cache.put(USER_A, "\\a", nodeRef("1"));
+        cache.put(USER_A, "\\b", nodeRef("2"));
+        cache.put(USER_A, "\\c", nodeRef("3"));
+        cache.put(USER_A, "\\d", nodeRef("4"));
+        cache.put(USER_B, "\\a", nodeRef("5"));
+        
+        cache.removePath("\\a");
+        
+        assertNull(cache.get(USER_B, "\\a"));
+        assertEquals(2, cache.size());
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedPathIsDropped()
+    {
+        cache.put(USER_A, "\\a", nodeRef("1"));
+        cache.put(USER_A, "\\b", nodeRef("2"));
+        cache.put(USER_A, "\\c", nodeRef("3"));
+        cache.get(USER_A, "\\a");
+        cache.put(USER_A, "\\d", nodeRef("4"));
+        
+        assertEquals(3, cache.size());
+        assertEquals(nodeRef("1"), cache.get(USER_A, "\\a"));
+        assertNull(cache.get(USER_A, "\\b"));
+    }
+    
+    @Test
+    public void testLookupsPerRequest()
+    {
+        cache.recordRequest(3);
+        cache.recordRequest(0);
+        cache.recordRequest(1);
+        cache.recordRequest(0);
+        
+        assertEquals(4, cache.getRequestCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getLookupCount());
+        assertEquals(1.0, cache.getLookupsPerRequest(), 0.0);
+    }
+}
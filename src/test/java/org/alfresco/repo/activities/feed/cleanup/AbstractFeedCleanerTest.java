@@ -29,7 +29,9 @@ import static org.junit.Assert.*;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -177,6 +179,31 @@ public abstract class AbstractFeedCleanerTest
         assertEquals(5, feedDAO.selectSiteFeedEntries(TEST_SITE_4, -1).size());
     }
     
+    @Test
+    public void testInsertFeedEntries() throws Exception
+    {
+        // more entries than fit into a single statement
+        List<ActivityFeedEntity> feedEntries = new ArrayList<ActivityFeedEntity>(250);
+        for (int i = 0; i < 250; i++)
+        {
+            ActivityFeedEntity feedEntry = new ActivityFeedEntity();
+            
+            feedEntry.setPostDate(new Date(System.currentTimeMillis()-(i*60*1000L)));
+            feedEntry.setSiteNetwork(TEST_SITE_4);
+            feedEntry.setActivityType("testActivityType");
+            feedEntry.setActivitySummary("{}");
+            feedEntry.setPostUserId(TEST_USER_C);
+            feedEntry.setFeedUserId(i % 2 == 0 ? "" : TEST_USER_D);
+            feedEntry.setFeedDate(new Date());
+            
+            feedEntries.add(feedEntry);
+        }
+        assertEquals(250, feedDAO.insertFeedEntries(feedEntries));
+        // Check
+        assertEquals(125, feedDAO.selectSiteFeedEntries(TEST_SITE_4, -1).size());
+        assertEquals(125, feedDAO.selectUserFeedEntries(TEST_USER_D, null, false, false, -1L, -1).size());
+    }
+    
     @Test
     public void testMaxAge() throws Exception
     {
@@ -0,0 +1,163 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link AuditWriteBehindQueue} outside of any transaction.
+ */
+public class AuditWriteBehindQueueTest
+{
+    private static final Long APP_ID = 1L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private AuditWriteBehindQueue queue;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable
+    {
+        auditDAO = mock(AuditDAO.class);
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean()))
+                .thenAnswer(invocation -> ((RetryingTransactionCallback<Object>) invocation.getArgument(0)).execute());
+        transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (queue != null)
+        {
+            queue.destroy();
+        }
+    }
+
+    private AuditWriteBehindQueue newQueue(String durability)
+    {
+        AuditWriteBehindQueue queue = new AuditWriteBehindQueue();
+        queue.setEnabled(true);
+        queue.setDurability(durability);
+        queue.setDirectory(folder.getRoot().getAbsolutePath());
+        queue.setCapacity(5);
+        queue.setBatchSize(3);
+        queue.setMaxBlockMillis(10);
+        queue.setRetryWaitMillis(50);
+        queue.setAuditDAO(auditDAO);
+        queue.setTransactionService(transactionService);
+        queue.init();
+        return queue;
+    }
+
+    private void write(int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            Map<String, Serializable> values = Collections.<String, Serializable>singletonMap("/test/value", "v" + i);
+            queue.write(APP_ID, i, "user" + (i % 2), values);
+        }
+    }
+
+    private void waitForPendingCount(long expected) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 5000;
+        while (queue.getPendingCount() != expected && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, queue.getPendingCount());
+    }
+
+    @Test
+    public void testMemoryWritesEverything() throws Exception
+    {
+        queue = newQueue("memory");
+        write(20);
+        verify(auditDAO, timeout(5000).times(20)).createAuditEntry(eq(APP_ID), anyLong(), anyString(), anyMap());
+    }
+
+    @Test
+    public void testSpoolWritesOverflowFromSpool() throws Exception
+    {
+        queue = newQueue("spool");
+        // More than the queue can hold
+        write(50);
+        verify(auditDAO, timeout(5000).times(50)).createAuditEntry(eq(APP_ID), anyLong(), anyString(), anyMap());
+        for (int i = 0; i < 50; i++)
+        {
+            verify(auditDAO).createAuditEntry(APP_ID, i, "user" + (i % 2), Collections.<String, Serializable>singletonMap("/test/value", "v" + i));
+        }
+        waitForPendingCount(0L);
+    }
+
+    @Test
+    public void testSpoolReplaysAfterRestart() throws Exception
+    {
+        doThrow(new RuntimeException("Database unavailable"))
+                .when(auditDAO).createAuditEntry(eq(APP_ID), anyLong(), anyString(), anyMap());
+        queue = newQueue("sync");
+        write(7);
+        assertEquals(7L, queue.getPendingCount());
+        queue.destroy();
+
+        // Restart against a working database
+        auditDAO = mock(AuditDAO.class);
+        queue = newQueue("sync");
+        verify(auditDAO, timeout(5000).times(7)).createAuditEntry(eq(APP_ID), anyLong(), anyString(), anyMap());
+        waitForPendingCount(0L);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.BaseSpringTest;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the optional prefetching, adaptive sizing and batch splitting of the {@link BatchProcessor}.
+ */
+public class BatchProcessorTest extends BaseSpringTest
+{
+    private RetryingTransactionHelper txnHelper;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        TransactionService transactionService = (TransactionService) applicationContext.getBean("TransactionService");
+        txnHelper = transactionService.getRetryingTransactionHelper();
+    }
+
+    @Test
+    public void testPrefetchedWork() throws Exception
+    {
+        final AtomicInteger processed = new AtomicInteger();
+        BatchProcessor<Integer> processor = new BatchProcessor<Integer>(
+                "BatchProcessorTest.prefetch", txnHelper, new PagedWorkProvider(100, 7), 2, 10, null, null, 1000);
+        processor.setPrefetchSize(15);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                processed.incrementAndGet();
+            }
+        }, true);
+
+        assertEquals(100, processed.get());
+        assertEquals(100, processor.getSuccessfullyProcessedEntries());
+        assertEquals(0, processor.getTotalErrors());
+        assertEquals(10, processor.getCompletedBatches());
+        assertEquals(0, processor.getPrefetchedEntries());
+    }
+
+    @Test
+    public void testFailingBatchIsSplit() throws Exception
+    {
+        BatchProcessor<Integer> processor = new BatchProcessor<Integer>(
+                "BatchProcessorTest.split", txnHelper, new PagedWorkProvider(40, 40), 1, 8, null, null, 1000);
+        processor.setSplitFailedBatches(true);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry == 13)
+                {
+                    // Only fails on commit, so the whole batch is rolled back
+                    AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                    {
+                        @Override
+                        public void beforeCommit(boolean readOnly)
+                        {
+                            throw new IllegalStateException("Entry 13 cannot be committed");
+                        }
+                    });
+                }
+            }
+        }, true);
+
+        assertEquals(39, processor.getSuccessfullyProcessedEntries());
+        assertEquals(1, processor.getTotalErrors());
+        assertEquals("13", processor.getLastErrorEntryId());
+        // 8 -> 4 -> 2 -> 1
+        assertEquals(3, processor.getSplitBatches());
+    }
+
+    @Test
+    public void testSplitDepthIsBounded() throws Exception
+    {
+        BatchProcessor<Integer> processor = new BatchProcessor<Integer>(
+                "BatchProcessorTest.splitDepth", txnHelper, new PagedWorkProvider(40, 40), 1, 8, null, null, 1000);
+        processor.setSplitFailedBatches(true);
+        processor.setMaxSplitDepth(1);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry == 13)
+                {
+                    AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                    {
+                        @Override
+                        public void beforeCommit(boolean readOnly)
+                        {
+                            throw new IllegalStateException("Entry 13 cannot be committed");
+                        }
+                    });
+                }
+            }
+        }, true);
+
+        // 8 -> 4, after which the failing half is reported as a single error
+        assertEquals(1, processor.getSplitBatches());
+        assertEquals(1, processor.getTotalErrors());
+    }
+
+    @Test
+    public void testSlowBatchesShrinkBatchSize() throws Exception
+    {
+        BatchProcessor<Integer> processor = new BatchProcessor<Integer>(
+                "BatchProcessorTest.adaptive", txnHelper, new PagedWorkProvider(20, 20), 1, 10, null, null, 1000);
+        processor.setAdaptiveBatchSize(2, 50, 1L);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                Thread.sleep(5L);
+            }
+        }, true);
+
+        assertEquals(20, processor.getSuccessfullyProcessedEntries());
+        assertEquals(2, processor.getCurrentBatchSize());
+        long batches = 0L;
+        for (long count : processor.getRetryHistogram())
+        {
+            batches += count;
+        }
+        assertEquals(processor.getCompletedBatches(), batches);
+    }
+
+    /**
+     * Provides consecutive integers in pages of a given size.
+     */
+    private static class PagedWorkProvider implements BatchProcessWorkProvider<Integer>
+    {
+        private final int total;
+        private final int pageSize;
+        private int next;
+
+        private PagedWorkProvider(int total, int pageSize)
+        {
+            this.total = total;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return total;
+        }
+
+        @Override
+        public synchronized Collection<Integer> getNextWork()
+        {
+            if (next >= total)
+            {
+                return Collections.emptyList();
+            }
+            List<Integer> page = new ArrayList<Integer>(pageSize);
+            for (; next < total && page.size() < pageSize; next++)
+            {
+                page.add(next);
+            }
+            return page;
+        }
+    }
+}
@@ -46,6 +46,7 @@ import org.alfresco.util.TempFileProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
+import org.springframework.util.FileCopyUtils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -738,4 +739,35 @@ public abstract class AbstractWritableContentStoreTest extends AbstractReadOnlyC
         assertEquals("Content read failure", content, checkContent);
         fileChannel.close();
     }
+    
+    /**
+     * Tests reading a range of the content
+     * <p>
+     * Only executes if the reader implements {@link RangedContentReader}.
+     */
+    @Test
+    public void testRangedRead() throws Exception
+    {
+        ContentWriter writer = getWriter();
+        String content = "ABCDEFGHIJ";
+        writer.putContent(content);
+        
+        ContentReader reader = writer.getReader();
+        if (!(reader instanceof RangedContentReader))
+        {
+            return;
+        }
+        InputStream is = ((RangedContentReader) reader).getContentInputStream(3, 4);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FileCopyUtils.copy(is, os);
+        assertEquals("Incorrect range read", "DEFG", new String(os.toByteArray()));
+        assertTrue("Reader not closed", reader.isClosed());
+        
+        // a range past the end of the content stops at the end
+        reader = writer.getReader();
+        is = ((RangedContentReader) reader).getContentInputStream(8, 10);
+        os = new ByteArrayOutputStream();
+        FileCopyUtils.copy(is, os);
+        assertEquals("Incorrect range read", "IJ", new String(os.toByteArray()));
+    }
 }
@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ContentCacheIndex} class.
+ */
+public class ContentCacheIndexTest
+{
+    private File dir;
+    private ContentCacheIndex index;
+
+    @Before
+    public void setUp()
+    {
+        dir = new File(TempFileProvider.getTempDir(), GUID.generate());
+        dir.mkdirs();
+        index = new ContentCacheIndex();
+        index.setSnapshotFile(new File(dir, "content-cache.index"));
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void coldestEntriesAreLeastRecentlyUsed() throws IOException
+    {
+        File a = cacheFile("a", 10);
+        File b = cacheFile("b", 20);
+        File c = cacheFile("c", 30);
+        index.put(a, "store://a", 1L);
+        index.put(b, "store://b", 2L);
+        index.put(c, "store://c", 3L);
+        assertEquals(60L, index.getTotalBytes());
+
+        // a becomes the most recently used
+        index.touch(a.getAbsolutePath());
+
+        List<ContentCacheIndex.Entry> coldest = index.coldest(25L);
+        assertEquals(2, coldest.size());
+        assertEquals(b.getAbsolutePath(), coldest.get(0).getPath());
+        assertEquals(c.getAbsolutePath(), coldest.get(1).getPath());
+
+        // Entries are only removed explicitly
+        assertEquals(3, index.getEntryCount());
+        index.remove(b.getAbsolutePath());
+        assertEquals(40L, index.getTotalBytes());
+        assertEquals(c.getAbsolutePath(), index.coldest(1L).get(0).getPath());
+    }
+
+    @Test
+    public void concurrentTouchesKeepEachEntryOnce() throws Exception
+    {
+        final File[] files = new File[20];
+        for (int i = 0; i < files.length; i++)
+        {
+            files[i] = cacheFile("f" + i, 1);
+            index.put(files[i], null, i);
+        }
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < 5000; i++)
+                    {
+                        index.touch(files[i % files.length].getAbsolutePath());
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(files.length, index.getEntries().size());
+        assertEquals(files.length, index.coldest(Long.MAX_VALUE).size());
+        assertEquals(5, index.coldest(5L).size());
+    }
+
+    @Test
+    public void replacingEntryAdjustsTotal() throws IOException
+    {
+        File a = cacheFile("a", 10);
+        index.put(a, "store://a", 1L);
+        FileUtils.writeByteArrayToFile(a, new byte[15]);
+        index.put(a, "store://a", 2L);
+        assertEquals(1, index.getEntryCount());
+        assertEquals(15L, index.getTotalBytes());
+    }
+
+    @Test
+    public void snapshotRestoresCompleteIndex() throws IOException
+    {
+        File a = cacheFile("a", 10);
+        File b = cacheFile("b", 20);
+        index.put(a, null, 1L);
+        index.put(b, "store://b", 2L);
+
+        // Incomplete indexes are not written
+        index.shutdown();
+        assertFalse(new File(dir, "content-cache.index").exists());
+
+        index.markComplete();
+        index.shutdown();
+        assertTrue(new File(dir, "content-cache.index").exists());
+
+        ContentCacheIndex restored = new ContentCacheIndex();
+        restored.setSnapshotFile(new File(dir, "content-cache.index"));
+        restored.init();
+
+        assertTrue(restored.isComplete());
+        assertEquals(30L, restored.getTotalBytes());
+        List<ContentCacheIndex.Entry> entries = restored.getEntries();
+        assertEquals(a.getAbsolutePath(), entries.get(0).getPath());
+        assertEquals(null, entries.get(0).getContentUrl());
+        assertEquals("store://b", entries.get(1).getContentUrl());
+        assertEquals(2L, entries.get(1).getCreated());
+        // The snapshot is consumed so that a crash does not leave a stale index behind
+        assertFalse(new File(dir, "content-cache.index").exists());
+    }
+
+    @Test
+    public void createdBeforeContinuesFromCursor() throws IOException
+    {
+        File a = cacheFile("a", 10);
+        File b = cacheFile("b", 20);
+        File c = cacheFile("c", 30);
+        index.put(c, "store://c", 3L);
+        index.put(a, "store://a", 1L);
+        index.put(b, "store://b", 2L);
+
+        List<ContentCacheIndex.Entry> first = index.createdBefore(3L, null, 1);
+        assertEquals(1, first.size());
+        assertEquals(a.getAbsolutePath(), first.get(0).getPath());
+
+        // c is too new
+        List<ContentCacheIndex.Entry> next = index.createdBefore(3L, first.get(0), 1);
+        assertEquals(1, next.size());
+        assertEquals(b.getAbsolutePath(), next.get(0).getPath());
+        assertTrue(index.createdBefore(3L, next.get(0), 1).isEmpty());
+
+        index.remove(a.getAbsolutePath());
+        assertEquals(2, index.createdBefore(Long.MAX_VALUE, null, 10).size());
+    }
+
+    @Test
+    public void hitRatio()
+    {
+        assertEquals(0.0, index.getHitRatio(), 0.0);
+        index.recordHit(100L);
+        index.recordHit(50L);
+        index.recordHit(10L);
+        index.recordMiss();
+        assertEquals(0.75, index.getHitRatio(), 0.0);
+        assertEquals(160L, index.getBytesServed());
+    }
+
+    private File cacheFile(String name, int size) throws IOException
+    {
+        File file = new File(dir, name + ".bin");
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        return file;
+    }
+}
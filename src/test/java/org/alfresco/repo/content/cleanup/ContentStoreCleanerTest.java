@@ -111,7 +111,7 @@ public class ContentStoreCleanerTest extends TestCase
         listeners.add(listener);
         listeners.add(new DummyUnsupportiveCleanerListener());
         // initialise record of deleted URLs
-        deletedUrls = new ArrayList<String>(5);
+        deletedUrls = Collections.synchronizedList(new ArrayList<String>(5));
         
         // Construct the test cleaners
         eagerCleaner = (EagerContentStoreCleaner) ctx.getBean("eagerContentStoreCleaner");
@@ -394,6 +394,62 @@ public class ContentStoreCleanerTest extends TestCase
         assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
     }
     
+    /**
+     * Checks that small batches deleted by a worker pool remove all orphans and report progress
+     */
+    public void testParallelRemoval() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        RetryingTransactionCallback<Set<String>> testCallback = new RetryingTransactionCallback<Set<String>>()
+        {
+            public Set<String> execute() throws Throwable
+            {
+                Set<String> urls = new HashSet<String>(13);
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                for (int i = 0; i < 7; i++)
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                    properties.put(ContentModel.PROP_NAME, (Serializable)("test" + i + ".txt"));
+                    NodeRef contentNodeRef = nodeService.createNode(
+                            rootNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT,
+                            properties).getChildRef();
+                    ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                    writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                    writer.putContent("INITIAL CONTENT " + i);
+                    urls.add(writer.getContentUrl());
+                    
+                    // Delete the node, bypassing archive
+                    nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(contentNodeRef);
+                }
+                // Done
+                return urls;
+            }
+        };
+        Set<String> urls = transactionService.getRetryingTransactionHelper().doInTransaction(testCallback);
+        checkForExistence(urls, true);
+        
+        // fire the cleaner with small batches and a few workers
+        cleaner.setProtectDays(0);
+        cleaner.setBatchSize(2);
+        cleaner.setWorkerThreads(3);
+        cleaner.execute();
+        
+        checkForExistence(urls, false);
+        assertTrue("Content listener was not called", deletedUrls.containsAll(urls));
+        assertFalse("Cleaner should not report as running", cleaner.isRunning());
+        assertTrue("Too few URLs reported as deleted", cleaner.getUrlsDeleted() >= urls.size());
+        assertTrue("Too few batches reported", cleaner.getBatchesCompleted() >= 4);
+        assertTrue("Bytes freed not reported", cleaner.getBytesFreed() > 0L);
+        assertTrue("Last processed ID not reported", cleaner.getLastProcessedId() > 0L);
+        assertTrue("Run end time not recorded", cleaner.getLastRunEndTime() >= cleaner.getLastRunStartTime());
+    }
+    
     /**
      * Test forced and immediate shredding of content
      * <p/>
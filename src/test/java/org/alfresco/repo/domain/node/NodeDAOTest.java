@@ -29,7 +29,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,16 +43,22 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.repository.MLText;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
 import org.alfresco.util.Pair;
 import org.alfresco.util.testing.category.DBTests;
 import org.alfresco.util.testing.category.LuceneTests;
@@ -68,6 +77,8 @@ import org.springframework.context.ApplicationContext;
 @Category({OwnJVMTestsCategory.class, DBTests.class, LuceneTests.class})
 public class NodeDAOTest extends TestCase
 {
+    private static final String NAMESPACE = "test";
+    
     private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
 
     private TransactionService transactionService;
@@ -337,6 +348,222 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    /**
+     * Paths built on the known paths of ancestors must match the paths built by walking the hierarchy
+     */
+    public void testGetPathsWithKnownPaths() throws Throwable
+    {
+        final Long minNodeId = nodeDAO.getMinNodeId();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Map<Long, List<Path>> knownPaths = new HashMap<Long, List<Path>>();
+                for (long i = 0; i < 1000; i++)
+                {
+                    Long nodeId = Long.valueOf(minNodeId.longValue() + i);
+                    NodeRef.Status status = nodeDAO.getNodeIdStatus(nodeId);
+                    if (status == null || status.isDeleted())
+                    {
+                        continue;
+                    }
+                    Pair<Long, NodeRef> nodePair = new Pair<Long, NodeRef>(nodeId, status.getNodeRef());
+                    List<Path> expectedPaths = nodeDAO.getPaths(nodePair, false);
+                    List<Path> actualPaths = nodeDAO.getPaths(nodePair, knownPaths);
+                    assertEquals("Paths differ for node " + nodePair, expectedPaths.toString(), actualPaths.toString());
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
+    /**
+     * Cached paths must follow moves and renames of ancestors made in later transactions
+     */
+    public void testCachedPathsFollowAncestorMoves() throws Throwable
+    {
+        final NodeService nodeService = ((ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY)).getNodeService();
+        AuthenticationUtil.setRunAsUserSystem();
+        try
+        {
+            final NodeRef[] nodeRefs = txnHelper.doInTransaction(new RetryingTransactionCallback<NodeRef[]>()
+            {
+                public NodeRef[] execute() throws Throwable
+                {
+                    StoreRef storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "NodeDAOTest-" + GUID.generate());
+                    NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                    NodeRef folderA = createFolder(nodeService, rootNodeRef, "a");
+                    NodeRef folderB = createFolder(nodeService, rootNodeRef, "b");
+                    NodeRef leaf = createFolder(nodeService, createFolder(nodeService, folderA, "mid"), "leaf");
+                    return new NodeRef[] {folderA, folderB, leaf};
+                }
+            });
+            // Populate the cache
+            final Pair<Long, NodeRef> leafPair = txnHelper.doInTransaction(new RetryingTransactionCallback<Pair<Long, NodeRef>>()
+            {
+                public Pair<Long, NodeRef> execute() throws Throwable
+                {
+                    Pair<Long, NodeRef> leafPair = nodeDAO.getNodePair(nodeRefs[2]);
+                    List<Path> paths = nodeDAO.getPaths(leafPair, true);
+                    String path = paths.get(0).toString();
+                    assertTrue("Unexpected path: " + path, path.endsWith("/{test}a/{test}mid/{test}leaf"));
+                    // Callers may modify the paths they are given
+                    paths.get(0).append(paths.get(0).last());
+                    assertEquals(path, nodeDAO.getPaths(leafPair, true).get(0).toString());
+                    return leafPair;
+                }
+            }, true);
+            // Move the top folder
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    nodeService.moveNode(nodeRefs[0], nodeRefs[1], ContentModel.ASSOC_CONTAINS,
+                            QName.createQName(NAMESPACE, "moved"));
+                    // Changed in this transaction
+                    assertTrue(nodeDAO.getPaths(leafPair, true).get(0).toString().endsWith("/{test}b/{test}moved/{test}mid/{test}leaf"));
+                    return null;
+                }
+            });
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (boolean primaryOnly : new boolean[] {true, false})
+                    {
+                        List<Path> paths = nodeDAO.getPaths(leafPair, primaryOnly);
+                        assertEquals(1, paths.size());
+                        assertTrue("Unexpected path: " + paths, paths.get(0).toString().endsWith("/{test}b/{test}moved/{test}mid/{test}leaf"));
+                    }
+                    return null;
+                }
+            }, true);
+        }
+        finally
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+    
+    private NodeRef createFolder(NodeService nodeService, NodeRef parentNodeRef, String localName)
+    {
+        Map<QName, Serializable> props = Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, localName);
+        return nodeService.createNode(
+                parentNodeRef,
+                ContentModel.ASSOC_CONTAINS,
+                QName.createQName(NAMESPACE, localName),
+                ContentModel.TYPE_FOLDER,
+                props).getChildRef();
+    }
+    
+    /**
+     * Properties written with multi-row inserts and deletes must read back unchanged
+     */
+    public void testMultiRowPropertyWrites() throws Throwable
+    {
+        final NodeService nodeService = ((ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY)).getNodeService();
+        final QName listQName = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "multiRowList");
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                StoreRef storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "NodeDAOTest-" + GUID.generate());
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                
+                // More rows than fit into a single statement
+                ArrayList<String> values = new ArrayList<String>(250);
+                for (int i = 0; i < 250; i++)
+                {
+                    values.add("value-" + i);
+                }
+                MLText title = new MLText();
+                title.addValue(Locale.ENGLISH, "Title");
+                title.addValue(Locale.FRENCH, "Titre");
+                title.addValue(Locale.GERMAN, "Titel");
+                Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+                props.put(ContentModel.PROP_NAME, "multiRow");
+                props.put(ContentModel.PROP_TITLE, title);
+                props.put(listQName, values);
+                NodeRef nodeRef = nodeService.createNode(
+                        rootNodeRef,
+                        ContentModel.ASSOC_CHILDREN,
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "multiRow"),
+                        ContentModel.TYPE_CONTENT,
+                        props).getChildRef();
+                Long nodeId = nodeDAO.getNodePair(nodeRef).getFirst();
+                
+                nodeDAO.clear();
+                Map<QName, Serializable> readProps = nodeDAO.getNodeProperties(nodeId);
+                assertEquals(values, readProps.get(listQName));
+                assertEquals(title, readProps.get(ContentModel.PROP_TITLE));
+                
+                // Replace the list with a shorter one
+                ArrayList<String> fewerValues = new ArrayList<String>(values.subList(0, 20));
+                nodeService.setProperty(nodeRef, listQName, fewerValues);
+                
+                nodeDAO.clear();
+                readProps = nodeDAO.getNodeProperties(nodeId);
+                assertEquals(fewerValues, readProps.get(listQName));
+                assertEquals(title, readProps.get(ContentModel.PROP_TITLE));
+                return null;
+            }
+        };
+        AuthenticationUtil.setRunAsUserSystem();
+        try
+        {
+            txnHelper.doInTransaction(callback);
+        }
+        finally
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+    
+    public void testGetNodePropertiesAndAspectsBulk() throws Throwable
+    {
+        final Long minNodeId = nodeDAO.getMinNodeId();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                List<Long> nodeIds = new ArrayList<Long>(1000);
+                for (long i = 0; i < 1000; i++)
+                {
+                    nodeIds.add(Long.valueOf(minNodeId.longValue() + i));
+                }
+                // Start cold
+                nodeDAO.clear();
+                Map<Long, Map<QName, Serializable>> propertiesByNodeId = nodeDAO.getNodePropertiesBulk(nodeIds);
+                Map<Long, Set<QName>> aspectsByNodeId = nodeDAO.getNodeAspectsBulk(nodeIds);
+                assertEquals(propertiesByNodeId.keySet(), aspectsByNodeId.keySet());
+                for (Long nodeId : nodeIds)
+                {
+                    if (nodeDAO.getNodeIdStatus(nodeId) == null)
+                    {
+                        assertFalse("Missing node returned: " + nodeId, propertiesByNodeId.containsKey(nodeId));
+                        continue;
+                    }
+                    assertEquals("Properties differ for node " + nodeId,
+                            new HashMap<QName, Serializable>(nodeDAO.getNodeProperties(nodeId)),
+                            new HashMap<QName, Serializable>(propertiesByNodeId.get(nodeId)));
+                    assertEquals("Aspects differ for node " + nodeId, nodeDAO.getNodeAspects(nodeId), aspectsByNodeId.get(nodeId));
+                }
+                // Preloading gives the same values when they are read node by node
+                nodeDAO.clear();
+                nodeDAO.cacheNodePropertiesById(nodeIds);
+                for (Map.Entry<Long, Map<QName, Serializable>> entry : propertiesByNodeId.entrySet())
+                {
+                    assertEquals("Preloaded properties differ for node " + entry.getKey(),
+                            new HashMap<QName, Serializable>(entry.getValue()),
+                            new HashMap<QName, Serializable>(nodeDAO.getNodeProperties(entry.getKey())));
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
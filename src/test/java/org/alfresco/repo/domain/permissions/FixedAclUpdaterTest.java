@@ -206,6 +206,26 @@ public class FixedAclUpdaterTest extends TestCase
         testWorkWithNodeCreation(folderAsyncCallWithCreateNodeRef, true);
     }
 
+    @Test
+    public void testProgressReporting()
+    {
+        setPermissionsOnTree(folderAsyncCallNodeRef, true);
+        int pending = getNodesCountWithPendingFixedAclAspect();
+
+        long before = System.currentTimeMillis();
+        int processed = txnHelper.doInTransaction((RetryingTransactionCallback<Integer>) () -> fixedAclUpdater.execute(), false, true);
+
+        assertFalse("Run should be complete", fixedAclUpdater.isRunning());
+        assertTrue("Expected at least " + pending + " nodes to be processed", processed >= pending);
+        assertEquals(processed, fixedAclUpdater.getNodesProcessed());
+        assertTrue(fixedAclUpdater.getPasses() >= 1);
+        assertTrue(fixedAclUpdater.getLastRunStartTime() >= before);
+        assertTrue(fixedAclUpdater.getLastRunEndTime() >= fixedAclUpdater.getLastRunStartTime());
+        assertTrue(fixedAclUpdater.getNodesPerSecond() > 0.0);
+
+        triggerFixedACLJob(folderAsyncCallNodeRef);
+    }
+
     private void testWork(NodeRef folderRef, boolean asyncCall)
     {
         setPermissionsOnTree(folderRef, asyncCall);
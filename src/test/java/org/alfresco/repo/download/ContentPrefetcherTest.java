@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ContentPrefetcher}.
+ */
+public class ContentPrefetcherTest
+{
+    private static final List<String> CONTENT_URLS = Arrays.asList(
+            "store://a.bin", "store://b.bin", "store://c.bin", "store://d.bin", "store://e.bin", "store://f.bin");
+    private static final long TIMEOUT_MS = 5000;
+
+    private ContentService contentService;
+    /** the local copies written so far, by content URL */
+    private Map<String, File> copies;
+    /** content URLs whose copy fails */
+    private Set<String> failing;
+    /** when set, copies wait for this latch before completing */
+    private volatile CountDownLatch release;
+    private ContentPrefetcher prefetcher;
+
+    @Before
+    public void setUp()
+    {
+        copies = new ConcurrentHashMap<String, File>();
+        failing = Collections.synchronizedSet(new HashSet<String>());
+        release = null;
+
+        contentService = mock(ContentService.class);
+        when(contentService.getRawReader(anyString())).thenAnswer(invocation -> createReader(invocation.getArgument(0)));
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (prefetcher != null)
+        {
+            prefetcher.shutdown();
+        }
+        for (File copy : copies.values())
+        {
+            copy.delete();
+        }
+    }
+
+    private ContentReader createReader(final String contentUrl)
+    {
+        ContentReader reader = mock(ContentReader.class);
+        doAnswer(invocation -> {
+            copy(contentUrl, invocation.getArgument(0));
+            return null;
+        }).when(reader).getContent(any(File.class));
+        return reader;
+    }
+
+    private void copy(String contentUrl, File file) throws Exception
+    {
+        copies.put(contentUrl, file);
+        CountDownLatch latch = release;
+        if (latch != null)
+        {
+            try
+            {
+                latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                throw new ContentIOException("Interrupted reading " + contentUrl);
+            }
+        }
+        if (failing.contains(contentUrl))
+        {
+            throw new ContentIOException("Failed to read " + contentUrl);
+        }
+        Files.write(file.toPath(), contentUrl.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String takeContent(String contentUrl) throws Exception
+    {
+        File file = prefetcher.take(contentUrl);
+        assertNotNull("Expected a local copy of " + contentUrl, file);
+        try
+        {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private void awaitCopied(String contentUrl) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!isCopied(contentUrl) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue("Content was not copied: " + contentUrl, isCopied(contentUrl));
+    }
+
+    private boolean isCopied(String contentUrl)
+    {
+        File file = copies.get(contentUrl);
+        return file != null && file.length() > 0;
+    }
+
+    private static void assertDeleted(File file) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (file.exists() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertFalse("Local copy was left behind: " + file, file.exists());
+    }
+
+    @Test
+    public void testCopiesAreTakenInExportOrder() throws Exception
+    {
+        prefetcher = new ContentPrefetcher(contentService, CONTENT_URLS, 3, 2);
+        prefetcher.start();
+
+        for (String contentUrl : CONTENT_URLS)
+        {
+            assertEquals(contentUrl, takeContent(contentUrl));
+        }
+        verify(contentService, times(CONTENT_URLS.size())).getRawReader(anyString());
+    }
+
+    @Test
+    public void testPrefetchStaysWithinWindow() throws Exception
+    {
+        release = new CountDownLatch(1);
+        prefetcher = new ContentPrefetcher(contentService, CONTENT_URLS, 4, 2);
+        prefetcher.start();
+
+        // Idle threads must not run ahead of the window
+        verify(contentService, timeout(TIMEOUT_MS).times(2)).getRawReader(anyString());
+        verify(contentService, after(200).times(2)).getRawReader(anyString());
+
+        release.countDown();
+        assertEquals(CONTENT_URLS.get(0), takeContent(CONTENT_URLS.get(0)));
+        assertEquals(CONTENT_URLS.get(1), takeContent(CONTENT_URLS.get(1)));
+        verify(contentService, timeout(TIMEOUT_MS).times(4)).getRawReader(anyString());
+        verify(contentService, after(200).times(4)).getRawReader(anyString());
+    }
+
+    @Test
+    public void testFailedCopyIsReadFromStore() throws Exception
+    {
+        String failingUrl = CONTENT_URLS.get(1);
+        failing.add(failingUrl);
+        prefetcher = new ContentPrefetcher(contentService, CONTENT_URLS, 2, 3);
+        prefetcher.start();
+
+        assertEquals(CONTENT_URLS.get(0), takeContent(CONTENT_URLS.get(0)));
+        assertNull(prefetcher.take(failingUrl));
+        assertDeleted(copies.get(failingUrl));
+        // The failure does not stall the rest of the archive
+        assertEquals(CONTENT_URLS.get(2), takeContent(CONTENT_URLS.get(2)));
+    }
+
+    @Test
+    public void testUnknownContentIsReadFromStore() throws Exception
+    {
+        prefetcher = new ContentPrefetcher(contentService, CONTENT_URLS, 1, 2);
+        prefetcher.start();
+
+        assertNull(prefetcher.take(null));
+        assertNull(prefetcher.take("store://unknown.bin"));
+        assertEquals(CONTENT_URLS.get(0), takeContent(CONTENT_URLS.get(0)));
+    }
+
+    @Test
+    public void testShutdownDeletesCopiesNotTaken() throws Exception
+    {
+        prefetcher = new ContentPrefetcher(contentService, CONTENT_URLS, 2, 3);
+        prefetcher.start();
+        assertEquals(CONTENT_URLS.get(0), takeContent(CONTENT_URLS.get(0)));
+        assertEquals(CONTENT_URLS.get(1), takeContent(CONTENT_URLS.get(1)));
+        awaitCopied(CONTENT_URLS.get(2));
+
+        // Leave the last copy in flight while shutting down
+        release = new CountDownLatch(1);
+        assertEquals(CONTENT_URLS.get(2), takeContent(CONTENT_URLS.get(2)));
+        verify(contentService, timeout(TIMEOUT_MS).times(CONTENT_URLS.size())).getRawReader(anyString());
+        prefetcher.shutdown();
+        release.countDown();
+
+        for (File copy : copies.values())
+        {
+            assertDeleted(copy);
+        }
+    }
+}
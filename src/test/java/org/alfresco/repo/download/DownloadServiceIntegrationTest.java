@@ -27,6 +27,7 @@ package org.alfresco.repo.download;
 
 import net.sf.acegisecurity.Authentication;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.node.SystemNodeUtils;
 import org.alfresco.repo.node.integrity.IntegrityChecker;
@@ -79,6 +80,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import static org.junit.Assert.assertNotEquals;
@@ -316,6 +318,22 @@ public class DownloadServiceIntegrationTest
         validateEntries(entryNames, allEntries, true);
     }
 
+    /**
+     * Already compressed content should be stored as-is, other content deflated.
+     */
+    @Test public void compressedContentIsStored() throws InterruptedException
+    {
+        testNodes.createQuickFile(MimetypeMap.MIMETYPE_IMAGE_JPEG, level1Folder1, "quick.jpg", AuthenticationUtil.getAdminUserName());
+        
+        final NodeRef downloadNode = DOWNLOAD_SERVICE.createDownload(new NodeRef[] {level1Folder1}, true);
+        testNodes.addNodeRef(downloadNode);
+        waitForDownload(downloadNode);
+        
+        Map<String, Integer> entryMethods = getEntryMethods(downloadNode);
+        Assert.assertEquals(Integer.valueOf(ZipArchiveEntry.STORED), entryMethods.get("level1Folder1/quick.jpg"));
+        Assert.assertEquals(Integer.valueOf(ZipArchiveEntry.DEFLATED), entryMethods.get("level1Folder1/level2File.txt"));
+    }
+
     private void validateEntries(final Set<String> entryNames, final Set<String> expectedEntries, boolean onlyExpected)
     {
         Set<String> copy = new TreeSet<String>(entryNames);
@@ -361,6 +379,35 @@ public class DownloadServiceIntegrationTest
         });
     }
 
+    private Map<String, Integer> getEntryMethods(final NodeRef downloadNode)
+    {
+        return TRANSACTION_HELPER.doInTransaction(new RetryingTransactionCallback<Map<String, Integer>>()
+        {
+
+            @Override
+            public Map<String, Integer> execute() throws Throwable
+            {
+                Map<String, Integer> entryMethods = new TreeMap<String, Integer>();
+                ContentReader reader = CONTENT_SERVICE.getReader(downloadNode, ContentModel.PROP_CONTENT);
+                ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(reader.getContentInputStream());
+                try 
+                {
+                    ZipArchiveEntry zipEntry = zipInputStream.getNextZipEntry();
+                    while (zipEntry != null)
+                    {
+                        entryMethods.put(zipEntry.getName(), zipEntry.getMethod());
+                        zipEntry = zipInputStream.getNextZipEntry();
+                    }
+                }
+                finally
+                {
+                    zipInputStream.close();
+                }
+                return entryMethods;
+            }
+        });
+    }
+
     private long waitForDownload(final NodeRef downloadNode) throws InterruptedException
     {
         long startTime = System.currentTimeMillis();
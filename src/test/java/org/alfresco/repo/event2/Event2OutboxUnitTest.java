@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.util.WriteBehindSpool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Event2OutboxUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File outboxDir;
+    private FileBroker broker;
+    private Event2Outbox outbox;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        outboxDir = folder.newFolder("outbox");
+        broker = new FileBroker(folder.newFile("broker.log"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (outbox != null)
+        {
+            outbox.destroy();
+        }
+    }
+
+    private Event2Outbox createOutbox(int capacity, Event2Outbox.EventSender sender)
+    {
+        Event2Outbox newOutbox = new Event2Outbox();
+        newOutbox.setEnabled(true);
+        newOutbox.setDirectory(outboxDir.getAbsolutePath());
+        newOutbox.setCapacity(capacity);
+        newOutbox.setBatchSize(10);
+        newOutbox.setMaxBlockMillis(10);
+        newOutbox.setRetryWaitMillis(10);
+        newOutbox.setEventSender(sender);
+        newOutbox.init();
+        return newOutbox;
+    }
+
+    private void awaitPending(Event2Outbox outbox, long pending) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (outbox.getPendingCount() != pending && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(pending, outbox.getPendingCount());
+    }
+
+    private static List<String> events(int from, int to)
+    {
+        List<String> events = new ArrayList<>();
+        for (int i = from; i < to; i++)
+        {
+            events.add("{\"id\":" + i + "}");
+        }
+        return events;
+    }
+
+    @Test
+    public void testEventsAreSentInOrder() throws Exception
+    {
+        outbox = createOutbox(1000, broker);
+        for (int i = 0; i < 50; i++)
+        {
+            outbox.append(events(i * 10, i * 10 + 10));
+        }
+        awaitPending(outbox, 0);
+
+        assertEquals(events(0, 500), broker.read());
+        assertEquals(500, outbox.getSentCount());
+        assertEquals(0, outbox.getQueueDepth());
+    }
+
+    @Test
+    public void testEventsThatDoNotFitAreReadBackFromLog() throws Exception
+    {
+        // A tiny queue and a slow broker force most events out of memory
+        outbox = createOutbox(2, events -> {
+            sleep(5);
+            broker.send(events);
+        });
+        for (int i = 0; i < 20; i++)
+        {
+            outbox.append(events(i * 5, i * 5 + 5));
+        }
+        awaitPending(outbox, 0);
+
+        assertEquals(events(0, 100), broker.read());
+        assertTrue(outbox.getOverflowCount() > 0);
+    }
+
+    @Test
+    public void testFailedSendsAreRetried() throws Exception
+    {
+        final int[] failures = { 3 };
+        outbox = createOutbox(100, events -> {
+            if (failures[0]-- > 0)
+            {
+                throw new IllegalStateException("Broker unavailable");
+            }
+            broker.send(events);
+        });
+        outbox.append(events(0, 5));
+        awaitPending(outbox, 0);
+
+        assertEquals(events(0, 5), broker.read());
+        assertEquals(3, outbox.getFailedSendCount());
+    }
+
+    @Test
+    public void testEventsAreAbandonedAfterMaxRetries() throws Exception
+    {
+        outbox = new Event2Outbox();
+        outbox.setEnabled(true);
+        outbox.setDirectory(outboxDir.getAbsolutePath());
+        outbox.setBatchSize(1);
+        outbox.setRetryWaitMillis(1);
+        outbox.setMaxRetries(2);
+        outbox.setEventSender(events -> {
+            if (events.contains("{\"id\":0}"))
+            {
+                throw new IllegalStateException("Broker rejected the event");
+            }
+            broker.send(events);
+        });
+        outbox.init();
+        outbox.append(events(0, 1));
+        outbox.append(events(1, 3));
+        awaitPending(outbox, 0);
+
+        // The failing event does not hold back the ones behind it
+        assertEquals(events(1, 3), broker.read());
+        assertEquals(3, outbox.getFailedSendCount());
+        assertEquals(1, outbox.getAbandonedCount());
+        assertEquals(Collections.singletonList("{\"id\":0}"),
+                WriteBehindSpool.readFile(new File(outboxDir, Event2Outbox.FAILED_FILE_NAME), Event2Outbox.CODEC));
+    }
+
+    @Test
+    public void testUnsentEventsAreReplayedAfterRestart() throws Exception
+    {
+        // A broker that is down until the outbox is restarted
+        outbox = createOutbox(100, events -> {
+            throw new IllegalStateException("Broker unavailable");
+        });
+        outbox.append(events(0, 5));
+        outbox.append(events(5, 8));
+        outbox.destroy();
+
+        outbox = createOutbox(100, broker);
+        outbox.append(events(8, 10));
+        awaitPending(outbox, 0);
+
+        assertEquals(events(0, 10), broker.read());
+
+        // Nothing is sent twice after another restart
+        outbox.destroy();
+        outbox = createOutbox(100, broker);
+        Thread.sleep(100);
+        assertEquals(events(0, 10), broker.read());
+    }
+
+    @Test
+    public void testAppendThroughput() throws Exception
+    {
+        outbox = createOutbox(10000, broker);
+        int commits = 2000;
+        for (int i = 0; i < commits; i++)
+        {
+            outbox.append(events(i * 5, i * 5 + 5));
+        }
+        awaitPending(outbox, 0);
+
+        assertEquals(events(0, commits * 5), broker.read());
+        assertEquals(0, outbox.getOverflowCount());
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A stand-in broker that appends each event as a line to a file
+     */
+    private static class FileBroker implements Event2Outbox.EventSender
+    {
+        private final File file;
+
+        private FileBroker(File file)
+        {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized void send(List<String> events)
+        {
+            try
+            {
+                Files.write(file.toPath(), events, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private synchronized List<String> read() throws IOException
+        {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -30,9 +30,13 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.mail.Flags;
+
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.imap.AlfrescoImapConst.ImapViewMode;
+import org.alfresco.repo.imap.ImapService.FolderStatus;
 import org.alfresco.repo.management.subsystems.ChildApplicationContextFactory;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -79,6 +83,7 @@ public class ImapServiceImplCacheTest extends TestCase
     private FileInfo oldFile;
     
     private ImapService imapService;
+    private ImapServiceImpl imapServiceImpl;
 
     private NodeRef testImapFolderNodeRef;
     
@@ -109,7 +114,7 @@ public class ImapServiceImplCacheTest extends TestCase
 
         ChildApplicationContextFactory imap = (ChildApplicationContextFactory) ctx.getBean("imap");
         ApplicationContext imapCtx = imap.getApplicationContext();
-        final ImapServiceImpl imapServiceImpl = (ImapServiceImpl)imapCtx.getBean("imapService");
+        imapServiceImpl = (ImapServiceImpl)imapCtx.getBean("imapService");
 
         // Creating IMAP test folder for IMAP root
         LinkedList<String> folders = new LinkedList<String>();
@@ -238,15 +243,60 @@ public class ImapServiceImplCacheTest extends TestCase
         
     }
     
+    public void testFolderStatusAfterChanges() throws Exception
+    {
+        String userName = authenticationService.getCurrentUserName();
+        FileInfo localRootFolder = fileFolderService.create(testImapFolderNodeRef, "FolderStatus", ContentModel.TYPE_FOLDER);
+        List<FileInfo> messages = createTestContent(localRootFolder, 3);
+        NodeRef folderNodeRef = localRootFolder.getNodeRef();
+        
+        FolderStatus status = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(3, status.messageCount);
+        int unseenCount = status.unseenCount;
+        long updates = imapServiceImpl.getFolderStatusUpdateCount();
+        long listings = imapServiceImpl.getFolderStatusListingCount();
+        
+        // Each change should be reflected in the next status, which is brought up to date from the last one
+        imapService.setFlag(messages.get(0), Flags.Flag.SEEN, true);
+        status = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(3, status.messageCount);
+        assertEquals(unseenCount - 1, status.unseenCount);
+        assertEquals("Folder status was not updated from the last one", ++updates, imapServiceImpl.getFolderStatusUpdateCount());
+        
+        FileInfo newMessage = createTestContent(localRootFolder, 1, "new_content").get(0);
+        Long newUid = (Long) nodeService.getProperty(newMessage.getNodeRef(), ContentModel.PROP_NODE_DBID);
+        status = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(4, status.messageCount);
+        assertEquals(unseenCount, status.unseenCount);
+        assertTrue("New message missing from the folder status", status.search.containsKey(newUid));
+        assertEquals("Folder status was not updated from the last one", ++updates, imapServiceImpl.getFolderStatusUpdateCount());
+        
+        Long deletedUid = (Long) nodeService.getProperty(messages.get(1).getNodeRef(), ContentModel.PROP_NODE_DBID);
+        fileFolderService.delete(messages.get(1).getNodeRef());
+        status = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(3, status.messageCount);
+        assertFalse("Deleted message still in the folder status", status.search.containsKey(deletedUid));
+        assertEquals("Folder status was not updated from the last one", ++updates, imapServiceImpl.getFolderStatusUpdateCount());
+        assertEquals("Folder was listed again", listings, imapServiceImpl.getFolderStatusListingCount());
+        
+        fileFolderService.delete(folderNodeRef);
+    }
+    
     private List<FileInfo> createTestContent(FileInfo parent, int count)
+    {
+        return createTestContent(parent, count, "content_");
+    }
+    
+    private List<FileInfo> createTestContent(FileInfo parent, int count, String namePrefix)
     {
         List<FileInfo> result = new ArrayList<FileInfo>(count);
         for(int i = 0; i < count; i++)
         {
-            FileInfo contentItem = fileFolderService.create(parent.getNodeRef(), "content_" + i, ContentModel.TYPE_CONTENT, ContentModel.ASSOC_CONTAINS);
+            FileInfo contentItem = fileFolderService.create(parent.getNodeRef(), namePrefix + i, ContentModel.TYPE_CONTENT, ContentModel.ASSOC_CONTAINS);
             ContentWriter contentWriter = contentService.getWriter(contentItem.getNodeRef(), ContentModel.PROP_CONTENT, false);
             contentWriter.setEncoding("UTF-8");
             contentWriter.putContent("TEST" + i);
+            result.add(contentItem);
         }
         return result;
     }
@@ -29,6 +29,8 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -435,6 +437,65 @@ public class RhinoScriptTest extends TestCase
 
     }
     
+    /**
+     * Compiled repository scripts are reused until the script or one of its imports is updated
+     */
+    public void testRepositoryScriptCache()
+    {
+        final RhinoScriptProcessor processor = (RhinoScriptProcessor) ctx.getBean("javaScriptProcessor");
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            public Object execute() throws Exception
+            {
+                StoreRef store = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "rhino_" + System.currentTimeMillis());
+                NodeRef root = nodeService.getRootNode(store);
+                
+                NodeRef importNodeRef = createScriptNode(root, "script_import", "var value = \"one\";");
+                NodeRef scriptNodeRef = createScriptNode(root, "script_main",
+                        "<import resource=\"" + importNodeRef + "\">\n" + "value + \"-main\";");
+                
+                long misses = processor.getRepositoryScriptCacheMisses();
+                long hits = processor.getRepositoryScriptCacheHits();
+                assertEquals("one-main", processor.execute(scriptNodeRef, ContentModel.PROP_CONTENT, null));
+                assertEquals("one-main", processor.execute(scriptNodeRef, ContentModel.PROP_CONTENT, null));
+                assertEquals(misses + 1, processor.getRepositoryScriptCacheMisses());
+                assertEquals(hits + 1, processor.getRepositoryScriptCacheHits());
+                
+                // Updating an import recompiles the script
+                writeScript(importNodeRef, "var value = \"two\";");
+                assertEquals("two-main", processor.execute(scriptNodeRef, ContentModel.PROP_CONTENT, null));
+                assertEquals(misses + 2, processor.getRepositoryScriptCacheMisses());
+                
+                // As does updating the script itself
+                writeScript(scriptNodeRef, "<import resource=\"" + importNodeRef + "\">\n" + "value + \"-updated\";");
+                assertEquals("two-updated", processor.execute(scriptNodeRef, ContentModel.PROP_CONTENT, null));
+                assertEquals("two-updated", processor.execute(scriptNodeRef, ContentModel.PROP_CONTENT, null));
+                assertEquals(misses + 3, processor.getRepositoryScriptCacheMisses());
+                assertEquals(hits + 2, processor.getRepositoryScriptCacheHits());
+                return null;
+            }
+        });
+    }
+    
+    private NodeRef createScriptNode(NodeRef parentNodeRef, String name, String script)
+    {
+        NodeRef nodeRef = nodeService.createNode(
+                parentNodeRef,
+                ContentModel.ASSOC_CHILDREN,
+                QName.createQName(BaseNodeServiceTest.NAMESPACE, name),
+                ContentModel.TYPE_CONTENT,
+                Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, name + ".js")).getChildRef();
+        writeScript(nodeRef, script);
+        return nodeRef;
+    }
+    
+    private void writeScript(NodeRef nodeRef, String script)
+    {
+        ContentWriter writer = contentService.getWriter(nodeRef, ContentModel.PROP_CONTENT, true);
+        writer.setMimetype("application/x-javascript");
+        writer.putContent(script);
+    }
+    
     private static final String TESTSCRIPT_CLASSPATH1 = "org/alfresco/repo/jscript/test_script1.js";
     private static final String TESTSCRIPT_CLASSPATH2 = "org/alfresco/repo/jscript/test_script2.js";
     private static final String TESTSCRIPT_CLASSPATH3 = "org/alfresco/repo/jscript/test_script3.js";
@@ -25,9 +25,14 @@
  */
 package org.alfresco.repo.policy;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import junit.framework.TestCase;
@@ -361,6 +366,62 @@ public class PolicyComponentTest extends TestCase
     }
 
 
+    public void testClassCacheWithActivatedFilter()
+    {
+        // Filter that only disables the folder type
+        final Set<QName> disabledClasses = new HashSet<QName>();
+        BehaviourFilter filter = (BehaviourFilter) Proxy.newProxyInstance(
+                BehaviourFilter.class.getClassLoader(),
+                new Class[] { BehaviourFilter.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        if (method.getName().equals("isActivated"))
+                        {
+                            return !disabledClasses.isEmpty();
+                        }
+                        else if (method.getName().equals("isEnabled") && args != null && args[args.length - 1] instanceof QName)
+                        {
+                            return !disabledClasses.contains(args[args.length - 1]);
+                        }
+                        return method.getReturnType().equals(boolean.class) ? Boolean.TRUE : null;
+                    }
+                });
+        ((PolicyComponentImpl) policyComponent).setBehaviourFilter(filter);
+        
+        // Register Policy
+        ClassPolicyDelegate<TestClassPolicy> delegate = policyComponent.registerClassPolicy(TestClassPolicy.class);
+        
+        // Bind Behaviour
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        Behaviour baseBehaviour = new JavaBehaviour(this, "baseTest");
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, baseBehaviour);
+        Behaviour folderBehaviour = new JavaBehaviour(this, "folderTest");
+        policyComponent.bindClassBehaviour(policyName, FOLDER_TYPE, folderBehaviour);
+        
+        TestClassPolicy filePolicy = delegate.get(FILE_TYPE);
+        assertEquals("Base: file", filePolicy.test("file"));
+        TestClassPolicy folderPolicy = delegate.get(FOLDER_TYPE);
+        assertEquals("Folder: folder", folderPolicy.test("folder"));
+        
+        // Activate the filter: classes that are not filtered are still served from the cache
+        disabledClasses.add(FOLDER_TYPE);
+        TestClassPolicy filePolicy2 = delegate.get(FILE_TYPE);
+        assertTrue(filePolicy == filePolicy2);
+        TestClassPolicy folderPolicy2 = delegate.get(FOLDER_TYPE);
+        assertTrue(folderPolicy != folderPolicy2);
+        assertNull(folderPolicy2.test("folder"));
+        assertEquals(0, delegate.getList(FOLDER_TYPE).size());
+        
+        // Deactivate the filter again
+        disabledClasses.clear();
+        TestClassPolicy folderPolicy3 = delegate.get(FOLDER_TYPE);
+        assertTrue(folderPolicy == folderPolicy3);
+        assertEquals("Folder: folder", folderPolicy3.test("folder"));
+    }
+
+
     public void testPropertyDelegate()
     {
         // Register Policy
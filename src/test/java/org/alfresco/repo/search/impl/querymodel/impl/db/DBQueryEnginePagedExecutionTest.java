@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.querymodel.impl.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeEntity;
+import org.alfresco.repo.search.impl.lucene.PagingLuceneResultSet;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.LimitBy;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.util.Pair;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * Tests the paged, permission checking execution of the DB query engine against a mocked cursor.
+ * Odd node IDs are readable and even node IDs are denied.
+ */
+public class DBQueryEnginePagedExecutionTest
+{
+    private static final String SELECT_BY_DYNAMIC_QUERY = "alfresco.metadata.query.select_byDynamicQuery";
+    private static final String SELECT_BY_DYNAMIC_QUERY_LIMITED = "alfresco.metadata.query.select_byDynamicQueryLimited";
+    private static final int ROW_COUNT = 200;
+
+    private SqlSessionTemplate template;
+    private NodeDAO nodeDAO;
+    private PermissionService permissionService;
+    private DBQueryEngine engine;
+    private DBQuery dbQuery;
+    private List<String> statements;
+    private int rowsSelected;
+    private long permissionCheckDelay;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        template = mock(SqlSessionTemplate.class);
+        nodeDAO = mock(NodeDAO.class);
+        permissionService = mock(PermissionService.class);
+        statements = new ArrayList<String>();
+        rowsSelected = 0;
+        permissionCheckDelay = 0L;
+
+        doAnswer(invocation -> {
+            String statement = invocation.getArgument(0);
+            DBQuery query = invocation.getArgument(1);
+            ResultHandler handler = invocation.getArgument(2);
+            statements.add(statement);
+            int rows = SELECT_BY_DYNAMIC_QUERY_LIMITED.equals(statement) ? Math.min(query.getLimit(), ROW_COUNT) : ROW_COUNT;
+            boolean[] stopped = new boolean[1];
+            for (long id = 1; id <= rows && !stopped[0]; id++)
+            {
+                NodeEntity node = new NodeEntity();
+                node.setId(id);
+                ResultContext context = mock(ResultContext.class);
+                when(context.getResultObject()).thenReturn(node);
+                doAnswer(stop -> stopped[0] = true).when(context).stop();
+                rowsSelected++;
+                handler.handleResult(context);
+            }
+            return null;
+        }).when(template).select(anyString(), any(), any(ResultHandler.class));
+
+        when(nodeDAO.getNodePair(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            return new Pair<Long, NodeRef>(id, new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node-" + id));
+        });
+        when(permissionService.hasReadPermission(any(NodeRef.class))).thenAnswer(invocation -> {
+            if (permissionCheckDelay > 0)
+            {
+                Thread.sleep(permissionCheckDelay);
+            }
+            NodeRef nodeRef = invocation.getArgument(0);
+            long id = Long.parseLong(nodeRef.getId().substring("node-".length()));
+            return id % 2 == 0 ? AccessStatus.DENIED : AccessStatus.ALLOWED;
+        });
+
+        engine = new DBQueryEngine();
+        engine.setSqlSessionTemplate(template);
+        engine.setNodeDAO(nodeDAO);
+        engine.setPermissionService(permissionService);
+        engine.setTenantService(mock(TenantService.class));
+        engine.setNodeService(mock(NodeService.class));
+        engine.setPermissionCheckBatchSize(4);
+        engine.setMaxPermissionChecks(1000);
+        engine.setMaxPermissionCheckTimeMillis(10000L);
+
+        dbQuery = new DBQuery(null, null, null, null);
+        dbQuery.setPermissionChecked(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private SearchParameters getSearchParameters(int skipCount, int maxItems)
+    {
+        SearchParameters searchParameters = new SearchParameters();
+        searchParameters.setSkipCount(skipCount);
+        searchParameters.setMaxItems(maxItems);
+        return searchParameters;
+    }
+
+    @Test
+    public void testPageBoundary()
+    {
+        // Skip 4 and return 3, plus one row to tell whether there are more: the first 8 permitted rows are 1..15
+        ResultSet results = engine.executePagedQuery(dbQuery, getSearchParameters(4, 3), 8);
+
+        assertEquals(3, results.length());
+        assertTrue(results.hasMore());
+        assertEquals(LimitBy.UNLIMITED, ((PagingLuceneResultSet) results).getWrapped().getResultSetMetaData().getLimitedBy());
+        // Permission checks stop with the batch holding the last required row
+        verify(permissionService, times(15)).hasReadPermission(any(NodeRef.class));
+        assertEquals(SELECT_BY_DYNAMIC_QUERY_LIMITED, statements.get(0));
+        assertEquals(1001, dbQuery.getLimit());
+        assertTrue(rowsSelected <= 16);
+    }
+
+    @Test
+    public void testLastPage()
+    {
+        // Only 100 of the 200 rows are readable, so the page after them is empty
+        ResultSet results = engine.executePagedQuery(dbQuery, getSearchParameters(100, 10), 111);
+
+        assertEquals(0, results.length());
+        assertFalse(results.hasMore());
+        verify(permissionService, times(ROW_COUNT)).hasReadPermission(any(NodeRef.class));
+    }
+
+    @Test
+    public void testDeniedRowsAreSkipped()
+    {
+        ResultSet results = engine.executePagedQuery(dbQuery, getSearchParameters(0, 5), 6);
+
+        assertEquals(5, results.length());
+        ResultSet wrapped = ((PagingLuceneResultSet) results).getWrapped();
+        assertEquals(6, wrapped.length());
+        verify(permissionService, times(11)).hasReadPermission(any(NodeRef.class));
+        verify(permissionService, never()).hasReadPermission(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node-13"));
+    }
+
+    @Test
+    public void testMaxPermissionChecks()
+    {
+        SearchParameters searchParameters = getSearchParameters(0, 50);
+        searchParameters.setMaxPermissionChecks(10);
+
+        ResultSet results = engine.executePagedQuery(dbQuery, searchParameters, 51);
+
+        assertEquals(5, results.length());
+        assertTrue(results.hasMore());
+        assertEquals(LimitBy.NUMBER_OF_PERMISSION_EVALUATIONS,
+                ((PagingLuceneResultSet) results).getWrapped().getResultSetMetaData().getLimitedBy());
+        verify(permissionService, times(10)).hasReadPermission(any(NodeRef.class));
+        // The query is limited to the rows that can be used
+        assertEquals(51, dbQuery.getLimit());
+        assertTrue(rowsSelected <= 51);
+    }
+
+    @Test
+    public void testMaxPermissionCheckTime()
+    {
+        permissionCheckDelay = 5L;
+        SearchParameters searchParameters = getSearchParameters(0, 50);
+        searchParameters.setMaxPermissionCheckTimeMillis(0);
+
+        ResultSet results = engine.executePagedQuery(dbQuery, searchParameters, 51);
+
+        assertTrue(results.length() <= 1);
+        assertEquals(LimitBy.NUMBER_OF_PERMISSION_EVALUATIONS,
+                ((PagingLuceneResultSet) results).getWrapped().getResultSetMetaData().getLimitedBy());
+        verify(permissionService, atMost(1)).hasReadPermission(any(NodeRef.class));
+    }
+
+    @Test
+    public void testUncheckedQueryIsNotPermissionChecked()
+    {
+        dbQuery.setPermissionChecked(false);
+
+        ResultSet results = engine.executePagedQuery(dbQuery, getSearchParameters(4, 3), 8);
+
+        assertEquals(3, results.length());
+        verify(permissionService, never()).hasReadPermission(any(NodeRef.class));
+        assertEquals(8, dbQuery.getLimit());
+        assertEquals(8, rowsSelected);
+        assertEquals(1, statements.size());
+    }
+
+    @Test
+    public void testInterceptorMarksQueriesForTheCallingUser() throws Throwable
+    {
+        DBQueryPermissionCheckInterceptor interceptor = new DBQueryPermissionCheckInterceptor();
+        DBQuery query = new DBQuery(null, null, null, null);
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getArguments()).thenReturn(new Object[] { query, null, null });
+        when(invocation.proceed()).thenAnswer(proceed -> query.isPermissionChecked());
+
+        AuthenticationUtil.setRunAsUser("someone");
+        assertTrue((Boolean) interceptor.invoke(invocation));
+        assertFalse(query.isPermissionChecked());
+
+        // The after invocation check does not filter the system user's results
+        AuthenticationUtil.setRunAsUserSystem();
+        assertFalse((Boolean) interceptor.invoke(invocation));
+        assertFalse(query.isPermissionChecked());
+    }
+}
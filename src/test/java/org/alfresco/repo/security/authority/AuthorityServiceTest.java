@@ -48,6 +48,8 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.node.archive.NodeArchiveService;
@@ -866,6 +868,56 @@ public class AuthorityServiceTest extends TestCase
         assertEquals(0, pubAuthorityService.getContainedAuthorities(null, auth5, false).size());
     }
     
+    public void testGroupChangeInvalidatesOnlyAffectedUsers()
+    {
+        // Users are only invalidated individually when the user authority cache is held in this JVM
+        AuthorityDAOImpl authorityDAO = (AuthorityDAOImpl) ctx.getBean("authorityDAO");
+        authorityDAO.setUserAuthoritySharedCache(new DefaultSimpleCache<String, Set<String>>());
+        try
+        {
+            checkGroupChangeInvalidatesOnlyAffectedUsers();
+        }
+        finally
+        {
+            authorityDAO.setUserAuthoritySharedCache((SimpleCache<?, ?>) ctx.getBean("userToAuthoritySharedCache"));
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void checkGroupChangeInvalidatesOnlyAffectedUsers()
+    {
+        SimpleCache<String, Set<String>> userAuthorityCache = (SimpleCache<String, Set<String>>) ctx.getBean("userToAuthorityCache");
+        personService.getPerson("andy");
+        personService.getPerson("administrator");
+
+        String outer = pubAuthorityService.createAuthority(AuthorityType.GROUP, "scopedOuter");
+        String inner = pubAuthorityService.createAuthority(AuthorityType.GROUP, "scopedInner");
+        String nested = pubAuthorityService.createAuthority(AuthorityType.GROUP, "scopedNested");
+        String other = pubAuthorityService.createAuthority(AuthorityType.GROUP, "scopedOther");
+        pubAuthorityService.addAuthority(inner, nested);
+        pubAuthorityService.addAuthority(nested, "andy");
+        pubAuthorityService.addAuthority(other, "administrator");
+        authorityBridgeTableCache.forceInChangesForThisUncommittedTransaction();
+
+        userAuthorityCache.put("andy", Collections.singleton("andy-marker"));
+        userAuthorityCache.put("administrator", Collections.singleton("administrator-marker"));
+
+        // Only members of the moved group, including those in nested groups, are affected
+        pubAuthorityService.addAuthority(outer, inner);
+        assertNull(userAuthorityCache.get("andy"));
+        assertEquals(Collections.singleton("administrator-marker"), userAuthorityCache.get("administrator"));
+        authorityBridgeTableCache.forceInChangesForThisUncommittedTransaction();
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+
+        userAuthorityCache.put("andy", Collections.singleton("andy-marker"));
+        pubAuthorityService.removeAuthority(outer, inner);
+        assertNull(userAuthorityCache.get("andy"));
+        assertEquals(Collections.singleton("administrator-marker"), userAuthorityCache.get("administrator"));
+
+        pubAuthorityService.deleteAuthority(other);
+        assertNull(userAuthorityCache.get("administrator"));
+    }
+    
     public void testCreateAuthNet()
     {
         personService.getPerson("andy");
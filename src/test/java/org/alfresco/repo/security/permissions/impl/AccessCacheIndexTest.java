@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AccessCacheIndex}.
+ */
+public class AccessCacheIndexTest
+{
+    private static final QName TYPE = QName.createQName("{test}type");
+
+    private DefaultSimpleCache<Serializable, AccessStatus> accessCache;
+    private AccessCacheIndex index;
+
+    @Before
+    public void setUp()
+    {
+        accessCache = new DefaultSimpleCache<Serializable, AccessStatus>(1000, getClass().getName());
+        index = new AccessCacheIndex();
+        index.setAccessCache(accessCache);
+        index.setEnabled(true);
+        index.init();
+    }
+
+    private AccessCacheKey aclKey(long aclId, String... authorities)
+    {
+        return AccessCacheKey.forAcl("Read", new HashSet<String>(Arrays.asList(authorities)), aclId, 1L,
+                TYPE, Collections.<QName>emptySet(), null);
+    }
+
+    private AccessCacheKey nodeKey(String id, String user)
+    {
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, id);
+        return AccessCacheKey.forNode("Read", (Serializable) Collections.singleton(user), nodeRef, 1L,
+                PermissionServiceImpl.CacheType.HAS_PERMISSION);
+    }
+
+    @Test
+    public void testHitsAndMisses()
+    {
+        AccessCacheKey key = aclKey(1L, "andy");
+        assertNull(index.get(key));
+        index.put(key, AccessStatus.ALLOWED);
+        assertEquals(AccessStatus.ALLOWED, index.get(key));
+        assertEquals(AccessStatus.ALLOWED, index.get(aclKey(1L, "andy")));
+
+        assertEquals(2, index.getHitCount());
+        assertEquals(1, index.getMissCount());
+        assertEquals(1, index.getIndexedKeyCount());
+    }
+
+    @Test
+    public void testInvalidateAcls()
+    {
+        AccessCacheKey acl1 = aclKey(1L, "andy");
+        AccessCacheKey acl2 = aclKey(2L, "andy");
+        index.put(acl1, AccessStatus.ALLOWED);
+        index.put(acl2, AccessStatus.DENIED);
+
+        index.invalidateAcls(Collections.singleton(1L));
+
+        assertNull(accessCache.get(acl1));
+        assertNotNull(accessCache.get(acl2));
+        assertEquals(1, index.getInvalidationCount());
+        assertEquals(1, index.getIndexedKeyCount());
+    }
+
+    @Test
+    public void testInvalidateAuthorities()
+    {
+        AccessCacheKey inGroup = aclKey(1L, "andy", "GROUP_A");
+        AccessCacheKey notInGroup = aclKey(1L, "bob", "GROUP_B");
+        AccessCacheKey user = nodeKey("1", "andy");
+        index.put(inGroup, AccessStatus.ALLOWED);
+        index.put(notInGroup, AccessStatus.ALLOWED);
+        index.put(user, AccessStatus.ALLOWED);
+
+        index.invalidateAuthorities(Collections.singleton("GROUP_A"));
+        assertNull(accessCache.get(inGroup));
+        assertNotNull(accessCache.get(notInGroup));
+        assertNotNull(accessCache.get(user));
+
+        index.invalidateAuthorities(Collections.singleton("andy"));
+        assertNull(accessCache.get(user));
+        assertNotNull(accessCache.get(notInGroup));
+        assertEquals(2, index.getInvalidationCount());
+    }
+
+    @Test
+    public void testInvalidateNodeKeys()
+    {
+        AccessCacheKey acl = aclKey(1L, "andy");
+        AccessCacheKey node = nodeKey("1", "andy");
+        index.put(acl, AccessStatus.ALLOWED);
+        index.put(node, AccessStatus.ALLOWED);
+
+        index.invalidateNodeKeys();
+
+        assertNotNull(accessCache.get(acl));
+        assertNull(accessCache.get(node));
+    }
+
+    @Test
+    public void testOverflowFallsBackToClear()
+    {
+        index.setMaxIndexedKeys(2);
+        AccessCacheKey acl1 = aclKey(1L, "andy");
+        AccessCacheKey acl2 = aclKey(2L, "andy");
+        AccessCacheKey acl3 = aclKey(3L, "andy");
+        index.put(acl1, AccessStatus.ALLOWED);
+        index.put(acl2, AccessStatus.ALLOWED);
+        index.put(acl3, AccessStatus.ALLOWED);
+
+        // The index no longer knows every key so the whole cache goes
+        index.invalidateAcls(Collections.singleton(1L));
+        assertNull(accessCache.get(acl1));
+        assertNull(accessCache.get(acl2));
+        assertNull(accessCache.get(acl3));
+        assertEquals(0, index.getIndexedKeyCount());
+
+        // Tracking starts again
+        index.put(acl1, AccessStatus.ALLOWED);
+        index.put(acl2, AccessStatus.ALLOWED);
+        index.invalidateAcls(Collections.singleton(1L));
+        assertNull(accessCache.get(acl1));
+        assertNotNull(accessCache.get(acl2));
+    }
+
+    @Test
+    public void testDisabledClearsCache()
+    {
+        index.setEnabled(false);
+        AccessCacheKey acl1 = aclKey(1L, "andy");
+        AccessCacheKey acl2 = aclKey(2L, "bob");
+        index.put(acl1, AccessStatus.ALLOWED);
+        index.put(acl2, AccessStatus.ALLOWED);
+
+        index.invalidateAuthorities(Collections.singleton("andy"));
+        assertNull(accessCache.get(acl1));
+        assertNull(accessCache.get(acl2));
+    }
+
+    @Test
+    public void testClusteredCacheClearsCache()
+    {
+        index = new AccessCacheIndex();
+        index.setAccessCache(accessCache);
+        index.setEnabled(true);
+        index.setSharedCache(mock(SimpleCache.class));
+        index.init();
+        AccessCacheKey acl1 = aclKey(1L, "andy");
+        AccessCacheKey acl2 = aclKey(2L, "bob");
+        index.put(acl1, AccessStatus.ALLOWED);
+        index.put(acl2, AccessStatus.ALLOWED);
+
+        index.invalidateAcls(Collections.singleton(1L));
+        assertNull(accessCache.get(acl1));
+        assertNull(accessCache.get(acl2));
+        assertEquals(0, index.getIndexedKeyCount());
+    }
+
+    @Test
+    public void testKeyEqualsAfterSerialization() throws Exception
+    {
+        AccessCacheKey key = aclKey(1L, "andy");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(key);
+        }
+        AccessCacheKey copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            copy = (AccessCacheKey) in.readObject();
+        }
+        assertEquals(key.hashCode(), copy.hashCode());
+        assertEquals(key, copy);
+    }
+}
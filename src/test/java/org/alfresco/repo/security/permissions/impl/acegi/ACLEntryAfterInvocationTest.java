@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.security.permissions.impl.acegi;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -595,6 +596,57 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
         assertEquals(0, answerArray.length);
     }
 
+    public void testResultSetFilterGroupedByAcl() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+
+        NodeRef allowedFolder = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                QName.createQName("{namespace}allowed"), ContentModel.TYPE_FOLDER).getChildRef();
+        NodeRef deniedFolder = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                QName.createQName("{namespace}denied"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(new SimplePermissionEntry(allowedFolder, getPermission(PermissionService.READ), "andy", AccessStatus.ALLOWED));
+
+        List<NodeRef> nodeRefList = new ArrayList<NodeRef>();
+        List<NodeRef> expected = new ArrayList<NodeRef>();
+        for (int i = 0; i < 3; i++)
+        {
+            NodeRef allowed = nodeService.createNode(allowedFolder, ContentModel.ASSOC_CHILDREN,
+                    QName.createQName("{namespace}a" + i), ContentModel.TYPE_FOLDER).getChildRef();
+            NodeRef denied = nodeService.createNode(deniedFolder, ContentModel.ASSOC_CHILDREN,
+                    QName.createQName("{namespace}d" + i), ContentModel.TYPE_FOLDER).getChildRef();
+            nodeRefList.add(allowed);
+            nodeRefList.add(denied);
+            expected.add(allowed);
+        }
+        // Ownership grants read access even though the shared ACL does not
+        NodeRef owned = nodeService.createNode(deniedFolder, ContentModel.ASSOC_CHILDREN,
+                QName.createQName("{namespace}owned"), ContentModel.TYPE_FOLDER).getChildRef();
+        nodeService.addAspect(owned, ContentModel.ASPECT_OWNABLE, Collections.singletonMap(ContentModel.PROP_OWNER, (Serializable) "andy"));
+        nodeRefList.add(owned);
+        expected.add(owned);
+
+        runAs("andy");
+
+        Object o = new ClassWithMethods();
+        Method methodResultSet = o.getClass().getMethod("echoResultSet", new Class[] { ResultSet.class });
+
+        AdvisorAdapterRegistry advisorAdapterRegistry = GlobalAdvisorAdapterRegistry.getInstance();
+
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.addAdvisor(advisorAdapterRegistry.wrap(new Interceptor("AFTER_ACL_NODE.sys:base.Read", true)));
+        proxyFactory.setTargetSource(new SingletonTargetSource(o));
+        Object proxy = proxyFactory.getProxy();
+
+        ChildAssocRefResultSet rsIn = new ChildAssocRefResultSet(nodeService, nodeRefList, false);
+        assertEquals(7, rsIn.length());
+        ResultSet answerResultSet = (ResultSet) methodResultSet.invoke(proxy, new Object[] { rsIn });
+        assertEquals(expected.size(), answerResultSet.length());
+        for (int i = 0; i < answerResultSet.length(); i++)
+        {
+            assertEquals(expected.get(i), answerResultSet.getNodeRef(i));
+        }
+    }
+
     public void testWhenNodesCheckedExceedsTargetResultCount() throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, SecurityException, NoSuchMethodException
     {
         // ALF-11709: If 'count' nodes have been checked and that number exceeds targetResultCount
@@ -1018,6 +1070,14 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
     public class Interceptor implements MethodInterceptor
     {
         ConfigAttributeDefinition cad = new ConfigAttributeDefinition();
+        
+        boolean groupReadChecksByAcl = false;
+
+        Interceptor(final String config, boolean groupReadChecksByAcl)
+        {
+            this(config);
+            this.groupReadChecksByAcl = groupReadChecksByAcl;
+        }
 
         Interceptor(final String config)
         {
@@ -1044,6 +1104,11 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
             after.setPermissionService(permissionService);
             after.setNodeService(nodeService);
             after.setUnfilteredFor(Collections.singleton("{ns}ln"));
+            if (groupReadChecksByAcl)
+            {
+                after.setOptimisePermissionsCheck(true);
+                after.setGroupReadChecksByAcl(true);
+            }
             after.afterPropertiesSet();
 
             Object returnObject = invocation.proceed();
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.tagging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.service.cmr.tagging.TagDetails;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Test;
+
+/**
+ * Tests for the tag scope count maintenance in {@link UpdateTagScopesActionExecuter} and
+ * {@link RefreshTagScopeActionExecuter}.
+ */
+public class TagScopeUpdatesTest
+{
+    @Test
+    public void applyUpdatesAdjustsCounts()
+    {
+        List<TagDetails> tags = new ArrayList<TagDetails>();
+        tags.add(new TagDetailsImpl("alpha", 5));
+        tags.add(new TagDetailsImpl("beta", 2));
+        tags.add(new TagDetailsImpl("gamma", 1));
+
+        Map<String, Integer> updates = new HashMap<String, Integer>();
+        updates.put("alpha", 3);
+        updates.put("beta", -2);
+        updates.put("gamma", 0);
+        updates.put("delta", 4);
+        updates.put("epsilon", -1);
+
+        Map<String, Integer> result = toMap(UpdateTagScopesActionExecuter.applyUpdates(tags, updates));
+        assertEquals(3, result.size());
+        assertEquals(Integer.valueOf(8), result.get("alpha"));
+        assertEquals(Integer.valueOf(1), result.get("gamma"));
+        assertEquals(Integer.valueOf(4), result.get("delta"));
+    }
+
+    @Test
+    public void applyUpdatesRemovesExhaustedTags()
+    {
+        List<TagDetails> tags = new ArrayList<TagDetails>();
+        tags.add(new TagDetailsImpl("alpha", 1));
+
+        Map<String, Integer> updates = new HashMap<String, Integer>();
+        updates.put("alpha", -5);
+
+        assertTrue(UpdateTagScopesActionExecuter.applyUpdates(tags, updates).isEmpty());
+    }
+
+    @Test
+    public void mergeCountsAddsSubtrees()
+    {
+        Map<String, MutableInt> to = new HashMap<String, MutableInt>();
+        to.put("alpha", new MutableInt(2));
+        Map<String, MutableInt> from = new HashMap<String, MutableInt>();
+        from.put("alpha", new MutableInt(3));
+        from.put("beta", new MutableInt(1));
+
+        RefreshTagScopeActionExecuter.mergeCounts(from, to);
+        assertEquals(2, to.size());
+        assertEquals(5, to.get("alpha").intValue());
+        assertEquals(1, to.get("beta").intValue());
+    }
+
+    private static Map<String, Integer> toMap(List<TagDetails> tags)
+    {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (TagDetails tag : tags)
+        {
+            result.put(tag.getName(), tag.getCount());
+        }
+        return result;
+    }
+}
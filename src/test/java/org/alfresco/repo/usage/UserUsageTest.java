@@ -387,6 +387,47 @@ public class UserUsageTest extends TestCase
         delete(folder);
     }
     
+    public void testDeltasCoalescedPerTx() throws Exception
+    {
+        if(!contentUsageImpl.getEnabled())
+        {
+            return;
+        }
+        
+        runAs(TEST_USER);
+        
+        assertEquals(0, contentUsageImpl.getUserUsage(TEST_USER));
+        
+        // Create a folder
+        NodeRef folder = this.nodeService.createNode(
+                this.rootNodeRef, 
+                ContentModel.ASSOC_CHILDREN, 
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "testFolder"),
+                ContentModel.TYPE_FOLDER).getChildRef();
+        
+        NodeRef content1 = addTextContent(folder, "text1.txt", "The quick brown fox jumps over the lazy dog"); // + 43
+        NodeRef content2 = addTextContent(folder, "text2.txt", "Amazingly few discotheques provide jukeboxes"); // + 44
+        updateTextContent(content1, "Few black taxis drive up major roads on quiet hazy nights"); // -43 + 57 = +14
+        assertEquals(101, contentUsageImpl.getUserUsage(TEST_USER));
+        
+        testTX.commit();
+        
+        testTX = transactionService.getUserTransaction();
+        testTX.begin();
+        runAs(TEST_USER);
+        
+        // All changes made by the transaction are written as a single delta
+        assertEquals(101, contentUsageImpl.getUserUsage(TEST_USER));
+        assertEquals(101, usageService.getTotalDeltaSize(personNodeRef));
+        assertEquals(1, usageService.deleteDeltas(personNodeRef));
+        assertEquals(0, usageService.getTotalDeltaSize(personNodeRef));
+        
+        // delete content and folder to cleanup
+        delete(content1);
+        delete(content2);
+        delete(folder);
+    }
+    
     public void testCreateDeleteRestoreInTx() throws Exception
     {
         if(!contentUsageImpl.getEnabled())